@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * In-memory {@link LongDataSeries} with the same range semantics as {@link DefaultDataSeries}: a query also returns the closest data
+ * point before each end of the range. Data must be added in increasing x order.
+ */
+public class DefaultLongDataSeries implements LongDataSeries {
+  @NotNull private final LongSeriesData myData = new LongSeriesData();
+
+  @Override
+  public void getDataForRange(@NotNull Range range, @NotNull LongSeriesData out) {
+    if (myData.isEmpty() || range.isEmpty()) {
+      return;
+    }
+    int fromIndex = getNearestXIndex((long)range.getMin());
+    int toIndex = getNearestXIndex((long)range.getMax());
+    for (int i = fromIndex; i <= toIndex; i++) {
+      out.add(myData.getX(i), myData.getY(i));
+    }
+  }
+
+  public void add(long x, long y) {
+    myData.add(x, y);
+  }
+
+  public int size() {
+    return myData.size();
+  }
+
+  public long getX(int index) {
+    return myData.getX(index);
+  }
+
+  public long getY(int index) {
+    return myData.getY(index);
+  }
+
+  /**
+   * @return the index of the first data point at {@code x}, or of the last one before it if there is none. Clamped to the data bounds.
+   */
+  public int getNearestXIndex(long x) {
+    int low = 0;
+    int high = myData.size();
+    // Find the first index whose x is >= the given x.
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myData.getX(mid) < x) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    int index = low < myData.size() && myData.getX(low) == x ? low : low - 1;
+    return Math.max(0, Math.min(index, myData.size() - 1));
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A {@link DataSeries} that keeps min/max/average rollups of another series at a few fixed resolutions (levels). Raw data is fetched from
+ * the source series only once, as it arrives, and each query is answered from the coarsest level that still has at least one bucket per
+ * pixel. The number of points returned therefore scales with the width of the chart instead of the length of the visible range.
+ * <p>
+ * Queries too narrow for the finest level (e.g. when zoomed in) are passed through to the source series. Each level keeps a bounded number
+ * of buckets and evicts its oldest ones first; queries over evicted data use a coarser level, or the source series if none is left.
+ * <p>
+ * Samples may reach the source late: the last {@link #LATE_SAMPLE_WINDOW_US} of ingested data is fetched again with each query at the
+ * leading edge, and new samples found there are merged into their buckets. Samples arriving later than that are not picked up.
+ * <p>
+ * X values are expected in microseconds, as used by the profiler timelines, and the source series must return its data ordered by x.
+ * The rollups are stored as primitives, and the {@link LongDataSeries} methods copy them out without boxing.
+ */
+public class DownsampledDataSeries implements LongDataSeries {
+  /**
+   * Bucket durations of the levels: 1ms, 100ms, 1s and 10s.
+   */
+  public static final long[] DEFAULT_BUCKET_DURATIONS_US = {
+    TimeUnit.MILLISECONDS.toMicros(1), TimeUnit.MILLISECONDS.toMicros(100), TimeUnit.SECONDS.toMicros(1), TimeUnit.SECONDS.toMicros(10)
+  };
+
+  /**
+   * Resolution assumed by {@link #getDataForRange(Range)}, when the caller does not know how wide the series is drawn.
+   */
+  public static final int DEFAULT_PIXEL_WIDTH = 2048;
+
+  /**
+   * Raw data is pulled from the source in windows of this length, so catching up on a long session does not result in a single huge
+   * query.
+   */
+  private static final long INGEST_WINDOW_US = TimeUnit.MINUTES.toMicros(10);
+
+  private static final long LATE_SAMPLE_WINDOW_US = TimeUnit.SECONDS.toMicros(5);
+
+  /**
+   * Buckets kept per level. The finest default level keeps the last 16s at least, the coarsest more than 45 hours.
+   */
+  private static final int MAX_BUCKETS_PER_LEVEL = 1 << 14;
+
+  public enum Aggregation {
+    /**
+     * Each bucket is represented by its minimum and maximum samples, in the order they occurred, so spikes are preserved.
+     */
+    MIN_MAX,
+    /**
+     * Each bucket is represented by a single point at its start, with the average value of its samples.
+     */
+    AVERAGE
+  }
+
+  @NotNull private final DataSeries<Long> mySource;
+  @NotNull private final Aggregation myAggregation;
+  @NotNull private final Level[] myLevels;
+  private final long myLateSampleWindowUs;
+  private final int myMaxBucketsPerLevel;
+
+  /**
+   * Range of x values that have been pulled from the source: everything in [myIngestedMin, myIngestedMax] was added to the levels. The
+   * max is the last x received rather than the last x requested, so data still streaming in at the leading edge is picked up by the next
+   * query.
+   */
+  private long myIngestedMin = Long.MAX_VALUE;
+  private long myIngestedMax = Long.MIN_VALUE;
+
+  /**
+   * Sorted x values of the samples added within the late sample window, so the window can be fetched again without adding its samples
+   * twice.
+   */
+  @NotNull private long[] myRecentXs = new long[16];
+  private int myRecentSize;
+  /**
+   * Start of the first ingested range. Samples before it were prepended and never go through the late sample window.
+   */
+  private long myRecentFrom;
+
+  public DownsampledDataSeries(@NotNull DataSeries<Long> source) {
+    this(source, Aggregation.MIN_MAX, DEFAULT_BUCKET_DURATIONS_US);
+  }
+
+  /**
+   * @param bucketDurationsUs durations of the levels to maintain, in increasing order.
+   */
+  public DownsampledDataSeries(@NotNull DataSeries<Long> source, @NotNull Aggregation aggregation, @NotNull long[] bucketDurationsUs) {
+    this(source, aggregation, bucketDurationsUs, LATE_SAMPLE_WINDOW_US, MAX_BUCKETS_PER_LEVEL);
+  }
+
+  @VisibleForTesting
+  DownsampledDataSeries(@NotNull DataSeries<Long> source,
+                        @NotNull Aggregation aggregation,
+                        @NotNull long[] bucketDurationsUs,
+                        long lateSampleWindowUs,
+                        int maxBucketsPerLevel) {
+    assert lateSampleWindowUs >= 0 && maxBucketsPerLevel > 1;
+    mySource = source;
+    myAggregation = aggregation;
+    myLateSampleWindowUs = lateSampleWindowUs;
+    myMaxBucketsPerLevel = maxBucketsPerLevel;
+    myLevels = new Level[bucketDurationsUs.length];
+    for (int i = 0; i < bucketDurationsUs.length; i++) {
+      assert bucketDurationsUs[i] > 0 && (i == 0 || bucketDurationsUs[i] > bucketDurationsUs[i - 1]);
+      myLevels[i] = new Level(bucketDurationsUs[i]);
+    }
+  }
+
+  @NotNull
+  @Override
+  public List<SeriesData<Long>> getDataForRange(@NotNull Range range) {
+    return getDataForRange(range, DEFAULT_PIXEL_WIDTH);
+  }
+
+  @Override
+  public void getDataForRange(@NotNull Range range, @NotNull LongSeriesData out) {
+    getDataForRange(range, DEFAULT_PIXEL_WIDTH, out);
+  }
+
+  /**
+   * @param pixelWidth the number of pixels the range is drawn on.
+   */
+  @NotNull
+  public synchronized List<SeriesData<Long>> getDataForRange(@NotNull Range range, int pixelWidth) {
+    if (range.isEmpty()) {
+      return new ArrayList<>();
+    }
+    Level level = getRollups(range, pixelWidth);
+    if (level == null) {
+      return mySource.getDataForRange(range);
+    }
+    LongSeriesData data = new LongSeriesData();
+    level.query((long)range.getMin(), (long)range.getMax(), myAggregation, data);
+    return data.toList();
+  }
+
+  /**
+   * Primitive counterpart of {@link #getDataForRange(Range, int)}, appending the data to {@code out}.
+   */
+  public synchronized void getDataForRange(@NotNull Range range, int pixelWidth, @NotNull LongSeriesData out) {
+    if (range.isEmpty()) {
+      return;
+    }
+    Level level = getRollups(range, pixelWidth);
+    if (level == null) {
+      out.addAll(mySource.getDataForRange(range));
+      return;
+    }
+    level.query((long)range.getMin(), (long)range.getMax(), myAggregation, out);
+  }
+
+  /**
+   * Brings the levels up to date for the range.
+   *
+   * @return the level to answer the query from, null if the query should be passed through to the source.
+   */
+  @Nullable
+  private Level getRollups(@NotNull Range range, int pixelWidth) {
+    int levelIndex = getLevelIndex(range.getLength() / Math.max(1, pixelWidth));
+    // Unbounded ranges (e.g. a data range that is still open) cannot be rolled up.
+    if (levelIndex < 0 || range.getMin() <= Long.MIN_VALUE || range.getMax() >= Long.MAX_VALUE) {
+      return null;
+    }
+
+    long min = (long)range.getMin();
+    long max = (long)range.getMax();
+    ingest(min, max);
+    // Finer levels are the first to evict the start of the range, fall back to a coarser one that still has it.
+    for (int i = levelIndex; i < myLevels.length; i++) {
+      if (myLevels[i].myCoveredFrom <= min) {
+        return myLevels[i];
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the index of the coarsest level whose buckets are no longer than the given duration, -1 if even the finest level is too
+   * coarse.
+   */
+  private int getLevelIndex(double maxBucketDurationUs) {
+    int result = -1;
+    for (int i = 0; i < myLevels.length && myLevels[i].myDurationUs <= maxBucketDurationUs; i++) {
+      result = i;
+    }
+    return result;
+  }
+
+  private void ingest(long min, long max) {
+    if (myIngestedMin == Long.MAX_VALUE) {
+      myIngestedMin = min;
+      myIngestedMax = min - 1;
+      myRecentFrom = min;
+      for (Level level : myLevels) {
+        level.myCoveredFrom = min;
+      }
+    }
+    else if (min < myIngestedMin) {
+      // Data before what we have is complete, so it can be rolled up separately and put in front. Levels that already evicted their
+      // oldest buckets would be left with a gap, so they are skipped.
+      Level[] older = new Level[myLevels.length];
+      for (int i = 0; i < myLevels.length; i++) {
+        older[i] = new Level(myLevels[i].myDurationUs);
+        older[i].myCoveredFrom = min;
+      }
+      fetch(min, myIngestedMin - 1, older, false);
+      for (int i = 0; i < myLevels.length; i++) {
+        if (myLevels[i].myCoveredFrom == myIngestedMin) {
+          myLevels[i].prepend(older[i]);
+          myLevels[i].myCoveredFrom = min;
+        }
+      }
+      myIngestedMin = min;
+    }
+
+    // Fetch the late sample window again along with the new data, the source may have received samples in it since the last query.
+    long from = Math.max(myRecentFrom, myIngestedMax - myLateSampleWindowUs + 1);
+    if (max >= from) {
+      long last = fetch(from, max, myLevels, true);
+      myIngestedMax = Math.max(myIngestedMax, last);
+      pruneRecent(myIngestedMax - myLateSampleWindowUs + 1);
+    }
+    for (Level level : myLevels) {
+      level.trim(myMaxBucketsPerLevel);
+    }
+  }
+
+  /**
+   * Adds the source's data in [from, to] to the levels.
+   *
+   * @param recent whether the data is within the late sample window, in which case samples that were already added are skipped.
+   * @return the x of the last sample added, Long.MIN_VALUE if there was none.
+   */
+  private long fetch(long from, long to, @NotNull Level[] levels, boolean recent) {
+    long last = Long.MIN_VALUE;
+    for (long windowStart = from; windowStart <= to; ) {
+      long windowEnd = to - windowStart < INGEST_WINDOW_US ? to : windowStart + INGEST_WINDOW_US - 1;
+      // Sources may pad their results, only keep what falls within the window.
+      for (SeriesData<Long> data : mySource.getDataForRange(new Range(windowStart, windowEnd))) {
+        if (data.x < windowStart || data.x > windowEnd || (recent ? !addRecent(data.x) : data.x <= last)) {
+          continue;
+        }
+        for (Level level : levels) {
+          level.add(data.x, data.value);
+        }
+        last = Math.max(last, data.x);
+      }
+      if (windowEnd == to) {
+        break;
+      }
+      windowStart = windowEnd + 1;
+    }
+    return last;
+  }
+
+  /**
+   * @return false if a sample at the given x was already added.
+   */
+  private boolean addRecent(long x) {
+    int index = Arrays.binarySearch(myRecentXs, 0, myRecentSize, x);
+    if (index >= 0) {
+      return false;
+    }
+    index = -index - 1;
+    if (myRecentSize == myRecentXs.length) {
+      myRecentXs = Arrays.copyOf(myRecentXs, myRecentSize * 2);
+    }
+    System.arraycopy(myRecentXs, index, myRecentXs, index + 1, myRecentSize - index);
+    myRecentXs[index] = x;
+    myRecentSize++;
+    return true;
+  }
+
+  /**
+   * Forgets the x values before the given one, as they are out of the late sample window.
+   */
+  private void pruneRecent(long from) {
+    int index = Arrays.binarySearch(myRecentXs, 0, myRecentSize, from);
+    index = index < 0 ? -index - 1 : index;
+    System.arraycopy(myRecentXs, index, myRecentXs, 0, myRecentSize - index);
+    myRecentSize -= index;
+  }
+
+  /**
+   * Rollups of a fixed bucket duration, stored in parallel arrays ordered by bucket start.
+   */
+  private static final class Level {
+    private final long myDurationUs;
+    /**
+     * The level has every sample from this x onward, it moves forward when the oldest buckets are evicted.
+     */
+    private long myCoveredFrom = Long.MAX_VALUE;
+    private int mySize;
+    private long[] myStarts = new long[16];
+    private long[] myMinXs = new long[16];
+    private long[] myMins = new long[16];
+    private long[] myMaxXs = new long[16];
+    private long[] myMaxs = new long[16];
+    private long[] mySums = new long[16];
+    private int[] myCounts = new int[16];
+
+    Level(long durationUs) {
+      myDurationUs = durationUs;
+    }
+
+    /**
+     * Adds a sample. Samples usually arrive in order and go to the last bucket, late ones are merged into the bucket they belong to.
+     */
+    void add(long x, long value) {
+      if (x < myCoveredFrom) {
+        // The bucket was evicted.
+        return;
+      }
+      long start = Math.floorDiv(x, myDurationUs) * myDurationUs;
+      int index = mySize - 1;
+      if (mySize == 0 || myStarts[index] < start) {
+        insertBucket(++index, start, x, value);
+        return;
+      }
+      if (myStarts[index] != start) {
+        index = Arrays.binarySearch(myStarts, 0, mySize, start);
+        if (index < 0) {
+          insertBucket(-index - 1, start, x, value);
+          return;
+        }
+      }
+      if (value < myMins[index] || (value == myMins[index] && x < myMinXs[index])) {
+        myMins[index] = value;
+        myMinXs[index] = x;
+      }
+      if (value > myMaxs[index] || (value == myMaxs[index] && x < myMaxXs[index])) {
+        myMaxs[index] = value;
+        myMaxXs[index] = x;
+      }
+      mySums[index] += value;
+      myCounts[index]++;
+    }
+
+    private void insertBucket(int index, long start, long x, long value) {
+      ensureCapacity(mySize + 1);
+      if (index < mySize) {
+        int moved = mySize - index;
+        System.arraycopy(myStarts, index, myStarts, index + 1, moved);
+        System.arraycopy(myMinXs, index, myMinXs, index + 1, moved);
+        System.arraycopy(myMins, index, myMins, index + 1, moved);
+        System.arraycopy(myMaxXs, index, myMaxXs, index + 1, moved);
+        System.arraycopy(myMaxs, index, myMaxs, index + 1, moved);
+        System.arraycopy(mySums, index, mySums, index + 1, moved);
+        System.arraycopy(myCounts, index, myCounts, index + 1, moved);
+      }
+      myStarts[index] = start;
+      myMinXs[index] = myMaxXs[index] = x;
+      myMins[index] = myMaxs[index] = value;
+      mySums[index] = value;
+      myCounts[index] = 1;
+      mySize++;
+    }
+
+    /**
+     * Evicts the oldest buckets once there are more than the given number. A quarter of them is evicted at once, so the arrays are not
+     * shifted on every sample.
+     */
+    void trim(int maxBuckets) {
+      if (mySize <= maxBuckets) {
+        return;
+      }
+      int evicted = mySize - maxBuckets + maxBuckets / 4;
+      int kept = mySize - evicted;
+      System.arraycopy(myStarts, evicted, myStarts, 0, kept);
+      System.arraycopy(myMinXs, evicted, myMinXs, 0, kept);
+      System.arraycopy(myMins, evicted, myMins, 0, kept);
+      System.arraycopy(myMaxXs, evicted, myMaxXs, 0, kept);
+      System.arraycopy(myMaxs, evicted, myMaxs, 0, kept);
+      System.arraycopy(mySums, evicted, mySums, 0, kept);
+      System.arraycopy(myCounts, evicted, myCounts, 0, kept);
+      mySize = kept;
+      myCoveredFrom = myStarts[0];
+    }
+
+    /**
+     * Puts the buckets of a level built from strictly older samples in front of this level's buckets.
+     */
+    void prepend(@NotNull Level older) {
+      if (older.mySize == 0) {
+        return;
+      }
+      int overlap = mySize > 0 && older.myStarts[older.mySize - 1] == myStarts[0] ? 1 : 0;
+      if (overlap == 1) {
+        // Both halves of the same bucket, fold this level's first bucket into the older one.
+        int last = older.mySize - 1;
+        if (myMins[0] < older.myMins[last]) {
+          older.myMins[last] = myMins[0];
+          older.myMinXs[last] = myMinXs[0];
+        }
+        if (myMaxs[0] > older.myMaxs[last]) {
+          older.myMaxs[last] = myMaxs[0];
+          older.myMaxXs[last] = myMaxXs[0];
+        }
+        older.mySums[last] += mySums[0];
+        older.myCounts[last] += myCounts[0];
+      }
+      int size = older.mySize + mySize - overlap;
+      myStarts = concat(older.myStarts, older.mySize, myStarts, overlap, mySize, size);
+      myMinXs = concat(older.myMinXs, older.mySize, myMinXs, overlap, mySize, size);
+      myMins = concat(older.myMins, older.mySize, myMins, overlap, mySize, size);
+      myMaxXs = concat(older.myMaxXs, older.mySize, myMaxXs, overlap, mySize, size);
+      myMaxs = concat(older.myMaxs, older.mySize, myMaxs, overlap, mySize, size);
+      mySums = concat(older.mySums, older.mySize, mySums, overlap, mySize, size);
+      int[] counts = new int[Math.max(16, size)];
+      System.arraycopy(older.myCounts, 0, counts, 0, older.mySize);
+      System.arraycopy(myCounts, overlap, counts, older.mySize, mySize - overlap);
+      myCounts = counts;
+      mySize = size;
+    }
+
+    /**
+     * Appends the rollups of the buckets overlapping [min, max] to {@code out}, plus one bucket on each side so lines extend past the
+     * edges of the range.
+     */
+    void query(long min, long max, @NotNull Aggregation aggregation, @NotNull LongSeriesData out) {
+      int from = Arrays.binarySearch(myStarts, 0, mySize, Math.floorDiv(min, myDurationUs) * myDurationUs);
+      from = from < 0 ? -from - 2 : from;
+      from = Math.max(0, from - 1);
+      for (int i = from; i < mySize; i++) {
+        boolean pastRange = myStarts[i] > max;
+        if (aggregation == Aggregation.AVERAGE) {
+          out.add(myStarts[i], mySums[i] / myCounts[i]);
+        }
+        else if (myMinXs[i] == myMaxXs[i]) {
+          out.add(myMinXs[i], myMins[i]);
+        }
+        else if (myMinXs[i] < myMaxXs[i]) {
+          out.add(myMinXs[i], myMins[i]);
+          out.add(myMaxXs[i], myMaxs[i]);
+        }
+        else {
+          out.add(myMaxXs[i], myMaxs[i]);
+          out.add(myMinXs[i], myMins[i]);
+        }
+        if (pastRange) {
+          break;
+        }
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity <= myStarts.length) {
+        return;
+      }
+      int newCapacity = Math.max(capacity, myStarts.length * 2);
+      myStarts = Arrays.copyOf(myStarts, newCapacity);
+      myMinXs = Arrays.copyOf(myMinXs, newCapacity);
+      myMins = Arrays.copyOf(myMins, newCapacity);
+      myMaxXs = Arrays.copyOf(myMaxXs, newCapacity);
+      myMaxs = Arrays.copyOf(myMaxs, newCapacity);
+      mySums = Arrays.copyOf(mySums, newCapacity);
+      myCounts = Arrays.copyOf(myCounts, newCapacity);
+    }
+
+    @NotNull
+    private static long[] concat(@NotNull long[] first, int firstSize, @NotNull long[] second, int secondFrom, int secondSize, int size) {
+      long[] result = new long[Math.max(16, size)];
+      System.arraycopy(first, 0, result, 0, firstSize);
+      System.arraycopy(second, secondFrom, result, firstSize, secondSize - secondFrom);
+      return result;
+    }
+  }
+}
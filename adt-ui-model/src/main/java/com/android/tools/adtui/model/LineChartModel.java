@@ -38,6 +38,13 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
    */
   private boolean myFirstUpdate = true;
 
+  /**
+   * Max value of each series from the last update, so data that was already checked isn't checked again when an incremental series only
+   * moved forward.
+   */
+  @NotNull
+  private final Map<RangedContinuousSeries, SeriesMax> mySeriesMax = new HashMap<>();
+
   @Override
   public void update(long elapsedNs) {
     Map<Range, Double> maxPerRangeObject = new HashMap<>();
@@ -47,17 +54,14 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
       Range range = ranged.getYRange();
       double yMax = -Double.MAX_VALUE;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      if (seriesList.isEmpty()) {
+      LongSeriesData seriesData = ranged.getLongSeries();
+      if (seriesData.isEmpty()) {
         continue;
       }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
-        if (yMax < value) {
-          yMax = value;
-        }
-      }
+      SeriesMax seriesMax = mySeriesMax.computeIfAbsent(ranged, key -> new SeriesMax());
+      seriesMax.update(seriesData, ranged.isIncremental());
+      yMax = seriesMax.myMax;
 
       Double rangeMax = maxPerRangeObject.get(range);
       if (rangeMax == null || yMax > rangeMax) {
@@ -98,10 +102,56 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
   public void remove(@NotNull RangedContinuousSeries series) {
     series.getXRange().removeDependencies(this);
     mySeries.remove(series);
+    mySeriesMax.remove(series);
   }
 
   @NotNull
   public List<RangedContinuousSeries> getSeries() {
     return mySeries;
   }
+
+  private static final class SeriesMax {
+    private boolean myValid;
+    private long myFirstX;
+    private long myLastX;
+    private long myMaxX;
+    private double myMax;
+
+    /**
+     * @param appendOnly whether the data before the last point of the previous update can't have changed, see
+     *                   {@link RangedSeries#setIncremental(boolean)}. Otherwise all the points are checked again, since late or back-filled
+     *                   samples can be anywhere in the range.
+     */
+    void update(@NotNull LongSeriesData data, boolean appendOnly) {
+      long firstX = data.getX(0);
+      long lastX = data.getX(data.size() - 1);
+      int start = 0;
+      double max = -Double.MAX_VALUE;
+      long maxX = firstX;
+      if (appendOnly && myValid && firstX >= myFirstX && myMaxX >= firstX && myMaxX <= lastX) {
+        // The data is within or past the previous data and still contains its max, only check the points from the previous last one.
+        max = myMax;
+        maxX = myMaxX;
+        start = data.size();
+        while (start > 0 && data.getX(start - 1) >= myLastX) {
+          start--;
+        }
+      }
+
+      for (int i = start; i < data.size(); i++) {
+        double value = data.getY(i);
+        if (max <= value) {
+          // Keep the latest max, it stays in the data for longer.
+          max = value;
+          maxX = data.getX(i);
+        }
+      }
+
+      myValid = true;
+      myFirstX = firstX;
+      myLastX = lastX;
+      myMaxX = maxX;
+      myMax = max;
+    }
+  }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DataSeries} of longs that can also write its data into a caller-provided {@link LongSeriesData}, without boxing. Charts query
+ * a {@link RangedContinuousSeries} through {@link RangedContinuousSeries#getLongSeries()}, which uses the primitive path when the
+ * underlying series implements this interface and copies the boxed data otherwise.
+ */
+public interface LongDataSeries extends DataSeries<Long> {
+  /**
+   * Appends the data within the given range to {@code out}, in the same order and with the same boundary semantics as
+   * {@link #getDataForRange(Range)}.
+   */
+  void getDataForRange(@NotNull Range range, @NotNull LongSeriesData out);
+
+  /**
+   * Boxed fallback for consumers that only know about {@link DataSeries}.
+   */
+  @NotNull
+  @Override
+  default List<SeriesData<Long>> getDataForRange(@NotNull Range range) {
+    LongSeriesData data = new LongSeriesData();
+    getDataForRange(range, data);
+    return data.toList();
+  }
+}
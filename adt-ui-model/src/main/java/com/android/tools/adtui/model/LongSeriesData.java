@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A growable list of (x, y) pairs stored in parallel {@code long[]} arrays, the primitive counterpart of a {@code List<SeriesData<Long>>}.
+ * Instances are meant to be reused across queries: {@link #clear()} keeps the arrays around, so a chart that redraws every frame stops
+ * allocating once its buffers have grown to the size of the visible data.
+ */
+public final class LongSeriesData {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  @NotNull private long[] myXs;
+  @NotNull private long[] myYs;
+  private int mySize;
+
+  public LongSeriesData() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public LongSeriesData(int capacity) {
+    myXs = new long[Math.max(capacity, 1)];
+    myYs = new long[myXs.length];
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public boolean isEmpty() {
+    return mySize == 0;
+  }
+
+  public long getX(int index) {
+    checkIndex(index);
+    return myXs[index];
+  }
+
+  public long getY(int index) {
+    checkIndex(index);
+    return myYs[index];
+  }
+
+  public void setY(int index, long y) {
+    checkIndex(index);
+    myYs[index] = y;
+  }
+
+  public void add(long x, long y) {
+    if (mySize == myXs.length) {
+      int capacity = myXs.length * 2;
+      myXs = Arrays.copyOf(myXs, capacity);
+      myYs = Arrays.copyOf(myYs, capacity);
+    }
+    myXs[mySize] = x;
+    myYs[mySize] = y;
+    mySize++;
+  }
+
+  public void addAll(@NotNull LongSeriesData data) {
+    for (int i = 0; i < data.mySize; i++) {
+      add(data.myXs[i], data.myYs[i]);
+    }
+  }
+
+  public void addAll(@NotNull List<SeriesData<Long>> data) {
+    for (SeriesData<Long> item : data) {
+      add(item.x, item.value);
+    }
+  }
+
+  public void removeLast() {
+    checkIndex(mySize - 1);
+    mySize--;
+  }
+
+  public void clear() {
+    mySize = 0;
+  }
+
+  /**
+   * @return a cursor positioned before the first pair. It stays valid as long as the data is not cleared.
+   */
+  @NotNull
+  public Cursor cursor() {
+    return new Cursor(this);
+  }
+
+  /**
+   * @return the pairs as boxed {@link SeriesData}, for consumers that don't support the primitive representation.
+   */
+  @NotNull
+  public List<SeriesData<Long>> toList() {
+    List<SeriesData<Long>> list = new ArrayList<>(mySize);
+    for (int i = 0; i < mySize; i++) {
+      list.add(new SeriesData<>(myXs[i], myYs[i]));
+    }
+    return list;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mySize) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+    }
+  }
+
+  /**
+   * Forward-only iteration over a {@link LongSeriesData}, e.g.
+   * <pre>
+   *   Cursor cursor = data.cursor();
+   *   while (cursor.next()) {
+   *     use(cursor.getX(), cursor.getY());
+   *   }
+   * </pre>
+   * A cursor can be {@link #reset()} and reused instead of creating a new one per pass.
+   */
+  public static final class Cursor {
+    @NotNull private final LongSeriesData myData;
+    private int myIndex = -1;
+
+    private Cursor(@NotNull LongSeriesData data) {
+      myData = data;
+    }
+
+    /**
+     * Moves to the next pair.
+     *
+     * @return false if there are no more pairs.
+     */
+    public boolean next() {
+      if (myIndex + 1 >= myData.mySize) {
+        myIndex = myData.mySize;
+        return false;
+      }
+      myIndex++;
+      return true;
+    }
+
+    public int getIndex() {
+      return myIndex;
+    }
+
+    public long getX() {
+      return myData.getX(myIndex);
+    }
+
+    public long getY() {
+      return myData.getY(myIndex);
+    }
+
+    public void reset() {
+      myIndex = -1;
+    }
+  }
+}
@@ -16,7 +16,9 @@
 
 package com.android.tools.adtui.model;
 
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * This class adds a name and an additional range to RangedSeries. This additional range represents
@@ -30,6 +32,13 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
   @NotNull
   private final Range myYRange;
 
+  /**
+   * Reused across {@link #getLongSeries()} calls, see there.
+   */
+  @NotNull private final LongSeriesData myLongSeries = new LongSeriesData();
+  @NotNull private Range myLastLongRange = new Range();
+  @Nullable private List<SeriesData<Long>> myLastCopiedSeries;
+
   /**
    * Creates a RangedContinuousSeries with the {@link DataSeries} object scoped by the default and intersecting {@link Range} objects.
    */
@@ -47,6 +56,49 @@ public class RangedContinuousSeries extends RangedSeries<Long> {
     this(name, xRange, yRange, series, new Range(-Double.MAX_VALUE, Double.MAX_VALUE));
   }
 
+  /**
+   * Primitive counterpart of {@link #getSeries()}. If the underlying series is a {@link LongDataSeries} the data is written directly
+   * into a buffer owned by this object, otherwise the boxed result of {@link #getSeries()} is copied into it.
+   * <p>
+   * The returned object is reused by the next call, so callers must not hold on to it or modify it.
+   */
+  @NotNull
+  public LongSeriesData getLongSeries() {
+    if (!(mySeries instanceof LongDataSeries)) {
+      List<SeriesData<Long>> series = getSeries();
+      // getSeries() returns the same list while its cache is valid, in which case the copy is up to date.
+      if (series != myLastCopiedSeries) {
+        myLongSeries.clear();
+        myLongSeries.addAll(series);
+        myLastCopiedSeries = series;
+      }
+      return myLongSeries;
+    }
+
+    Range queryRange = getIntersection();
+    boolean streaming = queryRange.getMax() == Long.MAX_VALUE || queryRange.getMax() == Double.MAX_VALUE;
+    if (streaming || !myLastLongRange.isSameAs(queryRange)) {
+      myLongSeries.clear();
+      if (getPixelWidth() > 0 && mySeries instanceof DownsampledDataSeries) {
+        ((DownsampledDataSeries)mySeries).getDataForRange(queryRange, getPixelWidth(), myLongSeries);
+      }
+      else {
+        ((LongDataSeries)mySeries).getDataForRange(queryRange, myLongSeries);
+      }
+      // Same caching policy as getSeries(), new data might still be streaming in when the range is unbounded.
+      myLastLongRange = streaming ? new Range() : queryRange;
+    }
+    return myLongSeries;
+  }
+
+  @Override
+  public void setPixelWidth(int pixelWidth) {
+    if (pixelWidth != getPixelWidth()) {
+      myLastLongRange = new Range();
+    }
+    super.setPixelWidth(pixelWidth);
+  }
+
   @NotNull
   public Range getYRange() {
     return myYRange;
@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.model;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import org.jetbrains.annotations.NotNull;
 
@@ -40,6 +41,16 @@ public class RangedSeries<E> {
   @NotNull private Range myLastQueriedRange = new Range();
   @NotNull private List<SeriesData<E>> myLastQueriedSeries = Collections.emptyList();
 
+  /**
+   * Number of pixels the series is drawn on, 0 if unknown. See {@link #setPixelWidth(int)}.
+   */
+  private int myPixelWidth;
+
+  /**
+   * See {@link #setIncremental(boolean)}.
+   */
+  private boolean myIncremental;
+
   /**
    * Creates a new RangedSeries with the {@link DataSeries} object scoped by view and data {@link Range} objects. getSeries will return
    * a series that is the intersection of our view and data ranges.
@@ -83,20 +94,108 @@ public class RangedSeries<E> {
       return myLastQueriedSeries;
     }
 
-    myLastQueriedSeries = getSeriesForRange(queryRange);
+    myLastQueriedSeries = canAppend(queryRange) ? append(queryRange) : getSeriesForRange(queryRange);
     myLastQueriedRange = queryRange;
     return myLastQueriedSeries;
   }
 
+  /**
+   * @return whether the query range is the last queried range moved forward, e.g. the view range following live data.
+   */
+  private boolean canAppend(@NotNull Range queryRange) {
+    if (!myIncremental || myLastQueriedSeries.isEmpty()) {
+      return false;
+    }
+    if (myPixelWidth > 0 && mySeries instanceof DownsampledDataSeries) {
+      // Rollups are picked for the whole range, they can't be stitched together.
+      return false;
+    }
+    return queryRange.getMin() >= myLastQueriedRange.getMin() &&
+           queryRange.getMax() >= myLastQueriedRange.getMax() &&
+           queryRange.getMin() <= myLastQueriedRange.getMax();
+  }
+
+  /**
+   * Builds the series for the query range from the last queried one, fetching only the data past its last point and evicting the data
+   * that is now out of range. The last point before the range is kept, as most data series include it so lines can be drawn from the
+   * edge of the view.
+   */
+  @NotNull
+  private List<SeriesData<E>> append(@NotNull Range queryRange) {
+    List<SeriesData<E>> last = myLastQueriedSeries;
+    // Fetch from the last point we have rather than from the last queried max, data for the leading edge may not have arrived yet.
+    long lastX = last.get(last.size() - 1).x;
+    List<SeriesData<E>> delta = getSeriesForRange(new Range(lastX, queryRange.getMax()));
+
+    int from = 0;
+    while (from + 1 < last.size() && last.get(from + 1).x < queryRange.getMin()) {
+      from++;
+    }
+    int to = last.size();
+    boolean refetchedLastX = delta.stream().anyMatch(data -> data.x == lastX);
+    if (refetchedLastX) {
+      // The points at the leading edge were fetched again, replace them.
+      while (to > from && last.get(to - 1).x == lastX) {
+        to--;
+      }
+    }
+
+    List<SeriesData<E>> series = new ArrayList<>(to - from + delta.size());
+    series.addAll(last.subList(from, to));
+    for (SeriesData<E> data : delta) {
+      if (data.x > lastX || (refetchedLastX && data.x == lastX)) {
+        series.add(data);
+      }
+    }
+    return Collections.unmodifiableList(series);
+  }
+
   /**
    * @param range The range to which the data will be scoped.
    * @return A new, immutable {@link SeriesDataList} that allows the caller to get items in the DataStore scoped to the given range.
    */
   @NotNull
+  @SuppressWarnings("unchecked")
   public List<SeriesData<E>> getSeriesForRange(Range range) {
+    if (myPixelWidth > 0 && mySeries instanceof DownsampledDataSeries) {
+      // A DownsampledDataSeries is a DataSeries<Long>, so E is Long here.
+      return (List<SeriesData<E>>)(List<?>)((DownsampledDataSeries)mySeries).getDataForRange(range, myPixelWidth);
+    }
     return mySeries.getDataForRange(range);
   }
 
+  /**
+   * Lets a {@link DownsampledDataSeries} return about one rollup per pixel instead of every sample in the range. Components drawing the
+   * series should call this with their width before querying it.
+   */
+  public void setPixelWidth(int pixelWidth) {
+    if (myPixelWidth != pixelWidth) {
+      myPixelWidth = pixelWidth;
+      // The cached result was computed for a different resolution.
+      myLastQueriedRange = new Range();
+      myLastQueriedSeries = Collections.emptyList();
+    }
+  }
+
+  /**
+   * When enabled, {@link #getSeries()} only queries the data series for the data past the last point it already has when the range
+   * moves forward, instead of querying the whole range again. This is meant for series following live data, where each frame only adds a
+   * few milliseconds of data to a range of several seconds. The data series must not change the data it already returned: samples that
+   * arrive late or are back-filled at or before the last point already fetched are never shown. It is off by default, only enable it
+   * for series whose data is appended in order, like the periodic samples of a single source.
+   */
+  public void setIncremental(boolean incremental) {
+    myIncremental = incremental;
+  }
+
+  public boolean isIncremental() {
+    return myIncremental;
+  }
+
+  public int getPixelWidth() {
+    return myPixelWidth;
+  }
+
   /**
    * @return A new range object that represents the intersection between the default and intersect ranges.
    */
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DownsampledDataSeriesTest {
+  private static final long[] DURATIONS = {10, 100};
+
+  private DefaultDataSeries<Long> myRawSeries;
+  private List<Range> myQueries;
+  private DataSeries<Long> mySource;
+
+  @Before
+  public void setUp() {
+    myRawSeries = new DefaultDataSeries<>();
+    myQueries = new ArrayList<>();
+    mySource = range -> {
+      myQueries.add(new Range(range));
+      return myRawSeries.getDataForRange(range);
+    };
+  }
+
+  @Test
+  public void narrowRangeIsPassedThrough() {
+    addSamples(0, 100);
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource, DownsampledDataSeries.Aggregation.MIN_MAX, DURATIONS);
+    // 50us on 10 pixels needs 5us buckets, finer than any level.
+    assertThat(series.getDataForRange(new Range(0, 49), 10)).hasSize(50);
+    assertThat(myQueries).hasSize(1);
+  }
+
+  @Test
+  public void wideRangeReturnsMinAndMaxPerBucket() {
+    // Values go up and down within each 10us bucket: 0, 1, ..., 9, 0, 1, ...
+    for (long x = 0; x < 1000; x++) {
+      myRawSeries.add(x, x % 10);
+    }
+    DownsampledDataSeries series = newSeriesWithoutLateSamples(DownsampledDataSeries.Aggregation.MIN_MAX);
+    // 1000us on 100 pixels, 10us buckets.
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(0, 1000), 100);
+    assertThat(data).hasSize(200);
+    assertThat(data.get(0).x).isEqualTo(0L);
+    assertThat(data.get(0).value).isEqualTo(0L);
+    assertThat(data.get(1).x).isEqualTo(9L);
+    assertThat(data.get(1).value).isEqualTo(9L);
+
+    // 1000us on 10 pixels, 100us buckets. Already rolled up, the source is only asked for data past the last sample.
+    myQueries.clear();
+    assertThat(series.getDataForRange(new Range(0, 1000), 10)).hasSize(20);
+    assertThat(myQueries).hasSize(1);
+    assertThat(myQueries.get(0).getMin()).isEqualTo(1000.0);
+  }
+
+  @Test
+  public void onlyNewDataIsFetched() {
+    addSamples(0, 100);
+    DownsampledDataSeries series = newSeriesWithoutLateSamples(DownsampledDataSeries.Aggregation.AVERAGE);
+    assertThat(series.getDataForRange(new Range(0, 200), 2)).hasSize(1);
+
+    addSamples(100, 200);
+    myQueries.clear();
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(0, 200), 2);
+    assertThat(data.stream().map(d -> d.x).collect(Collectors.toList())).containsExactly(0L, 100L).inOrder();
+    // Everything up to the last sample received (x = 99) was already rolled up.
+    assertThat(myQueries).hasSize(1);
+    assertThat(myQueries.get(0).getMin()).isEqualTo(100.0);
+  }
+
+  @Test
+  public void olderDataIsPrepended() {
+    addSamples(0, 200);
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource, DownsampledDataSeries.Aggregation.AVERAGE, DURATIONS);
+    assertThat(series.getDataForRange(new Range(145, 195), 5)).hasSize(6);
+
+    // The bucket at 140 was split across the two fetches and must be merged back.
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(0, 200), 20);
+    assertThat(data).hasSize(20);
+    assertThat(data.get(14).x).isEqualTo(140L);
+    assertThat(data.get(14).value).isEqualTo(144L);
+  }
+
+  @Test
+  public void lateSamplesAreMergedIntoTheirBucket() {
+    // The samples from 50 to 59 reach the source after the first query.
+    for (long x = 0; x < 100; x++) {
+      if (x < 50 || x >= 60) {
+        myRawSeries.add(x, x);
+      }
+    }
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource, DownsampledDataSeries.Aggregation.AVERAGE, DURATIONS, 100, 1000);
+    assertThat(series.getDataForRange(new Range(0, 99), 5)).hasSize(9);
+
+    myRawSeries = new DefaultDataSeries<>();
+    addSamples(0, 100);
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(0, 99), 5);
+    assertThat(data).hasSize(10);
+    assertThat(data.get(5).x).isEqualTo(50L);
+    assertThat(data.get(5).value).isEqualTo(54L);
+    // The samples of the late window that were already rolled up are not added twice.
+    assertThat(data.get(6).value).isEqualTo(64L);
+  }
+
+  @Test
+  public void oldestBucketsAreEvicted() {
+    addSamples(0, 1000);
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource, DownsampledDataSeries.Aggregation.AVERAGE, DURATIONS, 1, 20);
+    assertThat(series.getDataForRange(new Range(0, 999), 10)).hasSize(10);
+
+    // The 10us level only kept its last 15 buckets, older ranges are answered by the 100us level.
+    List<SeriesData<Long>> data = series.getDataForRange(new Range(0, 99), 5);
+    assertThat(data.stream().map(d -> d.x).collect(Collectors.toList())).containsExactly(0L, 100L).inOrder();
+
+    data = series.getDataForRange(new Range(900, 999), 5);
+    assertThat(data).hasSize(11);
+    assertThat(data.get(0).x).isEqualTo(890L);
+  }
+
+  @Test
+  public void primitiveQueryMatchesBoxedQuery() {
+    for (long x = 0; x < 1000; x++) {
+      myRawSeries.add(x, x % 7);
+    }
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource, DownsampledDataSeries.Aggregation.MIN_MAX, DURATIONS);
+    for (int pixelWidth : new int[]{1, 10, 100, 1000}) {
+      LongSeriesData data = new LongSeriesData();
+      series.getDataForRange(new Range(100, 900), pixelWidth, data);
+      assertThat(toPairs(data.toList())).containsExactlyElementsIn(toPairs(series.getDataForRange(new Range(100, 900), pixelWidth)))
+        .inOrder();
+    }
+
+    // Through a RangedContinuousSeries, line charts get the rollups for their width without boxing them.
+    RangedContinuousSeries ranged = new RangedContinuousSeries("test", new Range(0, 1000), new Range(0, 10), series);
+    ranged.setPixelWidth(10);
+    assertThat(toPairs(ranged.getLongSeries().toList())).containsExactlyElementsIn(toPairs(series.getDataForRange(new Range(0, 1000), 10)))
+      .inOrder();
+  }
+
+  @Test
+  public void unboundedRangeIsPassedThrough() {
+    addSamples(0, 100);
+    DownsampledDataSeries series = new DownsampledDataSeries(mySource);
+    assertThat(series.getDataForRange(new Range(0, Long.MAX_VALUE), 1)).hasSize(100);
+  }
+
+  /**
+   * Creates a series that doesn't fetch any data again, so the tests can check what is queried from the source.
+   */
+  private DownsampledDataSeries newSeriesWithoutLateSamples(DownsampledDataSeries.Aggregation aggregation) {
+    return new DownsampledDataSeries(mySource, aggregation, DURATIONS, 0, Integer.MAX_VALUE);
+  }
+
+  private static List<String> toPairs(List<SeriesData<Long>> data) {
+    return data.stream().map(d -> d.x + ":" + d.value).collect(Collectors.toList());
+  }
+
+  private void addSamples(long from, long to) {
+    for (long x = from; x < to; x++) {
+      myRawSeries.add(x, x);
+    }
+  }
+}
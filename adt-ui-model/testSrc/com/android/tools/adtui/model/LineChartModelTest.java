@@ -16,6 +16,8 @@
 package com.android.tools.adtui.model;
 
 import com.android.tools.adtui.model.updater.Updater;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 
 import static org.junit.Assert.*;
@@ -144,4 +146,84 @@ public class LineChartModelTest {
     assertTrue(updated[0]);
     // TODO(b/80503984) We can't assert range max is at 7L since it needs many steps to interpolate.
   }
+
+  @Test
+  public void testMaxOfNewDataWhenRangeMovesForward() {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 0);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i <= 100; i++) {
+      testSeries.add(i, 10L);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", xRange, yRange, testSeries);
+    FakeTimer t = new FakeTimer();
+    Updater updater = new Updater(t);
+
+    LineChartModel model = new LineChartModel();
+    model.add(rangedSeries);
+    updater.register(model);
+    t.step();
+    assertEquals(10, yRange.getMax(), 0);
+
+    // Only the new data contains a larger value.
+    for (int i = 101; i <= 150; i++) {
+      testSeries.add(i, i == 150 ? 20L : 10L);
+    }
+    xRange.set(50, 150);
+    t.step();
+    assertTrue(yRange.getMax() > 10);
+  }
+
+  @Test
+  public void testMaxOfNewDataWhenIncrementalRangeMovesForward() {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 0);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i <= 100; i++) {
+      testSeries.add(i, 10L);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", xRange, yRange, testSeries);
+    rangedSeries.setIncremental(true);
+    FakeTimer t = new FakeTimer();
+    Updater updater = new Updater(t);
+
+    LineChartModel model = new LineChartModel();
+    model.add(rangedSeries);
+    updater.register(model);
+    t.step();
+    assertEquals(10, yRange.getMax(), 0);
+
+    for (int i = 101; i <= 150; i++) {
+      testSeries.add(i, i == 150 ? 20L : 10L);
+    }
+    xRange.set(50, 150);
+    t.step();
+    assertTrue(yRange.getMax() > 10);
+  }
+
+  @Test
+  public void testBackfilledDataIsShownByDefault() {
+    Range xRange = new Range(0, 100);
+    Range yRange = new Range(0, 0);
+    List<SeriesData<Long>> data = new ArrayList<>();
+    data.add(new SeriesData<>(0, 10L));
+    data.add(new SeriesData<>(100, 10L));
+    RangedContinuousSeries rangedSeries =
+      new RangedContinuousSeries("test", xRange, yRange, range -> new ArrayList<>(data));
+    FakeTimer t = new FakeTimer();
+    Updater updater = new Updater(t);
+
+    LineChartModel model = new LineChartModel();
+    model.add(rangedSeries);
+    updater.register(model);
+    t.step();
+    assertEquals(10, yRange.getMax(), 0);
+
+    // A sample that was back-filled before the last point already fetched must still be shown.
+    data.add(1, new SeriesData<>(50, 20L));
+    xRange.set(10, 110);
+    t.step();
+    assertEquals(3, rangedSeries.getSeries().size());
+    assertTrue(yRange.getMax() > 10);
+  }
 }
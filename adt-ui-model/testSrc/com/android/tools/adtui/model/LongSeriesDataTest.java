@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+public class LongSeriesDataTest {
+
+  @Test
+  public void addGrowsTheArrays() {
+    LongSeriesData data = new LongSeriesData(1);
+    for (long i = 0; i < 100; i++) {
+      data.add(i, i * 2);
+    }
+    assertThat(data.size()).isEqualTo(100);
+    assertThat(data.getX(99)).isEqualTo(99L);
+    assertThat(data.getY(99)).isEqualTo(198L);
+
+    data.removeLast();
+    assertThat(data.size()).isEqualTo(99);
+    data.clear();
+    assertThat(data.isEmpty()).isTrue();
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void readingPastTheSizeThrows() {
+    LongSeriesData data = new LongSeriesData();
+    data.add(0, 0);
+    data.clear();
+    data.getX(0);
+  }
+
+  @Test
+  public void cursorIteratesInOrder() {
+    LongSeriesData data = new LongSeriesData();
+    data.add(1, 10);
+    data.add(2, 20);
+
+    LongSeriesData.Cursor cursor = data.cursor();
+    assertThat(cursor.next()).isTrue();
+    assertThat(cursor.getX()).isEqualTo(1L);
+    assertThat(cursor.getY()).isEqualTo(10L);
+    assertThat(cursor.next()).isTrue();
+    assertThat(cursor.getIndex()).isEqualTo(1);
+    assertThat(cursor.getY()).isEqualTo(20L);
+    assertThat(cursor.next()).isFalse();
+
+    cursor.reset();
+    assertThat(cursor.next()).isTrue();
+    assertThat(cursor.getX()).isEqualTo(1L);
+  }
+
+  @Test
+  public void defaultLongDataSeriesMatchesDefaultDataSeries() {
+    DefaultDataSeries<Long> boxed = new DefaultDataSeries<>();
+    DefaultLongDataSeries primitive = new DefaultLongDataSeries();
+    for (long x = 0; x < 100; x += 10) {
+      boxed.add(x, x);
+      primitive.add(x, x);
+    }
+
+    for (Range range : new Range[]{new Range(0, 100), new Range(15, 55), new Range(-10, 5), new Range(200, 300)}) {
+      LongSeriesData data = new LongSeriesData();
+      primitive.getDataForRange(range, data);
+      assertThat(data.toList().stream().map(d -> d.x).collect(Collectors.toList()))
+        .containsExactlyElementsIn(boxed.getDataForRange(range).stream().map(d -> d.x).collect(Collectors.toList())).inOrder();
+    }
+  }
+
+  @Test
+  public void rangedSeriesCopiesBoxedData() {
+    Range queryRange = new Range(0, 100);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 50; i++) {
+      testSeries.add(i, (long)i);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", queryRange, new Range(), testSeries);
+
+    LongSeriesData data = rangedSeries.getLongSeries();
+    assertThat(data.size()).isEqualTo(50);
+    assertThat(data.getY(49)).isEqualTo(49L);
+    // The buffer is reused.
+    assertThat(rangedSeries.getLongSeries()).isSameAs(data);
+  }
+
+  @Test
+  public void rangedSeriesUsesPrimitiveDataWithCache() {
+    Range queryRange = new Range(0, 100);
+    DefaultLongDataSeries testSeries = new DefaultLongDataSeries();
+    for (int i = 0; i < 50; i++) {
+      testSeries.add(i, i);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", queryRange, new Range(), testSeries);
+    assertThat(rangedSeries.getLongSeries().size()).isEqualTo(50);
+
+    for (int i = 50; i < 100; i++) {
+      testSeries.add(i, i);
+    }
+    // Same range, the cached data is used.
+    assertThat(rangedSeries.getLongSeries().size()).isEqualTo(50);
+
+    queryRange.setMax(Long.MAX_VALUE);
+    assertThat(rangedSeries.getLongSeries().size()).isEqualTo(100);
+  }
+}
@@ -17,6 +17,9 @@ package com.android.tools.adtui.model;
 
 import static com.google.common.truth.Truth.assertThat;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 import org.junit.Test;
 
 public class RangedSeriesTest {
@@ -67,4 +70,41 @@ public class RangedSeriesTest {
     }
     assertThat(rangedSeries.getSeries()).hasSize(100);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testIncrementalGetSeriesOnlyFetchesNewData() {
+    Range queryRange = new Range(0, 100);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 50; i++) {
+      testSeries.add(i * 2, (long)i);
+    }
+    List<Range> queries = new ArrayList<>();
+    DataSeries<Long> countingSeries = range -> {
+      queries.add(new Range(range));
+      return testSeries.getDataForRange(range);
+    };
+    RangedSeries<Long> rangedSeries = new RangedSeries<>(queryRange, countingSeries);
+    rangedSeries.setIncremental(true);
+    assertThat(rangedSeries.getSeries()).hasSize(50);
+
+    for (int i = 50; i < 60; i++) {
+      testSeries.add(i * 2, (long)i);
+    }
+    queries.clear();
+    queryRange.set(11, 120);
+    List<SeriesData<Long>> series = rangedSeries.getSeries();
+    // Only the data from the last point is fetched.
+    assertThat(queries).hasSize(1);
+    assertThat(queries.get(0).getMin()).isEqualTo(98.0);
+    // Data before the range is evicted, except for the last point before it.
+    assertThat(series.stream().map(data -> data.x).collect(Collectors.toList()))
+      .containsExactlyElementsIn(testSeries.getDataForRange(new Range(11, 120)).stream().map(data -> data.x).collect(Collectors.toList()))
+      .inOrder();
+
+    // Moving backward fetches the whole range again.
+    queries.clear();
+    queryRange.set(0, 50);
+    assertThat(rangedSeries.getSeries()).hasSize(26);
+    assertThat(queries.get(0).getMin()).isEqualTo(0.0);
+  }
+}
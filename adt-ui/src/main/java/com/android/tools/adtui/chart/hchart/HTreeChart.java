@@ -43,9 +43,7 @@ import java.awt.event.*;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
 import javax.swing.AbstractAction;
 import javax.swing.KeyStroke;
 import org.jetbrains.annotations.NotNull;
@@ -80,6 +78,12 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
   @Nullable
   private N myRoot;
 
+  /**
+   * Nodes of {@link #myRoot} by level, rebuilt when the tree changes. Changes of the ranges only query it again.
+   */
+  @NotNull
+  private HTreeChartIndex<N> myIndex;
+
   @NotNull
   private final Range myXRange;
 
@@ -121,6 +125,12 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
    */
   private boolean myDataUpdated;
 
+  /**
+   * Size of the chart when {@link #myNodes} were collected. Merging sub-pixel nodes and skipping hidden levels depend on it.
+   */
+  @Nullable
+  private Dimension myNodesDimension;
+
   private int myCachedMaxHeight;
 
   /**
@@ -130,6 +140,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     myGlobalXRange = builder.myGlobalXRange;
     myXRange = builder.myXRange;
     myRoot = builder.myRoot;
+    myIndex = new HTreeChartIndex<>(myRoot);
     myReducer = builder.myReducer;
     myRenderer = builder.myRenderer;
     myOrientation = builder.myOrientation;
@@ -173,9 +184,9 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
   @Override
   protected void draw(Graphics2D g, Dimension dim) {
     long startTime = System.nanoTime();
-    if (myDataUpdated) {
+    if (myDataUpdated || !dim.equals(myNodesDimension)) {
       // Nulling out the canvas will trigger a render pass, below
-      updateNodesAndClearCanvas();
+      updateNodesAndClearCanvas(dim);
       myDataUpdated = false;
     }
     g.setFont(getFont());
@@ -251,45 +262,36 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
     g.dispose();
   }
 
-  private void updateNodesAndClearCanvas() {
+  private void updateNodesAndClearCanvas(@NotNull Dimension dim) {
     myNodes.clear();
     myRectangles.clear();
     myCanvas = null;
+    myNodesDimension = new Dimension(dim);
     if (myRoot == null) {
       return;
     }
 
-    if (inRange(myRoot)) {
-      myNodes.add(myRoot);
-      myRectangles.add(createRectangle(myRoot));
-    }
-
-    int head = 0;
-    while (head < myNodes.size()) {
-      N curNode = myNodes.get(head++);
-
-      for (int i = 0; i < curNode.getChildCount(); ++i) {
-        N child = curNode.getChildAt(i);
-        if (inRange(child)) {
-          myNodes.add(child);
-          myRectangles.add(createRectangle(child));
-        }
+    // Runs of nodes narrower than a pixel are merged into a single rectangle, as the reducer would do, without visiting each of them.
+    double pixelDuration = dim.width > 0 ? myXRange.getLength() / dim.width : 0;
+    int rowHeight = mDefaultFontMetrics.getHeight() + PADDING;
+    for (int level = myRootVisible ? 0 : 1; level < myIndex.getLevelCount(); ++level) {
+      // Skip the levels scrolled out of view.
+      double top = rowHeight * myIndex.getMinDepth(level) - getYRange().getMin();
+      double bottom = rowHeight * myIndex.getMaxDepth(level) - getYRange().getMin() + mDefaultFontMetrics.getHeight();
+      if (bottom < 0 || top > dim.height) {
+        continue;
       }
+      myIndex.visit(level, myXRange.getMin(), myXRange.getMax(), pixelDuration, (node, start, end) -> {
+        myNodes.add(node);
+        myRectangles.add(createRectangle(node, start, end));
+      });
     }
-    if (!myRootVisible && !myNodes.isEmpty()) {
-      myNodes.remove(0);
-      myRectangles.remove(0);
-    }
-  }
-
-  private boolean inRange(@NotNull N node) {
-    return node.getStart() <= myXRange.getMax() && node.getEnd() >= myXRange.getMin();
   }
 
   @NotNull
-  private Rectangle2D.Float createRectangle(@NotNull N node) {
-    float left = (float)((node.getStart() - myXRange.getMin()) / myXRange.getLength());
-    float right = (float)((node.getEnd() - myXRange.getMin()) / myXRange.getLength());
+  private Rectangle2D.Float createRectangle(@NotNull N node, long start, long end) {
+    float left = (float)((start - myXRange.getMin()) / myXRange.getLength());
+    float right = (float)((end - myXRange.getMin()) / myXRange.getLength());
     Rectangle2D.Float rect = new Rectangle2D.Float();
     rect.x = left;
     rect.y = (float)((mDefaultFontMetrics.getHeight() + PADDING) * node.getDepth()
@@ -305,6 +307,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
 
   public void setHTree(@Nullable N root) {
     this.myRoot = root;
+    myIndex = new HTreeChartIndex<>(root);
     changed();
   }
 
@@ -383,7 +386,8 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
       public void mouseMoved(MouseEvent e) {
         N node = getNodeAt(e.getPoint());
         if (node != myFocusedNode) {
-          myDataUpdated = true;
+          // Only the highlight changes, the nodes don't need to be collected again.
+          myCanvas = null;
           myFocusedNode = node;
           opaqueRepaint();
         }
@@ -476,22 +480,7 @@ public class HTreeChart<N extends HNode<N>> extends AnimatedComponent {
       return 0;
     }
 
-    int maxDepth = -1;
-    Queue<N> queue = new LinkedList<>();
-    queue.add(myRoot);
-
-    while (!queue.isEmpty()) {
-      N n = queue.poll();
-      assert n != null;
-      if (n.getDepth() > maxDepth) {
-        maxDepth = n.getDepth();
-      }
-
-      for (int i = 0; i < n.getChildCount(); ++i) {
-        queue.add(n.getChildAt(i));
-      }
-    }
-    maxDepth += 1;
+    int maxDepth = myIndex.getMaxDepth() + 1;
     // The HEIGHT_PADDING is for the chart's toe (the innermost frame on call stacks).
     // We have this because the padding near the chart's head (the outermost frame on call stacks)
     // is there because the root node of the tree is invisible.
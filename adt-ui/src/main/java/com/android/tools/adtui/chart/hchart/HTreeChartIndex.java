@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import com.android.tools.adtui.model.HNode;
+import java.util.ArrayList;
+import java.util.List;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Index of the nodes of a {@link HTreeChart} by level, i.e. distance from the root, to find the ones within a range without walking the
+ * whole tree.
+ * <p>
+ * The nodes of a level are kept in breadth-first order. In call trees, that order sorts them by both start and end, so the ones within
+ * a range are found with a binary search, and runs of nodes narrower than a pixel are skipped with another one. Levels that aren't sorted
+ * are scanned linearly. Start and end times are read from the nodes on each query, which stays valid as long as their order doesn't change
+ * (e.g. when a call tree switches between thread and wall clock time).
+ */
+final class HTreeChartIndex<N extends HNode<N>> {
+  @NotNull private final List<Level<N>> myLevels = new ArrayList<>();
+
+  private int myMaxDepth = -1;
+
+  private int myNodeCount;
+
+  HTreeChartIndex(@Nullable N root) {
+    if (root == null) {
+      return;
+    }
+    List<N> level = new ArrayList<>();
+    level.add(root);
+    while (!level.isEmpty()) {
+      myLevels.add(new Level<>(level));
+      myNodeCount += level.size();
+      myMaxDepth = Math.max(myMaxDepth, myLevels.get(myLevels.size() - 1).myMaxDepth);
+      List<N> nextLevel = new ArrayList<>();
+      for (N node : level) {
+        for (int i = 0; i < node.getChildCount(); ++i) {
+          nextLevel.add(node.getChildAt(i));
+        }
+      }
+      level = nextLevel;
+    }
+  }
+
+  int getLevelCount() {
+    return myLevels.size();
+  }
+
+  /**
+   * @return the largest {@link HNode#getDepth()} of the nodes, or -1 if there is no node.
+   */
+  int getMaxDepth() {
+    return myMaxDepth;
+  }
+
+  int getNodeCount() {
+    return myNodeCount;
+  }
+
+  /**
+   * @return the smallest {@link HNode#getDepth()} of the nodes of {@code level}.
+   */
+  int getMinDepth(int level) {
+    return myLevels.get(level).myMinDepth;
+  }
+
+  /**
+   * @return the largest {@link HNode#getDepth()} of the nodes of {@code level}.
+   */
+  int getMaxDepth(int level) {
+    return myLevels.get(level).myMaxDepth;
+  }
+
+  /**
+   * Calls {@code visitor} with the nodes of {@code level} that intersect [{@code min}, {@code max}], in order. Consecutive nodes that start
+   * and end within the same {@code pixelDuration}-long pixel, counted from {@code min}, are merged and visited once, with the first of
+   * them and the time spanned by all of them. A {@code pixelDuration} of zero disables merging.
+   */
+  void visit(int level, double min, double max, double pixelDuration, @NotNull Visitor<N> visitor) {
+    Level<N> nodes = myLevels.get(level);
+    if (!nodes.mySorted) {
+      for (N node : nodes.myNodes) {
+        if (node.getStart() <= max && node.getEnd() >= min) {
+          visitor.visit(node, node.getStart(), node.getEnd());
+        }
+      }
+      return;
+    }
+
+    int size = nodes.myNodes.size();
+    int index = nodes.firstEndingAtOrAfter(min, 0);
+    while (index < size) {
+      N node = nodes.myNodes.get(index);
+      long start = node.getStart();
+      if (start > max) {
+        break;
+      }
+      long end = node.getEnd();
+      if (pixelDuration > 0) {
+        double pixel = Math.floor((start - min) / pixelDuration);
+        if (pixel == Math.floor((end - min) / pixelDuration)) {
+          // Merge the following nodes ending within the same pixel, as long as they start within the range.
+          int next = Math.min(nodes.firstEndingAtOrAfter(min + (pixel + 1) * pixelDuration, index + 1),
+                              nodes.firstStartingAfter(max, index + 1));
+          visitor.visit(node, start, nodes.myNodes.get(next - 1).getEnd());
+          index = next;
+          continue;
+        }
+      }
+      visitor.visit(node, start, end);
+      ++index;
+    }
+  }
+
+  interface Visitor<N> {
+    void visit(@NotNull N node, long start, long end);
+  }
+
+  private static final class Level<N extends HNode<N>> {
+    @NotNull private final List<N> myNodes;
+
+    /**
+     * Whether both the starts and the ends of {@link #myNodes} are in non-decreasing order.
+     */
+    private final boolean mySorted;
+
+    private final int myMinDepth;
+    private final int myMaxDepth;
+
+    private Level(@NotNull List<N> nodes) {
+      myNodes = nodes;
+      boolean sorted = true;
+      int minDepth = Integer.MAX_VALUE;
+      int maxDepth = Integer.MIN_VALUE;
+      for (int i = 0; i < nodes.size(); ++i) {
+        N node = nodes.get(i);
+        minDepth = Math.min(minDepth, node.getDepth());
+        maxDepth = Math.max(maxDepth, node.getDepth());
+        if (i > 0) {
+          N previous = nodes.get(i - 1);
+          sorted &= previous.getStart() <= node.getStart() && previous.getEnd() <= node.getEnd();
+        }
+      }
+      mySorted = sorted;
+      myMinDepth = minDepth;
+      myMaxDepth = maxDepth;
+    }
+
+    /**
+     * @return the index of the first node from {@code fromIndex} whose end is at or after {@code timestamp}, or the number of nodes.
+     */
+    private int firstEndingAtOrAfter(double timestamp, int fromIndex) {
+      int low = fromIndex;
+      int high = myNodes.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myNodes.get(mid).getEnd() < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first node from {@code fromIndex} whose start is after {@code timestamp}, or the number of nodes.
+     */
+    private int firstStartingAfter(double timestamp, int fromIndex) {
+      int low = fromIndex;
+      int high = myNodes.size();
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myNodes.get(mid).getStart() <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+}
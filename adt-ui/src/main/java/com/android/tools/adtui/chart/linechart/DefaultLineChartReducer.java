@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesData;
 import com.android.tools.adtui.model.SeriesData;
 import org.jetbrains.annotations.NotNull;
 
@@ -66,6 +67,33 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  /**
+   * Same reduction as {@link #reduceData(List, LineConfig)}, without boxing.
+   */
+  @NotNull
+  @Override
+  public LongSeriesData reduceData(@NotNull LongSeriesData data, @NotNull LineConfig config, @NotNull LongSeriesData out) {
+    if (config.getDataBucketInterval() > 0) {
+      return data;
+    }
+
+    for (int i = 0; i < data.size(); i++) {
+      long value = data.getY(i);
+      while (out.size() >= 2) {
+        long preLast = out.getY(out.size() - 2);
+        long last = out.getY(out.size() - 1);
+
+        if (preLast == last && (config.isStepped() || last == value)) {
+          out.removeLast();
+        } else {
+          break;
+        }
+      }
+      out.add(data.getX(i), value);
+    }
+    return out;
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
@@ -15,10 +15,12 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesData;
 import com.android.tools.adtui.model.SeriesData;
 
 import java.awt.geom.Path2D;
 import java.util.List;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * This interface is used by {@link LineChart} component to be able
@@ -31,6 +33,19 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Primitive version of {@link #reduceData(List, LineConfig)}, used by {@link LineChart}. {@code data} must not be modified.
+   * The default implementation boxes the data, reducers should override it to avoid doing so.
+   *
+   * @param out an empty buffer the reduced data can be written to.
+   * @return either {@code data} if it doesn't need to be reduced, or {@code out}.
+   */
+  @NotNull
+  default LongSeriesData reduceData(@NotNull LongSeriesData data, @NotNull LineConfig config, @NotNull LongSeriesData out) {
+    out.addAll(reduceData(data.toList(), config));
+    return out;
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.chart.hchart;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.adtui.model.DefaultHNode;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class HTreeChartIndexTest {
+  @Test
+  public void indexesNodesByLevel() {
+    DefaultHNode<String> root = newNode("root", 0, 100, 0);
+    DefaultHNode<String> a = newNode("a", 0, 40, 1);
+    DefaultHNode<String> b = newNode("b", 50, 100, 1);
+    root.addChild(a);
+    root.addChild(b);
+    a.addChild(newNode("c", 10, 20, 2));
+    b.addChild(newNode("d", 60, 70, 2));
+
+    HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(root);
+    assertThat(index.getLevelCount()).isEqualTo(3);
+    assertThat(index.getNodeCount()).isEqualTo(5);
+    assertThat(index.getMaxDepth()).isEqualTo(2);
+
+    assertThat(visit(index, 1, 0, 100, 0)).containsExactly("a[0,40]", "b[50,100]").inOrder();
+    assertThat(visit(index, 1, 41, 49, 0)).isEmpty();
+    // Bounds are inclusive.
+    assertThat(visit(index, 1, 40, 50, 0)).containsExactly("a[0,40]", "b[50,100]").inOrder();
+    assertThat(visit(index, 2, 15, 65, 0)).containsExactly("c[10,20]", "d[60,70]").inOrder();
+    assertThat(visit(index, 2, 21, 59, 0)).isEmpty();
+  }
+
+  @Test
+  public void subPixelRunsAreMerged() {
+    DefaultHNode<String> root = newNode("root", 0, 1000, 0);
+    // Ten 1-long nodes every 2 between 0 and 20, then a wide one.
+    for (int i = 0; i < 10; i++) {
+      root.addChild(newNode("n" + i, i * 2, i * 2 + 1, 1));
+    }
+    root.addChild(newNode("wide", 20, 100, 1));
+
+    HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(root);
+    // Pixels are 10 long: n0..n4 end within the first one, n5..n9 within the second one.
+    assertThat(visit(index, 1, 0, 1000, 10)).containsExactly("n0[0,9]", "n5[10,19]", "wide[20,100]").inOrder();
+    // Without merging every node is visited.
+    assertThat(visit(index, 1, 0, 1000, 0)).hasSize(11);
+    // Merging stops at the end of the range.
+    assertThat(visit(index, 1, 0, 4, 10)).containsExactly("n0[0,5]");
+  }
+
+  @Test
+  public void unsortedLevelsAreScanned() {
+    DefaultHNode<String> root = newNode("root", 0, 100, 0);
+    root.addChild(newNode("late", 50, 60, 1));
+    root.addChild(newNode("early", 0, 10, 1));
+
+    HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(root);
+    assertThat(visit(index, 1, 0, 100, 10)).containsExactly("late[50,60]", "early[0,10]").inOrder();
+    assertThat(visit(index, 1, 0, 20, 10)).containsExactly("early[0,10]");
+  }
+
+  @Test
+  public void emptyTree() {
+    HTreeChartIndex<DefaultHNode<String>> index = new HTreeChartIndex<>(null);
+    assertThat(index.getLevelCount()).isEqualTo(0);
+    assertThat(index.getMaxDepth()).isEqualTo(-1);
+  }
+
+  private static List<String> visit(HTreeChartIndex<DefaultHNode<String>> index, int level, double min, double max, double pixel) {
+    List<String> visited = new ArrayList<>();
+    index.visit(level, min, max, pixel, (node, start, end) -> visited.add(node.getData() + "[" + start + "," + end + "]"));
+    return visited;
+  }
+
+  private static DefaultHNode<String> newNode(String name, long start, long end, int depth) {
+    DefaultHNode<String> node = new DefaultHNode<>(name, start, end);
+    node.setDepth(depth);
+    return node;
+  }
+}
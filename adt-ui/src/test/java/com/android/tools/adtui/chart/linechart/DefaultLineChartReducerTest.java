@@ -15,6 +15,7 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongSeriesData;
 import com.android.tools.adtui.model.SeriesData;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
@@ -89,6 +90,26 @@ public class DefaultLineChartReducerTest {
     assertSeriesEquals(expected, result);
   }
 
+  @Test
+  public void reducePrimitiveDataMatchesBoxedData() {
+    LongSeriesData data = new LongSeriesData();
+    long[] values = {10, 10, 13, 13, 13, 13, 5, 5};
+    for (int i = 0; i < values.length; i++) {
+      data.add(i, values[i]);
+    }
+
+    LongSeriesData result = myReducer.reduceData(data, myConfig, new LongSeriesData());
+    assertSeriesEquals(myReducer.reduceData(data.toList(), myConfig), result.toList());
+
+    myConfig.setStepped(true);
+    result = myReducer.reduceData(data, myConfig, new LongSeriesData());
+    assertSeriesEquals(myReducer.reduceData(data.toList(), myConfig), result.toList());
+
+    // Bars are not reduced, the data is returned as is.
+    myConfig.setDataBucketInterval(1);
+    assertThat(myReducer.reduceData(data, myConfig, new LongSeriesData())).isSameAs(data);
+  }
+
   @Test
   public void simpleReducePath() {
     float[][] given = {{0, 0}, {0.1f, 1}, {0.2f, 6}, {0.3f, 4}, {1, 2}, {1.1f, 5}};
@@ -207,6 +207,65 @@ public final class StudioFlags {
     PROFILER, "custom.event.visualization", "Enable Profiler Custom Event Visualization",
     "When enabled, profiler will track and display events defined through developer APIs",
     false);
+
+  public static final Flag<Boolean> PROFILER_COLUMNAR_EVENT_STORE = Flag.create(
+    PROFILER, "datastore.columnar.events", "Enable columnar event storage",
+    "Stores unified pipeline events in time-partitioned columnar segments instead of the SQLite UnifiedEventsTable.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_DATASTORE_GROUP_COMMIT = Flag.create(
+    PROFILER, "datastore.group.commit", "Enable batched datastore writes",
+    "Queues high volume datastore inserts and writes them in batched transactions on a dedicated writer thread.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PAYLOAD_STORE = Flag.create(
+    PROFILER, "datastore.payload.store", "Enable spilling profiler payloads to disk",
+    "Keeps bytes fetched from the device, such as network bodies, in a deduplicated store that writes large payloads to a size-capped disk cache instead of the in-memory database.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PERSISTENT_SESSIONS = Flag.create(
+    PROFILER, "persistent.sessions", "Enable reloading sessions across restarts",
+    "Archives completed profiling sessions to disk and lists them in the sessions panel the next time Studio starts.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_TIMELINE_DOWNSAMPLING = Flag.create(
+    PROFILER, "timeline.downsampling", "Enable downsampled timeline series",
+    "Keeps min/max rollups of memory and network usage so zoomed out timelines only fetch as many points as there are pixels.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_INCREMENTAL_LINE_CHARTS = Flag.create(
+    PROFILER, "timeline.incremental.line.charts", "Enable incremental line chart queries",
+    "Only queries the data that arrived since the last frame for the CPU usage chart when the timeline follows live data.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PARALLEL_DOMINATORS = Flag.create(
+    PROFILER, "memory.parallel.dominators", "Enable parallel heap dump dominators",
+    "Computes the dominators and retained sizes of heap dumps on a compact object graph using all cores.",
+    false);
+  public static final Flag<Boolean> PROFILER_LIVE_ALLOCATION_INDEX = Flag.create(
+    PROFILER, "memory.live.allocation.index", "Enable the live allocation index",
+    "Keeps live allocation events in an off-heap index and counts the objects alive before a selection without loading them.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PARALLEL_TRACE_PARSING = Flag.create(
+    PROFILER, "cpu.parallel.trace.parsing", "Enable parallel CPU trace parsing",
+    "Detects the format of imported CPU traces from their header and builds the call trees of ART traces one thread per core.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_PERFETTO_NATIVE_IMPORT = Flag.create(
+    PROFILER, "cpu.perfetto.native.import", "Enable native perfetto trace import",
+    "Builds the model of perfetto traces directly from their packets instead of converting them to systrace text first.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_ASYNC_CALL_TREE_UPDATE = Flag.create(
+    PROFILER, "cpu.async.call.tree.update", "Update call trees in the background",
+    "Computes the Top Down and Bottom Up totals of a new selection range off the UI thread, cancelling the previous computation.",
+    false);
+
+  public static final Flag<Boolean> PROFILER_BATCH_SESSION_IMPORT = Flag.create(
+    PROFILER, "session.batch.import", "Enable importing many sessions at once",
+    "Allows selecting several files, folders or zip archives to import, reading them in the background.",
+    false);
   //endregion
 
   //region Layout Editor
@@ -351,6 +410,16 @@ public final class StudioFlags {
     NELE, "visualisation", "Layout Visualisation Tool",
     "Enable Visualisation Tool to preview layout in multiple devices at the same time",
     false);
+
+  public static final Flag<Boolean> NELE_RENDER_RESULT_CACHE = Flag.create(
+    NELE, "render.result.cache", "Cache render results",
+    "Reuse the result of an earlier render when a layout is rendered again in the same state, e.g. when switching back to a device",
+    false);
+
+  public static final Flag<Boolean> NELE_INCREMENTAL_LAYOUT_UPDATE = Flag.create(
+    NELE, "incremental.layout.update", "Apply layout attribute edits without inflating",
+    "Apply edits of layout_ attributes to the views of the current render session instead of inflating the layout again",
+    false);
   //endregion
 
   //region Navigation Editor
@@ -368,6 +437,12 @@ public final class StudioFlags {
     "When running or debugging an Android process, output the logcat output of the process in the console window.",
     true);
 
+  public static final Flag<Boolean> RUNDEBUG_LOGCAT_INDEXED_FILTERING_ENABLED = Flag.create(
+    RUNDEBUG, "logcat.indexed.filtering.enabled", "Replay indexed logcat messages when filters change",
+    "When the filter or log level of the Logcat window changes, replay the messages of the selected process or level from the " +
+    "indices of the device's buffer instead of filtering every line of the console again.",
+    false);
+
   public static final Flag<Boolean> RUNDEBUG_ANDROID_BUILD_BUNDLE_ENABLED = Flag.create(
     RUNDEBUG, "android.bundle.build.enabled", "Enable the Build Bundle action",
     "If enabled, the \"Build Bundle(s)\" menu item is enabled. " +
@@ -26,9 +26,9 @@ import io.grpc.ServerBuilder;
 import io.grpc.inprocess.InProcessServerBuilder;
 import io.grpc.stub.StreamObserver;
 import java.io.IOException;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
 import org.jetbrains.annotations.NotNull;
@@ -61,7 +61,8 @@ public class EventStreamServer implements Disposable {
 
   @NotNull private final String myServerName;
   @NotNull private final BlockingDeque<Common.Event> myEventQueue = new LinkedBlockingDeque<Common.Event>();
-  @NotNull private final Map<String, ByteString> myByteCache = new HashMap<>();
+  // Concurrent as bytes can be added while the stream is being queried, e.g. when an archived session is loaded lazily.
+  @NotNull private final Map<String, ByteString> myByteCache = new ConcurrentHashMap<>();
 
   @NotNull private final Object myServerLock = new Object();
   @GuardedBy("myServerLock") private Server myServer;
@@ -17,6 +17,8 @@ package com.android.tools.idea.transport;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.LogService;
+import com.android.tools.datastore.archive.SessionArchive;
+import com.android.tools.datastore.archive.SessionArchiveReader;
 import com.android.tools.idea.diagnostics.crash.exception.NoPiiException;
 import com.android.tools.profiler.proto.Common;
 import com.google.common.annotations.VisibleForTesting;
@@ -29,9 +31,13 @@ import com.intellij.util.messages.MessageBus;
 import io.grpc.ManagedChannel;
 import io.grpc.inprocess.InProcessChannelBuilder;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import org.jetbrains.annotations.NotNull;
 
@@ -61,6 +67,16 @@ public class TransportService implements Disposable {
   @NotNull private final AtomicInteger myCustomStreamId = new AtomicInteger();
   @NotNull private final Map<Long, EventStreamServer> myStreamIdToServerMap = new HashMap<>();
 
+  /**
+   * Ids of the archived sessions that have been restored, and the archives whose events have not been loaded yet along with the stream
+   * reserved for them. The stream is only connected once the session is loaded.
+   */
+  private final Object myArchiveLock = new Object();
+  @NotNull private final Set<Long> myRestoredSessionIds = new HashSet<>();
+  @NotNull private final Map<Long, Common.Stream> myPendingArchiveStreams = new HashMap<>();
+  @NotNull private final Map<Long, SessionArchive> myPendingArchives = new HashMap<>();
+  private boolean myArchivesRestored;
+
   @VisibleForTesting
   TransportService() {
     String datastoreDirectory = Paths.get(PathManager.getSystemPath(), ".android").toString() + File.separator;
@@ -102,13 +118,153 @@ public class TransportService implements Disposable {
    */
   @NotNull
   public Common.Stream registerStreamServer(Common.Stream.Type streamType, @NotNull EventStreamServer streamServer) {
-    Common.Stream stream = Common.Stream.newBuilder().setStreamId(myCustomStreamId.incrementAndGet()).setType(streamType).build();
+    Common.Stream stream = newStream(streamType);
+    connectStreamServer(stream, streamServer);
+    return stream;
+  }
+
+  @NotNull
+  private Common.Stream newStream(@NotNull Common.Stream.Type streamType) {
+    return Common.Stream.newBuilder().setStreamId(myCustomStreamId.incrementAndGet()).setType(streamType).build();
+  }
+
+  private void connectStreamServer(@NotNull Common.Stream stream, @NotNull EventStreamServer streamServer) {
     ManagedChannel channel = InProcessChannelBuilder.forName(streamServer.getServerName()).usePlaintext(true).directExecutor().build();
     myDataStoreService.connect(stream, channel);
 
     myStreamIdToServerMap.put(stream.getStreamId(), streamServer);
+  }
 
-    return stream;
+  /**
+   * Lists the sessions archived by previous runs of Studio. Only the headers are read: each session gets its begin and end events in the
+   * datastore, under a FILE stream that is only connected when the rest of its data is loaded by {@link #loadArchivedSession(long)}.
+   * Subsequent calls do nothing.
+   */
+  public void restoreArchivedSessions() {
+    synchronized (myArchiveLock) {
+      if (myArchivesRestored) {
+        return;
+      }
+      myArchivesRestored = true;
+    }
+    for (SessionArchive archive : SessionArchiveReader.list(myDataStoreService.getSessionArchiveDirectory())) {
+      restoreArchivedSession(archive);
+    }
+  }
+
+  /**
+   * Connects the stream of a restored session and streams its events and bytes into it, on a pooled thread. Does nothing if the session
+   * was not restored from an archive or has already been loaded.
+   */
+  public void loadArchivedSession(long sessionId) {
+    loadArchivedSession(sessionId, false);
+  }
+
+  /**
+   * @param keepArchive whether to copy the archive to the archive directory once it is loaded, so it is restored on the next start.
+   */
+  private void loadArchivedSession(long sessionId, boolean keepArchive) {
+    SessionArchive archive;
+    Common.Stream stream;
+    synchronized (myArchiveLock) {
+      archive = myPendingArchives.remove(sessionId);
+      stream = myPendingArchiveStreams.remove(sessionId);
+    }
+    if (archive == null || stream == null) {
+      return;
+    }
+    EventStreamServer server = new EventStreamServer("SessionArchive" + sessionId);
+    try {
+      server.start();
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Failed to create a event server for session archive %s", archive.getFile().getPath()), e);
+      return;
+    }
+    connectStreamServer(stream, server);
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      if (loadArchiveBody(archive, server) && keepArchive) {
+        copyToArchiveDirectory(archive);
+      }
+    });
+  }
+
+  /**
+   * Deletes the archive of a session so it is not restored again.
+   */
+  public void deleteArchivedSession(long sessionId) {
+    synchronized (myArchiveLock) {
+      myPendingArchives.remove(sessionId);
+      myPendingArchiveStreams.remove(sessionId);
+    }
+    File file = new File(myDataStoreService.getSessionArchiveDirectory(), SessionArchive.getFileName(sessionId));
+    if (file.exists() && !file.delete()) {
+      getLogger().warn("Unable to delete session archive " + file.getPath());
+    }
+  }
+
+  /**
+   * Restores and loads a session archive picked by the user, e.g. one copied from another machine. Once loaded, it is copied to the
+   * archive directory so it is restored on the next start like the sessions recorded here.
+   */
+  public void importSessionArchive(@NotNull File file) {
+    SessionArchive archive;
+    try {
+      archive = SessionArchiveReader.readHeader(file);
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Failed to read session archive %s", file.getPath()), e);
+      return;
+    }
+    restoreArchivedSession(archive);
+    loadArchivedSession(archive.getSessionId(), true);
+  }
+
+  private void restoreArchivedSession(@NotNull SessionArchive archive) {
+    synchronized (myArchiveLock) {
+      if (!myRestoredSessionIds.add(archive.getSessionId())) {
+        return;
+      }
+    }
+    Common.Stream stream = newStream(Common.Stream.Type.FILE);
+    synchronized (myArchiveLock) {
+      myPendingArchives.put(archive.getSessionId(), archive);
+      myPendingArchiveStreams.put(archive.getSessionId(), stream);
+    }
+    // The session now lives in the new stream. Its events are inserted directly, so its end does not archive it again.
+    Common.Event.Builder sessionStarted = archive.getSessionStartedEvent().toBuilder();
+    sessionStarted.getSessionBuilder().getSessionStartedBuilder().setStreamId(stream.getStreamId());
+    myDataStoreService.insertArchivedSession(stream.getStreamId(), sessionStarted.build(), archive.getSessionEndedEvent());
+  }
+
+  /**
+   * @return whether the whole archive was loaded.
+   */
+  private static boolean loadArchiveBody(@NotNull SessionArchive archive, @NotNull EventStreamServer server) {
+    try {
+      SessionArchiveReader.readBody(archive,
+                                    server.getEventDeque()::offer,
+                                    (id, bytes) -> server.getByteCacheMap().put(id, bytes.getContents()));
+      return true;
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Failed to load session archive %s", archive.getFile().getPath()), e);
+      return false;
+    }
+  }
+
+  private void copyToArchiveDirectory(@NotNull SessionArchive archive) {
+    File file = new File(myDataStoreService.getSessionArchiveDirectory(), SessionArchive.getFileName(archive.getSessionId()));
+    if (file.exists()) {
+      return;
+    }
+    try {
+      Files.createDirectories(file.toPath().getParent());
+      Files.copy(archive.getFile().toPath(), file.toPath());
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Failed to copy session archive %s", archive.getFile().getPath()), e);
+    }
   }
 
   public void unregisterStreamServer(long streamId) {
@@ -26,12 +26,16 @@ import java.util.concurrent.TimeUnit
 
 /**
  * Encapsulates most of the polling functionality that Transport Pipeline subscribers would need to implement
- * to listen for updates and Events coming in from the pipeline
+ * to listen for updates and Events coming in from the pipeline.
+ *
+ * Listeners that subscribe to the same events share a single query per poll, and each listener receives its new events as one batch,
+ * in sort order, on its executor. A listener whose previous batch hasn't been delivered yet is not polled until it is.
  */
 class TransportEventPoller(private val transportClient: TransportServiceGrpc.TransportServiceBlockingStub,
                            private val sortOrder: Comparator<Common.Event>) {
   private val eventListeners: MutableList<TransportEventListener> = CopyOnWriteArrayList() // Used to preserve insertion order
   private val listenersToLastTimestamp = ConcurrentHashMap<TransportEventListener, Long>()
+  private val listenersWithPendingBatch: MutableSet<TransportEventListener> = ConcurrentHashMap.newKeySet()
 
   /**
    * Adds a listener to the list to poll for and be notified of changes. Listeners are polled in insertion order.
@@ -46,47 +50,79 @@ class TransportEventPoller(private val transportClient: TransportServiceGrpc.Tra
   fun unregisterListener(listener: TransportEventListener) {
     eventListeners.remove(listener)
     listenersToLastTimestamp.remove(listener)
+    listenersWithPendingBatch.remove(listener)
   }
 
   fun poll() {
-    // Copy the list so we can remove listeners within the loop in-place.
-    val listeners = mutableListOf<TransportEventListener>().apply { addAll(eventListeners) }
-    // Poll for each listener
-    for (eventListener in listeners) {
+    // Group the listeners by the query they need, keeping insertion order.
+    val subscriptions = LinkedHashMap<EventQuery, MutableList<Subscription>>()
+    for (eventListener in eventListeners) {
+      if (listenersWithPendingBatch.contains(eventListener)) {
+        continue
+      }
       // Use start/end time if available
       val startTimestamp = eventListener.startTime?.invoke() ?: listenersToLastTimestamp.getOrDefault(eventListener, Long.MIN_VALUE)
       val endTimestamp = eventListener.endTime()
+      // Open-ended queries return every event since their start, so listeners that only differ by their start can share the query with
+      // the earliest start. Bounded queries also return the first event after the range of each group, they are only shared as is.
+      val query = EventQuery(eventListener.eventKind,
+                             eventListener.streamId?.invoke(),
+                             eventListener.processId?.invoke(),
+                             eventListener.groupId?.invoke(),
+                             if (endTimestamp == Long.MAX_VALUE) null else startTimestamp,
+                             endTimestamp)
+      subscriptions.getOrPut(query) { mutableListOf() }.add(Subscription(eventListener, startTimestamp))
+    }
 
+    for ((query, listeners) in subscriptions) {
       val builder = Transport.GetEventGroupsRequest.newBuilder()
-        .setKind(eventListener.eventKind)
-        .setFromTimestamp(startTimestamp)
-        .setToTimestamp(endTimestamp)
-      eventListener.streamId?.invoke()?.let { builder.streamId = it }
-      eventListener.processId?.invoke()?.let { builder.pid = it }
-      eventListener.groupId?.invoke()?.let { builder.groupId = it }
+        .setKind(query.kind)
+        .setFromTimestamp(query.fromTimestamp ?: listeners.asSequence().map { it.startTimestamp }.min()!!)
+        .setToTimestamp(query.toTimestamp)
+      query.streamId?.let { builder.streamId = it }
+      query.processId?.let { builder.pid = it }
+      query.groupId?.let { builder.groupId = it }
 
-      val request = builder.build()
-      var removeListener = false
-
-      // Order by timestamp
-      val response = transportClient.getEventGroups(request)
+      val response = transportClient.getEventGroups(builder.build())
       if (response != Transport.GetEventGroupsResponse.getDefaultInstance()) {
-        val filtered = response.groupsList
+        // Order by timestamp
+        val events = response.groupsList
           .flatMap { group -> group.eventsList }
           .sortedWith(sortOrder)
-          .filter { event -> event.timestamp >= startTimestamp && eventListener.filter(event) }
-        filtered.forEach { event -> eventListener.executor.execute { removeListener = eventListener.callback(event) } }
-        val maxTimeEvent = filtered.maxBy {it.timestamp}
-        // Update last timestamp per listener
-        maxTimeEvent?.let { listenersToLastTimestamp[eventListener] = Math.max(startTimestamp, it.timestamp + 1) }
+        listeners.forEach { dispatch(it, events) }
       }
+    }
+  }
+
+  private fun dispatch(subscription: Subscription, events: List<Common.Event>) {
+    val eventListener = subscription.listener
+    val filtered = events.filter { event -> event.timestamp >= subscription.startTimestamp && eventListener.filter(event) }
+    val maxTimeEvent = filtered.maxBy { it.timestamp } ?: return
+    // Update last timestamp per listener
+    listenersToLastTimestamp[eventListener] = Math.max(subscription.startTimestamp, maxTimeEvent.timestamp + 1)
 
-      if (removeListener) {
-        unregisterListener(eventListener)
+    listenersWithPendingBatch.add(eventListener)
+    eventListener.executor.execute {
+      listenersWithPendingBatch.remove(eventListener)
+      for (event in filtered) {
+        if (eventListener.callback(event)) {
+          unregisterListener(eventListener)
+          break
+        }
       }
     }
   }
 
+  private data class EventQuery(val kind: Common.Event.Kind,
+                                val streamId: Long?,
+                                val processId: Int?,
+                                val groupId: Long?,
+                                // Null when the query starts at the earliest start of its listeners.
+                                val fromTimestamp: Long?,
+                                val toTimestamp: Long)
+
+  private class Subscription(val listener: TransportEventListener, val startTimestamp: Long)
+
   companion object {
     private val myExecutorService = Executors.newScheduledThreadPool(1)
     private val myScheduledFutures = mutableMapOf<TransportEventPoller, ScheduledFuture<*>>()
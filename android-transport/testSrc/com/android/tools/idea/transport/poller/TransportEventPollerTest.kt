@@ -25,10 +25,14 @@ import com.android.tools.idea.transport.faketransport.FakeGrpcServer
 import com.android.tools.idea.transport.faketransport.FakeTransportService
 import com.android.tools.pipeline.example.proto.Echo
 import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport
 import com.google.common.util.concurrent.MoreExecutors
+import io.grpc.stub.StreamObserver
 import java.util.ArrayList
 import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
 import org.junit.Rule
 import org.junit.Test
 
@@ -37,7 +41,14 @@ private const val TIMEOUT_MILLISECONDS: Long = 10000
 class TransportEventPollerTest {
 
   private var timer = FakeTimer()
-  private var transportService = FakeTransportService(timer, true)
+  private val eventGroupsRequestCount = AtomicInteger()
+  private var transportService = object : FakeTransportService(timer, true) {
+    override fun getEventGroups(request: Transport.GetEventGroupsRequest,
+                                responseObserver: StreamObserver<Transport.GetEventGroupsResponse>) {
+      eventGroupsRequestCount.incrementAndGet()
+      super.getEventGroups(request, responseObserver)
+    }
+  }
 
   @get:Rule
   val grpcServer = FakeGrpcServer.createFakeGrpcServer("TransportEventPollerTestChannel", transportService, transportService)!!
@@ -386,4 +397,77 @@ class TransportEventPollerTest {
 
     assertThat(latch.await(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS)).isEqualTo(true)
   }
+
+  /**
+   * Tests that listeners subscribing to the same events share a single query.
+   */
+  @Test
+  fun testListenersShareQueries() {
+    val transportClient = TransportClient(grpcServer.name)
+    val transportEventPoller = TransportEventPoller(transportClient.transportStub, Comparator.comparing(Common.Event::getTimestamp))
+
+    val echoEvent = Common.Event.newBuilder()
+      .setTimestamp(1)
+      .setKind(Common.Event.Kind.ECHO)
+      .build()
+    transportService.addEventToStream(1L, echoEvent)
+
+    val receivedEvents = mutableListOf<Common.Event>()
+    repeat(3) {
+      transportEventPoller.registerListener(TransportEventListener(eventKind = Common.Event.Kind.ECHO,
+                                                                   streamId = { 1 },
+                                                                   callback = { event -> receivedEvents.add(event); false },
+                                                                   executor = MoreExecutors.directExecutor()))
+    }
+    transportEventPoller.poll()
+    assertThat(eventGroupsRequestCount.get()).isEqualTo(1)
+    assertThat(receivedEvents).containsExactly(echoEvent, echoEvent, echoEvent)
+
+    // A listener of another kind needs its own query.
+    transportEventPoller.registerListener(TransportEventListener(eventKind = Common.Event.Kind.CPU_USAGE,
+                                                                 streamId = { 1 },
+                                                                 callback = { false },
+                                                                 executor = MoreExecutors.directExecutor()))
+    transportEventPoller.poll()
+    assertThat(eventGroupsRequestCount.get()).isEqualTo(3)
+    // Events that were already received are not sent again.
+    assertThat(receivedEvents).hasSize(3)
+  }
+
+  /**
+   * Tests that a listener isn't polled while its last batch of events hasn't been delivered.
+   */
+  @Test
+  fun testListenerWithPendingBatchIsNotPolled() {
+    val transportClient = TransportClient(grpcServer.name)
+    val transportEventPoller = TransportEventPoller(transportClient.transportStub, Comparator.comparing(Common.Event::getTimestamp))
+
+    val pendingBatches = mutableListOf<Runnable>()
+    val receivedEvents = mutableListOf<Common.Event>()
+    transportEventPoller.registerListener(TransportEventListener(eventKind = Common.Event.Kind.ECHO,
+                                                                 streamId = { 1 },
+                                                                 callback = { event -> receivedEvents.add(event); false },
+                                                                 executor = Executor { pendingBatches.add(it) }))
+
+    val echoEvent1 = Common.Event.newBuilder().setTimestamp(1).setKind(Common.Event.Kind.ECHO).setGroupId(1).build()
+    val echoEvent2 = Common.Event.newBuilder().setTimestamp(2).setKind(Common.Event.Kind.ECHO).setGroupId(2).build()
+    val echoEvent3 = Common.Event.newBuilder().setTimestamp(3).setKind(Common.Event.Kind.ECHO).setGroupId(3).build()
+    transportService.addEventToStream(1L, echoEvent1)
+    transportService.addEventToStream(1L, echoEvent2)
+    transportEventPoller.poll()
+    assertThat(eventGroupsRequestCount.get()).isEqualTo(1)
+    assertThat(pendingBatches).hasSize(1)
+
+    transportService.addEventToStream(1L, echoEvent3)
+    transportEventPoller.poll()
+    assertThat(eventGroupsRequestCount.get()).isEqualTo(1)
+
+    pendingBatches.removeAt(0).run()
+    assertThat(receivedEvents).containsExactly(echoEvent1, echoEvent2).inOrder()
+
+    transportEventPoller.poll()
+    assertThat(eventGroupsRequestCount.get()).isEqualTo(2)
+    pendingBatches.removeAt(0).run()
+    assertThat(receivedEvents).containsExactly(echoEvent1, echoEvent2, echoEvent3).inOrder()
+  }
 }
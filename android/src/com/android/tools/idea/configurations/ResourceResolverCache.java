@@ -35,13 +35,18 @@ import com.android.tools.idea.res.LocalResourceRepository;
 import com.android.tools.idea.res.ResourceRepositoryManager;
 import com.android.utils.SparseArray;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Table;
 import com.intellij.openapi.application.ReadAction;
+import java.util.AbstractMap;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import org.jetbrains.android.sdk.AndroidPlatform;
 import org.jetbrains.android.sdk.AndroidTargetData;
 import org.jetbrains.annotations.NotNull;
@@ -57,6 +62,9 @@ public class ResourceResolverCache {
   @VisibleForTesting
   final Map<String, ResourceResolver> myResolverMap = new HashMap<>();
 
+  /** The app resources used by each resolver of {@link #myResolverMap}, with the same keys. */
+  private final Map<String, UsedAppResources> myResolverAppResources = new HashMap<>();
+
   /**
    * Map of configured app resources. These are cached separately from the final resource
    * resolver since they can be shared between different layouts that only vary by theme.
@@ -64,7 +72,7 @@ public class ResourceResolverCache {
    * resolvers also includes the theme.
    */
   @VisibleForTesting
-  final Map<String, Table<ResourceNamespace, ResourceType, ResourceValueMap>> myAppResourceMap = new HashMap<>();
+  final Map<String, ConfiguredAppResources> myAppResourceMap = new HashMap<>();
 
   /**
    * Map of configured resources from Android framework. These are cached separately from the final resource
@@ -76,6 +84,9 @@ public class ResourceResolverCache {
   /** The generation timestamp of our most recently cached app resources, used to invalidate on edits. */
   private long myCachedGeneration;
 
+  /** The app resources of the cached resolvers. */
+  @Nullable private LocalResourceRepository myCachedAppResources;
+
   /** Map from API level to framework resources */
   private SparseArray<AndroidTargetData> myFrameworkResources = new SparseArray<>();
 
@@ -100,14 +111,17 @@ public class ResourceResolverCache {
       return ResourceResolver.create(Collections.emptyMap(), null);
     }
     LocalResourceRepository resources = repositoryManager.getAppResources();
-    if (myCachedGeneration != resources.getModificationCount()) {
-      myResolverMap.clear();
-      myAppResourceMap.clear();
-    }
-
     // Store the modification count as soon as possible. This ensures that if there is any modification of resources while the
     // resolver is being created, it will be cleared subsequently.
-    myCachedGeneration = resources.getModificationCount();
+    long generation = resources.getModificationCount();
+    if (resources != myCachedAppResources) {
+      reset();
+      myCachedAppResources = resources;
+    }
+    else if (myCachedGeneration != generation) {
+      removeChangedAppResources(resources);
+    }
+    myCachedGeneration = generation;
 
     // When looking up the configured project and framework resources, the theme doesn't matter, so we look up only
     // by the configuration qualifiers; for example, here's a sample key:
@@ -129,17 +143,17 @@ public class ResourceResolverCache {
       Map<ResourceType, ResourceValueMap> frameworkResources =
           target == null ? Collections.emptyMap() : getConfiguredFrameworkResources(target, fullConfiguration);
 
-      // App resources
-      Table<ResourceNamespace, ResourceType, ResourceValueMap> configuredAppRes = myAppResourceMap.get(qualifierString);
+      // App resources, configured for the current config when the resolver first uses them.
+      ConfiguredAppResources configuredAppRes = myAppResourceMap.get(qualifierString);
       if (configuredAppRes == null) {
-        // Get the project resource values based on the current config.
-        configuredAppRes = ReadAction.compute(() -> ResourceRepositoryUtil.getConfiguredResources(resources, fullConfiguration));
+        configuredAppRes = new ConfiguredAppResources(resources, FolderConfiguration.copyOf(fullConfiguration));
         myAppResourceMap.put(qualifierString, configuredAppRes);
       }
+      UsedAppResources usedAppRes = new UsedAppResources(configuredAppRes, resources.getNamespaces());
 
       // Resource Resolver
       Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> allResources =
-          new DisjointUnionMap<>(Collections.singletonMap(ResourceNamespace.ANDROID, frameworkResources), configuredAppRes.rowMap());
+          new DisjointUnionMap<>(Collections.singletonMap(ResourceNamespace.ANDROID, frameworkResources), usedAppRes);
 
       assert themeStyle.startsWith(PREFIX_RESOURCE_REF) : themeStyle;
 
@@ -165,11 +179,29 @@ public class ResourceResolverCache {
       }
 
       myResolverMap.put(resolverKey, resolver);
+      myResolverAppResources.put(resolverKey, usedAppRes);
     }
 
     return resolver;
   }
 
+  /**
+   * Removes the configured app resources of the types that changed since they were configured, and the resolvers that used them. Edits
+   * of other resources, or of the contents of file resources like layouts, keep the resolvers.
+   */
+  private void removeChangedAppResources(@NotNull LocalResourceRepository resources) {
+    for (ConfiguredAppResources configuredAppRes : myAppResourceMap.values()) {
+      configuredAppRes.removeChanged();
+    }
+    for (Iterator<Map.Entry<String, UsedAppResources>> iterator = myResolverAppResources.entrySet().iterator(); iterator.hasNext(); ) {
+      Map.Entry<String, UsedAppResources> entry = iterator.next();
+      if (entry.getValue().usesChangedResources(resources)) {
+        myResolverMap.remove(entry.getKey());
+        iterator.remove();
+      }
+    }
+  }
+
   public Map<ResourceType, ResourceValueMap> getConfiguredFrameworkResources(@NotNull IAndroidTarget target,
                                                                              @NotNull FolderConfiguration fullConfiguration) {
     ResourceRepository resourceRepository = getFrameworkResources(fullConfiguration, target);
@@ -222,8 +254,10 @@ public class ResourceResolverCache {
 
   public void reset() {
     myCachedGeneration = 0;
+    myCachedAppResources = null;
     myAppResourceMap.clear();
     myResolverMap.clear();
+    myResolverAppResources.clear();
   }
 
   /**
@@ -248,8 +282,167 @@ public class ResourceResolverCache {
     }
     if (myCustomResolverKey != null) {
       myResolverMap.remove(myCustomResolverKey);
+      myResolverAppResources.remove(myCustomResolverKey);
     }
     myCustomConfigurationKey = qualifierString;
     myCustomResolverKey = newCustomResolverKey;
   }
+
+  /**
+   * The app resources configured for one configuration. The resources of each namespace and type are only configured when a resolver
+   * first uses them, and are kept until resources of that type change, see {@link LocalResourceRepository#getModificationCount(
+   * ResourceNamespace, ResourceType)}.
+   * <p>
+   * Resolvers use them from any thread, so the configured resources are computed outside of any lock, under a read action, and published
+   * through concurrent maps.
+   */
+  @VisibleForTesting
+  static final class ConfiguredAppResources {
+    @NotNull private final LocalResourceRepository myResources;
+    @NotNull private final FolderConfiguration myConfiguration;
+    @NotNull private final ConcurrentMap<ResourceNamespace, ConcurrentMap<ResourceType, ConfiguredType>> myTypes =
+      new ConcurrentHashMap<>();
+
+    ConfiguredAppResources(@NotNull LocalResourceRepository resources, @NotNull FolderConfiguration configuration) {
+      myResources = resources;
+      myConfiguration = configuration;
+    }
+
+    @NotNull
+    ConfiguredType get(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+      ConcurrentMap<ResourceType, ConfiguredType> types = myTypes.computeIfAbsent(namespace, key -> new ConcurrentHashMap<>());
+      ConfiguredType configured = types.get(type);
+      if (configured == null) {
+        // Read the generation first, so a change made while configuring makes the result stale.
+        long generation = myResources.getModificationCount(namespace, type);
+        ResourceValueMap values =
+          ReadAction.compute(() -> ResourceRepositoryUtil.getConfiguredResources(myResources, namespace, type, myConfiguration));
+        configured = new ConfiguredType(namespace, type, generation, values);
+        ConfiguredType existing = types.putIfAbsent(type, configured);
+        if (existing != null) {
+          configured = existing;
+        }
+      }
+      return configured;
+    }
+
+    /**
+     * Returns whether resources of the given namespace and type are configured.
+     */
+    @VisibleForTesting
+    boolean isConfigured(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+      Map<ResourceType, ConfiguredType> types = myTypes.get(namespace);
+      return types != null && types.containsKey(type);
+    }
+
+    void removeChanged() {
+      for (Map<ResourceType, ConfiguredType> types : myTypes.values()) {
+        types.values().removeIf(configured -> configured.isChanged(myResources));
+      }
+    }
+  }
+
+  private static final class ConfiguredType {
+    @NotNull private final ResourceNamespace myNamespace;
+    @NotNull private final ResourceType myType;
+    private final long myGeneration;
+    @NotNull private final ResourceValueMap myValues;
+
+    private ConfiguredType(@NotNull ResourceNamespace namespace,
+                           @NotNull ResourceType type,
+                           long generation,
+                           @NotNull ResourceValueMap values) {
+      myNamespace = namespace;
+      myType = type;
+      myGeneration = generation;
+      myValues = values;
+    }
+
+    boolean isChanged(@NotNull LocalResourceRepository resources) {
+      return resources.getModificationCount(myNamespace, myType) != myGeneration;
+    }
+  }
+
+  /**
+   * The app resources of a resolver, by namespace and type. The resources of a type are configured on first use, and the configured
+   * types a resolver used are recorded to tell whether it is affected by later edits.
+   */
+  private static final class UsedAppResources extends AbstractMap<ResourceNamespace, Map<ResourceType, ResourceValueMap>> {
+    @NotNull private final ConfiguredAppResources myConfiguredResources;
+    @NotNull private final Map<ResourceNamespace, Map<ResourceType, ResourceValueMap>> myNamespaces;
+    @NotNull private final Set<ConfiguredType> myUsedTypes = ConcurrentHashMap.newKeySet();
+
+    UsedAppResources(@NotNull ConfiguredAppResources configuredResources, @NotNull Set<ResourceNamespace> namespaces) {
+      myConfiguredResources = configuredResources;
+      ImmutableMap.Builder<ResourceNamespace, Map<ResourceType, ResourceValueMap>> builder = ImmutableMap.builder();
+      for (ResourceNamespace namespace : namespaces) {
+        builder.put(namespace, new NamespaceResources(namespace));
+      }
+      myNamespaces = builder.build();
+    }
+
+    @Override
+    @Nullable
+    public Map<ResourceType, ResourceValueMap> get(@Nullable Object namespace) {
+      return myNamespaces.get(namespace);
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object namespace) {
+      return myNamespaces.containsKey(namespace);
+    }
+
+    @Override
+    @NotNull
+    public Set<Entry<ResourceNamespace, Map<ResourceType, ResourceValueMap>>> entrySet() {
+      return myNamespaces.entrySet();
+    }
+
+    boolean usesChangedResources(@NotNull LocalResourceRepository resources) {
+      if (!myNamespaces.keySet().equals(resources.getNamespaces())) {
+        return true;
+      }
+      for (ConfiguredType configured : myUsedTypes) {
+        if (configured.isChanged(resources)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private final class NamespaceResources extends AbstractMap<ResourceType, ResourceValueMap> {
+      @NotNull private final ResourceNamespace myNamespace;
+
+      private NamespaceResources(@NotNull ResourceNamespace namespace) {
+        myNamespace = namespace;
+      }
+
+      @Override
+      @Nullable
+      public ResourceValueMap get(@Nullable Object type) {
+        if (!(type instanceof ResourceType)) {
+          return null;
+        }
+        ConfiguredType configured = myConfiguredResources.get(myNamespace, (ResourceType)type);
+        myUsedTypes.add(configured);
+        return configured.myValues;
+      }
+
+      @Override
+      public boolean containsKey(@Nullable Object type) {
+        return type instanceof ResourceType;
+      }
+
+      @Override
+      @NotNull
+      public Set<Entry<ResourceType, ResourceValueMap>> entrySet() {
+        // Iterating over all the types configures all of them.
+        Map<ResourceType, ResourceValueMap> values = new EnumMap<>(ResourceType.class);
+        for (ResourceType type : ResourceType.values()) {
+          values.put(type, get(type));
+        }
+        return Collections.unmodifiableMap(values).entrySet();
+      }
+    }
+  }
 }
@@ -24,6 +24,7 @@ import com.android.tools.idea.ddms.actions.TerminateVMAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyConfigureLogcatHeaderAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyRestartAction;
 import com.intellij.diagnostic.logging.LogConsoleBase;
+import com.intellij.diagnostic.logging.LogFilter;
 import com.intellij.diagnostic.logging.LogFormatter;
 import com.intellij.execution.impl.ConsoleViewImpl;
 import com.intellij.execution.ui.ConsoleView;
@@ -105,6 +106,20 @@ public final class AndroidLogConsole extends LogConsoleBase {
     return myRegexFilterComponent;
   }
 
+  @Override
+  public void onTextFilterChange() {
+    if (!myView.replayMessages()) {
+      super.onTextFilterChange();
+    }
+  }
+
+  @Override
+  public void onFilterStateChange(LogFilter filter) {
+    if (!myView.replayMessages()) {
+      super.onFilterStateChange(filter);
+    }
+  }
+
   public void addLogLine(@NotNull String line) {
     super.addMessage(line);
   }
@@ -84,6 +84,17 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
     fireTextFilterChange();
   }
 
+  /**
+   * Returns a query selecting at least every message accepted by the configured filter and the selected log level. The custom pattern
+   * is not indexed.
+   */
+  @NotNull
+  final LogcatQuery getLogcatQuery() {
+    LogcatQuery query = myConfiguredFilter == null ? LogcatQuery.ALL : myConfiguredFilter.getQuery();
+    LogFilter logLevelFilter = getSelectedLogLevelFilter();
+    return logLevelFilter == null ? query : query.withMinLevel(((AndroidLogLevelFilter)logLevelFilter).myLogLevel);
+  }
+
   protected abstract void saveConfiguredFilterName(String filterName);
 
   protected abstract void saveLogLevel(String logLevelName);
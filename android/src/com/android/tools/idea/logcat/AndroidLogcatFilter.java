@@ -33,4 +33,12 @@ public interface AndroidLogcatFilter {
    * Returns {@code true} if the current logcat message should be accepted, {@code false} otherwise.
    */
   boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel);
+
+  /**
+   * Returns a query selecting at least every message this filter accepts, used to only replay those when the filter is selected.
+   */
+  @NotNull
+  default LogcatQuery getQuery() {
+    return LogcatQuery.ALL;
+  }
 }
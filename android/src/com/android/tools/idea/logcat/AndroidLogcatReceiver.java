@@ -29,6 +29,8 @@ import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -67,6 +69,12 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
 
   @Nullable private LogCatHeader myActiveHeader;
   private int myLineIndex;
+
+  /**
+   * The messages parsed from the chunk of output being processed, sent to the listener at once. Null outside of
+   * {@link #processNewLines(String[])}.
+   */
+  @Nullable private List<LogCatMessage> myBatch;
   private volatile boolean myCanceled;
 
   AndroidLogcatReceiver(@NotNull IDevice device, @NotNull LogcatListener listener) {
@@ -77,6 +85,21 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
     myLogcatListener = listener;
   }
 
+  @Override
+  public void processNewLines(String[] lines) {
+    myBatch = new ArrayList<>(lines.length);
+    try {
+      super.processNewLines(lines);
+    }
+    finally {
+      List<LogCatMessage> batch = myBatch;
+      myBatch = null;
+      if (!batch.isEmpty()) {
+        myLogcatListener.onLogLinesReceived(batch);
+      }
+    }
+  }
+
   @Override
   public void processNewLine(@NotNull String line) {
     // Really, the user's log should never put any system characters in it ever - that will cause
@@ -129,7 +152,13 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
 
   // This method is package protected so other Logcat components can feed receiver processed log lines if they need to
   void notifyLine(@NotNull LogCatHeader header, @NotNull String line) {
-    myLogcatListener.onLogLineReceived(new LogCatMessage(header, line));
+    LogCatMessage message = new LogCatMessage(header, line);
+    if (myBatch != null) {
+      myBatch.add(message);
+    }
+    else {
+      myLogcatListener.onLogLineReceived(message);
+    }
     myLineIndex++;
   }
 
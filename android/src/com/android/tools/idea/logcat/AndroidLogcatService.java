@@ -61,50 +61,56 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
-
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
-      }
-    }
-
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
-    }
-  }
-
   private static class ListenerConnector implements LogcatListener {
+    /**
+     * The backlog is sent in batches of this size, so the listener lock is released every now and then while replaying a large buffer.
+     */
+    private static final int BACKLOG_BATCH_SIZE = 1000;
+
     @GuardedBy("myListenerLock")
     @Nullable private LogcatListener myListener; // Initially not null, set to null when disconnected.
     @GuardedBy("myBacklogLock")
-    @Nullable private Queue<LogCatMessage> myBacklog; // myBacklog is either null or not empty.
+    @NotNull private final Queue<LogCatMessage> myBacklog;
+    /**
+     * Set while a thread dispatches the backlog. Other threads only add their messages to the backlog then, so messages are never sent
+     * out of order, whether they come from the device thread or from the thread replaying the buffer.
+     */
+    @GuardedBy("myBacklogLock")
+    private boolean myDraining;
     // The two locks bellow should never be held simultaneously or for a prolonged period of time.
     @NotNull private final Object myListenerLock = new Object();
     @NotNull private final Object myBacklogLock = new Object();
 
     ListenerConnector(@NotNull LogcatListener listener, @NotNull Collection<LogCatMessage> messageBacklog) {
       myListener = listener;
-      myBacklog = messageBacklog.isEmpty() ? null : new ArrayDeque<>(messageBacklog);
+      myBacklog = new ArrayDeque<>(messageBacklog);
     }
 
     @Override
     public void onLogLineReceived(@NotNull LogCatMessage message) {
-      processBacklog(); // Make sure that the backlog is processed before the new message.
-      dispatchMessage(message);
+      onLogLinesReceived(Collections.singletonList(message));
+    }
+
+    @Override
+    public void onLogLinesReceived(@NotNull List<LogCatMessage> messages) {
+      synchronized (myBacklogLock) {
+        if (myDraining || !myBacklog.isEmpty()) {
+          // Make sure that the backlog is processed before the new messages.
+          myBacklog.addAll(messages);
+          if (myDraining) {
+            return;
+          }
+          messages = Collections.emptyList();
+        }
+        myDraining = true;
+      }
+      drain(messages);
     }
 
     @Override
     public void onCleared() {
       synchronized (myBacklogLock) {
-        myBacklog = null;
+        myBacklog.clear();
       }
       synchronized (myListenerLock) {
         if (myListener != null) {
@@ -124,36 +130,66 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
         myListener = null;
       }
       synchronized (myBacklogLock) {
-        myBacklog = null;
+        myBacklog.clear();
       }
     }
 
     void processBacklog() {
-      LogCatMessage message;
-      while ((message = getMessageFromBacklog()) != null) {
-        dispatchMessage(message);
+      synchronized (myBacklogLock) {
+        if (myDraining || myBacklog.isEmpty()) {
+          return;
+        }
+        myDraining = true;
+      }
+      drain(Collections.emptyList());
+    }
+
+    /**
+     * Dispatches {@code messages} and then the backlog, until it is empty. Must only be called by the thread which set {@link #myDraining}.
+     */
+    private void drain(@NotNull List<LogCatMessage> messages) {
+      boolean drained = false;
+      try {
+        if (!messages.isEmpty()) {
+          dispatchMessages(messages);
+        }
+        while ((messages = getMessagesFromBacklog()) != null) {
+          dispatchMessages(messages);
+        }
+        drained = true;
+      }
+      finally {
+        if (!drained) {
+          synchronized (myBacklogLock) {
+            myDraining = false;
+          }
+        }
       }
     }
 
-    private void dispatchMessage(@NotNull LogCatMessage message) {
+    private void dispatchMessages(@NotNull List<LogCatMessage> messages) {
       synchronized (myListenerLock) {
         if (myListener != null) {
-          myListener.onLogLineReceived(message);
+          myListener.onLogLinesReceived(messages);
         }
       }
     }
 
+    /**
+     * Returns the next batch of the backlog, or null once it is empty, in which case the calling thread is no longer draining it.
+     */
     @Nullable
-    private LogCatMessage getMessageFromBacklog() {
+    private List<LogCatMessage> getMessagesFromBacklog() {
       synchronized (myBacklogLock) {
-        if (myBacklog == null) {
+        if (myBacklog.isEmpty()) {
+          myDraining = false;
           return null;
         }
-        LogCatMessage message = myBacklog.remove();
-        if (myBacklog.isEmpty()) {
-          myBacklog = null;
+        List<LogCatMessage> messages = new ArrayList<>(Math.min(myBacklog.size(), BACKLOG_BATCH_SIZE));
+        while (!myBacklog.isEmpty() && messages.size() < BACKLOG_BATCH_SIZE) {
+          messages.add(myBacklog.remove());
         }
-        return message;
+        return messages;
       }
     }
   }
@@ -162,8 +198,24 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     default void onLogLineReceived(@NotNull LogCatMessage line) {
     }
 
+    /**
+     * Called with the lines parsed from each chunk of output read from the device, in order. Listeners which do some work per update,
+     * like refreshing a view, should override this method to do it once per batch.
+     */
+    default void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      for (LogCatMessage line : lines) {
+        onLogLineReceived(line);
+      }
+    }
+
     default void onCleared() {
     }
+
+    /**
+     * Called before the listener is sent the messages of the device again, see {@link #replayMessages}.
+     */
+    default void onReplay() {
+    }
   }
 
   private final Object myLock;
@@ -211,29 +263,36 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
       connect(device);
 
-      AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device);
+      LogcatBuffer buffer = new LogcatBuffer(ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : -1);
+      AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device, buffer);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, buffer);
       myExecutors.get(device).execute(() -> executeLogcat(device, receiver));
     }
   }
 
+  /**
+   * The receiver only takes {@link #myLock} once per batch of lines. Lines are added to the buffer of the device and the listeners are
+   * looked up under it, so a listener added in between either gets the lines from the buffer or from the receiver, never from both.
+   */
   @NotNull
-  private AndroidLogcatReceiver newAndroidLogcatReceiver(@NotNull IDevice device) {
+  private AndroidLogcatReceiver newAndroidLogcatReceiver(@NotNull IDevice device, @NotNull LogcatBuffer buffer) {
     return new AndroidLogcatReceiver(device, new LogcatListener() {
       @Override
       public void onLogLineReceived(@NotNull LogCatMessage line) {
+        onLogLinesReceived(Collections.singletonList(line));
+      }
+
+      @Override
+      public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+        List<LogCatMessage> messages;
         Iterable<ListenerConnector> connectors;
         synchronized (myLock) {
+          messages = buffer.add(lines);
           connectors = ImmutableList.copyOf(myDeviceToListenerMultimap.get(device));
-          LogcatBuffer buffer = myLogBuffers.get(device);
-
-          if (buffer != null) {
-            buffer.addMessage(line);
-          }
         }
 
-        connectors.forEach(connector -> connector.onLogLineReceived(line));
+        connectors.forEach(connector -> connector.onLogLinesReceived(messages));
       }
     });
   }
@@ -365,9 +424,55 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
+    addListener(device, listener, addOldLogs ? LogcatQuery.ALL : null);
+  }
+
+  /**
+   * @see #addListener(IDevice, LogcatListener, boolean)
+   */
+  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
+    addListener(device, listener, false);
+  }
+
+  /**
+   * Sends {@code listener}, which was added to the device, the messages received so far that {@code query} selects, instead of the
+   * messages it was sent before. This is faster than filtering every message again when only a few are selected, since the messages
+   * are indexed by process and level. The listener keeps receiving new messages, unfiltered.
+   * {@link LogcatListener#onReplay()} is called once the listener no longer receives the previous messages, for it to clear them.
+   */
+  public void replayMessages(@NotNull IDevice device, @NotNull LogcatListener listener, @NotNull LogcatQuery query) {
     synchronized (myLock) {
-      List<LogCatMessage> oldMessages =
-          addOldLogs && myLogBuffers.containsKey(device) ? myLogBuffers.get(device).getMessages() : ImmutableList.of();
+      for (Iterator<ListenerConnector> iter = myDeviceToListenerMultimap.get(device).iterator(); iter.hasNext();) {
+        ListenerConnector connector = iter.next();
+        if (connector.isConnectedTo(listener)) {
+          connector.disconnectListener();
+          iter.remove();
+          break;
+        }
+      }
+    }
+
+    listener.onReplay();
+
+    ListenerConnector listenerConnector;
+    synchronized (myLock) {
+      LogcatBuffer buffer = myLogBuffers.get(device);
+      listenerConnector = new ListenerConnector(listener, buffer == null ? ImmutableList.of() : buffer.getMessages(query));
+      myDeviceToListenerMultimap.put(device, listenerConnector);
+
+      if (device.isOnline()) {
+        startReceiving(device);
+      }
+    }
+
+    // The device executor is busy running logcat, so the backlog would otherwise wait for the next message.
+    ApplicationManager.getApplication().executeOnPooledThread(listenerConnector::processBacklog);
+  }
+
+  private void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, @Nullable LogcatQuery oldLogsQuery) {
+    synchronized (myLock) {
+      LogcatBuffer buffer = myLogBuffers.get(device);
+      List<LogCatMessage> oldMessages = oldLogsQuery != null && buffer != null ? buffer.getMessages(oldLogsQuery) : ImmutableList.of();
 
       ListenerConnector listenerConnector = new ListenerConnector(listener, oldMessages);
       myDeviceToListenerMultimap.put(device, listenerConnector);
@@ -384,13 +489,6 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
   }
 
-  /**
-   * @see #addListener(IDevice, LogcatListener, boolean)
-   */
-  public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
-    addListener(device, listener, false);
-  }
-
   public void removeListener(@NotNull IDevice device, @NotNull LogcatListener listener) {
     synchronized (myLock) {
       Collection<ListenerConnector> connectors = myDeviceToListenerMultimap.get(device);
@@ -6,6 +6,7 @@ import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
 import com.android.tools.idea.ddms.DeviceContext;
+import com.android.tools.idea.flags.StudioFlags;
 import com.intellij.execution.ui.ConsoleView;
 import com.intellij.icons.AllIcons;
 import com.intellij.openapi.Disposable;
@@ -310,6 +311,21 @@ public class AndroidLogcatView {
     }
   }
 
+  /**
+   * Replaces the messages of the console by the ones of the device which the active filters can accept, see
+   * {@link AndroidLogcatService#replayMessages}.
+   *
+   * @return false if messages are not replayed, in which case the console should filter its own messages again
+   */
+  boolean replayMessages() {
+    IDevice device = myDevice;
+    if (!StudioFlags.RUNDEBUG_LOGCAT_INDEXED_FILTERING_ENABLED.get() || device == null) {
+      return false;
+    }
+    AndroidLogcatService.getInstance().replayMessages(device, myLogcatReceiver, myLogFilterModel.getLogcatQuery());
+    return true;
+  }
+
   @Nullable
   IDevice getSelectedDevice() {
     if (myDeviceContext != null) {
@@ -16,6 +16,7 @@
 package com.android.tools.idea.logcat;
 
 import com.android.ddmlib.Log;
+import com.google.common.primitives.Ints;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -123,6 +124,14 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
     return true;
   }
 
+  @Override
+  @NotNull
+  public LogcatQuery getQuery() {
+    // A pid which is not a number matches no message, any query will do.
+    Integer pid = myPid == null ? null : Ints.tryParse(myPid);
+    return new LogcatQuery(pid, myLogLevel);
+  }
+
   @Override
   @NotNull
   public String getName() {
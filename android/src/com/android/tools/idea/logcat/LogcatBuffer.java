@@ -0,0 +1,307 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The log messages received from one device, kept in a ring buffer until their text exceeds the maximum size.
+ * <p>
+ * Each buffer has its own lock, so devices don't contend with each other. Headers are rebuilt with shared tag and package strings, since
+ * a device logs the same few of them over and over. Messages are also indexed by process and by level so
+ * {@link #getMessages(LogcatQuery)} only visits the ones a query can select, which is what makes changing the filters of a large log fast.
+ */
+@ThreadSafe
+final class LogcatBuffer {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  /**
+   * Tag and package strings are dropped past this count, so a device logging unique tags can't grow the table forever.
+   */
+  private static final int MAX_SHARED_STRING_COUNT = 4096;
+
+  private final int myMaxSize;
+
+  private final Object myLock = new Object();
+
+  @GuardedBy("myLock")
+  private LogCatMessage[] myMessages = new LogCatMessage[INITIAL_CAPACITY];
+
+  /**
+   * Index in {@link #myMessages} of the oldest message.
+   */
+  @GuardedBy("myLock")
+  private int myHead;
+
+  @GuardedBy("myLock")
+  private int myCount;
+
+  /**
+   * Sequence number of the oldest message. Messages are numbered in the order they are received, which is what the indices store.
+   */
+  @GuardedBy("myLock")
+  private long myHeadSequence;
+
+  /**
+   * Total length of the text of the messages.
+   */
+  @GuardedBy("myLock")
+  private int mySize;
+
+  @GuardedBy("myLock")
+  private final Map<String, String> mySharedStrings = new HashMap<>();
+
+  @GuardedBy("myLock")
+  @Nullable private LogCatHeader myLastHeader;
+
+  @GuardedBy("myLock")
+  @Nullable private LogCatHeader myLastSharedHeader;
+
+  @GuardedBy("myLock")
+  private final Map<Integer, SequenceList> myPidIndex = new HashMap<>();
+
+  @GuardedBy("myLock")
+  private final SequenceList[] myLevelIndex = new SequenceList[LogLevel.values().length];
+
+  /**
+   * @param maxSize the total length of the text of the messages kept before the oldest ones are dropped, or -1 to keep every message
+   */
+  LogcatBuffer(int maxSize) {
+    myMaxSize = maxSize;
+    for (int i = 0; i < myLevelIndex.length; i++) {
+      myLevelIndex[i] = new SequenceList();
+    }
+  }
+
+  /**
+   * Adds the messages received from the device, dropping the oldest ones that no longer fit.
+   *
+   * @return the messages as they are kept by the buffer, which should be the ones sent to listeners. Messages which shared a header
+   * still do, so listeners can tell continuation lines apart.
+   */
+  @NotNull
+  List<LogCatMessage> add(@NotNull List<LogCatMessage> messages) {
+    List<LogCatMessage> added = new ArrayList<>(messages.size());
+    synchronized (myLock) {
+      for (LogCatMessage message : messages) {
+        LogCatMessage sharedMessage = new LogCatMessage(share(message.getHeader()), message.getMessage());
+        append(sharedMessage);
+        added.add(sharedMessage);
+      }
+      if (myMaxSize >= 0) {
+        while (mySize > myMaxSize && myCount > 0) {
+          removeFirst();
+        }
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Returns every message, from the oldest to the most recent.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages() {
+    synchronized (myLock) {
+      List<LogCatMessage> messages = new ArrayList<>(myCount);
+      for (int i = 0; i < myCount; i++) {
+        messages.add(myMessages[(myHead + i) % myMessages.length]);
+      }
+      return messages;
+    }
+  }
+
+  /**
+   * Returns the messages selected by {@code query}, from the oldest to the most recent.
+   */
+  @NotNull
+  List<LogCatMessage> getMessages(@NotNull LogcatQuery query) {
+    synchronized (myLock) {
+      Integer pid = query.getPid();
+      LogLevel minLevel = query.getMinLevel();
+      if (pid != null) {
+        SequenceList sequences = myPidIndex.get(pid);
+        return sequences == null ? new ArrayList<>() : getMessages(sequences.toArray(), query);
+      }
+      if (minLevel != null && minLevel.ordinal() > 0) {
+        long[] sequences = new long[0];
+        for (int i = minLevel.ordinal(); i < myLevelIndex.length; i++) {
+          sequences = merge(sequences, myLevelIndex[i].toArray());
+        }
+        return getMessages(sequences, query);
+      }
+      return getMessages();
+    }
+  }
+
+  @VisibleForTesting
+  int getSize() {
+    synchronized (myLock) {
+      return mySize;
+    }
+  }
+
+  @GuardedBy("myLock")
+  @NotNull
+  private List<LogCatMessage> getMessages(@NotNull long[] sequences, @NotNull LogcatQuery query) {
+    List<LogCatMessage> messages = new ArrayList<>(sequences.length);
+    for (long sequence : sequences) {
+      LogCatMessage message = myMessages[(int)((myHead + sequence - myHeadSequence) % myMessages.length)];
+      if (query.matches(message.getHeader())) {
+        messages.add(message);
+      }
+    }
+    return messages;
+  }
+
+  @GuardedBy("myLock")
+  private void append(@NotNull LogCatMessage message) {
+    if (myCount == myMessages.length) {
+      LogCatMessage[] messages = new LogCatMessage[myMessages.length * 2];
+      for (int i = 0; i < myCount; i++) {
+        messages[i] = myMessages[(myHead + i) % myMessages.length];
+      }
+      myMessages = messages;
+      myHead = 0;
+    }
+    long sequence = myHeadSequence + myCount;
+    myMessages[(myHead + myCount) % myMessages.length] = message;
+    myCount++;
+    mySize += message.getMessage().length();
+
+    LogCatHeader header = message.getHeader();
+    myPidIndex.computeIfAbsent(header.getPid(), pid -> new SequenceList()).add(sequence);
+    myLevelIndex[header.getLogLevel().ordinal()].add(sequence);
+  }
+
+  /**
+   * Drops the oldest message. Since it is also the oldest one of its process and of its level, it is first in both of their indices.
+   */
+  @GuardedBy("myLock")
+  private void removeFirst() {
+    LogCatMessage message = myMessages[myHead];
+    myMessages[myHead] = null;
+    myHead = (myHead + 1) % myMessages.length;
+    myCount--;
+    myHeadSequence++;
+    mySize -= message.getMessage().length();
+
+    LogCatHeader header = message.getHeader();
+    SequenceList sequences = myPidIndex.get(header.getPid());
+    sequences.removeFirst();
+    if (sequences.isEmpty()) {
+      myPidIndex.remove(header.getPid());
+    }
+    myLevelIndex[header.getLogLevel().ordinal()].removeFirst();
+  }
+
+  /**
+   * Returns a header equal to {@code header}, which shares its tag and package strings with the other headers of the buffer. The lines of
+   * a multi-line message share the same header instance, and keep sharing the returned one.
+   */
+  @GuardedBy("myLock")
+  @NotNull
+  private LogCatHeader share(@NotNull LogCatHeader header) {
+    if (header != myLastHeader) {
+      if (mySharedStrings.size() > MAX_SHARED_STRING_COUNT) {
+        mySharedStrings.clear();
+      }
+      myLastHeader = header;
+      myLastSharedHeader = new LogCatHeader(header.getLogLevel(),
+                                            header.getPid(),
+                                            header.getTid(),
+                                            share(header.getAppName()),
+                                            share(header.getTag()),
+                                            header.getTimestamp());
+    }
+    assert myLastSharedHeader != null;
+    return myLastSharedHeader;
+  }
+
+  @GuardedBy("myLock")
+  @NotNull
+  private String share(@NotNull String string) {
+    return mySharedStrings.computeIfAbsent(string, key -> key);
+  }
+
+  @NotNull
+  private static long[] merge(@NotNull long[] first, @NotNull long[] second) {
+    long[] merged = new long[first.length + second.length];
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < first.length && j < second.length) {
+      merged[k++] = first[i] < second[j] ? first[i++] : second[j++];
+    }
+    while (i < first.length) {
+      merged[k++] = first[i++];
+    }
+    while (j < second.length) {
+      merged[k++] = second[j++];
+    }
+    return merged;
+  }
+
+  /**
+   * Sequence numbers of messages in increasing order. Numbers are added at the end and removed from the start, like the messages.
+   */
+  private static final class SequenceList {
+    private long[] mySequences = new long[8];
+    private int myStart;
+    private int myEnd;
+
+    void add(long sequence) {
+      if (myEnd == mySequences.length) {
+        int count = myEnd - myStart;
+        if (count * 2 > mySequences.length) {
+          mySequences = Arrays.copyOfRange(mySequences, myStart, myStart + mySequences.length * 2);
+        }
+        else {
+          System.arraycopy(mySequences, myStart, mySequences, 0, count);
+        }
+        myStart = 0;
+        myEnd = count;
+      }
+      mySequences[myEnd++] = sequence;
+    }
+
+    void removeFirst() {
+      assert myStart < myEnd;
+      myStart++;
+    }
+
+    boolean isEmpty() {
+      return myStart == myEnd;
+    }
+
+    @NotNull
+    long[] toArray() {
+      return Arrays.copyOfRange(mySequences, myStart, myEnd);
+    }
+  }
+}
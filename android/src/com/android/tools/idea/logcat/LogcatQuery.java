@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Selects the messages of a device's logcat buffer by the fields of their header that are indexed, see
+ * {@link AndroidLogcatService#replayMessages}. A query is a superset of what a filter accepts: filters still check every message it
+ * selects.
+ */
+public final class LogcatQuery {
+  public static final LogcatQuery ALL = new LogcatQuery(null, null);
+
+  @Nullable private final Integer myPid;
+  @Nullable private final LogLevel myMinLevel;
+
+  /**
+   * @param pid      the process of the messages, or null for any process
+   * @param minLevel the lowest level of the messages, or null for any level
+   */
+  public LogcatQuery(@Nullable Integer pid, @Nullable LogLevel minLevel) {
+    myPid = pid;
+    myMinLevel = minLevel;
+  }
+
+  @Nullable
+  public Integer getPid() {
+    return myPid;
+  }
+
+  @Nullable
+  public LogLevel getMinLevel() {
+    return myMinLevel;
+  }
+
+  /**
+   * Returns a query which also rejects the messages below {@code level}.
+   */
+  @NotNull
+  public LogcatQuery withMinLevel(@NotNull LogLevel level) {
+    if (myMinLevel != null && myMinLevel.getPriority() >= level.getPriority()) {
+      return this;
+    }
+    return new LogcatQuery(myPid, level);
+  }
+
+  public boolean matches(@NotNull LogCatHeader header) {
+    if (myPid != null && myPid != header.getPid()) {
+      return false;
+    }
+    return myMinLevel == null || header.getLogLevel().getPriority() >= myMinLevel.getPriority();
+  }
+}
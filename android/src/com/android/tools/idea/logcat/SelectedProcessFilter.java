@@ -38,4 +38,10 @@ final class SelectedProcessFilter implements AndroidLogcatFilter {
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String p, int processId, @NotNull LogLevel priority) {
     return myProcessId == processId;
   }
+
+  @NotNull
+  @Override
+  public LogcatQuery getQuery() {
+    return new LogcatQuery(myProcessId, null);
+  }
 }
@@ -17,6 +17,7 @@ package com.android.tools.idea.logcat;
 
 import com.intellij.diagnostic.logging.LogConsoleBase;
 import com.intellij.util.Alarm;
+import java.util.List;
 import org.jetbrains.annotations.NotNull;
 
 final class ViewListener extends FormattedLogcatReceiver {
@@ -33,7 +34,17 @@ final class ViewListener extends FormattedLogcatReceiver {
   @Override
   void receiveFormattedLogLine(@NotNull String line) {
     myView.getLogConsole().addLogLine(line);
+    scheduleToolbarUpdate();
+  }
 
+  @Override
+  void receiveFormattedLogLines(@NotNull List<String> lines) {
+    AndroidLogConsole console = myView.getLogConsole();
+    lines.forEach(console::addLogLine);
+    scheduleToolbarUpdate();
+  }
+
+  private void scheduleToolbarUpdate() {
     myAlarm.cancelAllRequests();
     myAlarm.addRequest(myView.getToolbar()::updateActionsImmediately, 50);
   }
@@ -49,4 +60,15 @@ final class ViewListener extends FormattedLogcatReceiver {
 
     console.clear();
   }
+
+  @Override
+  public void onReplay() {
+    super.onReplay();
+    LogConsoleBase console = myView.getLogConsole();
+
+    if (console.getConsole() != null) {
+      console.clear();
+    }
+    myView.getLogFilterModel().processingStarted();
+  }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import net.jcip.annotations.GuardedBy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Runs the render actions of {@link RenderService} on a fixed number of worker threads.
+ * <p>
+ * Layoutlib keeps some state per thread (e.g. the {@code Choreographer} and the RecyclerView {@code GapWorker} are thread locals), so
+ * every action of a partition, usually a {@link RenderTask} and its layoutlib session, runs on the same worker. A new partition is given
+ * to the worker with the fewest pending actions. Actions without a partition run on the first worker.
+ * <p>
+ * Each worker runs its foreground actions before its background ones, and actions of the same priority in the order they were submitted.
+ */
+final class RenderExecutor {
+  @NotNull private final Worker[] myWorkers;
+
+  @GuardedBy("myPartitions")
+  private final Map<Object, Worker> myPartitions = new WeakHashMap<>();
+
+  @NotNull private final AtomicLong mySequence = new AtomicLong();
+
+  /**
+   * @param threadName name of the worker threads, followed by their number when there are more than one
+   */
+  RenderExecutor(int workerCount, @NotNull String threadName) {
+    assert workerCount > 0;
+    myWorkers = new Worker[workerCount];
+    for (int i = 0; i < workerCount; i++) {
+      myWorkers[i] = new Worker(workerCount == 1 ? threadName : threadName + " " + (i + 1));
+    }
+  }
+
+  int getWorkerCount() {
+    return myWorkers.length;
+  }
+
+  @NotNull
+  <T> Future<T> submit(@NotNull Callable<T> callable, @Nullable Object partition, boolean background) {
+    FutureTask<T> task = new FutureTask<>(callable);
+    execute(task, partition, background);
+    return task;
+  }
+
+  @NotNull
+  Future<?> submit(@NotNull Runnable runnable, @Nullable Object partition, boolean background) {
+    FutureTask<?> task = new FutureTask<>(runnable, null);
+    execute(task, partition, background);
+    return task;
+  }
+
+  @NotNull
+  <T> CompletableFuture<T> supplyAsync(@NotNull Supplier<T> supplier, @Nullable Object partition, boolean background) {
+    // CompletableFuture catches the exceptions of the supplier, they don't reach the worker thread.
+    return CompletableFuture.supplyAsync(supplier, runnable -> execute(runnable, partition, background));
+  }
+
+  /**
+   * Returns the thread running the actions of {@code partition}, if it was started.
+   */
+  @Nullable
+  Thread getThread(@Nullable Object partition) {
+    Worker worker;
+    if (partition == null) {
+      worker = myWorkers[0];
+    }
+    else {
+      synchronized (myPartitions) {
+        worker = myPartitions.get(partition);
+      }
+    }
+    return worker == null ? null : worker.myThread;
+  }
+
+  void shutdownNow() {
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.shutdownNow();
+      Thread thread = worker.myThread;
+      if (thread != null) {
+        thread.interrupt();
+      }
+    }
+  }
+
+  /**
+   * @return false if a worker was still running after the timeout
+   */
+  boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (Worker worker : myWorkers) {
+      if (!worker.myExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The runnable must not throw, since an exception would replace the worker thread and lose the layoutlib state kept by the thread.
+   */
+  private void execute(@NotNull Runnable runnable, @Nullable Object partition, boolean background) {
+    getWorker(partition).myExecutor.execute(new PrioritizedRunnable(runnable, background, mySequence.getAndIncrement()));
+  }
+
+  @NotNull
+  private Worker getWorker(@Nullable Object partition) {
+    if (partition == null || myWorkers.length == 1) {
+      return myWorkers[0];
+    }
+    synchronized (myPartitions) {
+      Worker worker = myPartitions.get(partition);
+      if (worker == null) {
+        worker = myWorkers[0];
+        for (Worker candidate : myWorkers) {
+          if (candidate.getPendingCount() < worker.getPendingCount()) {
+            worker = candidate;
+          }
+        }
+        myPartitions.put(partition, worker);
+      }
+      return worker;
+    }
+  }
+
+  private static final class Worker {
+    @NotNull private final ThreadPoolExecutor myExecutor;
+    @Nullable private volatile Thread myThread;
+
+    private Worker(@NotNull String threadName) {
+      myExecutor = new ThreadPoolExecutor(1, 1,
+                                          0, TimeUnit.MILLISECONDS,
+                                          new PriorityBlockingQueue<>(),
+                                          (Runnable r) -> {
+                                            Thread thread = new Thread(null, r, threadName);
+                                            thread.setDaemon(true);
+                                            myThread = thread;
+
+                                            return thread;
+                                          });
+    }
+
+    private int getPendingCount() {
+      return myExecutor.getQueue().size() + myExecutor.getActiveCount();
+    }
+  }
+
+  private static final class PrioritizedRunnable implements Runnable, Comparable<PrioritizedRunnable> {
+    @NotNull private final Runnable myRunnable;
+    private final boolean myBackground;
+    private final long mySequence;
+
+    private PrioritizedRunnable(@NotNull Runnable runnable, boolean background, long sequence) {
+      myRunnable = runnable;
+      myBackground = background;
+      mySequence = sequence;
+    }
+
+    @Override
+    public void run() {
+      myRunnable.run();
+    }
+
+    @Override
+    public int compareTo(@NotNull PrioritizedRunnable other) {
+      if (myBackground != other.myBackground) {
+        return myBackground ? 1 : -1;
+      }
+      return Long.compare(mySequence, other.mySequence);
+    }
+  }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.android.SdkConstants.LAYOUT_RESOURCE_PREFIX;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.ide.common.rendering.api.ViewType;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.sdklib.IAndroidTarget;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.rendering.imagepool.ImagePool;
+import com.android.tools.idea.rendering.parsers.AttributeSnapshot;
+import com.android.tools.idea.rendering.parsers.TagSnapshot;
+import com.android.tools.idea.res.ResourceNotificationManager;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import org.jetbrains.android.facet.AndroidFacet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Keeps the results of recent renders, so a layout rendered again in a state it was already rendered in, for example after switching back
+ * to a device or a theme, doesn't need a layoutlib pass.
+ * <p>
+ * The cache owns a copy of the image of each result, allocated from the {@link ImagePool}, and returns a new copy on every hit so the
+ * callers can keep disposing their results as usual. The cached copies are softly referenced: under memory pressure they are collected and
+ * the pool reclaims their buffers. The cached views do not reference the view objects of their render session, which is disposed once the
+ * result is cached.
+ */
+public final class RenderResultCache {
+  /**
+   * Total size of the cached images.
+   */
+  private static final long MAX_CACHED_IMAGE_BYTES = 64L * 1024 * 1024;
+
+  @NotNull private final ImagePool myImagePool;
+
+  @NotNull private final Cache<Key, RenderResult> myCache;
+
+  public RenderResultCache(@NotNull ImagePool imagePool) {
+    this(imagePool, MAX_CACHED_IMAGE_BYTES);
+  }
+
+  @VisibleForTesting
+  RenderResultCache(@NotNull ImagePool imagePool, long maxImageBytes) {
+    myImagePool = imagePool;
+    myCache = CacheBuilder.newBuilder()
+      // A single segment, so the maximum weight applies to the whole cache and not to each segment
+      .concurrencyLevel(1)
+      .softValues()
+      .weigher((Key key, RenderResult result) -> getImageBytes(result))
+      .maximumWeight(maxImageBytes)
+      .<Key, RenderResult>removalListener(notification -> {
+        // The value is null if it was collected, in which case the image pool already got the image back.
+        RenderResult result = notification.getValue();
+        if (result != null) {
+          synchronized (result) {
+            result.dispose();
+          }
+        }
+      })
+      .build();
+  }
+
+  /**
+   * Returns a copy of the result cached for {@code key}, which the caller has to dispose, or null if there is none.
+   * <p>
+   * The view cookies of the result are the {@link TagSnapshot}s of the render that was cached. If any of their tags has since been
+   * removed from the PSI, e.g. the layout was reparsed, the result can't be mapped back to the layout anymore and is dropped.
+   */
+  @Nullable
+  public RenderResult get(@NotNull Key key) {
+    RenderResult cached = myCache.getIfPresent(key);
+    if (cached == null) {
+      return null;
+    }
+    boolean isValid = ApplicationManager.getApplication().runReadAction((Computable<Boolean>)() -> hasValidCookies(cached.getRootViews()));
+    if (!isValid) {
+      myCache.invalidate(key);
+      return null;
+    }
+    synchronized (cached) {
+      // The result might have been evicted while we were checking it
+      return cached.hasImage() ? copy(cached, cached.getRootViews(), cached.getSystemRootViews()) : null;
+    }
+  }
+
+  public boolean contains(@NotNull Key key) {
+    return myCache.getIfPresent(key) != null;
+  }
+
+  /**
+   * Caches a copy of {@code result} for {@code key}. Only successful renders with an image are cached.
+   */
+  public void put(@NotNull Key key, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.hasImage()) {
+      return;
+    }
+    myCache.put(key, copy(result, withoutViewObjects(result.getRootViews()), withoutViewObjects(result.getSystemRootViews())));
+  }
+
+  public void invalidateAll() {
+    myCache.invalidateAll();
+  }
+
+  /**
+   * Copies {@code result} with a new pooled copy of its image and the given views. The copy does not reference the {@link RenderTask},
+   * which is disposed independently of the cache.
+   */
+  @NotNull
+  private RenderResult copy(@NotNull RenderResult result,
+                            @NotNull ImmutableList<ViewInfo> rootViews,
+                            @NotNull ImmutableList<ViewInfo> systemRootViews) {
+    ImagePool.Image source = result.getRenderedImage();
+    int width = source.getWidth();
+    int height = source.getHeight();
+    ImagePool.Image image = myImagePool.create(width, height, BufferedImage.TYPE_INT_ARGB);
+    image.paint(g -> source.drawImageTo(g, 0, 0, width, height));
+    return new RenderResult(result.getFile(),
+                            result.getModule(),
+                            result.getLogger(),
+                            null,
+                            result.getRenderResult(),
+                            rootViews,
+                            systemRootViews,
+                            image,
+                            result.getDefaultProperties(),
+                            result.getDefaultStyles());
+  }
+
+  /**
+   * Copies {@code views} and their children without their view and layout params objects, so the cache doesn't keep the objects of
+   * disposed render sessions, and their class loaders, alive.
+   */
+  @NotNull
+  private static ImmutableList<ViewInfo> withoutViewObjects(@NotNull List<ViewInfo> views) {
+    ImmutableList.Builder<ViewInfo> copies = ImmutableList.builder();
+    for (ViewInfo view : views) {
+      ViewInfo copy = new CachedViewInfo(view);
+      copy.setExtendedInfo(view.getBaseLine(), view.getLeftMargin(), view.getTopMargin(), view.getRightMargin(), view.getBottomMargin());
+      copy.setChildren(withoutViewObjects(view.getChildren()));
+      copies.add(copy);
+    }
+    return copies.build();
+  }
+
+  private static int getImageBytes(@NotNull RenderResult result) {
+    ImagePool.Image image = result.getRenderedImage();
+    return image.getWidth() * image.getHeight() * 4;
+  }
+
+  private static boolean hasValidCookies(@NotNull List<ViewInfo> views) {
+    for (ViewInfo view : views) {
+      Object cookie = view.getCookie();
+      if (cookie instanceof TagSnapshot) {
+        XmlTag tag = ((TagSnapshot)cookie).tag;
+        if (tag != null && !tag.isValid()) {
+          return false;
+        }
+      }
+      if (!hasValidCookies(view.getChildren())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A {@link ViewInfo} without view objects, which keeps the {@link ViewType} of the view it was copied from.
+   */
+  private static final class CachedViewInfo extends ViewInfo {
+    @NotNull private final ViewType myViewType;
+
+    private CachedViewInfo(@NotNull ViewInfo view) {
+      super(view.getClassName(), view.getCookie(), view.getLeft(), view.getTop(), view.getRight(), view.getBottom());
+      myViewType = view.getViewType();
+    }
+
+    @NotNull
+    @Override
+    public ViewType getViewType() {
+      return myViewType;
+    }
+  }
+
+  /**
+   * Identifies the state a layout is rendered in: the content of the layout, the version of the resources and of the classes of the
+   * project, and the state of the {@link Configuration}.
+   */
+  public static final class Key {
+    @NotNull private final XmlFile myFile;
+    private final long myLayoutHash;
+    @NotNull private final ResourceNotificationManager.ResourceVersion myResourceVersion;
+    private final long myBuildGeneration;
+    @NotNull private final List<Object> myConfigurationState;
+    @NotNull private final Object myRenderOptions;
+
+    private Key(@NotNull XmlFile file,
+                long layoutHash,
+                @NotNull ResourceNotificationManager.ResourceVersion resourceVersion,
+                long buildGeneration,
+                @NotNull List<Object> configurationState,
+                @NotNull Object renderOptions) {
+      myFile = file;
+      myLayoutHash = layoutHash;
+      myResourceVersion = resourceVersion;
+      myBuildGeneration = buildGeneration;
+      myConfigurationState = configurationState;
+      myRenderOptions = renderOptions;
+    }
+
+    /**
+     * Returns the key of the current state of {@code file}, or null if its renders can't be cached.
+     * <p>
+     * The layout is identified by a hash of its {@link TagSnapshot} tree, rather than by the modification stamp of its file, so the key
+     * does not depend on how the PSI got to its current state. A layout referencing another layout (includes, view stubs,
+     * {@code tools:listitem}...) is not cached, since the hash doesn't cover the other layout. The hash is kept until the file changes,
+     * since the key is created on every update of the model.
+     * <p>
+     * The classes of the project are identified by the number of builds, see {@link RenderService#getBuildGeneration()}.
+     * <p>
+     * The configuration is identified by its values instead of its modification count, which only ever increases.
+     *
+     * @param renderOptions the options of the render that change its result, e.g. the quality or the decorations. It has to implement
+     *                      {@link Object#equals}.
+     */
+    @Nullable
+    public static Key create(@NotNull AndroidFacet facet,
+                             @NotNull XmlFile file,
+                             @NotNull Configuration configuration,
+                             @NotNull Object renderOptions) {
+      Long layoutHash = ApplicationManager.getApplication().runReadAction((Computable<Long>)() -> CachedValuesManager.getCachedValue(
+        file, () -> CachedValueProvider.Result.create(computeLayoutHash(file), file)));
+      if (layoutHash == null) {
+        return null;
+      }
+
+      // The file and configuration parts of the version are covered by the layout hash and the configuration state.
+      ResourceNotificationManager.ResourceVersion resourceVersion =
+        ResourceNotificationManager.getInstance(file.getProject()).getCurrentVersion(facet, null, null);
+      long buildGeneration = RenderService.getInstance(file.getProject()).getBuildGeneration();
+      return new Key(file, layoutHash, resourceVersion, buildGeneration, getConfigurationState(configuration), renderOptions);
+    }
+
+    @Nullable
+    private static Long computeLayoutHash(@NotNull XmlFile file) {
+      XmlTag rootTag = file.getRootTag();
+      if (rootTag == null) {
+        return null;
+      }
+      TagSnapshot snapshot = TagSnapshot.createTagSnapshot(rootTag, null);
+      Hasher hasher = Hashing.goodFastHash(64).newHasher();
+      return hash(snapshot, hasher) ? hasher.hash().asLong() : null;
+    }
+
+    /**
+     * Adds {@code snapshot} and its children to {@code hasher}.
+     *
+     * @return false if the layout references another layout
+     */
+    private static boolean hash(@NotNull TagSnapshot snapshot, @NotNull Hasher hasher) {
+      for (AttributeSnapshot attribute : snapshot.attributes) {
+        if (attribute.value != null && attribute.value.startsWith(LAYOUT_RESOURCE_PREFIX)) {
+          return false;
+        }
+      }
+      hasher.putLong(snapshot.getSignature());
+      hasher.putInt(snapshot.children.size());
+      for (TagSnapshot child : snapshot.children) {
+        if (!hash(child, hasher)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @NotNull
+    private static List<Object> getConfigurationState(@NotNull Configuration configuration) {
+      IAndroidTarget target = configuration.getTarget();
+      return Arrays.asList(configuration.getDevice(),
+                           configuration.getDeviceState(),
+                           FolderConfiguration.copyOf(configuration.getFullConfig()),
+                           target != null ? target.hashString() : null,
+                           configuration.getTheme(),
+                           configuration.getLocale(),
+                           configuration.getUiMode(),
+                           configuration.getNightMode(),
+                           configuration.getFontScale(),
+                           configuration.getActivity());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key)o;
+
+      return myFile == key.myFile &&
+             myLayoutHash == key.myLayoutHash &&
+             myResourceVersion.equals(key.myResourceVersion) &&
+             myBuildGeneration == key.myBuildGeneration &&
+             myConfigurationState.equals(key.myConfigurationState) &&
+             myRenderOptions.equals(key.myRenderOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = System.identityHashCode(myFile);
+      result = 31 * result + (int)(myLayoutHash ^ (myLayoutHash >>> 32));
+      result = 31 * result + myResourceVersion.hashCode();
+      result = 31 * result + (int)(myBuildGeneration ^ (myBuildGeneration >>> 32));
+      result = 31 * result + myConfigurationState.hashCode();
+      result = 31 * result + myRenderOptions.hashCode();
+      return result;
+    }
+  }
+}
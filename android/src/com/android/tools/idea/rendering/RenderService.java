@@ -31,6 +31,7 @@ import com.android.tools.idea.gradle.structure.AndroidProjectSettingsService;
 import com.android.tools.idea.layoutlib.LayoutLibrary;
 import com.android.tools.idea.layoutlib.RenderingException;
 import com.android.tools.idea.layoutlib.UnsupportedJavaRuntimeException;
+import com.android.tools.idea.project.AndroidProjectBuildNotifications;
 import com.android.tools.idea.project.AndroidProjectInfo;
 import com.android.tools.idea.rendering.imagepool.ImagePool;
 import com.android.tools.idea.rendering.imagepool.ImagePoolFactory;
@@ -55,14 +56,11 @@ import com.intellij.util.IncorrectOperationException;
 import com.intellij.util.concurrency.AppExecutorUtil;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 import org.intellij.lang.annotations.MagicConstant;
 import org.jetbrains.android.facet.AndroidFacet;
@@ -87,8 +85,12 @@ public class RenderService implements Disposable {
                                                                               : 6));
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  /**
+   * Number of threads running render actions. Layoutlib serializes inflating and rendering with its own global lock, so more workers only
+   * overlap the work done around those calls, and let the actions of a {@link RenderTask} wait behind those of its own worker only.
+   */
+  private static final int RENDER_WORKER_COUNT = Math.max(1, Integer.getInteger("layoutlib.render.workers", 1));
+  private static RenderExecutor ourRenderingExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   private static final Key<RenderService> KEY = Key.create(RenderService.class.getName());
@@ -103,16 +105,11 @@ public class RenderService implements Disposable {
   private final Project myProject;
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(1, 1,
-                             0, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread = new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
+    initializeRenderExecutor(RENDER_WORKER_COUNT);
+  }
 
-                               return renderingThread;
-                             });
+  private static void initializeRenderExecutor(int workerCount) {
+    ourRenderingExecutor = new RenderExecutor(workerCount, "Layoutlib Render Thread");
   }
 
   @TestOnly
@@ -122,12 +119,18 @@ public class RenderService implements Disposable {
     innerInitializeRenderExecutor();
   }
 
+  /**
+   * Replaces the render threads by {@code workerCount} new ones. The previous threads should have been shut down.
+   */
+  @TestOnly
+  static void initializeRenderExecutorForTesting(int workerCount) {
+    assert ApplicationManager.getApplication().isUnitTestMode(); // Only to be called from unit tests
+
+    initializeRenderExecutor(workerCount);
+  }
+
   private static void shutdownRenderExecutor() {
     ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
   }
 
   /**
@@ -156,6 +159,13 @@ public class RenderService implements Disposable {
 
   private final ImagePool myImagePool = ImagePoolFactory.createImagePool();
 
+  private final RenderResultCache myRenderResultCache = new RenderResultCache(myImagePool);
+
+  /**
+   * Number of builds of the project, which replace the classes of the custom views. Part of the {@link RenderResultCache.Key}.
+   */
+  private final AtomicLong myBuildGeneration = new AtomicLong();
+
   /**
    * @return the {@linkplain RenderService} for the given facet.
    */
@@ -178,6 +188,10 @@ public class RenderService implements Disposable {
   protected RenderService(@NotNull Project project) {
     myProject = project;
     Disposer.register(project, this);
+    AndroidProjectBuildNotifications.subscribe(project, this, context -> {
+      myBuildGeneration.incrementAndGet();
+      myRenderResultCache.invalidateAll();
+    });
   }
 
   @Nullable
@@ -239,6 +253,7 @@ public class RenderService implements Disposable {
   @Override
   public void dispose() {
     myProject.putUserData(KEY, null);
+    myRenderResultCache.invalidateAll();
     myImagePool.dispose();
   }
 
@@ -287,11 +302,37 @@ public class RenderService implements Disposable {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, null, false);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of {@code partition}. Actions that touch the views of a render
+   * session must pass the same partition as the {@link RenderTask} that owns the session, see {@link RenderTask#setRenderPartition}.
+   */
+  public static void runRenderAction(@NotNull Runnable runnable, @NotNull Object partition) throws Exception {
+    runRenderAction(Executors.callable(runnable), partition, false);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of {@code partition}. Actions that touch the views of a render
+   * session must pass the same partition as the {@link RenderTask} that owns the session, see {@link RenderTask#setRenderPartition}.
+   */
+  public static <T> T runRenderAction(@NotNull Callable<T> callable, @NotNull Object partition) throws Exception {
+    return runRenderAction(callable, partition, false);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock on the render thread of {@code partition}, see {@link RenderExecutor}.
+   *
+   * @param background whether the action should wait for the foreground actions of the render thread, e.g. because it is not for the
+   *                   editor the user is working in
+   */
+  static <T> T runRenderAction(@NotNull Callable<T> callable, @Nullable Object partition, boolean background) throws Exception {
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0), partition, background).get(50, TimeUnit.MILLISECONDS);
       }
       long timeout = ourRenderThreadTimeoutMs;
       if (isFirstCall) {
@@ -300,7 +341,7 @@ public class RenderService implements Disposable {
         isFirstCall = false;
         timeout *= 2;
       }
-      T result = ourRenderingExecutor.submit(callable).get(timeout, TimeUnit.MILLISECONDS);
+      T result = ourRenderingExecutor.submit(callable, partition, background).get(timeout, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -309,7 +350,7 @@ public class RenderService implements Disposable {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderingExecutor.getThread(partition);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -328,7 +369,17 @@ public class RenderService implements Disposable {
    */
   @NotNull
   public static <T> CompletableFuture<T> runAsyncRenderAction(@NotNull Supplier<T> callable) {
-    return CompletableFuture.supplyAsync(callable, ourRenderingExecutor);
+    return runAsyncRenderAction(callable, null, false);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread of {@code partition}.
+   *
+   * @see #runRenderAction(Callable, Object, boolean)
+   */
+  @NotNull
+  static <T> CompletableFuture<T> runAsyncRenderAction(@NotNull Supplier<T> callable, @Nullable Object partition, boolean background) {
+    return ourRenderingExecutor.supplyAsync(callable, partition, background);
   }
 
   /**
@@ -338,7 +389,25 @@ public class RenderService implements Disposable {
    * This method will run the passed action asynchronously
    */
   public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.submit(runnable);
+    runAsyncRenderAction(runnable, null, false);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread of {@code partition}.
+   *
+   * @see #runRenderAction(Callable, Object)
+   */
+  public static void runAsyncRenderAction(@NotNull Runnable runnable, @NotNull Object partition) {
+    runAsyncRenderAction(runnable, partition, false);
+  }
+
+  /**
+   * Runs an action that requires the rendering lock asynchronously on the render thread of {@code partition}.
+   *
+   * @see #runRenderAction(Callable, Object, boolean)
+   */
+  static void runAsyncRenderAction(@NotNull Runnable runnable, @Nullable Object partition, boolean background) {
+    ourRenderingExecutor.submit(runnable, partition, background);
   }
 
   /**
@@ -412,6 +481,18 @@ public class RenderService implements Disposable {
     return myImagePool;
   }
 
+  @NotNull
+  public RenderResultCache getRenderResultCache() {
+    return myRenderResultCache;
+  }
+
+  /**
+   * Returns the number of builds of the project since this service was created.
+   */
+  public long getBuildGeneration() {
+    return myBuildGeneration.get();
+  }
+
   /** This is the View.MeasureSpec mode shift */
   private static final int MEASURE_SPEC_MODE_SHIFT = 30;
 
@@ -442,6 +523,8 @@ public class RenderService implements Disposable {
     private boolean useHighQualityShadows = StudioFlags.NELE_RENDER_HIGH_QUALITY_SHADOW.get();
     private SessionParams.RenderingMode myRenderingMode = null;
     private boolean useTransparentBackground = false;
+    private boolean useBackgroundPriority = false;
+    @Nullable private Object myRenderPartition = null;
 
     private RenderTaskBuilder(@NotNull RenderService service,
                               @NotNull AndroidFacet facet,
@@ -558,6 +641,24 @@ public class RenderService implements Disposable {
       return this;
     }
 
+    /**
+     * @see RenderTask#setBackgroundPriority(boolean)
+     */
+    @NotNull
+    public RenderTaskBuilder withBackgroundPriority() {
+      useBackgroundPriority = true;
+      return this;
+    }
+
+    /**
+     * @see RenderTask#setRenderPartition(Object)
+     */
+    @NotNull
+    public RenderTaskBuilder withRenderPartition(@NotNull Object partition) {
+      myRenderPartition = partition;
+      return this;
+    }
+
     /**
      * Builds a new {@link RenderTask}. The returned future always completes successfully but the value might be null if the RenderTask
      * can not be created.
@@ -638,7 +739,12 @@ public class RenderService implements Disposable {
           task
             .setDecorations(showDecorations)
             .setHighQualityShadows(useHighQualityShadows)
-            .setShadowEnabled(isShadowEnabled);
+            .setShadowEnabled(isShadowEnabled)
+            .setBackgroundPriority(useBackgroundPriority);
+
+          if (myRenderPartition != null) {
+            task.setRenderPartition(myRenderPartition);
+          }
 
           if (myMaxRenderWidth != -1 && myMaxRenderHeight != -1) {
             task.setMaxRenderSize(myMaxRenderWidth, myMaxRenderHeight);
@@ -156,6 +156,8 @@ public class RenderTask {
   private boolean myShowDecorations = true;
   private boolean myShadowEnabled = true;
   private boolean myHighQualityShadow = true;
+  private boolean myBackgroundPriority;
+  @NotNull private Object myRenderPartition = this;
   private AssetRepositoryImpl myAssetRepository;
   private long myTimeout;
   @NotNull private final Locale myLocale;
@@ -294,7 +296,7 @@ public class RenderTask {
       Field gapWorkerField = gapWorkerClass.getDeclaredField("sGapWorker");
       gapWorkerField.setAccessible(true);
 
-      // Because we are clearing-up a ThreadLocal, the code must run on the Layoutlib Thread
+      // Because we are clearing-up a ThreadLocal, the code must run on the render thread of this task
       RenderService.runAsyncRenderAction(() -> {
         try {
           ThreadLocal<?> gapWorkerFieldValue = (ThreadLocal<?>)gapWorkerField.get(null);
@@ -304,7 +306,7 @@ public class RenderTask {
         catch (IllegalAccessException e) {
           LOG.debug(e);
         }
-      });
+      }, myRenderPartition, myBackgroundPriority);
     } catch(Throwable t) {
       LOG.debug(t);
     }
@@ -337,7 +339,7 @@ public class RenderTask {
       myLayoutlibCallback.setLogger(IRenderLogger.NULL_LOGGER);
       if (myRenderSession != null) {
         try {
-          RenderService.runAsyncRenderAction(myRenderSession::dispose);
+          RenderService.runAsyncRenderAction(myRenderSession::dispose, myRenderPartition, myBackgroundPriority);
           myRenderSession = null;
         }
         catch (Exception ignored) {
@@ -458,6 +460,31 @@ public class RenderTask {
     return this;
   }
 
+  /**
+   * Sets whether the render actions of this task wait for the ones of the other tasks, e.g. because it renders a preview which is not
+   * in the editor the user is working in. See {@link RenderExecutor}.
+   * <p>
+   * Default is {@code false}.
+   */
+  @NotNull
+  public RenderTask setBackgroundPriority(boolean backgroundPriority) {
+    myBackgroundPriority = backgroundPriority;
+    return this;
+  }
+
+  /**
+   * Sets the key that selects the render thread of this task, see {@link RenderExecutor}. Actions that touch the views of the render
+   * session from outside this task, e.g. editing their layout params, must run with {@link RenderService#runRenderAction(Callable, Object)}
+   * using the same partition since layoutlib requires the session to be used from a single thread.
+   * <p>
+   * Default is the task itself.
+   */
+  @NotNull
+  public RenderTask setRenderPartition(@NotNull Object partition) {
+    myRenderPartition = partition;
+    return this;
+  }
+
   /** Returns whether this parser will provide view cookies for included views. */
   public boolean getProvideCookiesForIncludedViews() {
     return myProvideCookiesForIncludedViews;
@@ -691,17 +718,18 @@ public class RenderTask {
   /**
    * Executes the passed {@link Callable} as an async render action and keeps track of it. If {@link #dispose()} is called, the call will
    * wait until all the async actions have finished running.
-   * See {@link RenderService#runAsyncRenderAction(Supplier)}.
+   * See {@link RenderService#runAsyncRenderAction(Supplier, Object, boolean)}.
+   * <p>
+   * The action runs on the thread of the render session, so it can also be used to update the views it inflated before the next render.
    */
-  @VisibleForTesting
   @NotNull
-  <V> CompletableFuture<V> runAsyncRenderAction(@NotNull Supplier<V> callable) {
+  public <V> CompletableFuture<V> runAsyncRenderAction(@NotNull Supplier<V> callable) {
     if (isDisposed.get()) {
       return immediateFailedFuture(new IllegalStateException("RenderTask was already disposed"));
     }
 
     synchronized (myRunningFutures) {
-      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      CompletableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable, myRenderPartition, myBackgroundPriority);
       myRunningFutures.add(newFuture);
       newFuture
         .whenCompleteAsync((result, ex) -> {
@@ -831,7 +859,7 @@ public class RenderTask {
           clearGapWorkerCache();
           RenderService.runAsyncRenderAction(() -> {
             android.view.Choreographer.releaseInstance();
-          });
+          }, myRenderPartition, myBackgroundPriority);
         });
       }
       catch (Exception e) {
@@ -977,7 +1005,7 @@ public class RenderTask {
     }
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params), myRenderPartition, myBackgroundPriority);
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -1036,7 +1064,7 @@ public class RenderTask {
   public CompletableFuture<Map<XmlTag, ViewInfo>> measureChildren(@NotNull XmlTag parent, @Nullable AttributeFilter filter) {
     ILayoutPullParser modelParser = LayoutPsiPullParser.create(filter, parent, myLogger);
     Map<XmlTag, ViewInfo> map = new HashMap<>();
-    return RenderService.runAsyncRenderAction(() -> measure(modelParser))
+    return RenderService.runAsyncRenderAction(() -> measure(modelParser), myRenderPartition, myBackgroundPriority)
         .thenComposeAsync(session -> {
           if (session != null) {
             try {
@@ -1057,7 +1085,7 @@ public class RenderTask {
               return CompletableFuture.completedFuture(map);
             }
             finally {
-              RenderService.runAsyncRenderAction(session::dispose);
+              RenderService.runAsyncRenderAction(session::dispose, myRenderPartition, myBackgroundPriority);
             }
           }
 
@@ -23,11 +23,12 @@ import com.android.ide.common.resources.ResourceTable;
 import com.android.ide.common.resources.ResourceVisitor;
 import com.android.resources.ResourceType;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ListMultimap;
-import java.util.List;
+import com.google.common.collect.Maps;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.function.Predicate;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -37,8 +38,12 @@ import org.jetbrains.annotations.Nullable;
  * <ul>
  *   <li>May compute cells in the table on-demand.
  *   <li>May change in the background, if underlying files or other sources of data have changed.
- *       Because of that access should be synchronized on the {@code ITEM_MAP_LOCK} object.
+ *       Because of that modifications of the table should be done while holding the {@code ITEM_MAP_LOCK} object.
  * </ul>
+ *
+ * <p>Reads don't use the table directly. They are served from an immutable snapshot of its cells, which readers use without locking.
+ * A cell missing from the snapshot is copied from the table while holding {@code ITEM_MAP_LOCK}, and the snapshot is replaced by a new
+ * one sharing the other cells. Subclasses call {@link #invalidateSnapshot} after modifying the table, which only drops the modified cells.
  */
 public abstract class AbstractResourceRepositoryWithLocking extends AbstractResourceRepository {
   /**
@@ -50,6 +55,11 @@ public abstract class AbstractResourceRepositoryWithLocking extends AbstractReso
    */
   public static final Object ITEM_MAP_LOCK = new Object();
 
+  /**
+   * The cells of the table read since they were last modified. Replaced, never modified, while holding {@link #ITEM_MAP_LOCK}.
+   */
+  private volatile Snapshot mySnapshot = Snapshot.EMPTY;
+
   /**
    * Returns the fully computed {@link ResourceTable} for this repository.
    *
@@ -72,52 +82,56 @@ public abstract class AbstractResourceRepositoryWithLocking extends AbstractReso
     return getMap(namespace, resourceType, true);
   }
 
-  @GuardedBy("AbstractResourceRepositoryWithLocking.ITEM_MAP_LOCK")
+  /**
+   * Returns the immutable snapshot of the given cell of the table. Doesn't lock unless the cell was modified since it was last read.
+   */
   @Override
   @NotNull
   protected ListMultimap<String, ResourceItem> getResourcesInternal(
       @NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    ListMultimap<String, ResourceItem> map = getMap(namespace, resourceType, false);
-    return map == null ? ImmutableListMultimap.of() : map;
-  }
+    ListMultimap<String, ResourceItem> cell = mySnapshot.get(namespace, resourceType);
+    if (cell != null) {
+      return cell;
+    }
 
-  @Override
-  @NotNull
-  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
-                                         @NotNull ResourceType resourceType,
-                                         @NotNull String resourceName) {
     synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType, resourceName);
+      Snapshot snapshot = mySnapshot;
+      cell = snapshot.get(namespace, resourceType);
+      if (cell == null) {
+        ListMultimap<String, ResourceItem> map = getMap(namespace, resourceType, false);
+        cell = map == null ? ImmutableListMultimap.of() : ImmutableListMultimap.copyOf(map);
+        mySnapshot = snapshot.with(namespace, resourceType, cell);
+      }
+      return cell;
     }
   }
 
-  @Override
-  @NotNull
-  public List<ResourceItem> getResources(@NotNull ResourceNamespace namespace,
-                                         @NotNull ResourceType resourceType,
-                                         @NotNull Predicate<ResourceItem> filter) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType, filter);
-    }
+  /**
+   * Drops all cells from the snapshot read by {@link #getResourcesInternal}. Has to be called after modifying the table in a way not
+   * covered by {@link #invalidateSnapshot(ResourceNamespace, ResourceType...)}, while still holding {@link #ITEM_MAP_LOCK}.
+   */
+  @GuardedBy("AbstractResourceRepositoryWithLocking.ITEM_MAP_LOCK")
+  protected final void invalidateSnapshot() {
+    mySnapshot = Snapshot.EMPTY;
   }
 
-  @Override
-  @NotNull
-  public ListMultimap<String, ResourceItem> getResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResources(namespace, resourceType);
-    }
+  /**
+   * Drops the given cells from the snapshot read by {@link #getResourcesInternal}. Has to be called after modifying them, while still
+   * holding {@link #ITEM_MAP_LOCK}, so no reader copies them in between.
+   */
+  @GuardedBy("AbstractResourceRepositoryWithLocking.ITEM_MAP_LOCK")
+  protected final void invalidateSnapshot(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+    mySnapshot = mySnapshot.without(namespace, types);
   }
 
   @Override
   @NotNull
   public ResourceVisitor.VisitResult accept(@NotNull ResourceVisitor visitor) {
-    synchronized (ITEM_MAP_LOCK) {
-      for (Map.Entry<ResourceNamespace, Map<ResourceType, ListMultimap<String, ResourceItem>>> entry : getFullTable().rowMap().entrySet()) {
-        if (visitor.shouldVisitNamespace(entry.getKey())) {
-          if (acceptByResources(entry.getValue(), visitor) == ResourceVisitor.VisitResult.ABORT) {
-            return ResourceVisitor.VisitResult.ABORT;
-          }
+    for (Map.Entry<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> entry :
+         getCompleteSnapshot().myCells.entrySet()) {
+      if (visitor.shouldVisitNamespace(entry.getKey())) {
+        if (acceptByResources(entry.getValue(), visitor) == ResourceVisitor.VisitResult.ABORT) {
+          return ResourceVisitor.VisitResult.ABORT;
         }
       }
     }
@@ -125,25 +139,109 @@ public abstract class AbstractResourceRepositoryWithLocking extends AbstractReso
     return ResourceVisitor.VisitResult.CONTINUE;
   }
 
-  @Override
-  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType, @NotNull String resourceName) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.hasResources(namespace, resourceType, resourceName);
+  /**
+   * Returns a snapshot containing all cells of the table.
+   */
+  @NotNull
+  private Snapshot getCompleteSnapshot() {
+    Snapshot snapshot = mySnapshot;
+    if (snapshot.myComplete) {
+      return snapshot;
     }
-  }
 
-  @Override
-  public boolean hasResources(@NotNull ResourceNamespace namespace, @NotNull ResourceType resourceType) {
     synchronized (ITEM_MAP_LOCK) {
-      return super.hasResources(namespace, resourceType);
+      snapshot = mySnapshot;
+      if (!snapshot.myComplete) {
+        snapshot = snapshot.complete(getFullTable());
+        mySnapshot = snapshot;
+      }
+      return snapshot;
     }
   }
 
-  @Override
-  @NotNull
-  public Set<ResourceType> getResourceTypes(@NotNull ResourceNamespace namespace) {
-    synchronized (ITEM_MAP_LOCK) {
-      return super.getResourceTypes(namespace);
+  /**
+   * Immutable copies of cells of the table. The cells are shared between successive snapshots, so publishing a snapshot with a new or
+   * without a modified cell only copies the maps leading to it.
+   */
+  private static final class Snapshot {
+    static final Snapshot EMPTY = new Snapshot(ImmutableMap.of(), false);
+
+    @NotNull final ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> myCells;
+    /** Whether all cells of the table are in the snapshot, in which case a missing cell is empty rather than not copied yet. */
+    final boolean myComplete;
+
+    private Snapshot(@NotNull ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> cells,
+                     boolean complete) {
+      myCells = cells;
+      myComplete = complete;
+    }
+
+    /**
+     * Returns the copy of the given cell, or null if it hasn't been copied yet.
+     */
+    @Nullable
+    ListMultimap<String, ResourceItem> get(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> row = myCells.get(namespace);
+      ListMultimap<String, ResourceItem> cell = row == null ? null : row.get(type);
+      return cell == null && myComplete ? ImmutableListMultimap.of() : cell;
+    }
+
+    @NotNull
+    Snapshot with(@NotNull ResourceNamespace namespace, @NotNull ResourceType type, @NotNull ListMultimap<String, ResourceItem> cell) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> row = copyRow(namespace);
+      row.put(type, cell);
+      return new Snapshot(withRow(namespace, row), myComplete);
+    }
+
+    @NotNull
+    Snapshot without(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+      if (!myCells.containsKey(namespace)) {
+        return myComplete ? new Snapshot(myCells, false) : this;
+      }
+      Map<ResourceType, ListMultimap<String, ResourceItem>> row = copyRow(namespace);
+      row.keySet().removeAll(Arrays.asList(types));
+      return new Snapshot(withRow(namespace, row), false);
+    }
+
+    /**
+     * Returns a complete snapshot, copying the cells of {@code table} missing from this one.
+     */
+    @NotNull
+    Snapshot complete(@NotNull ResourceTable table) {
+      Snapshot snapshot = new Snapshot(myCells, true);
+      for (Map.Entry<ResourceNamespace, Map<ResourceType, ListMultimap<String, ResourceItem>>> tableRow : table.rowMap().entrySet()) {
+        ResourceNamespace namespace = tableRow.getKey();
+        Map<ResourceType, ListMultimap<String, ResourceItem>> row = snapshot.copyRow(namespace);
+        for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> tableCell : tableRow.getValue().entrySet()) {
+          row.computeIfAbsent(tableCell.getKey(), type -> ImmutableListMultimap.copyOf(tableCell.getValue()));
+        }
+        snapshot = new Snapshot(snapshot.withRow(namespace, row), true);
+      }
+      return snapshot;
+    }
+
+    @NotNull
+    private Map<ResourceType, ListMultimap<String, ResourceItem>> copyRow(@NotNull ResourceNamespace namespace) {
+      Map<ResourceType, ListMultimap<String, ResourceItem>> row = new EnumMap<>(ResourceType.class);
+      ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>> existing = myCells.get(namespace);
+      if (existing != null) {
+        row.putAll(existing);
+      }
+      return row;
+    }
+
+    @NotNull
+    private ImmutableMap<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> withRow(
+        @NotNull ResourceNamespace namespace, @NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> row) {
+      ImmutableMap.Builder<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> builder =
+          ImmutableMap.builderWithExpectedSize(myCells.size() + 1);
+      for (Map.Entry<ResourceNamespace, ImmutableMap<ResourceType, ListMultimap<String, ResourceItem>>> entry : myCells.entrySet()) {
+        if (!entry.getKey().equals(namespace)) {
+          builder.put(entry);
+        }
+      }
+      builder.put(namespace, Maps.immutableEnumMap(row));
+      return builder.build();
     }
   }
 }
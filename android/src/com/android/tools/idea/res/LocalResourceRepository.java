@@ -33,7 +33,10 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -139,6 +142,14 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
 
   private volatile long myGeneration;
 
+  /**
+   * Generations of the resources of each namespace and type, indexed by {@link ResourceType#ordinal()}, for the types that changed
+   * individually. See {@link #getModificationCount(ResourceNamespace, ResourceType)}.
+   */
+  private final ConcurrentMap<ResourceNamespace, AtomicLongArray> myTypeGenerations = new ConcurrentHashMap<>();
+  /** Generation of the last change that may have affected resources of all types. */
+  private volatile long myAllTypesGeneration;
+
   private final Object RESOURCE_DIRS_LOCK = new Object();
   @Nullable private Set<VirtualFile> myResourceDirs;
 
@@ -175,8 +186,13 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     }
   }
 
+  /**
+   * Notifies the parents of this repository, and the readers of its snapshot, that all of its resources may have changed.
+   */
   protected void invalidateParentCaches() {
     synchronized (ITEM_MAP_LOCK) {
+      invalidateSnapshot();
+      myAllTypesGeneration = ourModificationCounter.incrementAndGet();
       if (myParents != null) {
         for (MultiResourceRepository parent : myParents) {
           parent.invalidateCache(this);
@@ -185,8 +201,13 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     }
   }
 
+  /**
+   * Notifies the parents of this repository, and the readers of its snapshot, that its resources of the given types may have changed.
+   */
   protected void invalidateParentCaches(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
     synchronized (ITEM_MAP_LOCK) {
+      invalidateSnapshot(namespace, types);
+      updateTypeGenerations(namespace, types);
       if (myParents != null) {
         for (MultiResourceRepository parent : myParents) {
           parent.invalidateCache(this, namespace, types);
@@ -195,6 +216,30 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     }
   }
 
+  /**
+   * Notifies the readers of this repository and of its parents that the values of some resources of the given types changed, without
+   * resources being added or removed. The parents don't need to invalidate their caches since they contain the same resource items.
+   */
+  protected void notifyValuesChanged(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+    List<MultiResourceRepository> parents;
+    synchronized (ITEM_MAP_LOCK) {
+      updateTypeGenerations(namespace, types);
+      parents = myParents == null ? Collections.emptyList() : new ArrayList<>(myParents);
+    }
+    for (MultiResourceRepository parent : parents) {
+      parent.notifyValuesChanged(namespace, types);
+    }
+  }
+
+  private void updateTypeGenerations(@NotNull ResourceNamespace namespace, @NotNull ResourceType... types) {
+    AtomicLongArray generations =
+        myTypeGenerations.computeIfAbsent(namespace, key -> new AtomicLongArray(ResourceType.values().length));
+    long generation = ourModificationCounter.incrementAndGet();
+    for (ResourceType type : types) {
+      generations.set(type.ordinal(), generation);
+    }
+  }
+
   // ---- Implements ModificationCount ----
 
   /**
@@ -221,6 +266,17 @@ public abstract class LocalResourceRepository extends AbstractResourceRepository
     myGeneration = count;
   }
 
+  /**
+   * Returns the generation of the resources of the given namespace and type. It increases when resources of that type are added, removed
+   * or change their value, but unlike {@link #getModificationCount()}, not when other resources or the contents of file resources change.
+   * This lets caches of resolved resources keep the types that didn't change.
+   */
+  public long getModificationCount(@NotNull ResourceNamespace namespace, @NotNull ResourceType type) {
+    AtomicLongArray generations = myTypeGenerations.get(namespace);
+    long typeGeneration = generations == null ? 0 : generations.get(type.ordinal());
+    return Math.max(typeGeneration, myAllTypesGeneration);
+  }
+
   boolean isScanPending(@NotNull PsiFile psiFile) {
     return false;
   }
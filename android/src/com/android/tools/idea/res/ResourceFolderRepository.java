@@ -117,6 +117,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -323,6 +324,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : itemsByType.entrySet()) {
       getOrCreateMap(myNamespace, entry.getKey()).putAll(entry.getValue());
     }
+    if (!itemsByType.isEmpty()) {
+      invalidateSnapshot(myNamespace, itemsByType.keySet().toArray(new ResourceType[0]));
+    }
   }
 
   /**
@@ -736,6 +740,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
               for (PsiResourceItem item : idItems) {
                 psiResourceFile.removeItem(item);
               }
+              invalidateSnapshot(myNamespace, ResourceType.ID);
             }
           }
 
@@ -848,6 +853,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         }
       }
 
+      if (changed) {
+        invalidateSnapshot(myNamespace, resourceType);
+      }
       return changed;
     }
   }
@@ -861,6 +869,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     boolean changed = false;
 
     synchronized (ITEM_MAP_LOCK) {
+      Set<ResourceType> changedTypes = EnumSet.noneOf(ResourceType.class);
       for (ResourceItem item : source) {
         ListMultimap<String, ResourceItem> map = myFullTable.get(myNamespace, item.getType());
         List<ResourceItem> items = map.get(item.getName());
@@ -869,6 +878,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           if (candidate == item) {
             iter.remove();
             changed = true;
+            changedTypes.add(item.getType());
             break;
           }
         }
@@ -876,6 +886,9 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
           map.removeAll(item.getName());
         }
       }
+      if (!changedTypes.isEmpty()) {
+        invalidateSnapshot(myNamespace, changedTypes.toArray(new ResourceType[0]));
+      }
     }
     return changed;
   }
@@ -1006,6 +1019,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                 if (parentItem instanceof PsiResourceItem) {
                   if (((PsiResourceItem)parentItem).recomputeValue()) {
                     setModificationCount(ourModificationCounter.incrementAndGet());
+                    notifyValuesChanged(myNamespace, parentItem.getType());
                   }
                   return;
                 }
@@ -1120,6 +1134,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
                       setModificationCount(ourModificationCounter.incrementAndGet());
+                      notifyValuesChanged(myNamespace, resourceItem.getType());
                     }
 
                     if (resourceItem.getType() == ResourceType.ATTR) {
@@ -1129,6 +1144,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         if (declareStyleable instanceof PsiResourceItem) {
                           if (((PsiResourceItem)declareStyleable).recomputeValue()) {
                             setModificationCount(ourModificationCounter.incrementAndGet());
+                            notifyValuesChanged(myNamespace, declareStyleable.getType());
                           }
                         }
                       }
@@ -1338,6 +1354,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                   if (resourceItem instanceof PsiResourceItem) {
                     if (((PsiResourceItem)resourceItem).recomputeValue()) {
                       setModificationCount(ourModificationCounter.incrementAndGet());
+                      notifyValuesChanged(myNamespace, resourceItem.getType());
                     }
                     return;
                   }
@@ -1417,8 +1434,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                         XmlTag parentTag = xmlTag.getParentTag();
                         if (parentTag != null && getResourceTypeForResourceTag(parentTag) == ResourceType.STYLEABLE) {
                           ResourceItem style = findValueResourceItem(parentTag, psiFile);
-                          if (style instanceof PsiResourceItem) {
-                            ((PsiResourceItem)style).recomputeValue();
+                          if (style instanceof PsiResourceItem && ((PsiResourceItem)style).recomputeValue()) {
+                            notifyValuesChanged(myNamespace, style.getType());
                           }
                         }
                       }
@@ -1437,6 +1454,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
                       if (resourceItem instanceof PsiResourceItem) {
                         if (((PsiResourceItem)resourceItem).recomputeValue()) {
                           setModificationCount(ourModificationCounter.incrementAndGet());
+                          notifyValuesChanged(myNamespace, resourceItem.getType());
                         }
                         return;
                       }
@@ -1544,6 +1562,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
               setModificationCount(ourModificationCounter.incrementAndGet());
+              notifyValuesChanged(myNamespace, item.getType());
             }
           }
           return;
@@ -1564,6 +1583,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
             boolean cleared = ((PsiResourceItem)item).recomputeValue();
             if (cleared) { // Only bump revision if this is a value which has already been observed!
               setModificationCount(ourModificationCounter.incrementAndGet());
+              notifyValuesChanged(myNamespace, item.getType());
             }
           }
           break;
@@ -17,7 +17,9 @@ package com.android.tools.idea.configurations;
 
 import static com.android.tools.idea.res.ResourcesTestsUtil.checkIfScanPending;
 
+import com.android.ide.common.rendering.api.ResourceNamespace;
 import com.android.ide.common.resources.ResourceResolver;
+import com.android.resources.ResourceType;
 import com.android.sdklib.devices.Device;
 import com.android.sdklib.devices.Screen;
 import com.android.tools.idea.res.LocalResourceRepository;
@@ -31,6 +33,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTagValue;
+import com.intellij.util.ui.UIUtil;
 import org.jetbrains.android.AndroidTestCase;
 import org.jetbrains.android.facet.AndroidFacet;
 
@@ -95,6 +98,37 @@ public class ResourceResolverCacheTest extends AndroidTestCase {
     assertSame(cache, configuration2.getConfigurationManager().getResolverCache());
   }
 
+  public void testLayoutEditKeepsResolver() {
+    VirtualFile file1 = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
+    myFixture.copyFileToProject("javadoc/strings/strings.xml", "res/values/strings.xml");
+    XmlFile psiFile1 = (XmlFile)PsiManager.getInstance(getProject()).findFile(file1);
+    assertNotNull(psiFile1);
+    ConfigurationManager configurationManager = ConfigurationManager.getOrCreateInstance(myModule);
+    Configuration configuration = configurationManager.getConfiguration(file1);
+
+    // The first edit converts the layout to PSI, which invalidates all the resources.
+    setOrientation(psiFile1, "horizontal");
+    ResourceResolver resolver = configuration.getResourceResolver();
+    assertEquals("Cancel", resolver.findResValue("@string/cancel", false).getValue());
+
+    setOrientation(psiFile1, "vertical");
+
+    // Only the contents of the layout changed, not the resources used by the resolver.
+    assertSame(resolver, configuration.getResourceResolver());
+    ResourceResolverCache cache = configurationManager.getResolverCache();
+    assertEquals(1, cache.myResolverMap.size());
+    ResourceResolverCache.ConfiguredAppResources configuredAppRes = Iterables.getOnlyElement(cache.myAppResourceMap.values());
+    assertTrue(configuredAppRes.isConfigured(ResourceNamespace.RES_AUTO, ResourceType.STRING));
+  }
+
+  private void setOrientation(XmlFile layout, String orientation) {
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      //noinspection ConstantConditions
+      layout.getRootTag().setAttribute("android:orientation", orientation);
+    });
+    UIUtil.dispatchAllInvocationEvents();
+  }
+
   public void testCustomConfiguration() {
     VirtualFile file1 = myFixture.copyFileToProject("render/layout1.xml", "res/layout/layout1.xml");
     ConfigurationManager configurationManager = ConfigurationManager.getOrCreateInstance(myModule);
@@ -20,12 +20,17 @@ import com.android.ddmlib.MultiLineReceiver;
 import com.android.ddmlib.logcat.LogCatMessage;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Disposer;
+import com.intellij.testFramework.ApplicationRule;
 import org.jetbrains.annotations.NotNull;
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.stubbing.Answer;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -72,6 +77,47 @@ public class AndroidLogcatServiceTest {
     }
   }
 
+  /**
+   * Records the batches it receives and counts down a latch per line.
+   */
+  private static class BatchRecordingListener implements AndroidLogcatService.LogcatListener {
+    private final List<Integer> myBatchSizes = Collections.synchronizedList(new ArrayList<>());
+    private final List<String> myLines = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch myLinesLatch;
+    private volatile boolean myReplayed;
+
+    BatchRecordingListener(int expectedLines) {
+      myLinesLatch = new CountDownLatch(expectedLines);
+    }
+
+    @Override
+    public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      myBatchSizes.add(lines.size());
+      for (LogCatMessage line : lines) {
+        myLines.add(line.toString());
+        myLinesLatch.countDown();
+      }
+    }
+
+    @Override
+    public void onReplay() {
+      myBatchSizes.clear();
+      myLines.clear();
+      myReplayed = true;
+    }
+
+    void expectLines(int expectedLines) {
+      myLinesLatch = new CountDownLatch(expectedLines);
+    }
+
+    void awaitLines() throws InterruptedException {
+      assertTrue(myLinesLatch.await(5, TimeUnit.SECONDS));
+    }
+  }
+
+  @Rule
+  public final ApplicationRule myApplicationRule = new ApplicationRule();
+
   private TestLogcatListener myLogcatListener;
   private IDevice mockDevice = mock(IDevice.class);
   private AndroidLogcatService myLogcatService;
@@ -272,4 +318,49 @@ public class AndroidLogcatServiceTest {
 
     myLogcatListener.assertCleared();
   }
+
+  @Test
+  public void linesOfAChunkAreDeliveredInOneBatch() throws Exception {
+    Answer answer = invocation -> {
+      AndroidLogcatReceiver receiver = invocation.getArgument(1);
+      receiver.processNewLines(new String[]{
+        "[ 1534635551.439 1493:1595 W/DummyFirst     ]",
+        "First Line1",
+        "First Line2",
+        "First Line3",
+        "[ 1537486751.439 1493:1595 W/DummySecond     ]",
+        "Second Line1"});
+      receiver.cancel();
+
+      myExecuteShellCommandLatch.countDown();
+      return null;
+    };
+    doAnswer(answer).when(mockDevice).executeShellCommand(eq("logcat -v long -v epoch"), any(), eq(0L), eq(TimeUnit.MILLISECONDS));
+
+    BatchRecordingListener listener = new BatchRecordingListener(4);
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.addListener(mockDevice, listener);
+
+    myExecuteShellCommandLatch.await();
+    listener.awaitLines();
+    assertEquals(Collections.singletonList(4), listener.myBatchSizes);
+  }
+
+  @Test
+  public void replayMessagesSendsEachMessageOnceAndInOrder() throws Exception {
+    BatchRecordingListener listener = new BatchRecordingListener(4);
+    when(mockDevice.isOnline()).thenReturn(true);
+    myLogcatService.addListener(mockDevice, listener);
+
+    myExecuteShellCommandLatch.await();
+    listener.awaitLines();
+    List<String> received = new ArrayList<>(listener.myLines);
+
+    listener.expectLines(4);
+    myLogcatService.replayMessages(mockDevice, listener, LogcatQuery.ALL);
+
+    listener.awaitLines();
+    assertTrue(listener.myReplayed);
+    assertEquals(received, listener.myLines);
+  }
 }
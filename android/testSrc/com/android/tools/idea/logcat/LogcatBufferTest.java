@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LogcatBufferTest {
+  @Test
+  public void messagesAreKeptInOrder() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    List<LogCatMessage> messages = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      messages.add(newMessage(i % 5, LogLevel.INFO, Integer.toString(i)));
+    }
+    buffer.add(messages.subList(0, 1000));
+    buffer.add(messages.subList(1000, 3000));
+
+    assertThat(texts(buffer.getMessages())).isEqualTo(texts(messages));
+    assertThat(texts(buffer.getMessages(LogcatQuery.ALL))).isEqualTo(texts(messages));
+  }
+
+  @Test
+  public void oldestMessagesAreDroppedPastTheMaximumSize() {
+    LogcatBuffer buffer = new LogcatBuffer(6);
+    buffer.add(Arrays.asList(newMessage(1, LogLevel.INFO, "aa"), newMessage(2, LogLevel.ERROR, "bb")));
+    buffer.add(Arrays.asList(newMessage(1, LogLevel.INFO, "cc"), newMessage(2, LogLevel.ERROR, "dd")));
+
+    assertThat(texts(buffer.getMessages())).containsExactly("bb", "cc", "dd").inOrder();
+    assertThat(buffer.getSize()).isEqualTo(6);
+    assertThat(texts(buffer.getMessages(new LogcatQuery(1, null)))).containsExactly("cc");
+    assertThat(texts(buffer.getMessages(new LogcatQuery(null, LogLevel.ERROR)))).containsExactly("bb", "dd").inOrder();
+  }
+
+  @Test
+  public void queriesSelectByProcessAndLevel() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    buffer.add(Arrays.asList(newMessage(1, LogLevel.VERBOSE, "a"),
+                             newMessage(2, LogLevel.WARN, "b"),
+                             newMessage(1, LogLevel.ERROR, "c"),
+                             newMessage(2, LogLevel.DEBUG, "d"),
+                             newMessage(1, LogLevel.ASSERT, "e")));
+
+    assertThat(texts(buffer.getMessages(new LogcatQuery(1, null)))).containsExactly("a", "c", "e").inOrder();
+    assertThat(texts(buffer.getMessages(new LogcatQuery(null, LogLevel.WARN)))).containsExactly("b", "c", "e").inOrder();
+    assertThat(texts(buffer.getMessages(new LogcatQuery(2, LogLevel.INFO)))).containsExactly("b");
+    assertThat(buffer.getMessages(new LogcatQuery(3, null))).isEmpty();
+  }
+
+  @Test
+  public void linesOfAMessageKeepSharingTheirHeader() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    LogCatHeader header = newHeader(1, LogLevel.INFO);
+    List<LogCatMessage> added = buffer.add(Arrays.asList(new LogCatMessage(header, "line 1"), new LogCatMessage(header, "line 2")));
+    LogCatMessage other = buffer.add(Arrays.asList(newMessage(1, LogLevel.INFO, "other"))).get(0);
+
+    assertThat(added.get(1).getHeader()).isSameAs(added.get(0).getHeader());
+    assertThat(other.getHeader()).isNotSameAs(added.get(0).getHeader());
+    assertThat(other.getHeader().getTag()).isSameAs(added.get(0).getHeader().getTag());
+  }
+
+  @NotNull
+  private static LogCatMessage newMessage(int pid, @NotNull LogLevel level, @NotNull String text) {
+    return new LogCatMessage(newHeader(pid, level), text);
+  }
+
+  @NotNull
+  private static LogCatHeader newHeader(int pid, @NotNull LogLevel level) {
+    // New strings, as if each header had just been parsed.
+    return new LogCatHeader(level, pid, pid, new String("com.example"), new String("Tag"), Instant.ofEpochMilli(1_000L));
+  }
+
+  @NotNull
+  private static List<String> texts(@NotNull List<LogCatMessage> messages) {
+    return messages.stream().map(LogCatMessage::getMessage).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+public class RenderExecutorTest {
+  private RenderExecutor myExecutor;
+
+  @After
+  public void tearDown() throws Exception {
+    if (myExecutor != null) {
+      myExecutor.shutdownNow();
+      myExecutor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+
+  @Test
+  public void foregroundActionsRunFirst() throws Exception {
+    myExecutor = new RenderExecutor(1, "Render Thread");
+    CountDownLatch blocked = new CountDownLatch(1);
+    myExecutor.submit(() -> {
+      blocked.await();
+      return null;
+    }, null, false);
+
+    List<String> order = new CopyOnWriteArrayList<>();
+    myExecutor.submit(() -> order.add("background 1"), null, true);
+    myExecutor.submit(() -> order.add("foreground 1"), null, false);
+    myExecutor.submit(() -> order.add("background 2"), null, true);
+    Future<?> last = myExecutor.submit(() -> order.add("foreground 2"), null, false);
+    blocked.countDown();
+    last.get(5, TimeUnit.SECONDS);
+    myExecutor.submit(() -> null, null, true).get(5, TimeUnit.SECONDS);
+
+    assertThat(order).containsExactly("foreground 1", "foreground 2", "background 1", "background 2").inOrder();
+  }
+
+  @Test
+  public void partitionsStayOnTheirThread() throws Exception {
+    myExecutor = new RenderExecutor(2, "Render Thread");
+    Object first = new Object();
+    Object second = new Object();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocked = new CountDownLatch(1);
+    Future<Thread> firstThread = myExecutor.submit(() -> {
+      started.countDown();
+      blocked.await();
+      return Thread.currentThread();
+    }, first, false);
+    started.await(5, TimeUnit.SECONDS);
+    // The first worker is busy, so the second partition goes to the other one.
+    Thread secondThread = myExecutor.submit(Thread::currentThread, second, false).get(5, TimeUnit.SECONDS);
+    blocked.countDown();
+
+    assertThat(firstThread.get(5, TimeUnit.SECONDS)).isNotSameAs(secondThread);
+    assertThat(myExecutor.submit(Thread::currentThread, first, true).get(5, TimeUnit.SECONDS)).isSameAs(firstThread.get());
+    assertThat(myExecutor.submit(Thread::currentThread, second, true).get(5, TimeUnit.SECONDS)).isSameAs(secondThread);
+    assertThat(myExecutor.getThread(first)).isSameAs(firstThread.get());
+    assertThat(secondThread.getName()).startsWith("Render Thread ");
+  }
+
+  @Test
+  public void failedActionsKeepTheirThread() throws Exception {
+    myExecutor = new RenderExecutor(1, "Render Thread");
+    Thread thread = myExecutor.submit(Thread::currentThread, null, false).get(5, TimeUnit.SECONDS);
+    myExecutor.supplyAsync(() -> {
+      throw new IllegalStateException();
+    }, null, false).handle((result, exception) -> null).get(5, TimeUnit.SECONDS);
+    myExecutor.submit(() -> {
+      throw new IllegalStateException();
+    }, null, false);
+
+    assertThat(myExecutor.submit(Thread::currentThread, null, false).get(5, TimeUnit.SECONDS)).isSameAs(thread);
+    assertThat(thread.getName()).isEqualTo("Render Thread");
+  }
+}
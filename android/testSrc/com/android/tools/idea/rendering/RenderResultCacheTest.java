@@ -0,0 +1,229 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.Result;
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.project.AndroidProjectBuildNotifications;
+import com.android.tools.idea.rendering.imagepool.ImagePool;
+import com.android.tools.idea.rendering.imagepool.ImagePoolFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.ui.UIUtil;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+public class RenderResultCacheTest extends AndroidTestCase {
+  @Language("XML")
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_width=\"match_parent\"\n" +
+                                       "    android:layout_height=\"match_parent\">\n" +
+                                       "    <TextView\n" +
+                                       "        android:layout_width=\"wrap_content\"\n" +
+                                       "        android:layout_height=\"wrap_content\"\n" +
+                                       "        android:text=\"Hello\"/>\n" +
+                                       "</LinearLayout>";
+
+  private ImagePool myImagePool;
+  private RenderResultCache myCache;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myImagePool = ImagePoolFactory.createImagePool();
+    myCache = new RenderResultCache(myImagePool);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myCache.invalidateAll();
+      myImagePool.dispose();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testKeyMatchesWhenSwitchingBackToAConfiguration() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    String theme = configuration.getTheme();
+
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+    assertEquals(key, RenderResultCache.Key.create(myFacet, file, configuration, "options"));
+    assertFalse(key.equals(RenderResultCache.Key.create(myFacet, file, configuration, "other options")));
+
+    configuration.setTheme("@android:style/Theme.Holo");
+    assertFalse(key.equals(RenderResultCache.Key.create(myFacet, file, configuration, "options")));
+
+    configuration.setTheme(theme);
+    assertEquals(key, RenderResultCache.Key.create(myFacet, file, configuration, "options"));
+  }
+
+  public void testKeyChangesWhenTheLayoutIsEdited() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      //noinspection ConstantConditions
+      file.getRootTag().getSubTags()[0].setAttribute("android:text", "Bye");
+    });
+
+    assertFalse(key.equals(RenderResultCache.Key.create(myFacet, file, configuration, "options")));
+  }
+
+  public void testKeyChangesAfterABuild() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+
+    AndroidProjectBuildNotifications.getInstance(getProject()).notifyBuildComplete(new AndroidProjectBuildNotifications.BuildContext() {});
+    UIUtil.dispatchAllInvocationEvents();
+
+    assertFalse(key.equals(RenderResultCache.Key.create(myFacet, file, configuration, "options")));
+  }
+
+  public void testLayoutsReferencingOtherLayoutsAreNotCached() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject(
+      "res/layout/layout.xml",
+      "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+      "    android:layout_width=\"match_parent\"\n" +
+      "    android:layout_height=\"match_parent\">\n" +
+      "    <include layout=\"@layout/other\"/>\n" +
+      "</LinearLayout>");
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+
+    assertNull(RenderResultCache.Key.create(myFacet, file, configuration, "options"));
+  }
+
+  public void testCacheReturnsCopies() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+    assertNull(myCache.get(key));
+
+    RenderResult result = createResult(file, Result.Status.SUCCESS);
+    myCache.put(key, result);
+    result.dispose();
+    assertTrue(myCache.contains(key));
+
+    RenderResult first = myCache.get(key);
+    RenderResult second = myCache.get(key);
+    assertNotNull(first);
+    assertNotNull(second);
+    assertNotSame(first.getRenderedImage(), second.getRenderedImage());
+    assertNull(first.getRenderTask());
+    assertEquals(Color.RED.getRGB(), first.getRenderedImage().getCopy().getRGB(5, 5));
+
+    first.dispose();
+    assertEquals(Color.RED.getRGB(), second.getRenderedImage().getCopy().getRGB(5, 5));
+    second.dispose();
+  }
+
+  public void testCachedViewsDoNotReferenceViewObjects() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+
+    ViewInfo root = new ViewInfo("LinearLayout", null, 0, 0, 10, 10, new Object(), new Object());
+    root.setChildren(ImmutableList.of(new ViewInfo("TextView", null, 0, 0, 5, 5, new Object(), new Object())));
+    RenderResult result = createResult(file, Result.Status.SUCCESS, ImmutableList.of(root));
+    myCache.put(key, result);
+    result.dispose();
+
+    RenderResult cached = myCache.get(key);
+    assertNotNull(cached);
+    ViewInfo cachedRoot = cached.getRootViews().get(0);
+    assertEquals("LinearLayout", cachedRoot.getClassName());
+    assertEquals(10, cachedRoot.getRight());
+    assertNull(cachedRoot.getViewObject());
+    assertNull(cachedRoot.getLayoutParamsObject());
+    ViewInfo cachedChild = cachedRoot.getChildren().get(0);
+    assertEquals("TextView", cachedChild.getClassName());
+    assertNull(cachedChild.getViewObject());
+    cached.dispose();
+  }
+
+  public void testFailedRendersAreNotCached() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    RenderResultCache.Key key = RenderResultCache.Key.create(myFacet, file, configuration, "options");
+    assertNotNull(key);
+
+    RenderResult result = createResult(file, Result.Status.ERROR_INFLATION);
+    myCache.put(key, result);
+    result.dispose();
+
+    assertFalse(myCache.contains(key));
+  }
+
+  public void testOldestResultsAreEvictedPastTheMaximumSize() {
+    XmlFile file = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    Configuration configuration = RenderTestUtil.getConfiguration(myModule, file.getVirtualFile());
+    // Room for a single 10x10 image
+    RenderResultCache cache = new RenderResultCache(myImagePool, 10 * 10 * 4);
+    RenderResultCache.Key first = RenderResultCache.Key.create(myFacet, file, configuration, "first");
+    RenderResultCache.Key second = RenderResultCache.Key.create(myFacet, file, configuration, "second");
+    assertNotNull(first);
+    assertNotNull(second);
+
+    cache.put(first, createResult(file, Result.Status.SUCCESS));
+    cache.put(second, createResult(file, Result.Status.SUCCESS));
+
+    assertFalse(cache.contains(first));
+    assertTrue(cache.contains(second));
+    cache.invalidateAll();
+  }
+
+  @NotNull
+  private RenderResult createResult(@NotNull XmlFile file, @NotNull Result.Status status) {
+    return createResult(file, status, ImmutableList.of());
+  }
+
+  @NotNull
+  private RenderResult createResult(@NotNull XmlFile file, @NotNull Result.Status status, @NotNull ImmutableList<ViewInfo> rootViews) {
+    //noinspection UndesirableClassUsage
+    BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+    for (int x = 0; x < 10; x++) {
+      for (int y = 0; y < 10; y++) {
+        image.setRGB(x, y, Color.RED.getRGB());
+      }
+    }
+    return new RenderResult(file,
+                            myModule,
+                            new RenderLogger(null, myModule),
+                            null,
+                            status.createResult(),
+                            rootViews,
+                            ImmutableList.of(),
+                            myImagePool.copyOf(image),
+                            ImmutableMap.of(),
+                            ImmutableMap.of());
+  }
+}
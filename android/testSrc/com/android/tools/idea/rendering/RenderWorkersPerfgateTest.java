@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import static com.android.tools.idea.rendering.PerfgateRenderUtil.NUMBER_OF_SAMPLES;
+import static com.android.tools.idea.rendering.PerfgateRenderUtil.NUMBER_OF_WARM_UP;
+import static com.android.tools.idea.rendering.PerfgateRenderUtil.pruneOutliers;
+import static com.android.tools.idea.rendering.PerfgateRenderUtil.sRenderTimeBenchMark;
+import static org.mockito.Mockito.mock;
+
+import com.android.ide.common.rendering.api.Result;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.res.FrameworkResourceRepositoryManager;
+import com.android.tools.perflogger.Metric;
+import com.android.tools.perflogger.Metric.MetricSample;
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.vfs.VirtualFile;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.android.AndroidTestCase;
+
+/**
+ * Measures the time to inflate and render a layout on several devices at once, like the visualization tool does, with one and with
+ * several render threads.
+ */
+public class RenderWorkersPerfgateTest extends AndroidTestCase {
+  private static final List<String> DEVICE_IDS =
+    ImmutableList.of("Nexus 4", "Nexus 5", "Nexus 6", "Nexus 7", "Nexus 10", "pixel", "pixel_xl", "pixel_2_xl");
+
+  private static final int WORKER_COUNT = 4;
+
+  @Language("XML")
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_height=\"match_parent\"\n" +
+                                       "    android:layout_width=\"match_parent\"\n" +
+                                       "    android:orientation=\"vertical\">\n" +
+                                       "\n" +
+                                       "    <TextView\n" +
+                                       "        android:layout_width=\"wrap_content\"\n" +
+                                       "        android:layout_height=\"wrap_content\"\n" +
+                                       "        android:text=\"Hello\"/>\n" +
+                                       "    <Button\n" +
+                                       "        android:layout_width=\"match_parent\"\n" +
+                                       "        android:layout_height=\"wrap_content\"\n" +
+                                       "        android:text=\"Button\"/>\n" +
+                                       "    <LinearLayout\n" +
+                                       "        android:layout_width=\"50dp\"\n" +
+                                       "        android:layout_height=\"50dp\"\n" +
+                                       "        android:background=\"#F00\"/>\n" +
+                                       "\n" +
+                                       "</LinearLayout>";
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    RenderTestUtil.beforeRenderTestCase();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      RenderService.shutdownRenderExecutor(5);
+      RenderService.initializeRenderExecutor();
+      RenderTestUtil.afterRenderTestCase();
+    } finally {
+      FrameworkResourceRepositoryManager.getInstance().clearCache();
+      super.tearDown();
+    }
+  }
+
+  public void testRenderConfigurationsOnOneWorker() throws Exception {
+    measureRenderConfigurations(1, "render_time_configurations_1_worker");
+  }
+
+  public void testRenderConfigurationsOnSeveralWorkers() throws Exception {
+    measureRenderConfigurations(WORKER_COUNT, "render_time_configurations_" + WORKER_COUNT + "_workers");
+  }
+
+  private void measureRenderConfigurations(int workerCount, String metricName) throws Exception {
+    RenderService.shutdownRenderExecutor(5);
+    RenderService.initializeRenderExecutorForTesting(workerCount);
+
+    VirtualFile file = myFixture.addFileToProject("res/layout/layout.xml", LAYOUT).getVirtualFile();
+    List<Configuration> configurations = new ArrayList<>();
+    for (String deviceId : DEVICE_IDS) {
+      // The configuration of a file is shared, copy it before selecting the next device.
+      configurations.add(Configuration.copy(RenderTestUtil.getConfiguration(myModule, file, deviceId)));
+    }
+    RenderLogger logger = mock(RenderLogger.class);
+
+    System.gc();
+
+    // LayoutLib has a large static initialization that would trigger on the first render.
+    // Warm up by rendering few times before measuring.
+    for (int i = 0; i < NUMBER_OF_WARM_UP; i++) {
+      renderConfigurations(file, configurations, logger);
+    }
+
+    List<MetricSample> renderTimes = new ArrayList<>();
+    for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+      long elapsedMs = renderConfigurations(file, configurations, logger);
+      renderTimes.add(new MetricSample(Instant.now().toEpochMilli(), elapsedMs));
+    }
+
+    Metric renderMetric = new Metric(metricName);
+    renderMetric.addSamples(sRenderTimeBenchMark, pruneOutliers(renderTimes).toArray(new MetricSample[0]));
+    renderMetric.commit();
+  }
+
+  /**
+   * Inflates and renders the layout in every configuration concurrently.
+   *
+   * @return the time, in milliseconds, until every render is done
+   */
+  private long renderConfigurations(VirtualFile file, List<Configuration> configurations, RenderLogger logger) throws Exception {
+    List<RenderTask> tasks = new ArrayList<>();
+    for (Configuration configuration : configurations) {
+      tasks.add(RenderTestUtil.createRenderTask(myFacet, file, configuration, logger));
+    }
+
+    long start = System.nanoTime();
+    List<CompletableFuture<RenderResult>> results = new ArrayList<>();
+    for (RenderTask task : tasks) {
+      results.add(task.inflate().thenCompose(ignored -> task.render()));
+    }
+    CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(1, TimeUnit.MINUTES);
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    for (CompletableFuture<RenderResult> result : results) {
+      assertEquals(Result.Status.SUCCESS, result.get().getRenderResult().getStatus());
+    }
+    for (RenderTask task : tasks) {
+      task.dispose().get(5, TimeUnit.SECONDS);
+    }
+    return elapsedMs;
+  }
+}
@@ -52,6 +52,7 @@ import com.android.tools.idea.npw.assetstudio.DrawableRenderer;
 import com.android.tools.idea.testing.IdeComponents;
 import com.google.common.collect.Collections2;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.ListMultimap;
 import com.intellij.openapi.actionSystem.IdeActions;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.WriteAction;
@@ -1547,6 +1548,49 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     ensureIncremental();
   }
 
+  public void testIncrementalEditOnlyReplacesEditedResourceTypes() {
+    VirtualFile file1 = myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    PsiFile psiFile1 = PsiManager.getInstance(getProject()).findFile(file1);
+    assertNotNull(psiFile1);
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout1.xml");
+
+    ResourceFolderRepository resources = createRegisteredRepository();
+    assertNotNull(resources);
+
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    Document document = documentManager.getDocument(psiFile1);
+    assertNotNull(document);
+
+    // First edit won't be incremental (file -> Psi).
+    int offset = document.getText().indexOf("app_name");
+    WriteCommandAction.runWriteCommandAction(null, () -> {
+      document.replaceString(offset, offset + 3, "tap");
+      documentManager.commitDocument(document);
+    });
+    UIUtil.dispatchAllInvocationEvents();
+    resetScanCounter();
+
+    ListMultimap<String, ResourceItem> layouts = resources.getResources(RES_AUTO, ResourceType.LAYOUT);
+    ListMultimap<String, ResourceItem> strings = resources.getResources(RES_AUTO, ResourceType.STRING);
+    // Reads without edits in between share the same snapshot.
+    assertSame(strings, resources.getResources(RES_AUTO, ResourceType.STRING));
+
+    int offset2 = document.getText().indexOf("tap_name");
+    WriteCommandAction.runWriteCommandAction(null, () -> {
+      document.replaceString(offset2, offset2 + 3, "rap");
+      documentManager.commitDocument(document);
+    });
+    ensureIncremental();
+
+    assertSame(layouts, resources.getResources(RES_AUTO, ResourceType.LAYOUT));
+    assertNotSame(strings, resources.getResources(RES_AUTO, ResourceType.STRING));
+    assertTrue(resources.hasResources(RES_AUTO, ResourceType.STRING, "rap_name"));
+    assertFalse(resources.hasResources(RES_AUTO, ResourceType.STRING, "tap_name"));
+    // The snapshot read before the edit is not modified by it.
+    assertTrue(strings.containsKey("tap_name"));
+    assertFalse(strings.containsKey("rap_name"));
+  }
+
   public void testAddValue() {
     resetScanCounter();
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import static com.android.ide.common.rendering.api.ResourceNamespace.RES_AUTO;
+
+import com.android.resources.ResourceType;
+import com.android.tools.perflogger.Benchmark;
+import com.android.tools.perflogger.Metric;
+import com.android.tools.perflogger.Metric.MetricSample;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.ui.UIUtil;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import org.jetbrains.android.AndroidTestCase;
+
+/**
+ * Measures the throughput of concurrent readers of the app resources, like rendering, completion and lint do, while the user keeps
+ * editing a values file.
+ */
+public class ResourceRepositoryContentionPerfgateTest extends AndroidTestCase {
+  private static final Benchmark CONTENTION_BENCHMARK = new Benchmark.Builder("Resource Repository Contention Benchmark")
+    .setDescription("Reads of the app resources per millisecond by concurrent readers, and time of the edits made meanwhile.")
+    .build();
+
+  private static final int READER_COUNT = 8;
+  private static final int STRING_COUNT = 500;
+  private static final int NUMBER_OF_WARM_UP = 2;
+  private static final int NUMBER_OF_SAMPLES = 20;
+  private static final int EDITS_PER_SAMPLE = 20;
+
+  public void testReadsDuringEdits() throws Exception {
+    StringBuilder values = new StringBuilder("<resources>\n");
+    for (int i = 0; i < STRING_COUNT; i++) {
+      values.append("    <string name=\"string").append(i).append("\">String ").append(i).append("</string>\n");
+    }
+    values.append("    <string name=\"edited0\">Edited</string>\n");
+    values.append("</resources>\n");
+    PsiFile file = myFixture.addFileToProject("res/values/strings.xml", values.toString());
+    PsiDocumentManager documentManager = PsiDocumentManager.getInstance(getProject());
+    Document document = documentManager.getDocument(file);
+    assertNotNull(document);
+
+    LocalResourceRepository resources = ResourceRepositoryManager.getAppResources(myFacet);
+    assertTrue(resources.hasResources(RES_AUTO, ResourceType.STRING, "string0"));
+
+    AtomicBoolean done = new AtomicBoolean();
+    LongAdder reads = new LongAdder();
+    ExecutorService executor = Executors.newFixedThreadPool(READER_COUNT);
+    List<Future<?>> readers = new ArrayList<>();
+    try {
+      for (int reader = 0; reader < READER_COUNT; reader++) {
+        readers.add(executor.submit(() -> {
+          int i = 0;
+          while (!done.get()) {
+            resources.getResources(RES_AUTO, ResourceType.STRING, "string" + (i++ % STRING_COUNT));
+            reads.increment();
+          }
+        }));
+      }
+
+      // The first edit converts the file to PSI, the following ones are incremental.
+      for (int i = 0; i < NUMBER_OF_WARM_UP; i++) {
+        editStrings(document, documentManager);
+      }
+
+      List<MetricSample> readSamples = new ArrayList<>();
+      List<MetricSample> editSamples = new ArrayList<>();
+      for (int i = 0; i < NUMBER_OF_SAMPLES; i++) {
+        reads.reset();
+        long start = System.nanoTime();
+        editStrings(document, documentManager);
+        long elapsedNs = System.nanoTime() - start;
+        long readsPerMs = reads.sum() * TimeUnit.MILLISECONDS.toNanos(1) / Math.max(elapsedNs, 1);
+        readSamples.add(new MetricSample(Instant.now().toEpochMilli(), readsPerMs));
+        editSamples.add(new MetricSample(Instant.now().toEpochMilli(), TimeUnit.NANOSECONDS.toMillis(elapsedNs)));
+      }
+
+      Metric readMetric = new Metric("resource_reads_per_ms_" + READER_COUNT + "_readers_during_edits");
+      readMetric.addSamples(CONTENTION_BENCHMARK, readSamples.toArray(new MetricSample[0]));
+      readMetric.commit();
+      Metric editMetric = new Metric("resource_edit_time_" + EDITS_PER_SAMPLE + "_edits_" + READER_COUNT + "_readers");
+      editMetric.addSamples(CONTENTION_BENCHMARK, editSamples.toArray(new MetricSample[0]));
+      editMetric.commit();
+    }
+    finally {
+      done.set(true);
+      for (Future<?> reader : readers) {
+        reader.get(10, TimeUnit.SECONDS);
+      }
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Renames a string back and forth, changing the strings of the repository on every edit.
+   */
+  private void editStrings(Document document, PsiDocumentManager documentManager) {
+    for (int i = 0; i < EDITS_PER_SAMPLE; i++) {
+      WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+        int offset = document.getText().indexOf("\"edited") + "\"edited".length();
+        String next = document.getCharsSequence().charAt(offset) == '0' ? "1" : "0";
+        document.replaceString(offset, offset + 1, next);
+        documentManager.commitDocument(document);
+      });
+      UIUtil.dispatchAllInvocationEvents();
+    }
+  }
+}
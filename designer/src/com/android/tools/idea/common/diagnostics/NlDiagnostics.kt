@@ -40,6 +40,12 @@ interface NlDiagnosticsRead {
    * Returns the last render image size in bytes
    */
   fun lastRenderImageSize(): Long
+
+  /**
+   * Returns the [percentile] percentile for the time to update the model before rendering it. When [incremental] is true, it is the time
+   * to apply attribute edits to the views of the current render session, otherwise the time to inflate the layout.
+   */
+  fun updateTime(percentile: Int, incremental: Boolean): Long
 }
 
 /**
@@ -50,6 +56,11 @@ interface NlDiagnosticsWrite {
    * Record a render action with the time and the size of the generated image
    */
   fun recordRender(timeMs: Long, lastRenderSizeBytes: Long)
+
+  /**
+   * Record a model update with its time and whether it was incremental, see [NlDiagnosticsRead.updateTime]
+   */
+  fun recordUpdate(timeMs: Long, incremental: Boolean)
 }
 
 /**
@@ -61,11 +72,15 @@ object NopNlDiagnosticsImpl : NlDiagnosticsRead, NlDiagnosticsWrite {
   override fun renderTime(percentile: Int): Long = -1
   override fun recordRender(timeMs: Long, lastRenderSizeBytes: Long) {}
   override fun lastRenders(): List<Long> = emptyList()
+  override fun updateTime(percentile: Int, incremental: Boolean): Long = -1
+  override fun recordUpdate(timeMs: Long, incremental: Boolean) {}
 }
 
 private class NlDiagnosticsImpl : NlDiagnosticsRead, NlDiagnosticsWrite {
   private val lastRenderTimes = EvictingQueue.create<Long>(100)
   private var lastRenderImageBytes = -1L
+  private val lastIncrementalUpdateTimes = EvictingQueue.create<Long>(100)
+  private val lastInflateTimes = EvictingQueue.create<Long>(100)
 
   override fun lastRenders(): List<Long> = lastRenderTimes.toList()
 
@@ -77,8 +92,17 @@ private class NlDiagnosticsImpl : NlDiagnosticsRead, NlDiagnosticsWrite {
     lastRenderImageBytes = lastRenderSizeBytes
   }
 
-  override fun renderTime(percentile: Int): Long = if (lastRenderTimes.size > 0)
-    Quantiles.percentiles().index(percentile).compute(lastRenderTimes).toLong()
+  override fun renderTime(percentile: Int): Long = percentile(lastRenderTimes, percentile)
+
+  override fun recordUpdate(timeMs: Long, incremental: Boolean) {
+    (if (incremental) lastIncrementalUpdateTimes else lastInflateTimes).add(timeMs)
+  }
+
+  override fun updateTime(percentile: Int, incremental: Boolean): Long =
+    percentile(if (incremental) lastIncrementalUpdateTimes else lastInflateTimes, percentile)
+
+  private fun percentile(times: Collection<Long>, percentile: Int): Long = if (times.isNotEmpty())
+    Quantiles.percentiles().index(percentile).compute(times).toLong()
   else -1
 }
 
@@ -103,9 +103,9 @@ public class AttributesTransaction implements NlAttributesHolder {
   }
 
   /**
-   * Triggers a re-layout of the given {@link View}. This might happen asynchronously.
+   * Triggers a re-layout of the given {@link View} on the render thread of {@code model}. This might happen asynchronously.
    */
-  private static void triggerViewRelayout(@NotNull View view) {
+  private static void triggerViewRelayout(@NotNull NlModel model, @NotNull View view) {
     try {
       // We run the re-layout as a render action to avoid a render happening at the same time as the re-layout since that
       // might cause problems.
@@ -113,7 +113,7 @@ public class AttributesTransaction implements NlAttributesHolder {
       RenderService.runAsyncRenderAction(() -> {
         view.setLayoutParams(view.getLayoutParams());
         view.forceLayout();
-      });
+      }, model);
     }
     catch (Exception ignore) {
     }
@@ -206,7 +206,7 @@ public class AttributesTransaction implements NlAttributesHolder {
       applyAllPendingAttributesToView(viewInfo);
       if (hasPendingRelayout) {
         hasLayoutAttributeChanged = true;
-        triggerViewRelayout((View)viewInfo.getViewObject());
+        triggerViewRelayout(myModel, (View)viewInfo.getViewObject());
       }
     }
   }
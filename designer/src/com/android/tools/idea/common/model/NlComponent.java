@@ -412,6 +412,17 @@ public class NlComponent implements NlAttributesHolder {
     return myCurrentTransaction;
   }
 
+  /**
+   * Applies the pending attributes of the open {@link AttributesTransaction}, if any, to the current view of this component, e.g. after
+   * the layout was inflated again during the transaction.
+   */
+  public void applyAttributeTransaction() {
+    AttributesTransaction transaction = myCurrentTransaction;
+    if (transaction != null) {
+      transaction.apply();
+    }
+  }
+
   /**
    * Returns the latest attribute value (either live -- not committed -- or from xml)
    *
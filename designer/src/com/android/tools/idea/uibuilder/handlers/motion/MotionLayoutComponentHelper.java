@@ -80,7 +80,7 @@ public class MotionLayoutComponentHelper {
       Method accessor = instance.getClass().getMethod("getDesignTool");
       if (accessor != null) {
         try {
-          designInstance = RenderService.runRenderAction(() -> accessor.invoke(instance));
+          designInstance = RenderService.runRenderAction(() -> accessor.invoke(instance), component.getModel());
         }
         catch (Exception e) {
           e.printStackTrace();
@@ -119,7 +119,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return null;
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -155,7 +155,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return false;
-        }) == Boolean.TRUE;
+        }, myMotionLayoutComponent.getModel()) == Boolean.TRUE;
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -190,7 +190,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return null;
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -224,7 +224,7 @@ public class MotionLayoutComponentHelper {
             mySetKeyframeMethod = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -255,7 +255,7 @@ public class MotionLayoutComponentHelper {
             mySetAttributesMethod = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -290,7 +290,7 @@ public class MotionLayoutComponentHelper {
             mySetKeyframePositionMethod = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -323,7 +323,7 @@ public class MotionLayoutComponentHelper {
             myCallSetTransitionPosition = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -372,7 +372,7 @@ public class MotionLayoutComponentHelper {
             myCallSetTransition = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -409,7 +409,7 @@ public class MotionLayoutComponentHelper {
             myCallSetState = null;
             e.printStackTrace();
           }
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -448,7 +448,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return null;
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -483,7 +483,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return 0f;
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -518,7 +518,7 @@ public class MotionLayoutComponentHelper {
             e.printStackTrace();
           }
           return false;
-        });
+        }, myMotionLayoutComponent.getModel());
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -552,7 +552,7 @@ public class MotionLayoutComponentHelper {
           }
 
           return 0;
-        }).longValue();
+        }, myMotionLayoutComponent.getModel()).longValue();
       }
       catch (Exception e) {
         e.printStackTrace();
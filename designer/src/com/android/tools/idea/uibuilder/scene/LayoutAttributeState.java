@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_LAYOUT_RESOURCE_PREFIX;
+import static com.android.SdkConstants.AUTO_URI;
+
+import com.android.tools.idea.rendering.parsers.AttributeSnapshot;
+import com.google.common.collect.ImmutableList;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The tags of a layout file and the values of their attributes at a point in time, usually when the layout was inflated. Comparing it with
+ * a later state tells whether an edit only changed layout attributes, which can be applied to the views of the render session, see
+ * {@link LayoutlibSceneManager}, or changed anything else, which requires inflating the layout again.
+ */
+final class LayoutAttributeState {
+  @NotNull private final ImmutableList<TagState> myTags;
+
+  private LayoutAttributeState(@NotNull ImmutableList<TagState> tags) {
+    myTags = tags;
+  }
+
+  /**
+   * Returns the current state of the tags of {@code file}.
+   */
+  @NotNull
+  static LayoutAttributeState create(@NotNull XmlFile file) {
+    return ApplicationManager.getApplication().runReadAction((Computable<LayoutAttributeState>)() -> {
+      ImmutableList.Builder<TagState> tags = ImmutableList.builder();
+      XmlTag rootTag = file.getRootTag();
+      if (rootTag != null) {
+        addTags(rootTag, tags);
+      }
+      return new LayoutAttributeState(tags.build());
+    });
+  }
+
+  private static void addTags(@NotNull XmlTag tag, @NotNull ImmutableList.Builder<TagState> tags) {
+    Map<String, AttributeSnapshot> attributes = new HashMap<>();
+    for (AttributeSnapshot attribute : AttributeSnapshot.createAttributesForTag(tag)) {
+      attributes.put(attributeKey(attribute.namespace, attribute.name), attribute);
+    }
+    tags.add(new TagState(tag, tag.getName(), attributes));
+    for (XmlTag subTag : tag.getSubTags()) {
+      addTags(subTag, tags);
+    }
+  }
+
+  @NotNull
+  private static String attributeKey(@Nullable String namespace, @NotNull String name) {
+    return namespace + ':' + name;
+  }
+
+  /**
+   * Returns the attributes that changed between this state and {@code newState}, or null if anything else changed: tags were added,
+   * removed, moved or renamed, or attributes other than the layout attributes of the views were changed.
+   */
+  @Nullable
+  List<AttributeChange> getLayoutAttributeChanges(@NotNull LayoutAttributeState newState) {
+    if (myTags.size() != newState.myTags.size()) {
+      return null;
+    }
+
+    List<AttributeChange> changes = new ArrayList<>();
+    for (int i = 0; i < myTags.size(); i++) {
+      TagState oldTag = myTags.get(i);
+      TagState newTag = newState.myTags.get(i);
+      if (oldTag.myTag != newTag.myTag || !oldTag.myName.equals(newTag.myName)) {
+        return null;
+      }
+
+      for (Map.Entry<String, AttributeSnapshot> entry : newTag.myAttributes.entrySet()) {
+        AttributeSnapshot oldAttribute = oldTag.myAttributes.get(entry.getKey());
+        AttributeSnapshot newAttribute = entry.getValue();
+        if (oldAttribute == null || !Objects.equals(oldAttribute.value, newAttribute.value)) {
+          if (!isLayoutAttribute(newAttribute)) {
+            return null;
+          }
+          changes.add(new AttributeChange(newTag.myTag, newAttribute.namespace, newAttribute.prefix, newAttribute.name, newAttribute.value));
+        }
+      }
+      for (Map.Entry<String, AttributeSnapshot> entry : oldTag.myAttributes.entrySet()) {
+        if (!newTag.myAttributes.containsKey(entry.getKey())) {
+          AttributeSnapshot oldAttribute = entry.getValue();
+          if (!isLayoutAttribute(oldAttribute)) {
+            return null;
+          }
+          changes.add(new AttributeChange(newTag.myTag, oldAttribute.namespace, oldAttribute.prefix, oldAttribute.name, null));
+        }
+      }
+    }
+    return changes;
+  }
+
+  /**
+   * Returns whether the attribute is one of the layout params of a view. Attributes of the tools namespace are excluded since they are
+   * handled by the layoutlib callback when inflating, not by the layout params.
+   */
+  private static boolean isLayoutAttribute(@NotNull AttributeSnapshot attribute) {
+    return (ANDROID_URI.equals(attribute.namespace) || AUTO_URI.equals(attribute.namespace)) &&
+           attribute.name.startsWith(ATTR_LAYOUT_RESOURCE_PREFIX);
+  }
+
+  private static final class TagState {
+    @NotNull private final XmlTag myTag;
+    @NotNull private final String myName;
+    @NotNull private final Map<String, AttributeSnapshot> myAttributes;
+
+    private TagState(@NotNull XmlTag tag, @NotNull String name, @NotNull Map<String, AttributeSnapshot> attributes) {
+      myTag = tag;
+      myName = name;
+      myAttributes = attributes;
+    }
+  }
+
+  /**
+   * A new value of an attribute of a tag, null if the attribute was removed.
+   */
+  static final class AttributeChange {
+    @NotNull final XmlTag tag;
+    @Nullable final String namespace;
+    @Nullable final String prefix;
+    @NotNull final String name;
+    @Nullable final String value;
+
+    private AttributeChange(@NotNull XmlTag tag,
+                            @Nullable String namespace,
+                            @Nullable String prefix,
+                            @NotNull String name,
+                            @Nullable String value) {
+      this.tag = tag;
+      this.namespace = namespace;
+      this.prefix = prefix;
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
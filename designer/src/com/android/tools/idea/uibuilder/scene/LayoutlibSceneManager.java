@@ -15,11 +15,13 @@
  */
 package com.android.tools.idea.uibuilder.scene;
 
+import static com.android.SdkConstants.ATTR_LAYOUT_RESOURCE_PREFIX;
 import static com.android.SdkConstants.ATTR_SHOW_IN;
 import static com.android.SdkConstants.TOOLS_URI;
 import static com.intellij.util.ui.update.Update.HIGH_PRIORITY;
 import static com.intellij.util.ui.update.Update.LOW_PRIORITY;
 
+import android.view.View;
 import com.android.ide.common.rendering.api.ResourceReference;
 import com.android.ide.common.rendering.api.ResourceValue;
 import com.android.ide.common.rendering.api.SessionParams;
@@ -45,8 +47,10 @@ import com.android.tools.idea.common.surface.SceneView;
 import com.android.tools.idea.common.type.DesignerEditorFileType;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationListener;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.rendering.Locale;
 import com.android.tools.idea.rendering.RenderResult;
+import com.android.tools.idea.rendering.RenderResultCache;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.rendering.RenderSettings;
 import com.android.tools.idea.rendering.RenderTask;
@@ -59,11 +63,13 @@ import com.android.tools.idea.uibuilder.api.ViewHandler;
 import com.android.tools.idea.uibuilder.handlers.ViewEditorImpl;
 import com.android.tools.idea.uibuilder.handlers.constraint.targets.ConstraintDragDndTarget;
 import com.android.tools.idea.uibuilder.menu.NavigationViewSceneView;
+import com.android.tools.idea.uibuilder.model.LayoutParamsManager;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.android.tools.idea.uibuilder.scene.decorator.NlSceneDecoratorFactory;
 import com.android.tools.idea.uibuilder.surface.NlDesignSurface;
 import com.android.tools.idea.uibuilder.surface.SceneMode;
 import com.android.tools.idea.uibuilder.surface.ScreenView;
+import com.android.tools.idea.uibuilder.type.LayoutFileType;
 import com.android.tools.idea.uibuilder.type.MenuFileType;
 import com.android.tools.idea.util.ListenerCollection;
 import com.google.common.annotations.VisibleForTesting;
@@ -71,6 +77,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.wireless.android.sdk.stats.LayoutEditorRenderResult;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.Project;
@@ -84,12 +91,15 @@ import com.intellij.util.ui.UIUtil;
 import com.intellij.util.ui.update.MergingUpdateQueue;
 import com.intellij.util.ui.update.Update;
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -135,6 +145,15 @@ public class LayoutlibSceneManager extends SceneManager {
   // Protects all accesses to the myRenderTask reference. RenderTask calls to render and layout do not need to be protected
   // since RenderTask is able to handle those safely.
   private final Object myRenderingTaskLock = new Object();
+  // Key of the state myRenderTask was inflated in, or null if its results can't be cached
+  @GuardedBy("myRenderingTaskLock")
+  private RenderResultCache.Key myRenderTaskCacheKey;
+  // True until the first render of myRenderTask, which is the one added to the RenderResultCache
+  @GuardedBy("myRenderingTaskLock")
+  private boolean myCacheNextRender;
+  // Attributes of the layout myRenderTask was inflated with, including the layout attribute edits applied to its views since
+  @GuardedBy("myRenderingTaskLock")
+  private LayoutAttributeState myRenderTaskAttributeState;
   private ResourceNotificationManager.ResourceVersion myRenderedVersion;
   // Protects all read/write accesses to the myRenderResult reference
   private final ReentrantReadWriteLock myRenderResultLock = new ReentrantReadWriteLock();
@@ -162,6 +181,11 @@ public class LayoutlibSceneManager extends SceneManager {
    * If we try to schedule a new render while this is true, we simply re-use the last render in progress.
    */
   private final AtomicBoolean myIsCurrentlyRendering = new AtomicBoolean(false);
+  /**
+   * True when a live update, e.g. from an {@link com.android.tools.idea.common.model.AttributesTransaction} while dragging, is waiting
+   * for the next render. Live updates edit the views of {@link #myRenderTask}, so that render never uses the {@link RenderResultCache}.
+   */
+  private final AtomicBoolean myLiveUpdatePending = new AtomicBoolean(false);
 
   /**
    * If true, the renders using this LayoutlibSceneManager will use transparent backgrounds
@@ -173,6 +197,11 @@ public class LayoutlibSceneManager extends SceneManager {
    */
   private boolean useShrinkRendering = false;
 
+  /**
+   * If true, the renders will wait for the renders of the other editors, see {@link RenderService.RenderTaskBuilder#withBackgroundPriority}
+   */
+  private boolean useBackgroundPriority = false;
+
   protected static LayoutEditorRenderResult.Trigger getTriggerFromChangeType(@Nullable NlModel.ChangeType changeType) {
     if (changeType == null) {
       return null;
@@ -490,6 +519,7 @@ public class LayoutlibSceneManager extends SceneManager {
        */
       boolean needsRender = (surface.getSceneMode() != SceneMode.BLUEPRINT_ONLY);
       if (needsRender) {
+        myLiveUpdatePending.set(true);
         requestLayoutAndRender(animate);
       }
       else {
@@ -663,6 +693,10 @@ public class LayoutlibSceneManager extends SceneManager {
     useShrinkRendering = true;
   }
 
+  public void enableBackgroundPriority() {
+    useBackgroundPriority = true;
+  }
+
   @Override
   @NotNull
   public CompletableFuture<Void> requestLayout(boolean animate) {
@@ -816,6 +850,9 @@ public class LayoutlibSceneManager extends SceneManager {
     // external changes
     AndroidFacet facet = getModel().getFacet();
     myRenderedVersion = resourceNotificationManager.getCurrentVersion(facet, getModel().getFile(), configuration);
+    RenderResultCache.Key cacheKey = createRenderResultCacheKey();
+    LayoutAttributeState attributeState =
+      StudioFlags.NELE_INCREMENTAL_LAYOUT_UPDATE.get() ? LayoutAttributeState.create(getModel().getFile()) : null;
 
     RenderService renderService = RenderService.getInstance(getModel().getProject());
     RenderService.RenderTaskBuilder renderTaskBuilder = renderService.taskBuilder(facet, configuration)
@@ -840,6 +877,9 @@ public class LayoutlibSceneManager extends SceneManager {
                   myRenderTask.dispose();
                 }
                 myRenderTask = newTask;
+                myRenderTaskCacheKey = cacheKey;
+                myCacheNextRender = cacheKey != null;
+                myRenderTaskAttributeState = attributeState;
               }
             }
           })
@@ -905,19 +945,134 @@ public class LayoutlibSceneManager extends SceneManager {
       taskBuilder.useTransparentBackground();
     }
 
+    if (useBackgroundPriority) {
+      taskBuilder.withBackgroundPriority();
+    }
+
+    // Edits to the rendered views, e.g. from AttributesTransaction, run on the render thread of the model.
+    taskBuilder.withRenderPartition(getModel());
+
     return taskBuilder;
   }
 
   /**
    * Asynchronously update the model. This will inflate the layout and notify the listeners using
    * {@link ModelListener#modelDerivedDataChanged(NlModel)}.
+   * <p/>
+   * If the model was only edited to change layout attributes, the changes are applied to the views of the current render session instead
+   * of inflating the layout again. See {@link #applyLayoutAttributeChanges()}.
    */
   protected CompletableFuture<Void> updateModel() {
-    return inflate(true)
-      .whenCompleteAsync((result, exception) -> notifyListenersModelUpdateComplete(), PooledThreadExecutor.INSTANCE)
+    RenderResultCache.Key cacheKey = getRenderResultCacheKeyIfStateChanged();
+    if (cacheKey != null && RenderService.getInstance(getModel().getProject()).getRenderResultCache().contains(cacheKey)) {
+      // The render that follows the update uses the cached result, no need to inflate
+      disposeRenderTask();
+      return CompletableFuture.runAsync(this::notifyListenersModelUpdateComplete, PooledThreadExecutor.INSTANCE);
+    }
+    long updateStartTimeMs = System.currentTimeMillis();
+    return applyLayoutAttributeChanges()
+      .thenCompose(applied -> applied ? CompletableFuture.completedFuture(true) : inflate(true).thenApply(inflated -> false))
+      .whenCompleteAsync((incremental, exception) -> {
+        if (incremental != null) {
+          NlDiagnosticsManager.getWriteInstance(getDesignSurface())
+            .recordUpdate(System.currentTimeMillis() - updateStartTimeMs, incremental);
+        }
+        notifyListenersModelUpdateComplete();
+      }, PooledThreadExecutor.INSTANCE)
       .thenApply(result -> null);
   }
 
+  /**
+   * Applies the layout attributes edited since {@link #myRenderTask} was inflated to the layout params of its views, using the same
+   * mechanism as the live updates of {@link com.android.tools.idea.common.model.AttributesTransaction}, so the next render shows the
+   * edits without inflating the layout again.
+   *
+   * @return a future completing with false if the edits couldn't be applied, e.g. the tags or other attributes of the layout changed, in
+   * which case the layout has to be inflated again
+   */
+  @NotNull
+  private CompletableFuture<Boolean> applyLayoutAttributeChanges() {
+    NlModel model = getModel();
+    if (!StudioFlags.NELE_INCREMENTAL_LAYOUT_UPDATE.get() || model.getLastChangeType() != NlModel.ChangeType.EDIT) {
+      return CompletableFuture.completedFuture(false);
+    }
+    RenderTask renderTask;
+    LayoutAttributeState inflatedState;
+    synchronized (myRenderingTaskLock) {
+      renderTask = myRenderTask;
+      inflatedState = myRenderTaskAttributeState;
+    }
+    if (renderTask == null || renderTask.isDisposed() || inflatedState == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+
+    LayoutAttributeState currentState = LayoutAttributeState.create(model.getFile());
+    List<LayoutAttributeState.AttributeChange> changes = inflatedState.getLayoutAttributeChanges(currentState);
+    if (changes == null) {
+      return CompletableFuture.completedFuture(false);
+    }
+    List<NlComponent> components = new ArrayList<>(changes.size());
+    List<ViewInfo> viewInfos = new ArrayList<>(changes.size());
+    for (LayoutAttributeState.AttributeChange change : changes) {
+      NlComponent component = model.findViewByTag(change.tag);
+      ViewInfo viewInfo = component != null ? NlComponentHelperKt.getViewInfo(component) : null;
+      if (viewInfo == null || !(viewInfo.getViewObject() instanceof View) || viewInfo.getLayoutParamsObject() == null) {
+        return CompletableFuture.completedFuture(false);
+      }
+      components.add(component);
+      viewInfos.add(viewInfo);
+    }
+
+    Module module = model.getModule();
+    Configuration configuration = model.getConfiguration();
+    return renderTask.runAsyncRenderAction(() -> {
+      Set<View> views = new HashSet<>();
+      for (int i = 0; i < changes.size(); i++) {
+        LayoutAttributeState.AttributeChange change = changes.get(i);
+        ViewInfo viewInfo = viewInfos.get(i);
+        String name = StringUtil.trimStart(change.name, ATTR_LAYOUT_RESOURCE_PREFIX);
+        if (!LayoutParamsManager.setAttribute(viewInfo.getLayoutParamsObject(), name, change.value, module, configuration)) {
+          return false;
+        }
+        views.add((View)viewInfo.getViewObject());
+      }
+      for (View view : views) {
+        view.setLayoutParams(view.getLayoutParams());
+        view.forceLayout();
+      }
+      return true;
+    })
+      .exceptionally(exception -> {
+        Logger.getInstance(LayoutlibSceneManager.class).warn(exception);
+        return false;
+      })
+      .thenApply(applied -> {
+        if (!applied) {
+          return false;
+        }
+        synchronized (myRenderingTaskLock) {
+          if (myRenderTask != renderTask) {
+            return false;
+          }
+          myRenderTaskAttributeState = currentState;
+          // The session doesn't match the state it was inflated in anymore
+          myRenderTaskCacheKey = null;
+          myCacheNextRender = false;
+        }
+        // The snapshots are the view cookies, keep them in sync with the views
+        for (int i = 0; i < changes.size(); i++) {
+          LayoutAttributeState.AttributeChange change = changes.get(i);
+          TagSnapshot snapshot = components.get(i).getSnapshot();
+          if (snapshot != null) {
+            snapshot.setAttribute(change.name, change.namespace, change.prefix, change.value);
+          }
+        }
+        myRenderedVersion = ResourceNotificationManager.getInstance(model.getProject())
+          .getCurrentVersion(model.getFacet(), model.getFile(), configuration);
+        return true;
+      });
+  }
+
   protected void notifyListenersModelLayoutComplete(boolean animate) {
     getModel().notifyListenersModelLayoutComplete(animate);
   }
@@ -1029,6 +1184,18 @@ public class LayoutlibSceneManager extends SceneManager {
 
   @NotNull
   private CompletableFuture<RenderResult> renderImpl(boolean forceInflate) {
+    boolean hasRenderTask;
+    synchronized (myRenderingTaskLock) {
+      hasRenderTask = myRenderTask != null;
+    }
+    boolean liveUpdate = myLiveUpdatePending.getAndSet(false);
+    // Renders of the current render task, e.g. while dragging, don't look up the cache. Neither do live updates, the cached result having
+    // no view objects to edit, so the layout is inflated again if the cached result is shown.
+    RenderResult cachedResult = !liveUpdate && (forceInflate || !hasRenderTask) ? useCachedRenderResult() : null;
+    if (cachedResult != null) {
+      return CompletableFuture.completedFuture(cachedResult);
+    }
+
     return inflate(forceInflate)
       .whenCompleteAsync((result, ex) -> {
         if (result) {
@@ -1037,6 +1204,11 @@ public class LayoutlibSceneManager extends SceneManager {
       }, PooledThreadExecutor.INSTANCE)
       .thenCompose(inflated -> {
         long elapsedFrameTimeMs = myElapsedFrameTimeMs;
+        if (inflated && liveUpdate) {
+          // The edits of the live update couldn't be applied to the views of the cached result, apply them to the new views before they
+          // are rendered
+          getModel().flattenComponents().forEach(NlComponent::applyAttributeTransaction);
+        }
 
         synchronized (myRenderingTaskLock) {
           if (myRenderTask == null) {
@@ -1046,11 +1218,17 @@ public class LayoutlibSceneManager extends SceneManager {
           if (elapsedFrameTimeMs != -1) {
             myRenderTask.setElapsedFrameTimeNanos(TimeUnit.MILLISECONDS.toNanos(elapsedFrameTimeMs));
           }
+          RenderResultCache.Key cacheKey = myCacheNextRender ? myRenderTaskCacheKey : null;
+          myCacheNextRender = false;
           return myRenderTask.render().thenApply(result -> {
             // When the layout was inflated in this same call, we do not have to update the hierarchy again
             if (result != null && !inflated) {
               updateHierarchy(result);
             }
+            if (result != null && cacheKey != null && cacheKey.equals(createRenderResultCacheKey())) {
+              // Only cache the result if the layout did not change while it was inflated and rendered
+              RenderService.getInstance(getModel().getProject()).getRenderResultCache().put(cacheKey, result);
+            }
 
             return result;
           });
@@ -1058,6 +1236,72 @@ public class LayoutlibSceneManager extends SceneManager {
       });
   }
 
+  /**
+   * Returns the {@link RenderResultCache} key of the current state, or null if the cache is disabled, the results of this model can't be
+   * cached or {@link #myRenderTask} was inflated in this same state.
+   */
+  @Nullable
+  private RenderResultCache.Key getRenderResultCacheKeyIfStateChanged() {
+    RenderResultCache.Key cacheKey = createRenderResultCacheKey();
+    if (cacheKey == null) {
+      return null;
+    }
+    synchronized (myRenderingTaskLock) {
+      return myRenderTask != null && cacheKey.equals(myRenderTaskCacheKey) ? null : cacheKey;
+    }
+  }
+
+  @Nullable
+  private RenderResultCache.Key createRenderResultCacheKey() {
+    NlModel model = getModel();
+    if (!StudioFlags.NELE_RENDER_RESULT_CACHE.get() || model.getType() != LayoutFileType.INSTANCE || myElapsedFrameTimeMs != -1) {
+      return null;
+    }
+    RenderSettings settings = myRenderSettingsProvider.get();
+    List<Object> renderOptions = Arrays.asList(settings.getQuality(),
+                                               settings.getShowDecorations(),
+                                               useShrinkRendering,
+                                               useTransparentRendering,
+                                               getDesignSurface().getAdaptiveIconShape());
+    return RenderResultCache.Key.create(model.getFacet(), model.getFile(), model.getConfiguration(), renderOptions);
+  }
+
+  /**
+   * Returns a copy of the cached result of an earlier render in the current state, if the state changed since {@link #myRenderTask} was
+   * inflated. The render task is then disposed, so the next render that misses the cache or is a live update, which needs view objects,
+   * inflates the layout again.
+   */
+  @Nullable
+  private RenderResult useCachedRenderResult() {
+    RenderResultCache.Key cacheKey = getRenderResultCacheKeyIfStateChanged();
+    if (cacheKey == null) {
+      return null;
+    }
+    RenderResult result = RenderService.getInstance(getModel().getProject()).getRenderResultCache().get(cacheKey);
+    if (result == null) {
+      return null;
+    }
+
+    disposeRenderTask();
+    NlModel model = getModel();
+    myRenderedVersion = ResourceNotificationManager.getInstance(model.getProject())
+      .getCurrentVersion(model.getFacet(), model.getFile(), model.getConfiguration());
+    updateHierarchy(result);
+    return result;
+  }
+
+  private void disposeRenderTask() {
+    synchronized (myRenderingTaskLock) {
+      if (myRenderTask != null) {
+        myRenderTask.dispose();
+        myRenderTask = null;
+      }
+      myRenderTaskCacheKey = null;
+      myCacheNextRender = false;
+      myRenderTaskAttributeState = null;
+    }
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
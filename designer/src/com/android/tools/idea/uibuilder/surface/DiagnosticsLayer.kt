@@ -70,6 +70,7 @@ class DiagnosticsLayer(val surface: DesignSurface) : Layer() {
       | Mem avail     ${runtime.freeMemory() / MB}MB ${PCT_FORMAT.format(freeMemPct)}%
       | 90% Render    ${PCT_FORMAT.format(diagnostics.renderTime(90))}ms
       | Last render   ${PCT_FORMAT.format(lastRenderMs)}ms / ${diagnostics.lastRenderImageSize() / MB}MB
+      | 90% Update    ${PCT_FORMAT.format(diagnostics.updateTime(90, true))}ms incremental / ${PCT_FORMAT.format(diagnostics.updateTime(90, false))}ms inflate
       |
       |Image pool
       | Allocated     ${(poolStats?.totalBytesAllocated() ?: -1) / MB}MB
@@ -36,6 +36,7 @@ import com.android.tools.idea.res.ResourceHelper;
 import com.android.tools.idea.startup.ClearResourceCacheAfterFirstBuild;
 import com.android.tools.idea.uibuilder.analytics.NlAnalyticsManager;
 import com.android.tools.idea.uibuilder.editor.NlPreviewForm;
+import com.android.tools.idea.uibuilder.scene.LayoutlibSceneManager;
 import com.android.tools.idea.uibuilder.surface.GridSurfaceLayoutManager;
 import com.android.tools.idea.uibuilder.surface.NlDesignSurface;
 import com.android.tools.idea.uibuilder.surface.SceneMode;
@@ -137,6 +138,12 @@ public class VisualizationForm implements Disposable {
       .showModelNames()
       .setIsPreview(false)
       .setEditable(false)
+      .setSceneManagerProvider((surface, model) -> {
+        // Renders of the many configurations shown here should not delay the renders of the editor.
+        LayoutlibSceneManager sceneManager = NlDesignSurface.defaultSceneManagerProvider(surface, model);
+        sceneManager.enableBackgroundPriority();
+        return sceneManager;
+      })
       .setActionManagerProvider((surface) -> new VisualizationActionManager((NlDesignSurface) surface))
       .setLayoutManager(new GridSurfaceLayoutManager(DEFAULT_SCREEN_OFFSET_X,
                                                      DEFAULT_SCREEN_OFFSET_Y,
@@ -66,4 +66,20 @@ class NlDiagnosticsTest {
     assertEquals(100, read.lastRenders()[0])
     assertEquals(101, read.lastRenders()[1])
   }
+
+  @Test
+  fun testRecordingUpdates() {
+    val surface = mock(DesignSurface::class.java)
+    val write = NlDiagnosticsManager.getWriteInstance(surface)
+    val read = NlDiagnosticsManager.getReadInstance(surface)
+
+    assertEquals(-1, read.updateTime(90, true))
+    assertEquals(-1, read.updateTime(90, false))
+
+    write.recordUpdate(5, true)
+    write.recordUpdate(200, false)
+    assertEquals(5, read.updateTime(90, true))
+    assertEquals(200, read.updateTime(90, false))
+    assertTrue(read.lastRenders().isEmpty())
+  }
 }
\ No newline at end of file
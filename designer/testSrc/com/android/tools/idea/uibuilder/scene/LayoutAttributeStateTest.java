@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scene;
+
+import static com.android.SdkConstants.ANDROID_URI;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
+import java.util.List;
+import org.intellij.lang.annotations.Language;
+import org.jetbrains.android.AndroidTestCase;
+
+public class LayoutAttributeStateTest extends AndroidTestCase {
+  @Language("XML")
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_width=\"match_parent\"\n" +
+                                       "    android:layout_height=\"match_parent\">\n" +
+                                       "    <TextView\n" +
+                                       "        android:layout_width=\"wrap_content\"\n" +
+                                       "        android:layout_height=\"wrap_content\"\n" +
+                                       "        android:layout_marginStart=\"8dp\"\n" +
+                                       "        android:text=\"Hello\"/>\n" +
+                                       "</LinearLayout>";
+
+  private XmlFile myFile;
+  private XmlTag myTextView;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = (XmlFile)myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    //noinspection ConstantConditions
+    myTextView = myFile.getRootTag().getSubTags()[0];
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myFile = null;
+      myTextView = null;
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testNoChanges() {
+    LayoutAttributeState state = LayoutAttributeState.create(myFile);
+
+    List<LayoutAttributeState.AttributeChange> changes = state.getLayoutAttributeChanges(LayoutAttributeState.create(myFile));
+    assertNotNull(changes);
+    assertEmpty(changes);
+  }
+
+  public void testLayoutAttributeChanged() {
+    LayoutAttributeState state = LayoutAttributeState.create(myFile);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> myTextView.setAttribute("android:layout_marginStart", "16dp"));
+
+    List<LayoutAttributeState.AttributeChange> changes = state.getLayoutAttributeChanges(LayoutAttributeState.create(myFile));
+    assertNotNull(changes);
+    assertSize(1, changes);
+    LayoutAttributeState.AttributeChange change = changes.get(0);
+    assertSame(myTextView, change.tag);
+    assertEquals(ANDROID_URI, change.namespace);
+    assertEquals("layout_marginStart", change.name);
+    assertEquals("16dp", change.value);
+  }
+
+  public void testLayoutAttributeRemoved() {
+    LayoutAttributeState state = LayoutAttributeState.create(myFile);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> myTextView.setAttribute("android:layout_marginStart", null));
+
+    List<LayoutAttributeState.AttributeChange> changes = state.getLayoutAttributeChanges(LayoutAttributeState.create(myFile));
+    assertNotNull(changes);
+    assertSize(1, changes);
+    assertEquals("layout_marginStart", changes.get(0).name);
+    assertNull(changes.get(0).value);
+  }
+
+  public void testOtherAttributeChanged() {
+    LayoutAttributeState state = LayoutAttributeState.create(myFile);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      myTextView.setAttribute("android:layout_marginStart", "16dp");
+      myTextView.setAttribute("android:text", "Bye");
+    });
+
+    assertNull(state.getLayoutAttributeChanges(LayoutAttributeState.create(myFile)));
+  }
+
+  public void testTagAdded() {
+    LayoutAttributeState state = LayoutAttributeState.create(myFile);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      //noinspection ConstantConditions
+      myFile.getRootTag().addSubTag(myTextView.createChildTag("Button", null, null, false), false);
+    });
+
+    assertNull(state.getLayoutAttributeChanges(LayoutAttributeState.create(myFile)));
+  }
+}
@@ -34,64 +34,90 @@ import java.util.concurrent.*
  * /usr/local/google/home/ezemtsov/projects/android-apps/sum/app/src/main/cpp/native-lib.cpp:36:7
  *
  * More info about llvm-symbolizer: https://llvm.org/docs/CommandGuide/llvm-symbolizer.html
+ *
+ * Lookups are spread over a pool of up to [poolSize] llvm-symbolizer processes, started on demand. Each process is sent its requests
+ * in batches of [BATCH_SIZE] before its responses are read back, rather than one round trip per offset. Results, including offsets
+ * that have no symbol, are kept in [cache] so the same library doesn't need to be symbolized again.
  */
-class LlvmSymbolizer(private val symbolizerExe: String,
-                     private val symLocator: SymbolFilesLocator,
-                     private val timeoutMsc: Long = 5000) : NativeSymbolizer {
+class LlvmSymbolizer @JvmOverloads constructor(private val symbolizerExe: String,
+                                               private val symLocator: SymbolFilesLocator,
+                                               private val timeoutMsc: Long = 5000,
+                                               poolSize: Int = DEFAULT_POOL_SIZE,
+                                               private val cache: SymbolCache = SymbolCache()) : NativeSymbolizer {
 
-  private var procHolder : ProcessHolder? = null
-  private val executor : ExecutorService = Executors.newSingleThreadExecutor()
+  private val workers = List(Math.max(1, poolSize)) { Worker() }
 
   override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
-    val symFiles = symLocator.findSymbolFiles(abiArch, module)
-
-    for (symFile in symFiles) {
-      val request = formatRequest(symFile, offset)
-
-      val holder = getProcHolder()
-      val future = executor.submit( Callable<List<String>> {
-        holder.stdin.write(request)
-        holder.stdin.flush()
-
-        val response: MutableList<String> = mutableListOf()
-        var responseLine: String?
-        while (true) {
-          responseLine = holder.stdout.readLine()
-          if (responseLine == null || responseLine.isEmpty()) {
-            break
-          }
-          response.add(responseLine)
+    return symbolize(abiArch, module, listOf(offset))[0]
+  }
+
+  override fun symbolize(abiArch: String, module: String, offsets: List<Long>): List<Symbol?> {
+    val results = arrayOfNulls<Symbol>(offsets.size)
+    // Indices of the offsets that haven't been found in any of the symbol files so far.
+    var unresolved = offsets.indices.toList()
+
+    for (symFile in symLocator.findSymbolFiles(abiArch, module)) {
+      if (unresolved.isEmpty()) {
+        break
+      }
+      val toLookUp = mutableListOf<Int>()
+      for (index in unresolved) {
+        val entry = cache.get(symFile, offsets[index])
+        if (entry == null) {
+          toLookUp.add(index)
         }
-        response
-      })
-      val response : List<String>
+        else {
+          results[index] = entry.toSymbol(module)
+        }
+      }
+      if (toLookUp.isNotEmpty()) {
+        lookUp(symFile, module, toLookUp.map { offsets[it] }).forEachIndexed { i, symbol -> results[toLookUp[i]] = symbol }
+      }
+      unresolved = unresolved.filter { results[it] == null }
+    }
+
+    return results.asList()
+  }
+
+  /**
+   * Sends the offsets to the worker processes in batches and caches the responses. Offsets of a batch that timed out or failed, e.g.
+   * because the process crashed, are returned as null and not cached, so they are looked up again next time.
+   */
+  private fun lookUp(symFile: File, module: String, offsets: List<Long>): List<Symbol?> {
+    val batches = offsets.chunked(BATCH_SIZE)
+    val futures = batches.mapIndexed { i, batch -> workers[i % workers.size].submit(batch.map { formatRequest(symFile, it) }) }
+
+    val results = mutableListOf<Symbol?>()
+    for ((i, future) in futures.withIndex()) {
+      val batch = batches[i]
+      val responses: List<List<String>>
       try {
-        response = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
+        responses = future.get(timeoutMsc, TimeUnit.MILLISECONDS)
       } catch (e: TimeoutException) {
         getLogger().warn("llvm-symbolizer timed out", e)
-        stop()
+        workers[i % workers.size].stop()
+        batch.forEach { _ -> results.add(null) }
         continue
       } catch (e: ExecutionException) {
         getLogger().warn("llvm-symbolizer communication failed", e)
-        stop()
+        workers[i % workers.size].stop()
+        batch.forEach { _ -> results.add(null) }
+        continue
+      } catch (e: CancellationException) {
+        // Dropped from the queue of a worker that was stopped after another batch failed.
+        batch.forEach { _ -> results.add(null) }
         continue
       }
 
-      val result = parseResponse(response, module)
-      if (result != null)
-        return result
-    }
-
-    return null
-  }
-
-  private fun getProcHolder() : ProcessHolder {
-    var holder = procHolder
-    if (holder == null || !holder.process.isAlive) {
-      start()
-      holder = procHolder!! // procHolder must't be null after start()
+      val lookups = LinkedHashMap<Long, SymbolCache.Entry>()
+      for ((j, response) in responses.withIndex()) {
+        val symbol = parseResponse(response, module)
+        lookups[batch[j]] = SymbolCache.Entry.of(symbol)
+        results.add(symbol)
+      }
+      cache.putAll(symFile, lookups)
     }
-    return holder
+    return results
   }
 
   private fun formatRequest(symFile: File, offset: Long): String {
@@ -126,24 +152,75 @@ class LlvmSymbolizer(private val symbolizerExe: String,
     return Symbol(name, module, sourceFile, lineNumber)
   }
 
-  private fun start() {
-    if (procHolder != null)
-      stop()
+  override fun stop() {
+    workers.forEach { it.stop() }
+  }
 
-    val builder = ProcessBuilder(symbolizerExe)
-    val process = builder.start()
-    if (!process.isAlive) {
-      throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+  /**
+   * One llvm-symbolizer process, restarted when it dies or gets stuck, and the threads that talk to it. The threads are started with the
+   * process and shut down with it, so batches queued for a process that was stopped never reach the one that replaces it.
+   */
+  private inner class Worker {
+    private var procHolder: ProcessHolder? = null
+    private var executor: ExecutorService? = null
+    private var writer: ExecutorService? = null
+
+    /**
+     * Writes the requests on a separate thread while the responses are read, so neither side blocks when the responses don't fit in the
+     * pipe buffer, which is small on Windows. The process is started on the calling thread, so a missing executable is reported to the
+     * caller.
+     */
+    @Synchronized
+    fun submit(requests: List<String>): Future<List<List<String>>> {
+      var holder = procHolder
+      if (holder == null || !holder.process.isAlive) {
+        start()
+        holder = procHolder!! // procHolder must't be null after start()
+      }
+      val requestWriter = writer!!
+      return executor!!.submit(Callable<List<List<String>>> {
+        val written = requestWriter.submit {
+          for (request in requests) {
+            holder.stdin.write(request)
+          }
+          holder.stdin.flush()
+        }
+        val responses = readResponses(holder.stdout, requests.size)
+        written.get()
+        responses
+      })
     }
 
-    val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
-    val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
-    procHolder = ProcessHolder(process, stdout, stdin)
-  }
+    @Synchronized
+    private fun start() {
+      if (procHolder != null)
+        stop()
 
-  override fun stop() {
-    procHolder?.dispose()
-    procHolder = null
+      val builder = ProcessBuilder(symbolizerExe)
+      val process = builder.start()
+      if (!process.isAlive) {
+        throw IOException("Symbolizer process is not alive. Executable: $symbolizerExe")
+      }
+
+      val stdin = OutputStreamWriter(process.outputStream, Charsets.UTF_8)
+      val stdout = BufferedReader(InputStreamReader(process.inputStream, Charsets.UTF_8))
+      procHolder = ProcessHolder(process, stdout, stdin)
+      executor = Executors.newSingleThreadExecutor(THREAD_FACTORY)
+      writer = Executors.newSingleThreadExecutor(THREAD_FACTORY)
+    }
+
+    /**
+     * Kills the process, which makes the batch being read from it fail, and cancels the batches still queued for it.
+     */
+    @Synchronized
+    fun stop() {
+      procHolder?.dispose()
+      procHolder = null
+      executor?.shutdownNow()?.forEach { (it as? Future<*>)?.cancel(false) }
+      executor = null
+      writer?.shutdownNow()
+      writer = null
+    }
   }
 
   private class ProcessHolder(val process: Process,
@@ -153,4 +230,42 @@ class LlvmSymbolizer(private val symbolizerExe: String,
       process.destroy()
     }
   }
-}
\ No newline at end of file
+
+  companion object {
+    /**
+     * Number of requests written to a process before reading its responses.
+     */
+    const val BATCH_SIZE = 64
+
+    @JvmField
+    val DEFAULT_POOL_SIZE = Math.min(4, Runtime.getRuntime().availableProcessors())
+
+    /**
+     * Daemon threads, so a symbolizer that isn't stopped doesn't keep the JVM alive.
+     */
+    private val THREAD_FACTORY = ThreadFactory { runnable -> Thread(runnable, "llvm-symbolizer").apply { isDaemon = true } }
+  }
+}
+
+/**
+ * Reads the responses to [count] requests from llvm-symbolizer's output. Each response is made of non-empty lines followed by an empty
+ * line.
+ *
+ * @throws IOException if the output ends before every request is answered, e.g. because the process crashed, so that the missing
+ * responses aren't mistaken for offsets without a symbol.
+ */
+internal fun readResponses(stdout: BufferedReader, count: Int): List<List<String>> {
+  val responses: MutableList<List<String>> = mutableListOf()
+  for (i in 0 until count) {
+    val response: MutableList<String> = mutableListOf()
+    while (true) {
+      val responseLine = stdout.readLine() ?: throw IOException("llvm-symbolizer exited after ${responses.size} of $count responses")
+      if (responseLine.isEmpty()) {
+        break
+      }
+      response.add(responseLine)
+    }
+    responses.add(response)
+  }
+  return responses
+}
@@ -39,6 +39,15 @@ interface NativeSymbolizer {
    */
   @Throws(IOException::class)
   fun symbolize(abiArch: String, module: String, offset: Long): Symbol?
+
+  /**
+   * Same as [symbolize] for several offsets in the same module, which lets implementations batch their lookups.
+   * @return the symbols of the offsets, in the same order, null for the ones that can't be found
+   */
+  @JvmDefault
+  @Throws(IOException::class)
+  fun symbolize(abiArch: String, module: String, offsets: List<Long>): List<Symbol?> = offsets.map { symbolize(abiArch, module, it) }
+
   fun stop()
 }
 
@@ -51,7 +60,8 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  val cache = SymbolCache(Paths.get(PathManager.getSystemPath(), "native-symbols").toFile())
+  return LlvmSymbolizer(symbolizerPath, symLocator, cache = cache)
 }
 
 /**
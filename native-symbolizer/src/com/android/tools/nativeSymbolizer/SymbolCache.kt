@@ -0,0 +1,298 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Cache of symbolization results, keyed by symbol file and offset.
+ *
+ * Symbol files are identified by their GNU build id, so the results stay valid when a library is rebuilt to the same binary or copied
+ * somewhere else. When [cacheDir] is set, the results for files with a build id are also written there, one file per build id, and
+ * read back the first time that build id is looked up, which makes them survive across captures and IDE restarts. Files without a
+ * build id (e.g. .dwo files) are identified by path, size and modification time and only cached in memory.
+ *
+ * The in-memory cache keeps about [maxEntries] results, evicting the results of the least recently used symbol files as a whole. Once a
+ * build id is evicted, its file is read again on its next lookup, so results are only looked up and written once and each file is only
+ * read once per eviction. The files on disk are least recently used too: once
+ * they take more than [maxDiskBytes], the files of the build ids used least recently are deleted. Files with duplicate offsets, written
+ * by concurrent lookups, are compacted when read. This class is thread-safe.
+ */
+class SymbolCache @JvmOverloads constructor(private val cacheDir: File? = null,
+                                            private val maxEntries: Int = 100_000,
+                                            private val maxDiskBytes: Long = DEFAULT_MAX_DISK_BYTES) {
+
+  /**
+   * A cached lookup. The module isn't part of it since the same symbol file serves every path the library is loaded from on a device.
+   */
+  data class Entry(val name: String, val sourceFile: String, val lineNumber: Int) {
+    val isFound: Boolean get() = name.isNotEmpty()
+
+    fun toSymbol(module: String): Symbol? = if (isFound) Symbol(name, module, sourceFile, lineNumber) else null
+
+    companion object {
+      @JvmField
+      val NOT_FOUND = Entry("", "", 0)
+
+      @JvmStatic
+      fun of(symbol: Symbol?): Entry = if (symbol == null) NOT_FOUND else Entry(symbol.name, symbol.sourceFile, symbol.lineNumber)
+    }
+  }
+
+  private data class FileStamp(val path: String, val length: Long, val lastModified: Long)
+
+  /**
+   * Results by file key and offset, with the least recently used file keys first.
+   */
+  private val entries = LinkedHashMap<String, MutableMap<Long, Entry>>(16, 0.75f, true)
+  private var entryCount = 0
+  private val fileKeys = HashMap<FileStamp, String>()
+  private val loadedBuildIds = HashSet<String>()
+
+  /**
+   * Total size of the files in [cacheDir], computed on first use.
+   */
+  private var diskBytes = -1L
+
+  /**
+   * @return the cached lookup of [offset] in [symFile], or null if it hasn't been looked up yet.
+   */
+  @Synchronized
+  fun get(symFile: File, offset: Long): Entry? {
+    val fileKey = getFileKey(symFile)
+    loadIfNeeded(fileKey)
+    return entries[fileKey]?.get(offset)
+  }
+
+  /**
+   * Caches the lookups of a batch of offsets in [symFile], and appends them to the disk cache when the file has a build id.
+   */
+  @Synchronized
+  fun putAll(symFile: File, lookups: Map<Long, Entry>) {
+    val fileKey = getFileKey(symFile)
+    addEntries(fileKey, lookups)
+    val file = getCacheFile(fileKey) ?: return
+    try {
+      file.parentFile.mkdirs()
+      val text = lookups.entries.joinToString(separator = "") { (offset, entry) -> formatLine(offset, entry) }
+      val previousBytes = getDiskBytes() - file.length()
+      file.appendText(text)
+      diskBytes = previousBytes + file.length()
+      trimDiskCache(file)
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to write the native symbol cache", e)
+    }
+  }
+
+  private fun getFileKey(symFile: File): String {
+    val stamp = FileStamp(symFile.absolutePath, symFile.length(), symFile.lastModified())
+    return fileKeys.getOrPut(stamp) {
+      val buildId = readGnuBuildId(symFile)
+      if (buildId != null) BUILD_ID_PREFIX + buildId else "${stamp.path}:${stamp.length}:${stamp.lastModified}"
+    }
+  }
+
+  private fun getCacheFile(fileKey: String): File? {
+    if (cacheDir == null || !fileKey.startsWith(BUILD_ID_PREFIX)) {
+      return null
+    }
+    return File(cacheDir, fileKey.substring(BUILD_ID_PREFIX.length) + CACHE_FILE_SUFFIX)
+  }
+
+  private fun loadIfNeeded(fileKey: String) {
+    val file = getCacheFile(fileKey) ?: return
+    if (!loadedBuildIds.add(fileKey) || !file.isFile) {
+      return
+    }
+    try {
+      val lookups = LinkedHashMap<Long, Entry>()
+      var lineCount = 0
+      file.forEachLine { line ->
+        lineCount++
+        val parts = line.split('\t')
+        val offset = parts[0].toLongOrNull(16)
+        if (parts.size == 4 && offset != null) {
+          lookups[offset] = Entry(parts[1], parts[2], parts[3].toIntOrNull() ?: 0)
+        }
+      }
+      addEntries(fileKey, lookups)
+      if (lineCount > lookups.size) {
+        compact(file, lookups)
+      }
+      // Marks the build id as recently used for trimDiskCache.
+      file.setLastModified(System.currentTimeMillis())
+    }
+    catch (e: IOException) {
+      getLogger().warn("Failed to read the native symbol cache", e)
+    }
+  }
+
+  private fun addEntries(fileKey: String, lookups: Map<Long, Entry>) {
+    val fileEntries = entries.getOrPut(fileKey) { HashMap() }
+    for ((offset, entry) in lookups) {
+      if (fileEntries.put(offset, entry) == null) {
+        entryCount++
+      }
+    }
+
+    // Evicts whole files, so a file that is read back has all of its results in memory until it is evicted again.
+    val iterator = entries.entries.iterator()
+    while (entryCount > maxEntries && iterator.hasNext()) {
+      val (evictedKey, evictedEntries) = iterator.next()
+      if (evictedKey == fileKey) {
+        continue
+      }
+      iterator.remove()
+      entryCount -= evictedEntries.size
+      loadedBuildIds.remove(evictedKey)
+    }
+  }
+
+  /**
+   * Rewrites [file] with one line per offset.
+   */
+  private fun compact(file: File, lookups: Map<Long, Entry>) {
+    val previousBytes = getDiskBytes() - file.length()
+    val temp = File(file.path + ".tmp")
+    temp.writeText(lookups.entries.joinToString(separator = "") { (offset, entry) -> formatLine(offset, entry) })
+    if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+      temp.delete()
+      throw IOException("Failed to compact $file")
+    }
+    diskBytes = previousBytes + file.length()
+  }
+
+  private fun getDiskBytes(): Long {
+    if (diskBytes < 0) {
+      diskBytes = listCacheFiles().map { it.length() }.sum()
+    }
+    return diskBytes
+  }
+
+  /**
+   * Deletes the files of the least recently used build ids, other than [current], until the cache fits in [maxDiskBytes].
+   */
+  private fun trimDiskCache(current: File) {
+    if (diskBytes <= maxDiskBytes) {
+      return
+    }
+    for (file in listCacheFiles().sortedBy { it.lastModified() }) {
+      if (diskBytes <= maxDiskBytes) {
+        break
+      }
+      if (file == current) {
+        continue
+      }
+      val length = file.length()
+      if (file.delete()) {
+        diskBytes -= length
+      }
+    }
+  }
+
+  private fun listCacheFiles(): List<File> = cacheDir?.listFiles { file -> file.name.endsWith(CACHE_FILE_SUFFIX) }?.toList() ?: emptyList()
+
+  private fun formatLine(offset: Long, entry: Entry) =
+    "${java.lang.Long.toHexString(offset)}\t${entry.name}\t${entry.sourceFile}\t${entry.lineNumber}\n"
+
+  private companion object {
+    const val BUILD_ID_PREFIX = "build-id:"
+    const val CACHE_FILE_SUFFIX = ".txt"
+    const val DEFAULT_MAX_DISK_BYTES = 64L * 1024 * 1024
+  }
+}
+
+private const val SHT_NOTE = 7
+private const val NT_GNU_BUILD_ID = 3
+
+/**
+ * Reads the GNU build id of an ELF file from its note sections.
+ *
+ * @return the build id as a lowercase hex string, or null if the file isn't an ELF file or has no build id.
+ */
+internal fun readGnuBuildId(file: File): String? {
+  try {
+    RandomAccessFile(file, "r").use { raf ->
+      val buffer = raf.channel.map(FileChannel.MapMode.READ_ONLY, 0, raf.length())
+      if (buffer.limit() < 0x40 ||
+          buffer.get(0).toInt() != 0x7F || buffer.get(1) != 'E'.toByte() || buffer.get(2) != 'L'.toByte() || buffer.get(3) != 'F'.toByte()) {
+        return null
+      }
+      val is64Bit = buffer.get(4).toInt() == 2
+      buffer.order(if (buffer.get(5).toInt() == 2) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN)
+
+      val sectionHeadersOffset = if (is64Bit) buffer.getLong(0x28) else buffer.getInt(0x20).toLong() and 0xFFFFFFFFL
+      val sectionHeaderSize = buffer.getShort(if (is64Bit) 0x3A else 0x2E).toInt() and 0xFFFF
+      val sectionCount = buffer.getShort(if (is64Bit) 0x3C else 0x30).toInt() and 0xFFFF
+      for (i in 0 until sectionCount) {
+        val header = sectionHeadersOffset + i.toLong() * sectionHeaderSize
+        if (header + sectionHeaderSize > buffer.limit()) {
+          return null
+        }
+        if (buffer.getInt(header.toInt() + 4) != SHT_NOTE) {
+          continue
+        }
+        val offset = if (is64Bit) buffer.getLong(header.toInt() + 0x18) else buffer.getInt(header.toInt() + 0x10).toLong() and 0xFFFFFFFFL
+        val size = if (is64Bit) buffer.getLong(header.toInt() + 0x20) else buffer.getInt(header.toInt() + 0x14).toLong() and 0xFFFFFFFFL
+        if (offset + size > buffer.limit()) {
+          continue
+        }
+        findBuildIdNote(buffer, offset.toInt(), (offset + size).toInt())?.let { return it }
+      }
+    }
+  }
+  catch (e: IOException) {
+    getLogger().debug("Failed to read the build id of $file", e)
+  }
+  catch (e: RuntimeException) {
+    // Malformed headers pointing outside of the file.
+    getLogger().debug("Failed to read the build id of $file", e)
+  }
+  return null
+}
+
+private fun findBuildIdNote(buffer: ByteBuffer, start: Int, end: Int): String? {
+  var position = start
+  while (position + 12 <= end) {
+    val nameSize = buffer.getInt(position)
+    val descriptorSize = buffer.getInt(position + 4)
+    val type = buffer.getInt(position + 8)
+    val nameStart = position + 12
+    val descriptorStart = nameStart + align4(nameSize)
+    if (nameSize < 0 || descriptorSize < 0 || descriptorStart + descriptorSize > end) {
+      return null
+    }
+    // The owner is "GNU" followed by a NUL.
+    if (type == NT_GNU_BUILD_ID && nameSize == 4 &&
+        buffer.get(nameStart) == 'G'.toByte() && buffer.get(nameStart + 1) == 'N'.toByte() && buffer.get(nameStart + 2) == 'U'.toByte()) {
+      val hex = StringBuilder(descriptorSize * 2)
+      for (i in 0 until descriptorSize) {
+        hex.append(String.format("%02x", buffer.get(descriptorStart + i)))
+      }
+      return hex.toString()
+    }
+    position = descriptorStart + align4(descriptorSize)
+  }
+  return null
+}
+
+private fun align4(size: Int) = (size + 3) and 3.inv()
@@ -21,8 +21,10 @@ import com.intellij.openapi.util.io.FileUtil
 import org.junit.Assert
 import org.junit.Assume
 import org.junit.Test
+import java.io.BufferedReader
 import java.io.File
 import java.io.IOException
+import java.io.StringReader
 import java.nio.file.Paths
 
 
@@ -168,6 +170,71 @@ class LlvmSymbolizerTest {
     Assert.assertNull(sym)
   }
 
+  @Test
+  fun testBatchMatchesSingleLookups() {
+    val batchSymbolizer = createSymbolizer()
+    val singleSymbolizer = createSymbolizer()
+    for (arch in architectures) {
+      val expectedSymbolsFile = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile()
+      // Repeat the offsets to get more than one batch, and add one without a symbol.
+      val offsets = (expectedSymbolsFile.readLines().map { it.split('|')[0].toLong(16) + 1 } * 3) + 0xffffffffffL
+      val module = "/path/to/device/modules/" + LIB_FILE_NAME
+
+      val symbols = batchSymbolizer.symbolize(arch, module, offsets)
+      Assert.assertEquals(offsets.map { singleSymbolizer.symbolize(arch, module, it) }, symbols)
+      Assert.assertNull(symbols.last())
+    }
+  }
+
+  @Test
+  fun testCacheSurvivesRestart() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache", true)
+    val arch = "x86"
+    val offset = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().first().split('|')[0].toLong(16) + 1
+    val module = "/path/to/device/modules/" + LIB_FILE_NAME
+    Assert.assertNotNull(readGnuBuildId(File(File(testDataDir, arch), LIB_FILE_NAME)))
+
+    val symbolizer = LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), cache = SymbolCache(cacheDir))
+    val symbol = symbolizer.symbolize(arch, module, offset)
+    Assert.assertNotNull(symbol)
+    symbolizer.stop()
+
+    // The executable doesn't exist, so this one can only answer from the cache on disk.
+    val missingExe = getLlvmSymbolizerPath().replace("llvm-symbolizer", "not-llvm-symbolizer")
+    val cachedSymbolizer = LlvmSymbolizer(missingExe, SymbolFilesLocator(getSymDirMap()), cache = SymbolCache(cacheDir))
+    Assert.assertEquals(symbol, cachedSymbolizer.symbolize(arch, "/other/path/" + LIB_FILE_NAME, offset)?.copy(module = module))
+  }
+
+  @Test
+  fun testTruncatedOutputFailsTheBatch() {
+    val output = "name0\n/src/a.cpp:1:2\n\nname1\n"
+    Assert.assertEquals(listOf(listOf("name0", "/src/a.cpp:1:2")), readResponses(BufferedReader(StringReader(output)), 1))
+    try {
+      readResponses(BufferedReader(StringReader(output)), 2)
+      Assert.fail("IOException is expected to be thrown by the line above")
+    }
+    catch (expected: IOException) {
+    }
+  }
+
+  @Test
+  fun testFailedLookupsAreNotCached() {
+    val cacheDir = FileUtil.createTempDirectory("llvm-symbolizer", "cache", true)
+    val arch = "x86"
+    val offset = Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile().readLines().first().split('|')[0].toLong(16) + 1
+    val module = "/path/to/device/modules/" + LIB_FILE_NAME
+    val cache = SymbolCache(cacheDir)
+
+    // A process that never answers, like a crashed llvm-symbolizer.
+    Assume.assumeFalse(SystemInfo.isWindows) // Windows doesn't have 'yes'
+    Assert.assertNull(LlvmSymbolizer("yes", SymbolFilesLocator(getSymDirMap()), 50, cache = cache).symbolize(arch, module, offset))
+    Assert.assertNull(cache.get(File(File(testDataDir, arch), LIB_FILE_NAME), offset))
+    Assert.assertNotNull(LlvmSymbolizer(getLlvmSymbolizerPath(), SymbolFilesLocator(getSymDirMap()), cache = cache)
+                           .symbolize(arch, module, offset))
+  }
+
+  private operator fun <T> List<T>.times(count: Int): List<T> = (1..count).flatMap { this }
+
   fun getSymDirMap(): Map<String, Set<File>> {
     val result: MutableMap<String, Set<File>> = hashMapOf()
     for (arch in architectures) {
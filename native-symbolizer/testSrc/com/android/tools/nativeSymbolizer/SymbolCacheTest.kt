@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Assert
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+
+class SymbolCacheTest {
+  private val testDataDir = TestUtils.getWorkspaceFile("tools/adt/idea/native-symbolizer/testData/bin/")
+  private val x86Lib = File(File(testDataDir, "x86"), "libnative-lib.so")
+  private val armLib = File(File(testDataDir, "arm"), "libnative-lib.so")
+  private lateinit var cacheDir: File
+
+  @Before
+  fun setUp() {
+    cacheDir = FileUtil.createTempDirectory("symbol-cache", "test", true)
+  }
+
+  @Test
+  fun evictedResultsAreReadBackInsteadOfWrittenAgain() {
+    val cache = SymbolCache(cacheDir, maxEntries = 2)
+    // Lookups check the cache before symbolizing.
+    Assert.assertNull(cache.get(x86Lib, 1))
+    cache.putAll(x86Lib, mapOf(1L to entry("a"), 2L to entry("b")))
+    Assert.assertNull(cache.get(armLib, 1))
+    cache.putAll(armLib, mapOf(1L to entry("c"), 2L to entry("d")))
+
+    // The results of the x86 library were evicted from memory, but are still on disk.
+    Assert.assertEquals(entry("a"), cache.get(x86Lib, 1))
+    Assert.assertEquals(entry("b"), cache.get(x86Lib, 2))
+    Assert.assertEquals(2, cacheFile(x86Lib).readLines().size)
+  }
+
+  @Test
+  fun resultsOfALibraryAreEvictedTogether() {
+    val cache = SymbolCache(cacheDir, maxEntries = 3)
+    Assert.assertNull(cache.get(x86Lib, 1))
+    cache.putAll(x86Lib, mapOf(1L to entry("a"), 2L to entry("b")))
+    Assert.assertNull(cache.get(armLib, 1))
+    cache.putAll(armLib, mapOf(1L to entry("c"), 2L to entry("d")))
+    Assert.assertTrue(cacheFile(x86Lib).delete())
+    Assert.assertTrue(cacheFile(armLib).delete())
+
+    // Every result of the arm library is still in memory, none of the x86 library is.
+    Assert.assertEquals(entry("c"), cache.get(armLib, 1))
+    Assert.assertEquals(entry("d"), cache.get(armLib, 2))
+    Assert.assertNull(cache.get(x86Lib, 1))
+    Assert.assertNull(cache.get(x86Lib, 2))
+  }
+
+  @Test
+  fun duplicateOffsetsAreCompacted() {
+    SymbolCache(cacheDir).putAll(x86Lib, mapOf(1L to entry("a")))
+    // A concurrent lookup of the same offset from another cache instance.
+    SymbolCache(cacheDir).putAll(x86Lib, mapOf(1L to entry("a"), 2L to entry("b")))
+    Assert.assertEquals(3, cacheFile(x86Lib).readLines().size)
+
+    val cache = SymbolCache(cacheDir)
+    Assert.assertEquals(entry("a"), cache.get(x86Lib, 1))
+    Assert.assertEquals(2, cacheFile(x86Lib).readLines().size)
+  }
+
+  @Test
+  fun leastRecentlyUsedFilesAreDeletedOverTheDiskCapacity() {
+    val lookups = (0L until 10L).associate { it to entry("function$it") }
+    val cache = SymbolCache(cacheDir, maxDiskBytes = 400)
+    cache.putAll(x86Lib, lookups)
+    Assert.assertTrue(cacheFile(x86Lib).setLastModified(System.currentTimeMillis() - 60_000))
+    cache.putAll(armLib, lookups)
+
+    Assert.assertFalse(cacheFile(x86Lib).exists())
+    Assert.assertTrue(cacheFile(armLib).exists())
+    Assert.assertTrue(cacheDir.listFiles()!!.map { it.length() }.sum() <= 400)
+  }
+
+  private fun entry(name: String) = SymbolCache.Entry(name, "/src/native-lib.cpp", 10)
+
+  private fun cacheFile(lib: File) = File(cacheDir, readGnuBuildId(lib)!! + ".txt")
+}
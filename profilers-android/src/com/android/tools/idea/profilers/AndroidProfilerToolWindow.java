@@ -17,6 +17,7 @@ package com.android.tools.idea.profilers;
 
 import com.android.ddmlib.IDevice;
 import com.android.tools.adtui.model.AspectObserver;
+import com.android.tools.datastore.archive.SessionArchive;
 import com.android.tools.idea.model.AndroidModuleInfo;
 import com.android.tools.idea.profilers.stacktrace.IntellijCodeNavigator;
 import com.android.tools.idea.transport.TransportService;
@@ -271,6 +272,10 @@ public class AndroidProfilerToolWindow implements Disposable {
       myWindow = window;
       ProfilerClient client = new ProfilerClient(service.getChannelName());
       myProfilers = new StudioProfilers(client, ideProfilerServices);
+      if (ideProfilerServices.getFeatureConfig().isPersistentSessionsEnabled() &&
+          ideProfilerServices.getFeatureConfig().isUnifiedPipelineEnabled()) {
+        restoreArchivedSessions(service);
+      }
       IntellijCodeNavigator navigator = (IntellijCodeNavigator)ideProfilerServices.getCodeNavigator();
       // CPU ABI architecture, when needed by the code navigator, should be retrieved from StudioProfiler selected session.
       Common.SessionMetaData selectedSessionMetadata = myProfilers.getSessionsManager().getSelectedSessionMetaData();
@@ -305,6 +310,23 @@ public class AndroidProfilerToolWindow implements Disposable {
                                                         new AndroidProfilerWindowManagerListener(myProject, myProfilers, myView));
     }
 
+    private void restoreArchivedSessions(@NotNull TransportService service) {
+      SessionsManager sessionsManager = myProfilers.getSessionsManager();
+      sessionsManager.setArchivedSessionHandler(new SessionsManager.ArchivedSessionHandler() {
+        @Override
+        public void load(long sessionId) {
+          service.loadArchivedSession(sessionId);
+        }
+
+        @Override
+        public void delete(long sessionId) {
+          service.deleteArchivedSession(sessionId);
+        }
+      });
+      sessionsManager.registerImportHandler(SessionArchive.EXTENSION, service::importSessionArchive);
+      service.restoreArchivedSessions();
+    }
+
     @Override
     public void dispose() {
       myProfilers.stop();
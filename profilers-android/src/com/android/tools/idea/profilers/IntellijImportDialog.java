@@ -42,6 +42,22 @@ public class IntellijImportDialog implements ImportDialog {
   public void open(@NotNull Supplier<String> dialogTitleSupplier,
                    @NotNull List<String> validExtensions,
                    @NotNull Consumer<VirtualFile> fileOpenedCallback) {
+    open(FileChooserDescriptorFactory.createSingleFileDescriptor(), dialogTitleSupplier, validExtensions,
+         files -> fileOpenedCallback.accept(files.get(0)));
+  }
+
+  @Override
+  public void openMultiple(@NotNull Supplier<String> dialogTitleSupplier,
+                           @NotNull List<String> validExtensions,
+                           @NotNull Consumer<List<VirtualFile>> filesOpenedCallback) {
+    // Files, folders and archives, whose entries are imported instead of being browsed.
+    open(new FileChooserDescriptor(true, true, false, true, false, true), dialogTitleSupplier, validExtensions, filesOpenedCallback);
+  }
+
+  private void open(@NotNull FileChooserDescriptor descriptor,
+                    @NotNull Supplier<String> dialogTitleSupplier,
+                    @NotNull List<String> validExtensions,
+                    @NotNull Consumer<List<VirtualFile>> filesOpenedCallback) {
     ApplicationManager.getApplication().invokeLater(() -> {
       // Update default file path to user home if myProject.getBasePath() is not valid
       VirtualFile importDir = myProject.getBaseDir();
@@ -49,16 +65,14 @@ public class IntellijImportDialog implements ImportDialog {
         importDir = VfsUtil.getUserHomeDir();
       }
       // Configure title and extension
-      FileChooserDescriptor chooserDescriptor = FileChooserDescriptorFactory
-        .createSingleFileDescriptor()
+      FileChooserDescriptor chooserDescriptor = descriptor
         .withFileFilter(file -> validExtensions.stream()
           .anyMatch(extension -> Comparing.equal(file.getExtension(), extension, SystemInfo.isFileSystemCaseSensitive)))
         .withHideIgnored(false);
       chooserDescriptor.setTitle(dialogTitleSupplier.get());
       chooserDescriptor.setDescription("Open file from");
       // Open the dialog with openFromFile as the callback
-      FileChooser.chooseFiles(chooserDescriptor, null, importDir,
-                              files -> fileOpenedCallback.accept(files.get(0)));
+      FileChooser.chooseFiles(chooserDescriptor, null, importDir, filesOpenedCallback);
     });
   }
 }
@@ -226,11 +226,21 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
   @Override
   public FeatureConfig getFeatureConfig() {
     return new FeatureConfig() {
+      @Override
+      public boolean isAsyncCallTreeUpdateEnabled() {
+        return StudioFlags.PROFILER_ASYNC_CALL_TREE_UPDATE.get();
+      }
+
       @Override
       public boolean isAtraceEnabled() {
         return StudioFlags.PROFILER_USE_ATRACE.get();
       }
 
+      @Override
+      public boolean isBatchSessionImportEnabled() {
+        return StudioFlags.PROFILER_BATCH_SESSION_IMPORT.get();
+      }
+
       @Override
       public boolean isCpuApiTracingEnabled() {
         return StudioFlags.PROFILER_CPU_API_TRACING.get();
@@ -259,11 +269,21 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_IMPORT_CPU_TRACE.get();
       }
 
+      @Override
+      public boolean isIncrementalLineChartsEnabled() {
+        return StudioFlags.PROFILER_INCREMENTAL_LINE_CHARTS.get();
+      }
+
       @Override
       public boolean isJniReferenceTrackingEnabled() {
         return StudioFlags.PROFILER_TRACK_JNI_REFS.get();
       }
 
+      @Override
+      public boolean isLiveAllocationIndexEnabled() {
+        return StudioFlags.PROFILER_LIVE_ALLOCATION_INDEX.get();
+      }
+
       @Override
       public boolean isLiveAllocationsEnabled() {
         return StudioFlags.PROFILER_USE_LIVE_ALLOCATIONS.get();
@@ -292,9 +312,29 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_PERFORMANCE_MONITORING.get();
       }
 
+      @Override
+      public boolean isPersistentSessionsEnabled() {
+        return StudioFlags.PROFILER_PERSISTENT_SESSIONS.get();
+      }
+
       @Override
       public boolean isAuditsEnabled() { return StudioFlags.PROFILER_AUDITS.get(); }
 
+      @Override
+      public boolean isParallelDominatorsEnabled() {
+        return StudioFlags.PROFILER_PARALLEL_DOMINATORS.get();
+      }
+
+      @Override
+      public boolean isParallelTraceParsingEnabled() {
+        return StudioFlags.PROFILER_PARALLEL_TRACE_PARSING.get();
+      }
+
+      @Override
+      public boolean isPerfettoNativeImportEnabled() {
+        return StudioFlags.PROFILER_PERFETTO_NATIVE_IMPORT.get();
+      }
+
       @Override
       public boolean isSessionImportEnabled() {
         return StudioFlags.PROFILER_IMPORT_SESSION.get();
@@ -315,6 +355,11 @@ public class IntellijProfilerServices implements IdeProfilerServices, Disposable
         return StudioFlags.PROFILER_STARTUP_CPU_PROFILING.get();
       }
 
+      @Override
+      public boolean isTimelineDownsamplingEnabled() {
+        return StudioFlags.PROFILER_TIMELINE_DOWNSAMPLING.get();
+      }
+
       @Override
       public boolean isUnifiedPipelineEnabled() {
         return StudioFlags.PROFILER_UNIFIED_PIPELINE.get();
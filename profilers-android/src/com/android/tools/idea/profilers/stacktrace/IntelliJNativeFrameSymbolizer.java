@@ -21,7 +21,13 @@ import com.android.tools.profiler.proto.Memory.NativeCallStack;
 import com.android.tools.profilers.stacktrace.NativeFrameSymbolizer;
 import com.intellij.openapi.diagnostic.Logger;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Wrapper for {@link NativeSymbolizer} to return a NativeCallStack.NativeFrame instead of the Symbol class which profilers don't have a
@@ -53,6 +59,43 @@ public class IntelliJNativeFrameSymbolizer implements NativeFrameSymbolizer {
       getLogger().warn(e);
     }
 
+    return buildFrame(unsymbolizedFrame, instructionOffset, symbol);
+  }
+
+  @NotNull
+  @Override
+  public List<NativeCallStack.NativeFrame> symbolize(String abi, List<NativeCallStack.NativeFrame> unsymbolizedFrames) {
+    // Look up the frames of each module in a single batch.
+    Map<String, List<Integer>> framesByModule = new LinkedHashMap<>();
+    for (int i = 0; i < unsymbolizedFrames.size(); i++) {
+      framesByModule.computeIfAbsent(unsymbolizedFrames.get(i).getModuleName(), module -> new ArrayList<>()).add(i);
+    }
+
+    NativeCallStack.NativeFrame[] symbolizedFrames = new NativeCallStack.NativeFrame[unsymbolizedFrames.size()];
+    for (Map.Entry<String, List<Integer>> entry : framesByModule.entrySet()) {
+      List<Long> offsets = new ArrayList<>(entry.getValue().size());
+      for (int index : entry.getValue()) {
+        offsets.add(getOffsetOfPreviousInstruction(unsymbolizedFrames.get(index).getModuleOffset()));
+      }
+      List<Symbol> symbols = null;
+      try {
+        symbols = mySymbolizer.symbolize(abi, entry.getKey(), offsets);
+      }
+      catch (IOException | RuntimeException e) {
+        getLogger().warn(e);
+      }
+      for (int i = 0; i < offsets.size(); i++) {
+        int index = entry.getValue().get(i);
+        symbolizedFrames[index] = buildFrame(unsymbolizedFrames.get(index), offsets.get(i), symbols == null ? null : symbols.get(i));
+      }
+    }
+    return Arrays.asList(symbolizedFrames);
+  }
+
+  @NotNull
+  private static NativeCallStack.NativeFrame buildFrame(@NotNull NativeCallStack.NativeFrame unsymbolizedFrame,
+                                                        long instructionOffset,
+                                                        @Nullable Symbol symbol) {
     NativeCallStack.NativeFrame.Builder builder = unsymbolizedFrame.toBuilder();
     if (symbol == null) {
       String unfoundSymbolName = String.format("0x%x", instructionOffset);
@@ -18,6 +18,7 @@ package com.android.tools.profilers;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
@@ -33,4 +34,15 @@ public interface ImportDialog {
   void open(@NotNull Supplier<String> dialogTitleSupplier,
             @NotNull List<String> validExtensions,
             @NotNull Consumer<VirtualFile> fileOpenedCallback);
+
+  /**
+   * Opens an import dialog where several files, folders and zip archives can be selected.
+   *
+   * @param filesOpenedCallback Callback to be called once files are selected in the import dialog.
+   */
+  default void openMultiple(@NotNull Supplier<String> dialogTitleSupplier,
+                            @NotNull List<String> validExtensions,
+                            @NotNull Consumer<List<VirtualFile>> filesOpenedCallback) {
+    open(dialogTitleSupplier, validExtensions, file -> filesOpenedCallback.accept(Collections.singletonList(file)));
+  }
 }
@@ -159,6 +159,9 @@ final class MemoryClassSetView extends AspectObserver {
           MemoryObject node = value.getAdapter();
           if (node instanceof ValueObject) {
             ValueObject valueObject = (ValueObject)node;
+            if (isComputingRetainedSizes()) {
+              return MemoryClassifierView.COMPUTING_TEXT;
+            }
             if (valueObject.getDepth() >= 0 && valueObject.getDepth() < Integer.MAX_VALUE) {
               return NumberFormatter.formatInteger(valueObject.getDepth());
             }
@@ -247,7 +250,10 @@ final class MemoryClassSetView extends AspectObserver {
         "Retained Size",
         () -> new SimpleColumnRenderer<>(value -> {
           MemoryObject node = value.getAdapter();
-          return node instanceof ValueObject ? NumberFormatter.formatInteger(((ValueObject)node).getRetainedSize()) : "";
+          if (!(node instanceof ValueObject)) {
+            return "";
+          }
+          return isComputingRetainedSizes() ? MemoryClassifierView.COMPUTING_TEXT : NumberFormatter.formatInteger(((ValueObject)node).getRetainedSize());
         }, value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -286,6 +292,10 @@ final class MemoryClassSetView extends AspectObserver {
     return myInstancesPanel;
   }
 
+  private boolean isComputingRetainedSizes() {
+    return myCaptureObject != null && myCaptureObject.isComputingRetainedSizes();
+  }
+
   @VisibleForTesting
   @Nullable
   JTree getTree() {
@@ -66,6 +66,12 @@ final class MemoryClassifierView extends AspectObserver {
   private static final int HEAP_UPDATING_DELAY_MS = 250;
   private static final int MIN_COLUMN_WIDTH = 16;
 
+  /**
+   * Shown instead of the retained sizes and depths while they are computed in the background, see
+   * {@link CaptureObject#isComputingRetainedSizes()}.
+   */
+  static final String COMPUTING_TEXT = "Computing...";
+
   private static final String HELP_TIP_HEADER_LIVE_ALLOCATION = "Selected range has no allocations or deallocations";
   private static final String HELP_TIP_DESCRIPTION_LIVE_ALLOCATION =
     "Select a valid range in the timeline where the Java memory is changing to view allocations and deallocations.";
@@ -194,7 +200,9 @@ final class MemoryClassifierView extends AspectObserver {
       new AttributeColumn<>(
         "Retained Size",
         () -> new SimpleColumnRenderer<ClassifierSet>(
-          value -> NumberFormatter.formatInteger(value.getAdapter().getTotalRetainedSize()),
+          value -> isComputingRetainedSizes()
+                   ? COMPUTING_TEXT
+                   : NumberFormatter.formatInteger(value.getAdapter().getTotalRetainedSize()),
           value -> null, SwingConstants.RIGHT),
         SwingConstants.RIGHT,
         DEFAULT_COLUMN_WIDTH,
@@ -208,6 +216,10 @@ final class MemoryClassifierView extends AspectObserver {
     return myPanel;
   }
 
+  private boolean isComputingRetainedSizes() {
+    return myCaptureObject != null && myCaptureObject.isComputingRetainedSizes();
+  }
+
   @VisibleForTesting
   @Nullable
   JTree getTree() {
@@ -28,6 +28,7 @@ import com.android.tools.adtui.stdui.CommonButton;
 import com.android.tools.adtui.stdui.StandardColors;
 import com.android.tools.adtui.stdui.menu.CommonDropDownButton;
 import com.android.tools.profiler.proto.Common;
+import com.android.tools.profilers.FeatureConfig;
 import com.android.tools.profilers.IdeProfilerComponents;
 import com.android.tools.profilers.ProfilerAspect;
 import com.android.tools.profilers.ProfilerFonts;
@@ -69,6 +70,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.ScrollPaneConstants;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A collapsible panel which lets users see the list of and interact with their profiling sessions.
@@ -115,6 +117,13 @@ public class SessionsView extends AspectObserver {
   @NotNull private final CommonAction myProcessSelectionAction;
   @NotNull private final CommonDropDownButton myProcessSelectionDropDown;
   @NotNull private final JPanel mySessionsPanel;
+  @NotNull private final JPanel myImportPanel;
+  @NotNull private final JLabel myImportLabel;
+  @NotNull private final JButton myCancelImportButton;
+  /**
+   * The batch of files being imported, if any. Only one batch is imported at a time.
+   */
+  @Nullable private BatchSessionImport myBatchImport;
   @NotNull ViewBinder<SessionArtifactView.ArtifactDrawInfo, SessionArtifact, SessionArtifactView> mySessionArtifactViewBinder;
 
   @NotNull
@@ -213,6 +222,25 @@ public class SessionsView extends AspectObserver {
     myScrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
     myScrollPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_AS_NEEDED);
 
+    // Shows the progress of a batch import under the sessions, while it runs.
+    myImportLabel = new JLabel();
+    myImportLabel.setBorder(TOOLBAR_LABEL_BORDER);
+    myImportLabel.setFont(ProfilerFonts.SMALL_FONT);
+    myImportLabel.setForeground(StandardColors.TEXT_COLOR);
+    myCancelImportButton = new JButton(CANCEL_BUTTON_TEXT);
+    myCancelImportButton.setToolTipText("Stop importing the files that were not imported yet.");
+    myCancelImportButton.addActionListener(e -> {
+      if (myBatchImport != null) {
+        myBatchImport.cancel();
+        myCancelImportButton.setEnabled(false);
+      }
+    });
+    myImportPanel = new JPanel(new BorderLayout());
+    myImportPanel.setBorder(AdtUiUtils.DEFAULT_TOP_BORDER);
+    myImportPanel.add(myImportLabel, BorderLayout.CENTER);
+    myImportPanel.add(myCancelImportButton, BorderLayout.EAST);
+    myImportPanel.setVisible(false);
+
     mySessionArtifactViewBinder = new ViewBinder<>();
     mySessionArtifactViewBinder.bind(SessionItem.class, SessionItemView::new);
     mySessionArtifactViewBinder.bind(HprofSessionArtifact.class, HprofArtifactView::new);
@@ -260,6 +288,24 @@ public class SessionsView extends AspectObserver {
     return myProcessSelectionAction;
   }
 
+  @VisibleForTesting
+  @NotNull
+  JComponent getImportPanel() {
+    return myImportPanel;
+  }
+
+  @VisibleForTesting
+  @NotNull
+  JLabel getImportLabel() {
+    return myImportLabel;
+  }
+
+  @VisibleForTesting
+  @NotNull
+  JButton getCancelImportButton() {
+    return myCancelImportButton;
+  }
+
   @VisibleForTesting
   @NotNull
   JButton getStopProfilingButton() {
@@ -301,6 +347,7 @@ public class SessionsView extends AspectObserver {
     else {
       myComponent.add(createToolbar(), BorderLayout.NORTH);
       myComponent.add(myScrollPane, BorderLayout.CENTER);
+      myComponent.add(myImportPanel, BorderLayout.SOUTH);
     }
     myComponent.revalidate();
     myComponent.repaint();
@@ -367,23 +414,81 @@ public class SessionsView extends AspectObserver {
 
   private void addImportAction() {
     // Add the dropdown action for loading from file
-    if (myProfilers.getIdeServices().getFeatureConfig().isSessionImportEnabled()) {
+    FeatureConfig featureConfig = myProfilers.getIdeServices().getFeatureConfig();
+    if (featureConfig.isSessionImportEnabled()) {
       CommonAction loadAction = new CommonAction("Load from file...", null);
-      loadAction.setAction(
-        () -> myIdeProfilerComponents.createImportDialog().open(
-          () -> "Open",
-          ImmutableList.of("hprof", "trace"),
-          file -> {
-            if (!myProfilers.getSessionsManager().importSessionFromFile(new File(file.getPath()))) {
-              myIdeProfilerComponents.createUiMessageHandler()
-                .displayErrorMessage(myComponent, "File Open Error",
-                                     String.format("Unknown file type: %s", file.getPath()));
-            }
-          }));
+      // Session archives are only handled when persistent sessions are enabled.
+      List<String> extensions = featureConfig.isPersistentSessionsEnabled()
+                                ? ImmutableList.of("hprof", "trace", "session")
+                                : ImmutableList.of("hprof", "trace");
+      if (featureConfig.isBatchSessionImportEnabled()) {
+        loadAction.setAction(
+          () -> myIdeProfilerComponents.createImportDialog().openMultiple(
+            () -> "Open",
+            ImmutableList.<String>builder().addAll(extensions).add("alloc", "zip").build(),
+            files -> importSessionsFromFiles(files.stream().map(file -> new File(file.getPath())).collect(Collectors.toList()))));
+        loadAction.setEnabled(myBatchImport == null);
+      }
+      else {
+        loadAction.setAction(
+          () -> myIdeProfilerComponents.createImportDialog().open(
+            () -> "Open",
+            extensions,
+            file -> {
+              if (!myProfilers.getSessionsManager().importSessionFromFile(new File(file.getPath()))) {
+                myIdeProfilerComponents.createUiMessageHandler()
+                  .displayErrorMessage(myComponent, "File Open Error",
+                                       String.format("Unknown file type: %s", file.getPath()));
+              }
+            }));
+      }
       myProcessSelectionAction.addChildrenActions(loadAction, new CommonAction.SeparatorAction());
     }
   }
 
+  @VisibleForTesting
+  void importSessionsFromFiles(@NotNull List<File> files) {
+    BatchImportListener listener = new BatchImportListener();
+    BatchSessionImport batch = mySessionsManager.importSessionsFromFiles(files, listener);
+    if (listener.myFinished) {
+      // Everything was imported synchronously.
+      return;
+    }
+    myBatchImport = batch;
+    myImportLabel.setText("Importing files...");
+    myCancelImportButton.setEnabled(true);
+    myImportPanel.setVisible(true);
+    refreshProcessDropdown();
+  }
+
+  private final class BatchImportListener implements BatchSessionImport.Listener {
+    private boolean myFinished;
+
+    @Override
+    public void progressChanged(int completedCount, int totalCount) {
+      myImportLabel.setText(String.format("Imported %d of %d files", completedCount, totalCount));
+    }
+
+    @Override
+    public void finished(@NotNull List<File> failedFiles) {
+      myFinished = true;
+      boolean cancelled = myBatchImport != null && myBatchImport.isCancelled();
+      if (myBatchImport != null) {
+        myBatchImport = null;
+        myImportPanel.setVisible(false);
+        refreshProcessDropdown();
+      }
+      if (!failedFiles.isEmpty()) {
+        String paths = failedFiles.stream().map(File::getPath).collect(Collectors.joining(", "));
+        myIdeProfilerComponents.createUiMessageHandler()
+          .displayErrorMessage(myComponent, "File Open Error",
+                               cancelled
+                               ? String.format("Import cancelled, these files were not imported: %s", paths)
+                               : String.format("Could not import: %s", paths));
+      }
+    }
+  }
+
   void stopProfilingSession() {
     // We should not start auto-profiling other things if the user manually stops a session.
     myProfilers.setAutoProfilingEnabled(false);
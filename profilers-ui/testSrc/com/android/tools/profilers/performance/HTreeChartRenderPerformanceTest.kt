@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.chart.hchart.HRenderer
+import com.android.tools.adtui.chart.hchart.HTreeChart
+import com.android.tools.adtui.model.DefaultHNode
+import com.android.tools.adtui.model.Range
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.time.Instant
+
+/**
+ * Measures [HTreeChart] redraws of a synthetic call tree of about a million nodes, zoomed out (where most nodes are narrower than a
+ * pixel) and zoomed in while panning. Each iteration moves the view range so the chart has to collect the visible nodes again.
+ */
+class HTreeChartRenderPerformanceTest {
+  companion object {
+    // A complete binary tree of this height has 2^20 - 1 nodes.
+    private const val TREE_HEIGHT = 20
+    private const val LEAF_DURATION = 4L
+    private const val WARM_UP_ITERATIONS = 5
+    private const val ITERATIONS = 20
+    private const val WIDTH = 1024
+    private const val HEIGHT = 512
+  }
+
+  private val timingBenchmark = Benchmark.Builder("HTreeChart Render Timings (Nanos)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun renderZoomedOut() {
+    val root = buildTree()
+    measureRender("Zoomed-Out-1M", root) { i -> Range(i.toDouble(), (root.end + i).toDouble()) }
+  }
+
+  @Test
+  fun renderZoomedIn() {
+    val root = buildTree()
+    // About a thousand leaves are visible at a time.
+    val length = LEAF_DURATION * 1000
+    val step = root.end / (WARM_UP_ITERATIONS + ITERATIONS)
+    measureRender("Zoomed-In-1M", root) { i -> Range((i * step).toDouble(), (i * step + length).toDouble()) }
+  }
+
+  private fun measureRender(name: String, root: DefaultHNode<String>, rangeAt: (Int) -> Range) {
+    val xRange = Range(root.start.toDouble(), root.end.toDouble())
+    val renderer = HRenderer<DefaultHNode<String>> { g, _, _, drawingArea, _ ->
+      g.color = Color.ORANGE
+      g.fill(drawingArea)
+    }
+    val chart = HTreeChart.Builder(root, xRange, renderer)
+      .setGlobalXRange(Range(root.start.toDouble(), root.end.toDouble()))
+      .build()
+    chart.setSize(WIDTH, HEIGHT)
+    val graphics = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB).createGraphics()
+
+    val metric = Metric(name)
+    for (i in 0 until WARM_UP_ITERATIONS + ITERATIONS) {
+      val range = rangeAt(i)
+      val startTime = System.nanoTime()
+      xRange.set(range.min, range.max)
+      chart.paint(graphics)
+      val elapsed = System.nanoTime() - startTime
+      if (i >= WARM_UP_ITERATIONS) {
+        metric.addSamples(timingBenchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+      }
+    }
+    graphics.dispose()
+
+    metric.setAnalyzers(timingBenchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                                 .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                                 .build()))
+    metric.commit()
+  }
+
+  /**
+   * Builds a complete binary call tree where every call spends its whole duration in its two children, except the leaves.
+   */
+  private fun buildTree(): DefaultHNode<String> {
+    val root = DefaultHNode("root", 0, LEAF_DURATION shl (TREE_HEIGHT - 1))
+    var level = listOf(root)
+    for (depth in 1 until TREE_HEIGHT) {
+      val nextLevel = ArrayList<DefaultHNode<String>>(level.size * 2)
+      for (parent in level) {
+        val middle = (parent.start + parent.end) / 2
+        for ((start, end) in listOf(parent.start to middle, middle to parent.end)) {
+          val child = DefaultHNode("method$depth", start, end)
+          child.depth = depth
+          parent.addChild(child)
+          nextLevel.add(child)
+        }
+      }
+      level = nextLevel
+    }
+    return root
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.adtui.chart.linechart.LineChart
+import com.android.tools.adtui.chart.linechart.LineConfig
+import com.android.tools.adtui.model.DataSeries
+import com.android.tools.adtui.model.DefaultDataSeries
+import com.android.tools.adtui.model.DefaultLongDataSeries
+import com.android.tools.adtui.model.LineChartModel
+import com.android.tools.adtui.model.Range
+import com.android.tools.adtui.model.RangedContinuousSeries
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.perflogger.Metric
+import com.android.tools.perflogger.WindowDeviationAnalyzer
+import org.junit.Test
+import java.awt.Color
+import java.awt.image.BufferedImage
+import java.lang.management.ManagementFactory
+import java.time.Instant
+
+/**
+ * Measures a full [LineChart] redraw over a large series, with the data stored boxed ([DefaultDataSeries]) and primitive
+ * ([DefaultLongDataSeries]). Each iteration moves the view range by one sample so the chart has to query and path the data again.
+ */
+class LineChartRenderPerformanceTest {
+  companion object {
+    private const val POINT_COUNT = 1_000_000
+    private const val WARM_UP_ITERATIONS = 5
+    private const val ITERATIONS = 20
+    private const val WIDTH = 1024
+    private const val HEIGHT = 256
+  }
+
+  private val timingBenchmark = Benchmark.Builder("LineChart Render Timings (Nanos)").setProject("Android Studio Profilers").build()
+  private val memoryBenchmark = Benchmark.Builder("LineChart Render Allocations (kb)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun renderBoxedSeries() {
+    val series = DefaultDataSeries<Long>()
+    for (i in 0 until POINT_COUNT) {
+      series.add(i.toLong(), value(i))
+    }
+    measureRender("Boxed-1M", series)
+  }
+
+  @Test
+  fun renderPrimitiveSeries() {
+    val series = DefaultLongDataSeries()
+    for (i in 0 until POINT_COUNT) {
+      series.add(i.toLong(), value(i))
+    }
+    measureRender("Primitive-1M", series)
+  }
+
+  private fun value(i: Int) = (i % 1000).toLong()
+
+  private fun measureRender(name: String, series: DataSeries<Long>) {
+    val xRange = Range(0.0, POINT_COUNT.toDouble())
+    val model = LineChartModel()
+    val ranged = RangedContinuousSeries(name, xRange, Range(0.0, 1000.0), series)
+    model.add(ranged)
+    val chart = LineChart(model)
+    chart.configure(ranged, LineConfig(Color.BLACK).setFilled(true))
+    chart.setSize(WIDTH, HEIGHT)
+    val graphics = BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB).createGraphics()
+
+    val metric = Metric(name)
+    var allocatedBytes = 0L
+    for (i in 0 until WARM_UP_ITERATIONS + ITERATIONS) {
+      // Changing the range marks the chart as needing a redraw.
+      xRange.set(i.toDouble(), (POINT_COUNT + i).toDouble())
+      val allocatedBefore = getAllocatedBytes()
+      val startTime = System.nanoTime()
+      model.update(0)
+      chart.paint(graphics)
+      val elapsed = System.nanoTime() - startTime
+      if (i >= WARM_UP_ITERATIONS) {
+        metric.addSamples(timingBenchmark, Metric.MetricSample(Instant.now().toEpochMilli(), elapsed))
+        allocatedBytes += getAllocatedBytes() - allocatedBefore
+      }
+    }
+    graphics.dispose()
+
+    metric.setAnalyzers(timingBenchmark, setOf(WindowDeviationAnalyzer.Builder()
+                                                 .addMeanTolerance(WindowDeviationAnalyzer.MeanToleranceParams.Builder().build())
+                                                 .build()))
+    metric.commit()
+    memoryBenchmark.log("$name-Allocated-Per-Render", allocatedBytes / ITERATIONS / 1024)
+  }
+
+  private fun getAllocatedBytes(): Long {
+    val bean = ManagementFactory.getThreadMXBean() as? com.sun.management.ThreadMXBean ?: return 0
+    return bean.getThreadAllocatedBytes(Thread.currentThread().id)
+  }
+}
@@ -20,7 +20,9 @@ package com.android.tools.profilers;
  * to allow the IDE to communicate to the profilers that a feature should be on or off.
  */
 public interface FeatureConfig {
+  boolean isAsyncCallTreeUpdateEnabled();
   boolean isAtraceEnabled();
+  boolean isBatchSessionImportEnabled();
   boolean isCpuApiTracingEnabled();
   boolean isCpuCaptureStageEnabled();
   boolean isCpuNewRecordingWorkflowEnabled();
@@ -28,18 +30,25 @@ public interface FeatureConfig {
   boolean isExportCpuTraceEnabled();
   boolean isFragmentsEnabled();
   boolean isImportCpuTraceEnabled();
+  boolean isIncrementalLineChartsEnabled();
   boolean isJniReferenceTrackingEnabled();
+  boolean isLiveAllocationIndexEnabled();
   boolean isLiveAllocationsEnabled();
   boolean isLiveAllocationsSamplingEnabled();
   boolean isMemoryCaptureFilterEnabled();
   boolean isMemorySnapshotEnabled();
+  boolean isParallelDominatorsEnabled();
+  boolean isParallelTraceParsingEnabled();
   boolean isPerfettoEnabled();
+  boolean isPerfettoNativeImportEnabled();
   boolean isPerformanceMonitoringEnabled();
+  boolean isPersistentSessionsEnabled();
   boolean isAuditsEnabled();
   boolean isCustomEventVisualizationEnabled();
   boolean isSessionImportEnabled();
   boolean isSimpleperfHostEnabled();
   boolean isStartupCpuProfilingEnabled();
+  boolean isTimelineDownsamplingEnabled();
   boolean isUnifiedPipelineEnabled();
   // Add new features alphabetically instead of at the end of the list
   // This reduces the chance of having to deal with an annoying merge conflict.
@@ -22,12 +22,33 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.RandomAccess;
 
 import static com.android.tools.profilers.cpu.CaptureNode.FilterType.MATCH;
 
+/**
+ * A call in the call tree of a thread, built by the trace parsers and read as is by the call and flame charts and by the Top Down and
+ * Bottom Up trees. Captures hold millions of them, so a node only keeps its timestamps, a packed array of children and its clock and
+ * filter types in a single byte, and shares its {@link CaptureNodeModel} with the other calls of the same method.
+ */
 public class CaptureNode implements HNode<CaptureNode> {
+  private static final CaptureNode[] NO_CHILDREN = new CaptureNode[0];
+
+  private static final FilterType[] FILTER_TYPES = FilterType.values();
+
+  /**
+   * Bit of {@link #myState} set when the node uses the THREAD clock.
+   */
+  private static final int THREAD_CLOCK_BIT = 1;
+
+  /**
+   * {@link #myState} stores the ordinal of the {@link FilterType} above the clock bit.
+   */
+  private static final int FILTER_TYPE_SHIFT = 1;
 
   /**
    * Start time with GLOBAL clock.
@@ -49,11 +70,20 @@ public class CaptureNode implements HNode<CaptureNode> {
    */
   private long myEndThread;
 
+  /**
+   * Children of the node, only the first {@link #myChildCount} are set. Captures hold millions of nodes, most of them leaves, so this
+   * avoids allocating a list per node.
+   */
   @NotNull
-  private final List<CaptureNode> myChildren;
+  private CaptureNode[] myChildren = NO_CHILDREN;
 
-  @NotNull
-  private ClockType myClockType;
+  private int myChildCount;
+
+  /**
+   * Read-only view of {@link #myChildren}, created the first time {@link #getChildren()} is called on a node with children.
+   */
+  @Nullable
+  private List<CaptureNode> myChildrenView;
 
   /**
    * The parent of its child is set to it when it is added {@link #addChild(CaptureNode)}
@@ -61,10 +91,9 @@ public class CaptureNode implements HNode<CaptureNode> {
   private CaptureNode myParent;
 
   /**
-   * see {@link FilterType}.
+   * The {@link ClockType} and {@link FilterType} of the node, packed together. See {@link #THREAD_CLOCK_BIT} and {@link #FILTER_TYPE_SHIFT}.
    */
-  @NotNull
-  private FilterType myFilterType;
+  private byte myState;
 
   /**
    * The shortest distance from the root.
@@ -75,21 +104,31 @@ public class CaptureNode implements HNode<CaptureNode> {
   private final CaptureNodeModel myData;
 
   public CaptureNode(@NotNull CaptureNodeModel model) {
-    myChildren = new ArrayList<>();
-    myClockType = ClockType.GLOBAL;
-    myFilterType = MATCH;
+    myState = (byte)(MATCH.ordinal() << FILTER_TYPE_SHIFT);
     myDepth = 0;
     myData = model;
   }
 
   public void addChild(CaptureNode node) {
-    myChildren.add(node);
+    if (myChildCount == myChildren.length) {
+      myChildren = Arrays.copyOf(myChildren, Math.max(2, myChildCount * 2));
+    }
+    myChildren[myChildCount++] = node;
     node.myParent = this;
   }
 
+  /**
+   * @return a read-only view of the children of the node.
+   */
   @NotNull
   public List<CaptureNode> getChildren() {
-    return myChildren;
+    if (myChildCount == 0) {
+      return Collections.emptyList();
+    }
+    if (myChildrenView == null) {
+      myChildrenView = new ChildrenView();
+    }
+    return myChildrenView;
   }
 
   @NotNull
@@ -99,13 +138,16 @@ public class CaptureNode implements HNode<CaptureNode> {
 
   @Override
   public int getChildCount() {
-    return myChildren.size();
+    return myChildCount;
   }
 
   @NotNull
   @Override
   public CaptureNode getChildAt(int index) {
-    return myChildren.get(index);
+    if (index >= myChildCount) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + myChildCount);
+    }
+    return myChildren[index];
   }
 
   @Nullable
@@ -116,12 +158,12 @@ public class CaptureNode implements HNode<CaptureNode> {
 
   @Override
   public long getStart() {
-    return myClockType == ClockType.THREAD ? myStartThread : myStartGlobal;
+    return isThreadClock() ? myStartThread : myStartGlobal;
   }
 
   @Override
   public long getEnd() {
-    return myClockType == ClockType.THREAD ? myEndThread : myEndGlobal;
+    return isThreadClock() ? myEndThread : myEndGlobal;
   }
 
   @Override
@@ -162,7 +204,11 @@ public class CaptureNode implements HNode<CaptureNode> {
   }
 
   public void setClockType(@NotNull ClockType clockType) {
-    myClockType = clockType;
+    myState = (byte)(clockType == ClockType.THREAD ? myState | THREAD_CLOCK_BIT : myState & ~THREAD_CLOCK_BIT);
+  }
+
+  private boolean isThreadClock() {
+    return (myState & THREAD_CLOCK_BIT) != 0;
   }
 
   /**
@@ -176,7 +222,7 @@ public class CaptureNode implements HNode<CaptureNode> {
 
   @NotNull
   public ClockType getClockType() {
-    return myClockType;
+    return isThreadClock() ? ClockType.THREAD : ClockType.GLOBAL;
   }
 
   public void setDepth(int depth) {
@@ -193,11 +239,11 @@ public class CaptureNode implements HNode<CaptureNode> {
 
   @NotNull
   public FilterType getFilterType() {
-    return myFilterType;
+    return FILTER_TYPES[myState >> FILTER_TYPE_SHIFT];
   }
 
   public void setFilterType(@NotNull FilterType type) {
-    myFilterType = type;
+    myState = (byte)((myState & THREAD_CLOCK_BIT) | (type.ordinal() << FILTER_TYPE_SHIFT));
   }
 
   public boolean isUnmatched() {
@@ -220,4 +266,19 @@ public class CaptureNode implements HNode<CaptureNode> {
      */
     UNMATCH,
   }
+
+  /**
+   * Reads the children array of the node as it grows, so it only needs to be created once.
+   */
+  private final class ChildrenView extends AbstractList<CaptureNode> implements RandomAccess {
+    @Override
+    public CaptureNode get(int index) {
+      return getChildAt(index);
+    }
+
+    @Override
+    public int size() {
+      return myChildCount;
+    }
+  }
 }
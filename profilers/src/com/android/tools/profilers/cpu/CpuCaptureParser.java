@@ -22,6 +22,7 @@ import com.android.tools.profiler.proto.Cpu.CpuTraceType;
 import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.cpu.art.ArtTraceParser;
+import com.android.tools.profilers.cpu.art.ParallelArtTraceParser;
 import com.android.tools.profilers.cpu.atrace.AtraceParser;
 import com.android.tools.profilers.cpu.atrace.AtraceProducer;
 import com.android.tools.profilers.cpu.atrace.CpuThreadSliceInfo;
@@ -42,6 +43,7 @@ import java.nio.BufferUnderflowException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -237,6 +239,10 @@ public class CpuCaptureParser {
    * of them.
    */
   private CpuCapture tryParsingFileWithDifferentParsers(File traceFile) {
+    if (myServices.getFeatureConfig().isParallelTraceParsingEnabled()) {
+      return parseFileMatchingHeader(traceFile);
+    }
+
     try {
       // First try parsing the trace file as an ART trace.
       ArtTraceParser artTraceParser = new ArtTraceParser();
@@ -257,47 +263,95 @@ public class CpuCaptureParser {
 
     // If atrace flag is enabled, check the file header to see if it's an atrace file.
     if (myServices.getFeatureConfig().isAtraceEnabled()) {
-      try {
-        if (AtraceProducer.verifyFileHasAtraceHeader(traceFile) ||
-            (myServices.getFeatureConfig().isPerfettoEnabled() && PerfettoProducer.verifyFileHasPerfettoTraceHeader(traceFile))) {
-          // Atrace files contain multiple processes. For imported Atrace files we don't have a
-          // session that can tell us which process the user is interested in. So for all imported
-          // trace files we ask the user to select a process. The list of processes the user can
-          // choose from is parsed from the Atrace file.
-          AtraceParser parser = new AtraceParser(traceFile);
-          // Any process matching the application id of the current project will be sorted to
-          // the top of our process list.
-          CpuThreadSliceInfo[] processList = parser.getProcessList(myServices.getApplicationId());
-          // Attempt to find users intended process.
-          CpuThreadSliceInfo selected = null;
-          // 1) Use hint if available.
-          if (StringUtil.isNotEmpty(myProcessNameHint)) {
-            selected = Arrays.stream(processList).filter(it -> myProcessNameHint.endsWith(it.getProcessName())).findFirst().orElse(null);
-          }
+      CpuCapture capture = tryParsingAtraceFile(traceFile);
+      if (capture != null) {
+        return capture;
+      }
+    }
 
-          // 2) Ask the user for input.
-          if (selected == null) {
-            selected = myServices.openListBoxChooserDialog("Select a process",
-                                                           "Select the process you want to analyze.",
-                                                           processList,
-                                                           (t) -> t.getProcessName());
-          }
-          if (selected != null) {
-            parser.setSelectProcess(selected);
-            return parser.parse(traceFile, IMPORTED_TRACE_ID);
-          }
-        }
+    // File couldn't be parsed by any of the parsers. Log the issue and return null.
+    getLogger().warn(String.format("Parsing %s has failed.", traceFile.getPath()));
+    return null;
+  }
+
+  /**
+   * Parses a given {@link File} into a {@link CpuCapture} using the only parser that matches its header, instead of trying all of them.
+   * ART traces with a text header are parsed in parallel by {@link ParallelArtTraceParser}. Return null if the format isn't recognized or
+   * the file can't be parsed.
+   */
+  @Nullable
+  private CpuCapture parseFileMatchingHeader(@NotNull File traceFile) {
+    try {
+      if (ParallelArtTraceParser.verifyFileHasArtTextHeader(traceFile)) {
+        return new ParallelArtTraceParser(ForkJoinPool.commonPool()).parse(traceFile, IMPORTED_TRACE_ID);
+      }
+      if (ParallelArtTraceParser.verifyFileHasArtTraceHeader(traceFile)) {
+        // Traces recorded in streaming mode are only supported by ArtTraceParser.
+        return new ArtTraceParser().parse(traceFile, IMPORTED_TRACE_ID);
       }
-      catch (Exception ex) {
-        // We failed to find a proper process, or the file was not atrace.
+      if (SimpleperfTraceParser.verifyFileHasSimpleperfHeader(traceFile)) {
+        return new SimpleperfTraceParser().parse(traceFile, IMPORTED_TRACE_ID);
+      }
+    }
+    catch (Exception e) {
+      getLogger().warn(String.format("Parsing %s has failed.", traceFile.getPath()), e);
+      return null;
+    }
+
+    if (myServices.getFeatureConfig().isAtraceEnabled()) {
+      CpuCapture capture = tryParsingAtraceFile(traceFile);
+      if (capture != null) {
+        return capture;
       }
     }
 
-    // File couldn't be parsed by any of the parsers. Log the issue and return null.
     getLogger().warn(String.format("Parsing %s has failed.", traceFile.getPath()));
     return null;
   }
 
+  /**
+   * Parses a given {@link File} into a {@link CpuCapture} using {@link AtraceParser}, if it has an atrace or perfetto header. Return null if
+   * it doesn't or if the user didn't select a process.
+   */
+  @Nullable
+  private CpuCapture tryParsingAtraceFile(@NotNull File traceFile) {
+    try {
+      if (AtraceProducer.verifyFileHasAtraceHeader(traceFile) ||
+          (myServices.getFeatureConfig().isPerfettoEnabled() && PerfettoProducer.verifyFileHasPerfettoTraceHeader(traceFile))) {
+        // Atrace files contain multiple processes. For imported Atrace files we don't have a
+        // session that can tell us which process the user is interested in. So for all imported
+        // trace files we ask the user to select a process. The list of processes the user can
+        // choose from is parsed from the Atrace file.
+        AtraceParser parser = new AtraceParser(traceFile, myServices.getFeatureConfig().isPerfettoNativeImportEnabled());
+        // Any process matching the application id of the current project will be sorted to
+        // the top of our process list.
+        CpuThreadSliceInfo[] processList = parser.getProcessList(myServices.getApplicationId());
+        // Attempt to find users intended process.
+        CpuThreadSliceInfo selected = null;
+        // 1) Use hint if available.
+        if (StringUtil.isNotEmpty(myProcessNameHint)) {
+          selected = Arrays.stream(processList).filter(it -> myProcessNameHint.endsWith(it.getProcessName())).findFirst().orElse(null);
+        }
+
+        // 2) Ask the user for input.
+        if (selected == null) {
+          selected = myServices.openListBoxChooserDialog("Select a process",
+                                                         "Select the process you want to analyze.",
+                                                         processList,
+                                                         (t) -> t.getProcessName());
+        }
+        if (selected != null) {
+          parser.setSelectProcess(selected);
+          return parser.parse(traceFile, IMPORTED_TRACE_ID);
+        }
+      }
+    }
+    catch (Exception ex) {
+      // We failed to find a proper process, or the file was not atrace.
+    }
+    return null;
+  }
+
   /**
    * Creates a {@link CompletableFuture<CpuCapture>} from given trace bytes and the profiler type used to obtain the trace.
    * Uses {@link IdeProfilerServices#getPoolExecutor()} to create the actual {@link CpuCapture} object. Adds it to the captures map using
@@ -432,13 +486,15 @@ public class CpuCaptureParser {
       File trace = CpuCaptureStage.saveCapture(traceId, traceData);
       TraceParser parser;
       if (profilerType == CpuTraceType.ART) {
-        parser = new ArtTraceParser();
+        parser = myServices.getFeatureConfig().isParallelTraceParsingEnabled() && ParallelArtTraceParser.verifyFileHasArtTextHeader(trace)
+                 ? new ParallelArtTraceParser(ForkJoinPool.commonPool())
+                 : new ArtTraceParser();
       }
       else if (profilerType == CpuTraceType.SIMPLEPERF) {
         parser = new SimpleperfTraceParser();
       }
       else if (profilerType == CpuTraceType.ATRACE) {
-        parser = new AtraceParser(session.getPid());
+        parser = new AtraceParser(session.getPid(), myServices.getFeatureConfig().isPerfettoNativeImportEnabled());
       }
       else {
         throw new IllegalStateException("Trace file cannot be parsed. Profiler type (ART, simpleperf, or atrace) needs to be set.");
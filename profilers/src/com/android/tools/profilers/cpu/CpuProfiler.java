@@ -111,48 +111,62 @@ public class CpuProfiler extends StudioProfiler {
    */
   private void registerTraceImportHandler() {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    sessionsManager.registerImportHandler("trace", file -> {
-      long startTimestampEpochMs = System.currentTimeMillis();
-      long startTimestampNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
+    sessionsManager.registerImportPreparer("trace", new SessionsManager.ImportPreparer() {
+      @NotNull
+      @Override
+      public Runnable prepare(@NotNull File file) {
+        long startTimestampEpochMs = System.currentTimeMillis();
+        long startTimestampNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
+        return () -> importTrace(file, startTimestampEpochMs, startTimestampNs);
+      }
 
-      // Select the session if it is already imported. Do not re-import.
-      if (sessionsManager.setSessionById(startTimestampNs)) {
-        return;
+      @Override
+      public boolean readsFileLater() {
+        // The trace is parsed once its session is selected.
+        return true;
       }
+    });
+  }
 
-      // The end timestamp is going to be updated once the capture is parsed. When starting the session (before parsing a trace), set it to
-      // be one minute from the begin time, as it is a reasonable length for a "default" timeline that can be displayed if parsing fails
-      // and before the parsing happens.
-      long endTimestampNs = startTimestampNs + TimeUnit.MINUTES.toNanos(1);
-      if (myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
-        sessionsManager.createImportedSession(file.getName(),
-                                              Common.SessionData.SessionStarted.SessionType.CPU_CAPTURE,
-                                              startTimestampNs,
-                                              endTimestampNs,
-                                              startTimestampEpochMs,
-                                              Collections.emptyMap());
-        // NOTE - New imported session will be auto selected by SessionsManager once it is queried
+  private void importTrace(@NotNull File file, long startTimestampEpochMs, long startTimestampNs) {
+    SessionsManager sessionsManager = myProfilers.getSessionsManager();
+    // Select the session if it is already imported. Do not re-import.
+    if (sessionsManager.setSessionById(startTimestampNs)) {
+      return;
+    }
 
-        // TODO b/132796215 use the shared byte cache instead of storing the file locally, as this CpuProfiler instance does not persist
-        // across projects.
-        mySessionTraceFiles.put(startTimestampNs, file);
-      }
-      else {
-        Common.Session importedSession = sessionsManager.createImportedSessionLegacy(file.getName(),
-                                                                                     Common.SessionMetaData.SessionType.CPU_CAPTURE,
-                                                                                     startTimestampNs,
-                                                                                     endTimestampNs,
-                                                                                     startTimestampEpochMs);
-        // Associate the trace file with the session so we can retrieve it later.
-        mySessionTraceFiles.put(importedSession.getSessionId(), file);
-        // Select the imported session
-        sessionsManager.update();
-        sessionsManager.setSession(importedSession);
-      }
+    // The end timestamp is going to be updated once the capture is parsed. When starting the session (before parsing a trace), set it to
+    // be one minute from the begin time, as it is a reasonable length for a "default" timeline that can be displayed if parsing fails
+    // and before the parsing happens.
+    long endTimestampNs = startTimestampNs + TimeUnit.MINUTES.toNanos(1);
+    if (myProfilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
+      sessionsManager.createImportedSession(file.getName(),
+                                            Common.SessionData.SessionStarted.SessionType.CPU_CAPTURE,
+                                            startTimestampNs,
+                                            endTimestampNs,
+                                            startTimestampEpochMs,
+                                            Collections.emptyMap());
+      // NOTE - New imported session will be auto selected by SessionsManager once it is queried
 
-      myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.CPU_CAPTURE,
-                                                                          SessionsManager.SessionCreationSource.MANUAL);
-    });
+      // TODO b/132796215 use the shared byte cache instead of storing the file locally, as this CpuProfiler instance does not persist
+      // across projects.
+      mySessionTraceFiles.put(startTimestampNs, file);
+    }
+    else {
+      Common.Session importedSession = sessionsManager.createImportedSessionLegacy(file.getName(),
+                                                                                   Common.SessionMetaData.SessionType.CPU_CAPTURE,
+                                                                                   startTimestampNs,
+                                                                                   endTimestampNs,
+                                                                                   startTimestampEpochMs);
+      // Associate the trace file with the session so we can retrieve it later.
+      mySessionTraceFiles.put(importedSession.getSessionId(), file);
+      // Select the imported session
+      sessionsManager.update();
+      sessionsManager.setSession(importedSession);
+    }
+
+    myProfilers.getIdeServices().getFeatureTracker().trackCreateSession(Common.SessionMetaData.SessionType.CPU_CAPTURE,
+                                                                        SessionsManager.SessionCreationSource.MANUAL);
   }
 
   @Nullable
@@ -61,6 +61,8 @@ public class CpuUsage extends LineChartModel {
       series = new LegacyCpuUsageDataSeries(profilers.getClient().getCpuClient(), profilers.getSession(), false);
     }
     myCpuSeries = new RangedContinuousSeries(getCpuSeriesLabel(), viewRange, myCpuRange, series, dataRange);
+    // CPU usage samples of the process are appended in order, so only the data that arrived since the last frame needs to be queried.
+    myCpuSeries.setIncremental(profilers.getIdeServices().getFeatureConfig().isIncrementalLineChartsEnabled());
     add(myCpuSeries);
   }
 
@@ -31,7 +31,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 public class ArtTraceHandler implements VmTraceHandler {
-  private static final String MAIN_THREAD_NAME = "main";
+  static final String MAIN_THREAD_NAME = "main";
   private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
   private long myStartTimeUs;
   private long myElapsedTimeUs;
@@ -119,8 +119,7 @@ public class ArtTraceHandler implements VmTraceHandler {
       assert topLevelCall != null;
       CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
 
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart);
+      adjustNodesTimeAndDepth(topLevelCall, myStartTimeUs);
 
       threadsGraph.put(info, topLevelCall);
     }
@@ -131,15 +130,16 @@ public class ArtTraceHandler implements VmTraceHandler {
   /**
    * Adjusts global and thread time from relative to absolute time and the depth of nodes.
    */
-  private void adjustNodesTimeAndDepth(CaptureNode node, long topLevelStart) {
+  static void adjustNodesTimeAndDepth(CaptureNode node, long startTimeUs) {
+    long topLevelStart = node.getStartGlobal() + startTimeUs;
     Deque<CaptureNode> stack = new ArrayDeque<>();
     stack.push(node);
 
     while (!stack.isEmpty()) {
       CaptureNode current = stack.pop();
 
-      current.setStartGlobal(myStartTimeUs + current.getStartGlobal());
-      current.setEndGlobal(myStartTimeUs + current.getEndGlobal());
+      current.setStartGlobal(startTimeUs + current.getStartGlobal());
+      current.setEndGlobal(startTimeUs + current.getEndGlobal());
       CaptureNode parent = current.getParent();
       current.setDepth(parent == null ? 0 : parent.getDepth() + 1);
       // Timestamps of ClockType.THREAD are stored in a different way: the first event on the thread is considered as the base
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import com.android.tools.adtui.model.Range;
+import com.android.tools.perflib.vmtrace.TraceAction;
+import com.android.tools.profiler.proto.Cpu;
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CpuCapture;
+import com.android.tools.profilers.cpu.CpuThreadInfo;
+import com.android.tools.profilers.cpu.TraceParser;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongObjectHashMap;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Parses an ART method trace like {@link ArtTraceParser}, using all cores.
+ * <p>
+ * The trace file is memory-mapped and its records are read once, only to find the threads they belong to. The call tree of each thread
+ * is then built from its own records in a separate {@link ForkJoinPool} task, and added to {@link #getCaptureTrees()} as soon as it is
+ * complete. Only traces with a text header are supported, traces recorded in streaming mode should go through {@link ArtTraceParser}.
+ */
+public class ParallelArtTraceParser implements TraceParser {
+  private static final String VERSION_SECTION = "*version";
+  private static final String THREADS_SECTION = "*threads";
+  private static final String METHODS_SECTION = "*methods";
+  private static final String END_SECTION = "*end";
+  private static final String KEY_CLOCK = "clock";
+  private static final String KEY_ELAPSED_TIME_US = "elapsed-time-usec";
+  private static final String UNKNOWN_METHOD_NAME = "unknown";
+
+  /**
+   * "SLOW" in little-endian, written at the beginning of the binary part of the trace.
+   */
+  private static final int DATA_MAGIC = 0x574f4c53;
+  private static final byte[] DATA_MAGIC_BYTES = "SLOW".getBytes(StandardCharsets.US_ASCII);
+
+  @NotNull private final ForkJoinPool myPool;
+
+  @NotNull private final Map<CpuThreadInfo, CaptureNode> myCaptureTrees = new ConcurrentHashMap<>();
+
+  /**
+   * Map from thread ids to thread names, as listed in the header.
+   */
+  @NotNull private final Map<Integer, String> myThreads = new HashMap<>();
+
+  /**
+   * Map from method id to method model, as listed in the header.
+   */
+  @NotNull private final TLongObjectHashMap<CaptureNodeModel> myMethods = new TLongObjectHashMap<>();
+
+  private boolean myDualClock;
+  private long myStartTimeUs;
+  private long myElapsedTimeUs;
+
+  public ParallelArtTraceParser(@NotNull ForkJoinPool pool) {
+    myPool = pool;
+  }
+
+  /**
+   * Whether the given {@link File} starts with an ART trace header, either the text header of a regular trace or the binary header of a
+   * trace recorded in streaming mode.
+   */
+  public static boolean verifyFileHasArtTraceHeader(@NotNull File trace) {
+    return startsWith(trace, VERSION_SECTION.getBytes(StandardCharsets.US_ASCII)) || startsWith(trace, DATA_MAGIC_BYTES);
+  }
+
+  /**
+   * Whether the given {@link File} is an ART trace with a text header, the only kind {@link ParallelArtTraceParser} can parse.
+   */
+  public static boolean verifyFileHasArtTextHeader(@NotNull File trace) {
+    return startsWith(trace, VERSION_SECTION.getBytes(StandardCharsets.US_ASCII));
+  }
+
+  @Override
+  public CpuCapture parse(File trace, long traceId) throws IOException {
+    if (trace.length() > Integer.MAX_VALUE) {
+      throw new IOException("ART trace is too large to be memory-mapped: " + trace.length() + " bytes.");
+    }
+
+    MappedByteBuffer buffer;
+    try (RandomAccessFile file = new RandomAccessFile(trace, "r"); FileChannel channel = file.getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    parseHeader(buffer);
+    int dataStart = buffer.position();
+    if (buffer.getInt() != DATA_MAGIC) {
+      throw new IOException("ART trace could not be parsed due to magic number mismatch.");
+    }
+    int version = buffer.getShort();
+    int recordsStart = dataStart + buffer.getShort();
+    myStartTimeUs = buffer.getLong();
+    int recordSize;
+    if (version >= 3) {
+      recordSize = buffer.getShort();
+    }
+    else {
+      recordSize = version == 1 ? 9 : 10;
+    }
+    int threadIdSize = version == 1 ? 1 : 2;
+
+    // Single pass over the records to split them by thread. Only their offsets are kept, the tasks read them back from the mapped file.
+    TIntObjectHashMap<TIntArrayList> threadRecords = new TIntObjectHashMap<>();
+    for (int offset = recordsStart; offset + recordSize <= buffer.limit(); offset += recordSize) {
+      int threadId = threadIdSize == 1 ? buffer.get(offset) & 0xFF : buffer.getShort(offset) & 0xFFFF;
+      TIntArrayList records = threadRecords.get(threadId);
+      if (records == null) {
+        records = new TIntArrayList();
+        threadRecords.put(threadId, records);
+      }
+      records.add(offset + threadIdSize);
+    }
+
+    List<ForkJoinTask<?>> tasks = new ArrayList<>(threadRecords.size());
+    threadRecords.forEachEntry((threadId, records) -> {
+      // Each task reads through its own view of the buffer, so that none of them depends on the state of a shared one.
+      ByteBuffer view = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      tasks.add(myPool.submit(() -> buildThreadTree(threadId, records, view)));
+      return true;
+    });
+    for (ForkJoinTask<?> task : tasks) {
+      task.join();
+    }
+    return new CpuCapture(this, traceId, Cpu.CpuTraceType.ART);
+  }
+
+  private void buildThreadTree(int threadId, @NotNull TIntArrayList records, @NotNull ByteBuffer buffer) {
+    String name = myThreads.get(threadId);
+    if (name == null) {
+      name = String.format("Thread id: %1$d", threadId);
+    }
+    CaptureNodeConstructor constructor = new CaptureNodeConstructor(new SingleNameModel(name));
+    // Methods missing from the header only need to be the same model within a thread, for the constructor to match their exits.
+    TLongObjectHashMap<CaptureNodeModel> unknownMethods = new TLongObjectHashMap<>();
+
+    for (int i = 0; i < records.size(); i++) {
+      int offset = records.getQuick(i);
+      int methodValue = buffer.getInt(offset);
+      // Traces with a single clock only have one time, used as both the thread and the global time.
+      int threadTime = buffer.getInt(offset + 4);
+      int globalTime = myDualClock ? buffer.getInt(offset + 8) : threadTime;
+
+      long methodId = (methodValue & ~0x03) & 0xFFFFFFFFL;
+      CaptureNodeModel model = myMethods.get(methodId);
+      if (model == null) {
+        model = unknownMethods.get(methodId);
+        if (model == null) {
+          model = new SingleNameModel(UNKNOWN_METHOD_NAME);
+          unknownMethods.put(methodId, model);
+        }
+      }
+      constructor.addTraceAction(model, getTraceAction(methodValue), threadTime, globalTime);
+    }
+
+    CaptureNode topLevelCall = constructor.getTopLevel();
+    ArtTraceHandler.adjustNodesTimeAndDepth(topLevelCall, myStartTimeUs);
+    myCaptureTrees.put(new CpuThreadInfo(threadId, name, name.equals(ArtTraceHandler.MAIN_THREAD_NAME)), topLevelCall);
+  }
+
+  @NotNull
+  private static TraceAction getTraceAction(int methodValue) {
+    switch (methodValue & 0x03) {
+      case 0x00:
+        return TraceAction.METHOD_ENTER;
+      case 0x01:
+        return TraceAction.METHOD_EXIT;
+      case 0x02:
+        return TraceAction.METHOD_EXIT_UNROLL;
+      default:
+        throw new IllegalStateException("Invalid trace action in ART trace: " + (methodValue & 0x03));
+    }
+  }
+
+  /**
+   * Reads the text header, leaving the buffer positioned at the beginning of the binary data.
+   */
+  private void parseHeader(@NotNull MappedByteBuffer buffer) throws IOException {
+    String section = null;
+    String line;
+    while ((line = readLine(buffer)) != null) {
+      if (line.startsWith("*")) {
+        section = line;
+        if (section.equals(END_SECTION)) {
+          return;
+        }
+        continue;
+      }
+      if (VERSION_SECTION.equals(section)) {
+        parseProperty(line);
+      }
+      else if (THREADS_SECTION.equals(section)) {
+        String[] tokens = line.split("\t");
+        myThreads.put(Integer.decode(tokens[0]), tokens.length > 1 ? tokens[1] : "");
+      }
+      else if (METHODS_SECTION.equals(section)) {
+        parseMethod(line);
+      }
+    }
+    throw new IOException("ART trace header is not terminated by " + END_SECTION);
+  }
+
+  private void parseProperty(@NotNull String line) {
+    int separator = line.indexOf('=');
+    if (separator < 0) {
+      // The line following *version is the version number itself, which the binary header repeats.
+      return;
+    }
+    String key = line.substring(0, separator);
+    String value = line.substring(separator + 1);
+    if (key.equals(KEY_CLOCK)) {
+      myDualClock = value.equals("dual");
+    }
+    else if (key.equals(KEY_ELAPSED_TIME_US)) {
+      myElapsedTimeUs = Long.parseLong(value);
+    }
+  }
+
+  private void parseMethod(@NotNull String line) {
+    // Method lines are "id class method signature source line", separated by tabs. Older traces may omit the method and signature.
+    String[] tokens = line.split("\t");
+    long id = Long.decode(tokens[0]);
+    String className = tokens.length > 1 ? tokens[1] : "";
+    if (tokens.length > 3 && tokens[3].startsWith("(")) {
+      myMethods.put(id, new JavaMethodModel(tokens[2], className, tokens[3]));
+    }
+    else {
+      myMethods.put(id, new JavaMethodModel("", className));
+    }
+  }
+
+  /**
+   * @return the next line of the header, or null at the end of the buffer. Lines are UTF-8, as method names can be any identifier.
+   */
+  @Nullable
+  private static String readLine(@NotNull MappedByteBuffer buffer) {
+    int start = buffer.position();
+    if (start >= buffer.limit()) {
+      return null;
+    }
+    int end = start;
+    while (end < buffer.limit() && buffer.get(end) != '\n') {
+      end++;
+    }
+    byte[] bytes = new byte[end - start];
+    buffer.get(bytes);
+    if (buffer.hasRemaining()) {
+      buffer.get();
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static boolean startsWith(@NotNull File file, @NotNull byte[] prefix) {
+    try (FileInputStream input = new FileInputStream(file)) {
+      byte[] header = new byte[prefix.length];
+      int read = 0;
+      while (read < header.length) {
+        int count = input.read(header, read, header.length - read);
+        if (count < 0) {
+          return false;
+        }
+        read += count;
+      }
+      for (int i = 0; i < prefix.length; i++) {
+        if (header[i] != prefix[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public Map<CpuThreadInfo, CaptureNode> getCaptureTrees() {
+    return Collections.unmodifiableMap(myCaptureTrees);
+  }
+
+  @Override
+  public Range getRange() {
+    return new Range(myStartTimeUs, myStartTimeUs + myElapsedTimeUs);
+  }
+
+  @Override
+  public boolean supportsDualClock() {
+    return true;
+  }
+}
@@ -105,6 +105,15 @@ public class AtraceParser implements TraceParser {
   private Model myModel;
   private Range myRange;
   private AtraceFrameManager myFrameInfo;
+  /**
+   * Whether perfetto traces are imported by {@link PerfettoModelImporter} instead of being converted to systrace lines.
+   */
+  private final boolean myNativePerfettoImport;
+
+  /**
+   * Models of the capture nodes, by slice name. Slices with the same name share their model instead of allocating one per node.
+   */
+  private final Map<String, AtraceNodeModel> myNodeModels = new HashMap<>();
 
   /**
    * This constructor parses the atrace model from the file and should be used for getting the list
@@ -112,7 +121,11 @@ public class AtraceParser implements TraceParser {
    * to be called before parse.
    */
   public AtraceParser(@NotNull File file) throws IOException {
-    this(INVALID_PROCESS);
+    this(file, false);
+  }
+
+  public AtraceParser(@NotNull File file, boolean nativePerfettoImport) throws IOException {
+    this(INVALID_PROCESS, nativePerfettoImport);
     parseModelIfNeeded(file);
   }
 
@@ -121,7 +134,12 @@ public class AtraceParser implements TraceParser {
    * and expects parse with the proper file to be called.
    */
   public AtraceParser(int processId) {
+    this(processId, false);
+  }
+
+  public AtraceParser(int processId, boolean nativePerfettoImport) {
     myProcessId = processId;
+    myNativePerfettoImport = nativePerfettoImport;
     myCaptureTreeNodes = new HashMap<>();
     myThreadStateData = new HashMap<>();
     myCpuSchedulingToCpuData = new HashMap<>();
@@ -152,19 +170,19 @@ public class AtraceParser implements TraceParser {
    */
   private void parseModelIfNeeded(@NotNull File file) throws IOException {
     if (myModel == null) {
-      TrebuchetBufferProducer producer;
-      if (AtraceProducer.verifyFileHasAtraceHeader(file)) {
-        producer = new AtraceProducer();
+      boolean isAtrace = AtraceProducer.verifyFileHasAtraceHeader(file);
+      if (!isAtrace && myNativePerfettoImport) {
+        myModel = new PerfettoModelImporter().importFile(file);
       }
       else {
-        producer = new PerfettoProducer();
-      }
-      if (!producer.parseFile(file)) {
-        throw new IOException("Failed to parse file: " + file.getAbsolutePath());
-      }
+        TrebuchetBufferProducer producer = isAtrace ? new AtraceProducer() : new PerfettoProducer();
+        if (!producer.parseFile(file)) {
+          throw new IOException("Failed to parse file: " + file.getAbsolutePath());
+        }
 
-      ImportTask task = new ImportTask(new PrintlnImportFeedback());
-      myModel = task.importBuffer(producer);
+        ImportTask task = new ImportTask(new PrintlnImportFeedback());
+        myModel = task.importBuffer(producer);
+      }
       // We check if we have a parent timestamp. If not this could be from an imported trace.
       // In the case it is 0, we use the first timestamp of our capture as a reference point.
       if (Double.compare(myModel.getParentTimestamp(), 0.0) == 0) {
@@ -359,7 +377,7 @@ public class AtraceParser implements TraceParser {
    * @return The {@link CaptureNode} that mirrors the {@link SliceGroup} passed in.
    */
   private CaptureNode populateCaptureNode(SliceGroup slice, int depth) {
-    CaptureNode node = new CaptureNode(new AtraceNodeModel(slice.getName()));
+    CaptureNode node = new CaptureNode(myNodeModels.computeIfAbsent(slice.getName(), AtraceNodeModel::new));
     node.setStartGlobal(convertToUserTimeUs(slice.getStartTime()));
     node.setEndGlobal(convertToUserTimeUs(slice.getEndTime()));
     node.setStartThread(convertToUserTimeUs(slice.getStartTime()));
@@ -0,0 +1,587 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.android.tools.idea.protobuf.ExtensionRegistryLite;
+import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntArrayList;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import kotlin.Unit;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import perfetto.protos.PerfettoTrace;
+import trebuchet.importers.ImportFeedback;
+import trebuchet.importers.ftrace.FtraceImporterState;
+import trebuchet.model.ConstantsKt;
+import trebuchet.model.Model;
+import trebuchet.model.SchedulingState;
+import trebuchet.model.fragments.ModelFragment;
+import trebuchet.model.fragments.ThreadModelFragment;
+
+/**
+ * Builds a trebuchet {@link Model} straight from the packets of a perfetto trace, instead of converting every event to a systrace line
+ * with {@link PerfettoProducer}, sorting the lines in a database and having trebuchet parse them back.
+ * <p>
+ * Perfetto writes ftrace events in bundles of a single CPU, and the bundles of a CPU mostly follow each other in time. The trace is
+ * memory-mapped and indexed once, grouping consecutive bundles into runs sorted by timestamp. Indexing only walks the wire format of the
+ * bundles, reading their CPU and the timestamp and type of their events. The runs are then merged by timestamp, decoding only one bundle
+ * per run at a time, and each event is applied to the model the way trebuchet's ftrace importer applies a line.
+ */
+public class PerfettoModelImporter {
+  /**
+   * Tag of the repeated packet field of the trace proto, which is length-delimited.
+   */
+  private static final int PACKET_TAG = (1 << 3) | 2;
+  private static final int WIRE_TYPE_VARINT = 0;
+  private static final int WIRE_TYPE_FIXED64 = 1;
+  private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+  private static final int WIRE_TYPE_FIXED32 = 5;
+
+  /**
+   * Thread id used for the clock sync markers, as they are not generated by any thread.
+   */
+  private static final int CLOCK_SYNC_PID = Short.MAX_VALUE;
+
+  private static final Comparator<PerfettoTrace.FtraceEvent> BY_TIMESTAMP =
+    Comparator.comparingLong(PerfettoTrace.FtraceEvent::getTimestamp);
+
+  @NotNull private final ExtensionRegistryLite myPacketRegistry = ExtensionRegistryLite.newInstance();
+  @NotNull private final Map<Integer, Integer> myTidToTgid = new HashMap<>();
+  @NotNull private final Map<Integer, String> myTidToName = new HashMap<>();
+  @NotNull private final List<BundleRun> myRuns = new ArrayList<>();
+  @NotNull private final FtraceImporterState myState;
+  /**
+   * First clock snapshot of the trace, found when indexing.
+   */
+  @Nullable private PerfettoTrace.ClockSnapshot myClockSnapshot;
+
+  public PerfettoModelImporter() {
+    PerfettoTrace.registerAllExtensions(myPacketRegistry);
+    myState = new FtraceImporterState(new ImportFeedback() {
+      @Override
+      public void reportImportWarning(@NotNull String warning) {
+        getLogger().warn(warning);
+      }
+
+      @Override
+      public void reportImportException(@NotNull Throwable exception) {
+        getLogger().warn(exception);
+      }
+    });
+    // Thread id 0 is used for events that are generated by the system not associated with any process.
+    // In systrace and perfetto they use <idle> as the name for events generated with this thread id.
+    myTidToName.put(0, "<idle>");
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(PerfettoModelImporter.class);
+  }
+
+  @NotNull
+  public Model importFile(@NotNull File file) throws IOException {
+    if (file.length() > Integer.MAX_VALUE) {
+      throw new IOException("Perfetto trace is too large to be memory-mapped: " + file.length() + " bytes.");
+    }
+    MappedByteBuffer buffer;
+    try (RandomAccessFile input = new RandomAccessFile(file, "r"); FileChannel channel = input.getChannel()) {
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+
+    indexPackets(buffer);
+    // Each perfetto trace has many clock snapshots. We need the clocks from the first one to align timestamps with studio.
+    if (myClockSnapshot != null) {
+      importClockSnapshot(myClockSnapshot);
+    }
+
+    PriorityQueue<BundleCursor> queue =
+      new PriorityQueue<>(Math.max(myRuns.size(), 1), Comparator.comparingLong(BundleCursor::getTimestamp));
+    for (BundleRun run : myRuns) {
+      BundleCursor cursor = new BundleCursor(buffer, run);
+      if (cursor.advance()) {
+        queue.add(cursor);
+      }
+    }
+    while (!queue.isEmpty()) {
+      BundleCursor cursor = queue.poll();
+      importEvent(cursor.getEvent(), cursor.getCpu());
+      if (cursor.advance()) {
+        queue.add(cursor);
+      }
+    }
+    return new Model(myState.finish());
+  }
+
+  /**
+   * Goes through all the packets once, collecting the names and processes of the threads and grouping the ftrace bundles into runs.
+   * Only process trees, clock snapshots and sched_switch events are decoded, the other packets and events are skipped over.
+   */
+  private void indexPackets(@NotNull ByteBuffer buffer) throws IOException {
+    // Last run of each CPU, the next bundle of the CPU goes to this run if it doesn't start before the end of the run.
+    Map<Integer, BundleRun> lastRuns = new HashMap<>();
+    buffer.position(0);
+    while (buffer.hasRemaining()) {
+      int tag = (int)readVarint(buffer);
+      if (tag != PACKET_TAG) {
+        skipField(buffer, tag);
+        continue;
+      }
+      ByteBuffer packet = readLengthDelimited(buffer);
+      while (packet.hasRemaining()) {
+        int packetTag = (int)readVarint(packet);
+        if ((packetTag & 0x07) != WIRE_TYPE_LENGTH_DELIMITED) {
+          skipField(packet, packetTag);
+          continue;
+        }
+        int offset = packet.position();
+        ByteBuffer field = readLengthDelimited(packet);
+        switch (packetTag >>> 3) {
+          case PerfettoTrace.TracePacket.FTRACE_EVENTS_FIELD_NUMBER:
+            indexBundle(field, offset, lastRuns);
+            break;
+          case PerfettoTrace.TracePacket.PROCESS_TREE_FIELD_NUMBER:
+            indexProcessTree(PerfettoTrace.ProcessTree.parseFrom(field, myPacketRegistry));
+            break;
+          case PerfettoTrace.TracePacket.CLOCK_SNAPSHOT_FIELD_NUMBER:
+            if (myClockSnapshot == null) {
+              myClockSnapshot = PerfettoTrace.ClockSnapshot.parseFrom(field, myPacketRegistry);
+            }
+            break;
+          default:
+            break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds an ftrace bundle to the run of its CPU, reading only the timestamp and the type of its events.
+   *
+   * @param offset position of the length prefix of the bundle in the trace, which is where {@link BundleCursor} decodes it from.
+   */
+  private void indexBundle(@NotNull ByteBuffer bundle, int offset, @NotNull Map<Integer, BundleRun> lastRuns) throws IOException {
+    int cpu = 0;
+    long minTimestamp = Long.MAX_VALUE;
+    long maxTimestamp = Long.MIN_VALUE;
+    while (bundle.hasRemaining()) {
+      int tag = (int)readVarint(bundle);
+      if (tag == makeTag(PerfettoTrace.FtraceEventBundle.CPU_FIELD_NUMBER, WIRE_TYPE_VARINT)) {
+        cpu = (int)readVarint(bundle);
+      }
+      else if (tag == makeTag(PerfettoTrace.FtraceEventBundle.EVENT_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED)) {
+        long timestamp = indexEvent(readLengthDelimited(bundle));
+        if (timestamp != Long.MIN_VALUE) {
+          minTimestamp = Math.min(minTimestamp, timestamp);
+          maxTimestamp = Math.max(maxTimestamp, timestamp);
+        }
+      }
+      else {
+        skipField(bundle, tag);
+      }
+    }
+    if (minTimestamp == Long.MAX_VALUE) {
+      return;
+    }
+    BundleRun run = lastRuns.get(cpu);
+    if (run == null || minTimestamp < run.myMaxTimestamp) {
+      run = new BundleRun(cpu);
+      myRuns.add(run);
+      lastRuns.put(cpu, run);
+    }
+    run.add(offset, maxTimestamp);
+  }
+
+  /**
+   * Collects the thread names of a sched_switch event.
+   *
+   * @return the timestamp of the event, or {@link Long#MIN_VALUE} if the event isn't imported.
+   */
+  private long indexEvent(@NotNull ByteBuffer event) throws IOException {
+    long timestamp = 0;
+    boolean supported = false;
+    while (event.hasRemaining()) {
+      int tag = (int)readVarint(event);
+      if (tag == makeTag(PerfettoTrace.FtraceEvent.TIMESTAMP_FIELD_NUMBER, WIRE_TYPE_VARINT)) {
+        timestamp = readVarint(event);
+      }
+      else if (tag == makeTag(PerfettoTrace.FtraceEvent.SCHED_SWITCH_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED)) {
+        PerfettoTrace.SchedSwitchFtraceEvent schedSwitch =
+          PerfettoTrace.SchedSwitchFtraceEvent.parseFrom(readLengthDelimited(event), myPacketRegistry);
+        myTidToName.putIfAbsent(schedSwitch.getPrevPid(), schedSwitch.getPrevComm());
+        myTidToName.putIfAbsent(schedSwitch.getNextPid(), schedSwitch.getNextComm());
+        supported = true;
+      }
+      else if (tag == makeTag(PerfettoTrace.FtraceEvent.SCHED_WAKEUP_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED) ||
+               tag == makeTag(PerfettoTrace.FtraceEvent.SCHED_WAKING_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED) ||
+               tag == makeTag(PerfettoTrace.FtraceEvent.PRINT_FIELD_NUMBER, WIRE_TYPE_LENGTH_DELIMITED)) {
+        skipField(event, tag);
+        supported = true;
+      }
+      else {
+        skipField(event, tag);
+      }
+    }
+    return supported ? timestamp : Long.MIN_VALUE;
+  }
+
+  private void indexProcessTree(@NotNull PerfettoTrace.ProcessTree processTree) {
+    for (PerfettoTrace.ProcessTree.Process process : processTree.getProcessesList()) {
+      // Main threads will have the same pid as tgid.
+      myTidToTgid.putIfAbsent(process.getPid(), process.getPid());
+    }
+    for (PerfettoTrace.ProcessTree.Thread thread : processTree.getThreadsList()) {
+      myTidToTgid.putIfAbsent(thread.getTid(), thread.getTgid());
+      if (thread.hasName()) {
+        myTidToName.putIfAbsent(thread.getTid(), thread.getName());
+      }
+    }
+  }
+
+  /**
+   * Sets the timestamps trebuchet reads from the clock sync markers of systrace, which {@link PerfettoProducer} generates first.
+   */
+  private void importClockSnapshot(@NotNull PerfettoTrace.ClockSnapshot snapshot) {
+    PerfettoTrace.ClockSnapshot.Clock monotonicClock = null;
+    PerfettoTrace.ClockSnapshot.Clock realtimeClock = null;
+    PerfettoTrace.ClockSnapshot.Clock boottimeClock = null;
+    for (PerfettoTrace.ClockSnapshot.Clock clock : snapshot.getClocksList()) {
+      if (clock.getType() == PerfettoTrace.ClockSnapshot.Clock.Type.MONOTONIC) {
+        monotonicClock = clock;
+      }
+      else if (clock.getType() == PerfettoTrace.ClockSnapshot.Clock.Type.REALTIME) {
+        realtimeClock = clock;
+      }
+      else if (clock.getType() == PerfettoTrace.ClockSnapshot.Clock.Type.BOOTTIME) {
+        boottimeClock = clock;
+      }
+    }
+    if (monotonicClock == null || realtimeClock == null || boottimeClock == null) {
+      getLogger().warn("Perfetto clock snapshot is missing the monotonic, realtime or boottime clock.");
+      return;
+    }
+
+    double bootTimeSeconds = nanosToSeconds(boottimeClock.getTimestamp());
+    startLine(bootTimeSeconds, CLOCK_SYNC_PID);
+    ModelFragment fragment = myState.getModelFragment();
+    fragment.setParentTimestamp(nanosToSeconds(monotonicClock.getTimestamp()));
+    fragment.setParentTimestampBootTime(bootTimeSeconds);
+    fragment.setRealtimeTimestamp(TimeUnit.NANOSECONDS.toMillis(realtimeClock.getTimestamp()));
+  }
+
+  /**
+   * Applies an event the way trebuchet's ftrace importer applies the equivalent systrace line.
+   */
+  private void importEvent(@NotNull PerfettoTrace.FtraceEvent event, int cpu) {
+    double timestamp = nanosToSeconds(event.getTimestamp());
+    int pid = event.getPid();
+    startLine(timestamp, pid);
+
+    if (event.hasSchedSwitch()) {
+      PerfettoTrace.SchedSwitchFtraceEvent schedSwitch = event.getSchedSwitch();
+      ThreadModelFragment prevThread = threadFor(schedSwitch.getPrevPid(), ConstantsKt.InvalidId, null);
+      if (prevThread.getName() == null) {
+        prevThread.hint(ConstantsKt.InvalidId, schedSwitch.getPrevComm(), ConstantsKt.InvalidId, null);
+      }
+      ThreadModelFragment nextThread = threadFor(schedSwitch.getNextPid(), ConstantsKt.InvalidId, null);
+      if (nextThread.getName() == null) {
+        nextThread.hint(ConstantsKt.InvalidId, schedSwitch.getNextComm(), ConstantsKt.InvalidId, null);
+      }
+      prevThread.getSchedulingStateBuilder().switchState(getSchedulingState(schedSwitch.getPrevState()), timestamp);
+      nextThread.getSchedulingStateBuilder().switchState(SchedulingState.RUNNING, timestamp);
+      myState.cpuFor(cpu).getSchedulingProcessBuilder().switchProcess(nextThread.getProcess(), nextThread, timestamp);
+    }
+    else if (event.hasSchedWakeup() || event.hasSchedWaking()) {
+      int wokenPid = event.hasSchedWakeup() ? event.getSchedWakeup().getPid() : event.getSchedWaking().getPid();
+      String comm = event.hasSchedWakeup() ? event.getSchedWakeup().getComm() : event.getSchedWaking().getComm();
+      ThreadModelFragment thread = threadFor(wokenPid, ConstantsKt.InvalidId, null);
+      if (thread.getName() == null) {
+        thread.hint(ConstantsKt.InvalidId, comm, ConstantsKt.InvalidId, null);
+      }
+      thread.getSchedulingStateBuilder().switchState(SchedulingState.WAKING, timestamp);
+    }
+    else if (event.hasPrint()) {
+      importTraceMarker(event.getPrint().getBuf().replace("\n", ""), pid, timestamp);
+    }
+  }
+
+  /**
+   * Updates the model for the beginning of a line, before its event is applied.
+   */
+  private void startLine(double timestamp, int pid) {
+    ModelFragment fragment = myState.getModelFragment();
+    if (fragment.getGlobalStartTime() == 0.0) {
+      fragment.setGlobalStartTime(timestamp);
+    }
+    fragment.setGlobalEndTime(timestamp);
+    Integer tgid = myTidToTgid.get(pid);
+    if (tgid != null) {
+      threadFor(pid, tgid, myTidToName.get(pid));
+    }
+  }
+
+  /**
+   * Applies an atrace marker: B|tgid|name to begin a slice, E to end it and C|tgid|name|value for a counter.
+   */
+  private void importTraceMarker(@NotNull String marker, int pid, double timestamp) {
+    if (marker.isEmpty()) {
+      return;
+    }
+    Integer knownTgid = myTidToTgid.get(pid);
+    int lineTgid = knownTgid == null ? ConstantsKt.InvalidId : knownTgid;
+    String task = myTidToName.get(pid);
+    try {
+      switch (marker.charAt(0)) {
+        case 'B': {
+          int separator = marker.indexOf('|', 2);
+          int tgid = Integer.parseInt(marker.substring(2, separator));
+          if (lineTgid != ConstantsKt.InvalidId && lineTgid != tgid) {
+            // Trebuchet drops the markers of a thread that claim a different process.
+            return;
+          }
+          String name = marker.substring(separator + 1);
+          threadFor(pid, tgid, task).getSlicesBuilder().beginSlice(slice -> {
+            slice.setStartTime(timestamp);
+            slice.setName(name);
+            return Unit.INSTANCE;
+          });
+          break;
+        }
+        case 'E': {
+          ThreadModelFragment thread = threadFor(pid, lineTgid, task);
+          thread.getSlicesBuilder().endSlice(slice -> {
+            slice.setEndTime(timestamp);
+            slice.populateScheduledSlices(thread.getSchedulingStateBuilder().getSlices());
+            return Unit.INSTANCE;
+          });
+          break;
+        }
+        case 'C': {
+          int tgidEnd = marker.indexOf('|', 2);
+          int nameEnd = marker.indexOf('|', tgidEnd + 1);
+          int tgid = Integer.parseInt(marker.substring(2, tgidEnd));
+          if (lineTgid != ConstantsKt.InvalidId && lineTgid != tgid) {
+            return;
+          }
+          int value = Integer.parseInt(marker.substring(nameEnd + 1).trim());
+          threadFor(pid, tgid, task).getProcess().addCounterSample(marker.substring(tgidEnd + 1, nameEnd), timestamp, value);
+          break;
+        }
+        default:
+          // Other markers aren't slices nor counters.
+          break;
+      }
+    }
+    catch (IndexOutOfBoundsException | NumberFormatException | IllegalStateException e) {
+      getLogger().warn(String.format("Failed to import trace marker '%s'", marker), e);
+    }
+  }
+
+  @NotNull
+  private ThreadModelFragment threadFor(int pid, int tgid, @Nullable String task) {
+    return myState.threadFor(pid, tgid, task);
+  }
+
+  /**
+   * Converts the prev_state of a sched_switch event, a bit field of the kernel task states. Only the lower bits are stable across kernel
+   * versions; a task preempted while running only has higher bits set, or none at all.
+   */
+  @NotNull
+  private static SchedulingState getSchedulingState(long prevState) {
+    if ((prevState & 0x01) != 0) {
+      return SchedulingState.SLEEPING;
+    }
+    if ((prevState & 0x02) != 0) {
+      return SchedulingState.UNINTR_SLEEP;
+    }
+    if ((prevState & 0x04) != 0) {
+      return SchedulingState.STOPPED;
+    }
+    if ((prevState & 0x08) != 0) {
+      return SchedulingState.DEBUG;
+    }
+    if ((prevState & 0x10) != 0) {
+      return SchedulingState.EXIT_DEAD;
+    }
+    if ((prevState & 0x20) != 0) {
+      return SchedulingState.ZOMBIE;
+    }
+    return SchedulingState.RUNNABLE;
+  }
+
+  private static boolean isSupportedEvent(@NotNull PerfettoTrace.FtraceEvent event) {
+    return event.hasSchedSwitch() || event.hasSchedWakeup() || event.hasSchedWaking() || event.hasPrint();
+  }
+
+  private static double nanosToSeconds(double nanos) {
+    return nanos / TimeUnit.SECONDS.toNanos(1);
+  }
+
+  private static long readVarint(@NotNull ByteBuffer buffer) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      if (!buffer.hasRemaining()) {
+        throw new IOException("Truncated varint in perfetto trace.");
+      }
+      byte b = buffer.get();
+      value |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint in perfetto trace.");
+  }
+
+  private static int makeTag(int fieldNumber, int wireType) {
+    return (fieldNumber << 3) | wireType;
+  }
+
+  /**
+   * Reads the length prefix of a length-delimited field and moves the buffer past the field.
+   *
+   * @return a view of the content of the field, which keeps the positions of the trace.
+   */
+  @NotNull
+  private static ByteBuffer readLengthDelimited(@NotNull ByteBuffer buffer) throws IOException {
+    int length = (int)readVarint(buffer);
+    int offset = buffer.position();
+    if (length < 0 || offset + length > buffer.limit()) {
+      throw new IOException("Truncated field in perfetto trace.");
+    }
+    ByteBuffer field = buffer.duplicate();
+    field.limit(offset + length);
+    buffer.position(offset + length);
+    return field;
+  }
+
+  private static void skipField(@NotNull ByteBuffer buffer, int tag) throws IOException {
+    switch (tag & 0x07) {
+      case WIRE_TYPE_VARINT:
+        readVarint(buffer);
+        break;
+      case WIRE_TYPE_FIXED64:
+        buffer.position(buffer.position() + 8);
+        break;
+      case WIRE_TYPE_LENGTH_DELIMITED:
+        buffer.position(buffer.position() + (int)readVarint(buffer));
+        break;
+      case WIRE_TYPE_FIXED32:
+        buffer.position(buffer.position() + 4);
+        break;
+      default:
+        throw new IOException(String.format("Encountered unknown tag (%d) when attempting to parse perfetto capture.", tag));
+    }
+  }
+
+  /**
+   * Consecutive ftrace bundles of one CPU, whose events are sorted by timestamp across the bundles.
+   */
+  private static final class BundleRun {
+    private final int myCpu;
+    /**
+     * Positions of the length prefixes of the bundles in the trace.
+     */
+    @NotNull private final TIntArrayList myOffsets = new TIntArrayList();
+    private long myMaxTimestamp = Long.MIN_VALUE;
+
+    private BundleRun(int cpu) {
+      myCpu = cpu;
+    }
+
+    private void add(int offset, long maxTimestamp) {
+      myOffsets.add(offset);
+      myMaxTimestamp = Math.max(myMaxTimestamp, maxTimestamp);
+    }
+  }
+
+  /**
+   * Position in a {@link BundleRun}. Only the bundle being read is decoded.
+   */
+  private final class BundleCursor {
+    @NotNull private final ByteBuffer myBuffer;
+    @NotNull private final BundleRun myRun;
+    private int myNextBundle;
+    @NotNull private List<PerfettoTrace.FtraceEvent> myEvents = Collections.emptyList();
+    private int myEventIndex = -1;
+
+    private BundleCursor(@NotNull ByteBuffer buffer, @NotNull BundleRun run) {
+      myBuffer = buffer;
+      myRun = run;
+    }
+
+    /**
+     * Moves to the next event of the run.
+     *
+     * @return false at the end of the run.
+     */
+    private boolean advance() {
+      myEventIndex++;
+      while (myEventIndex >= myEvents.size()) {
+        if (myNextBundle >= myRun.myOffsets.size()) {
+          return false;
+        }
+        loadBundle(myNextBundle++);
+      }
+      return true;
+    }
+
+    private void loadBundle(int index) {
+      List<PerfettoTrace.FtraceEvent> events = new ArrayList<>();
+      try {
+        ByteBuffer buffer = myBuffer.duplicate();
+        buffer.position(myRun.myOffsets.get(index));
+        PerfettoTrace.FtraceEventBundle bundle = PerfettoTrace.FtraceEventBundle.parseFrom(readLengthDelimited(buffer), myPacketRegistry);
+        for (PerfettoTrace.FtraceEvent event : bundle.getEventList()) {
+          if (isSupportedEvent(event)) {
+            events.add(event);
+          }
+        }
+      }
+      catch (IOException e) {
+        // The wire format of the bundle was checked when indexing, so this isn't expected.
+        getLogger().warn(e);
+      }
+      // Events within a bundle are almost always in order already, in which case the sort is a single pass.
+      events.sort(BY_TIMESTAMP);
+      myEvents = events;
+      myEventIndex = 0;
+    }
+
+    @NotNull
+    private PerfettoTrace.FtraceEvent getEvent() {
+      return myEvents.get(myEventIndex);
+    }
+
+    private long getTimestamp() {
+      return getEvent().getTimestamp();
+    }
+
+    private int getCpu() {
+      return myRun.myCpu;
+    }
+  }
+}
@@ -127,41 +127,17 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     return true;
   }
 
+  @NotNull
   @Override
-  public void update(@NotNull Range range) {
-    // how much time was spent in this call stack path, and in the functions it called
-    myGlobalTotal = 0;
-    // how much time was spent doing work directly in this call stack path
-    double self = 0;
-
-    // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
-    // then the second method can't be outerSoFar.
-    // It's used to exclude nodes which aren't at the top of the
-    // call stack from the total time calculation.
-    CaptureNode outerSoFar = null;
-
-    // myNodes is sorted by CaptureNode#getStart() in increasing order,
-    // if they are equal then ancestor comes first
-    for (CaptureNode node : myNodes) {
-      if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
-        if (outerSoFar != null) {
-          // |outerSoFar| is at the top of the call stack
-          myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
-        }
-        outerSoFar = node;
-      }
-
-      self += getIntersection(range, node, ClockType.GLOBAL);
-      for (CaptureNode child : node.getChildren()) {
-        self -= getIntersection(range, child, ClockType.GLOBAL);
-      }
-    }
-
-    if (outerSoFar != null) {
-      // |outerSoFar| is at the top of the call stack
-      myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
-    }
-    myGlobalChildrenTotal = myGlobalTotal - self;
+  Totals computeTotals(@NotNull Range range) {
+    double min = range.getMin();
+    double max = range.getMax();
+    // How much time was spent in this call stack path, and in the functions it called. A method calling itself, e.g B [0..30] -> B [1..20],
+    // is only counted once.
+    double total = getNodesUnion(ClockType.GLOBAL).getLength(min, max);
+    // How much time was spent doing work directly in this call stack path.
+    double self = getNodesCoverage(ClockType.GLOBAL).getLength(min, max) - getChildrenCoverage(ClockType.GLOBAL).getLength(min, max);
+    return new Totals(total, total - self, 0, 0);
   }
 
   @NotNull
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.IdeProfilerServices;
 import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.CpuCapture;
@@ -207,6 +208,7 @@ public class CaptureModel {
         applyFilter(node, false);
       }
       myDetails = type.build(myCaptureConvertedRange, node, myCapture);
+      setUpdateExecutorsIfEnabled(myDetails);
     }
     else {
       myFilter = Filter.EMPTY_FILTER;
@@ -216,6 +218,23 @@ public class CaptureModel {
     myStage.getAspect().changed(CpuProfilerAspect.CAPTURE_DETAILS);
   }
 
+  private void setUpdateExecutorsIfEnabled(@NotNull CaptureDetails details) {
+    IdeProfilerServices services = myStage.getStudioProfilers().getIdeServices();
+    if (!services.getFeatureConfig().isAsyncCallTreeUpdateEnabled()) {
+      return;
+    }
+    CpuTreeModel<?> model = null;
+    if (details instanceof CaptureDetails.TopDown) {
+      model = ((CaptureDetails.TopDown)details).getModel();
+    }
+    else if (details instanceof CaptureDetails.BottomUp) {
+      model = ((CaptureDetails.BottomUp)details).getModel();
+    }
+    if (model != null) {
+      model.setUpdateExecutors(services.getPoolExecutor(), services.getMainExecutor());
+    }
+  }
+
   @Nullable
   private CaptureNode getNode() {
     return myCapture != null ? myCapture.getCaptureNode(myThread) : null;
@@ -19,10 +19,15 @@ import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.adtui.model.Range;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
 import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The model for a JTree that updates for a given range. It uses a CpuTreeNode as it's backing tree.
@@ -38,6 +43,17 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
   private final AspectObserver myAspectObserver;
   private final AspectModel<Aspect> myAspectModel;
 
+  /**
+   * Executors used to compute the totals of the nodes off the main thread, see {@link #setUpdateExecutors(Executor, Executor)}.
+   */
+  @Nullable private Executor myPoolExecutor;
+  @Nullable private Executor myMainExecutor;
+
+  /**
+   * Incremented on every range change, so totals computed for a previous range are dropped instead of being applied.
+   */
+  private final AtomicInteger myUpdateGeneration = new AtomicInteger();
+
   public CpuTreeModel(@NotNull Range range, @NotNull T node) {
     super(new DefaultMutableTreeNode(node));
     myRange = range;
@@ -53,18 +69,73 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     return myAspectModel;
   }
 
+  /**
+   * Computes the totals of the visible nodes in {@code poolExecutor} when the range changes, and applies them to the tree in
+   * {@code mainExecutor}. A computation still running when the range changes again is cancelled. Until this is called, the tree is
+   * updated synchronously.
+   */
+  public void setUpdateExecutors(@NotNull Executor poolExecutor, @NotNull Executor mainExecutor) {
+    myPoolExecutor = poolExecutor;
+    myMainExecutor = mainExecutor;
+  }
+
   public void rangeChanged() {
+    int generation = myUpdateGeneration.incrementAndGet();
+    if (myPoolExecutor == null || myMainExecutor == null) {
+      applyRange(new Range(myRange), Collections.emptyMap());
+      return;
+    }
+
+    Range range = new Range(myRange);
+    List<T> nodes = getNodesToUpdate();
+    CompletableFuture
+      .supplyAsync(() -> computeTotals(nodes, range, generation), myPoolExecutor)
+      .thenAcceptAsync(totals -> {
+        if (generation == myUpdateGeneration.get()) {
+          applyRange(range, totals);
+        }
+      }, myMainExecutor);
+  }
+
+  /**
+   * @return the nodes whose totals may change with the range: the ones in the tree and their children.
+   */
+  @NotNull
+  private List<T> getNodesToUpdate() {
+    List<T> nodes = new ArrayList<>();
+    Enumeration e = ((DefaultMutableTreeNode)getRoot()).preorderEnumeration();
+    while (e.hasMoreElements()) {
+      T data = (T)((DefaultMutableTreeNode)e.nextElement()).getUserObject();
+      nodes.add(data);
+      nodes.addAll(data.getChildren());
+    }
+    return nodes;
+  }
+
+  @NotNull
+  private Map<T, CpuTreeNode.Totals> computeTotals(@NotNull List<T> nodes, @NotNull Range range, int generation) {
+    Map<T, CpuTreeNode.Totals> totals = new IdentityHashMap<>();
+    for (T node : nodes) {
+      if (generation != myUpdateGeneration.get()) {
+        throw new CancellationException();
+      }
+      totals.put(node, node.computeTotals(range));
+    }
+    return totals;
+  }
+
+  private void applyRange(@NotNull Range range, @NotNull Map<T, CpuTreeNode.Totals> totals) {
     DefaultMutableTreeNode root = (DefaultMutableTreeNode)getRoot();
 
     List<Range> diffs = new LinkedList<>();
     // Add all the newly added ranges.
-    diffs.addAll(myRange.subtract(myCurrentRange));
+    diffs.addAll(range.subtract(myCurrentRange));
     // Add the ranges we don't have anymore
-    diffs.addAll(myCurrentRange.subtract(myRange));
+    diffs.addAll(myCurrentRange.subtract(range));
 
-    update(root, myRange, diffs);
+    update(root, range, diffs, totals);
 
-    myCurrentRange.set(myRange);
+    myCurrentRange.set(range);
     myAspectModel.changed(Aspect.TREE_MODEL);
   }
 
@@ -77,7 +148,7 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
     return false;
   }
 
-  private void update(DefaultMutableTreeNode node, Range range, List<Range> ranges) {
+  private void update(DefaultMutableTreeNode node, Range range, List<Range> ranges, Map<T, CpuTreeNode.Totals> totals) {
     T data = (T)node.getUserObject();
 
     if (changes(data, ranges)) {
@@ -96,7 +167,7 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
             existing = new DefaultMutableTreeNode(child);
             insertNodeInto(existing, node, node.getChildCount());
           }
-          update(existing, range, ranges);
+          update(existing, range, ranges, totals);
         } else {
           child.reset();
         }
@@ -106,7 +177,14 @@ public abstract class CpuTreeModel<T extends CpuTreeNode<T>> extends DefaultTree
           removeNodeFromParent(entry.getValue());
         }
       }
-      data.update(range);
+      // Nodes that weren't visible when the range changed haven't been computed in the background.
+      CpuTreeNode.Totals dataTotals = totals.get(data);
+      if (dataTotals != null) {
+        data.setTotals(dataTotals);
+      }
+      else {
+        data.update(range);
+      }
       nodeChanged(node);
     }
   }
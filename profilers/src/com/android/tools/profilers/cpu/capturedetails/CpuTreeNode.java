@@ -22,9 +22,15 @@ import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public abstract class CpuTreeNode<T extends CpuTreeNode> {
+  private static final int NODES_COVERAGE = 0;
+  private static final int CHILDREN_COVERAGE = 1;
+  private static final int NODES_UNION = 2;
+  private static final int COVERAGE_KINDS = 3;
+
   /**
    * References to {@link CaptureNode} that are used to extract information from to represent this CpuTreeNode,
    * such as {@link #getGlobalTotal()}, {@link #getGlobalChildrenTotal()}, etc...
@@ -38,6 +44,13 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myThreadTotal = 0;
   protected double myThreadChildrenTotal = 0;
 
+  /**
+   * Prefix sums of the intervals of {@link #myNodes} and of their children, see {@link #getCoverage(int, ClockType)}. They're built the
+   * first time the node is updated and dropped when a node is added, so updating the node for a new range doesn't depend on how many
+   * calls it merges.
+   */
+  private final IntervalCoverage[] myCoverages = new IntervalCoverage[COVERAGE_KINDS * 2];
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -48,6 +61,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    Arrays.fill(myCoverages, null);
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -84,34 +98,85 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public void update(@NotNull Range range) {
-    myGlobalTotal = 0.0;
-    myGlobalChildrenTotal = 0;
-    myThreadTotal = 0.0;
-    myThreadChildrenTotal = 0;
+    setTotals(computeTotals(range));
+  }
 
-    for (CaptureNode node : myNodes) {
-      myGlobalTotal += getIntersection(range, node, ClockType.GLOBAL);
-      myThreadTotal += getIntersection(range, node, ClockType.THREAD);
-      for (CaptureNode child : node.getChildren()) {
-        myGlobalChildrenTotal += getIntersection(range, child, ClockType.GLOBAL);
-        myThreadChildrenTotal += getIntersection(range, child, ClockType.THREAD);
-      }
-    }
+  /**
+   * Computes the totals of the node for the given range, without changing it. It may be called from a background thread as long as no
+   * node is being added at the same time.
+   */
+  @NotNull
+  Totals computeTotals(@NotNull Range range) {
+    double min = range.getMin();
+    double max = range.getMax();
+    return new Totals(getNodesCoverage(ClockType.GLOBAL).getLength(min, max),
+                      getChildrenCoverage(ClockType.GLOBAL).getLength(min, max),
+                      getNodesCoverage(ClockType.THREAD).getLength(min, max),
+                      getChildrenCoverage(ClockType.THREAD).getLength(min, max));
   }
 
-  protected static double getIntersection(@NotNull Range range, @NotNull CaptureNode node, @NotNull ClockType type) {
-    Range intersection;
-    if (type == ClockType.GLOBAL) {
-      intersection = range.getIntersection(new Range(node.getStartGlobal(), node.getEndGlobal()));
-    }
-    else {
-      intersection = range.getIntersection(new Range(node.getStartThread(), node.getEndThread()));
+  void setTotals(@NotNull Totals totals) {
+    myGlobalTotal = totals.myGlobalTotal;
+    myGlobalChildrenTotal = totals.myGlobalChildrenTotal;
+    myThreadTotal = totals.myThreadTotal;
+    myThreadChildrenTotal = totals.myThreadChildrenTotal;
+  }
+
+  /**
+   * Time the nodes spend within a range, counting each of them separately.
+   */
+  @NotNull
+  IntervalCoverage getNodesCoverage(@NotNull ClockType type) {
+    return getCoverage(NODES_COVERAGE, type);
+  }
+
+  /**
+   * Time the children of the nodes spend within a range.
+   */
+  @NotNull
+  IntervalCoverage getChildrenCoverage(@NotNull ClockType type) {
+    return getCoverage(CHILDREN_COVERAGE, type);
+  }
+
+  /**
+   * Time within a range during which at least one of the nodes is running, i.e. recursive calls are only counted once.
+   */
+  @NotNull
+  IntervalCoverage getNodesUnion(@NotNull ClockType type) {
+    return getCoverage(NODES_UNION, type);
+  }
+
+  @NotNull
+  private IntervalCoverage getCoverage(int kind, @NotNull ClockType type) {
+    int index = kind * 2 + (type == ClockType.THREAD ? 1 : 0);
+    IntervalCoverage coverage = myCoverages[index];
+    if (coverage == null) {
+      List<CaptureNode> nodes = myNodes;
+      if (kind == CHILDREN_COVERAGE) {
+        nodes = new ArrayList<>();
+        for (CaptureNode node : myNodes) {
+          nodes.addAll(node.getChildren());
+        }
+      }
+      long[] starts = new long[nodes.size()];
+      long[] ends = new long[nodes.size()];
+      for (int i = 0; i < nodes.size(); i++) {
+        CaptureNode node = nodes.get(i);
+        starts[i] = type == ClockType.THREAD ? node.getStartThread() : node.getStartGlobal();
+        ends[i] = type == ClockType.THREAD ? node.getEndThread() : node.getEndGlobal();
+      }
+      coverage = kind == NODES_UNION ? IntervalCoverage.union(starts, ends) : IntervalCoverage.of(starts, ends);
+      myCoverages[index] = coverage;
     }
-    return intersection.isEmpty() ? 0.0 : intersection.getLength();
+    return coverage;
   }
 
   public boolean inRange(Range range) {
-    return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
+    if (myNodes.isEmpty()) {
+      return false;
+    }
+    // Nodes of a capture all use the same clock.
+    return getNodesCoverage(myNodes.get(0).getClockType()).intersects(range.getMin(), range.getMax());
   }
 
   public void reset() {
@@ -129,4 +194,21 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   public boolean isUnmatched() {
     return getFilterType() == CaptureNode.FilterType.UNMATCH;
   }
+
+  /**
+   * Totals of a node for a range, see {@link #computeTotals(Range)}.
+   */
+  static final class Totals {
+    private final double myGlobalTotal;
+    private final double myGlobalChildrenTotal;
+    private final double myThreadTotal;
+    private final double myThreadChildrenTotal;
+
+    Totals(double globalTotal, double globalChildrenTotal, double threadTotal, double threadChildrenTotal) {
+      myGlobalTotal = globalTotal;
+      myGlobalChildrenTotal = globalChildrenTotal;
+      myThreadTotal = threadTotal;
+      myThreadChildrenTotal = threadChildrenTotal;
+    }
+  }
 }
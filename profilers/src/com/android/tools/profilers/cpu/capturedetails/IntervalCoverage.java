@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Prefix sums over a set of intervals, answering how much of a range they cover in O(log n).
+ * <p>
+ * The coverage of the intervals is a step function counting how many of them contain each timestamp. This class keeps the breakpoints of
+ * that function along with its integral up to each of them, so the time covered within any range is the difference between the integral
+ * at both ends. Overlapping intervals are counted once per interval, which is the sum of the intersections of each of them with the range.
+ */
+final class IntervalCoverage {
+  static final IntervalCoverage EMPTY = new IntervalCoverage(new long[0], new double[0], new int[0], new long[0], new long[0]);
+
+  /**
+   * Sorted, distinct timestamps at which an interval starts or ends.
+   */
+  private final long[] myPoints;
+
+  /**
+   * Time covered before each point, counting overlapping intervals once each.
+   */
+  private final double[] myIntegrals;
+
+  /**
+   * Number of intervals covering [myPoints[i], myPoints[i + 1]).
+   */
+  private final int[] myCounts;
+
+  /**
+   * Starts of every interval, including empty ones, sorted.
+   */
+  private final long[] mySortedStarts;
+
+  /**
+   * Maximum end of the intervals whose start is at or before the same index in {@link #mySortedStarts}.
+   */
+  private final long[] myMaxEnds;
+
+  private IntervalCoverage(long[] points, double[] integrals, int[] counts, long[] sortedStarts, long[] maxEnds) {
+    myPoints = points;
+    myIntegrals = integrals;
+    myCounts = counts;
+    mySortedStarts = sortedStarts;
+    myMaxEnds = maxEnds;
+  }
+
+  /**
+   * Builds the coverage of the given intervals. {@code starts} and {@code ends} aren't modified.
+   */
+  @NotNull
+  static IntervalCoverage of(@NotNull long[] starts, @NotNull long[] ends) {
+    assert starts.length == ends.length;
+    int count = starts.length;
+    if (count == 0) {
+      return EMPTY;
+    }
+
+    // Intervals ending before they start don't cover anything, but are still considered by intersects().
+    long[] validStarts = new long[count];
+    long[] validEnds = new long[count];
+    int validCount = 0;
+    for (int i = 0; i < count; i++) {
+      if (ends[i] > starts[i]) {
+        validStarts[validCount] = starts[i];
+        validEnds[validCount] = ends[i];
+        validCount++;
+      }
+    }
+    Arrays.sort(validStarts, 0, validCount);
+    Arrays.sort(validEnds, 0, validCount);
+
+    long[] points = new long[validCount * 2];
+    double[] integrals = new double[validCount * 2];
+    int[] counts = new int[validCount * 2];
+    int size = 0;
+    int nextStart = 0;
+    int nextEnd = 0;
+    int covering = 0;
+    double integral = 0;
+    while (nextEnd < validCount) {
+      long point = nextStart < validCount ? Math.min(validStarts[nextStart], validEnds[nextEnd]) : validEnds[nextEnd];
+      if (size > 0) {
+        integral += (double)covering * (point - points[size - 1]);
+      }
+      while (nextStart < validCount && validStarts[nextStart] == point) {
+        covering++;
+        nextStart++;
+      }
+      while (nextEnd < validCount && validEnds[nextEnd] == point) {
+        covering--;
+        nextEnd++;
+      }
+      points[size] = point;
+      integrals[size] = integral;
+      counts[size] = covering;
+      size++;
+    }
+
+    // Sort the intervals by start, then keep the running maximum of their ends.
+    long[][] sorted = sortByStart(starts, ends);
+    long[] sortedStarts = sorted[0];
+    long[] maxEnds = sorted[1];
+    for (int i = 1; i < count; i++) {
+      maxEnds[i] = Math.max(maxEnds[i - 1], maxEnds[i]);
+    }
+
+    return new IntervalCoverage(Arrays.copyOf(points, size), Arrays.copyOf(integrals, size), Arrays.copyOf(counts, size),
+                                sortedStarts, maxEnds);
+  }
+
+  /**
+   * Builds the coverage of the union of the given intervals, i.e. overlapping intervals only count once in total.
+   */
+  @NotNull
+  static IntervalCoverage union(@NotNull long[] starts, @NotNull long[] ends) {
+    assert starts.length == ends.length;
+    int count = starts.length;
+    long[][] sorted = sortByStart(starts, ends);
+    long[] mergedStarts = new long[count];
+    long[] mergedEnds = new long[count];
+    int merged = 0;
+    for (int i = 0; i < count; i++) {
+      long start = sorted[0][i];
+      long end = sorted[1][i];
+      if (end <= start) {
+        continue;
+      }
+      if (merged > 0 && start <= mergedEnds[merged - 1]) {
+        mergedEnds[merged - 1] = Math.max(mergedEnds[merged - 1], end);
+      }
+      else {
+        mergedStarts[merged] = start;
+        mergedEnds[merged] = end;
+        merged++;
+      }
+    }
+    return of(Arrays.copyOf(mergedStarts, merged), Arrays.copyOf(mergedEnds, merged));
+  }
+
+  /**
+   * @return the time covered by the intervals between {@code min} and {@code max}.
+   */
+  double getLength(double min, double max) {
+    if (max <= min) {
+      return 0;
+    }
+    return integralAt(max) - integralAt(min);
+  }
+
+  /**
+   * @return whether an interval starts before {@code max} and ends after {@code min}, even if it's empty.
+   */
+  boolean intersects(double min, double max) {
+    // Number of intervals starting before max.
+    int low = 0;
+    int high = mySortedStarts.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mySortedStarts[mid] < max) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low > 0 && myMaxEnds[low - 1] > min;
+  }
+
+  /**
+   * @return copies of {@code starts} and {@code ends}, sorted by start.
+   */
+  @NotNull
+  private static long[][] sortByStart(@NotNull long[] starts, @NotNull long[] ends) {
+    int count = starts.length;
+    boolean isSorted = true;
+    for (int i = 1; i < count && isSorted; i++) {
+      isSorted = starts[i - 1] <= starts[i];
+    }
+    if (isSorted) {
+      // Call tree nodes are usually collected in pre-order, so they're already sorted.
+      return new long[][]{starts.clone(), ends.clone()};
+    }
+
+    Integer[] order = new Integer[count];
+    for (int i = 0; i < count; i++) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Long.compare(starts[a], starts[b]));
+    long[] sortedStarts = new long[count];
+    long[] sortedEnds = new long[count];
+    for (int i = 0; i < count; i++) {
+      sortedStarts[i] = starts[order[i]];
+      sortedEnds[i] = ends[order[i]];
+    }
+    return new long[][]{sortedStarts, sortedEnds};
+  }
+
+  private double integralAt(double timestamp) {
+    // Last point at or before the timestamp.
+    int low = 0;
+    int high = myPoints.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myPoints[mid] <= timestamp) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    if (low == 0) {
+      return 0;
+    }
+    int index = low - 1;
+    // Ranges can be unbounded, avoid multiplying an infinite length by zero.
+    return myCounts[index] == 0 ? myIntegrals[index] : myIntegrals[index] + myCounts[index] * (timestamp - myPoints[index]);
+  }
+}
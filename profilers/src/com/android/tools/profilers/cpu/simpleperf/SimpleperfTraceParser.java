@@ -118,11 +118,18 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private String myAppDataFolderPrefix;
 
+  /**
+   * Models of the call chain entries already converted. Every sample repeats the frames of its call chain, so nodes of the same frame
+   * share their model instead of parsing the symbol name again for each of them.
+   */
+  private final Map<ModelKey, CaptureNodeModel> myMethodModels;
+
   public SimpleperfTraceParser() {
     myFiles = new HashMap<>();
     mySamples = new ArrayList<>();
     myCaptureTrees = new HashMap<>();
     myThreads = new HashMap<>();
+    myMethodModels = new HashMap<>();
   }
 
   /**
@@ -166,6 +173,19 @@ public class SimpleperfTraceParser implements TraceParser {
     return new CpuCapture(this, traceId, Cpu.CpuTraceType.SIMPLEPERF);
   }
 
+  /**
+   * Whether a given {@link File} starts with {@link #MAGIC}.
+   */
+  public static boolean verifyFileHasSimpleperfHeader(@NotNull File trace) {
+    try (FileInputStream input = new FileInputStream(trace)) {
+      byte[] magic = new byte[MAGIC.length()];
+      return input.read(magic) == magic.length && new String(magic).equals(MAGIC);
+    }
+    catch (IOException e) {
+      return false;
+    }
+  }
+
   @Override
   public boolean supportsDualClock() {
     return false;
@@ -458,6 +478,18 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   private CaptureNodeModel methodModelFromCallchainEntry(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
+    // Symbols without id are named after their own address, the other ones record the address they're called from.
+    long vAddress = callChainEntry.getSymbolId() == INVALID_SYMBOL_ID ? callChainEntry.getVaddrInFile() : parentVAddress;
+    ModelKey key = new ModelKey(callChainEntry.getFileId(), callChainEntry.getSymbolId(), vAddress);
+    CaptureNodeModel model = myMethodModels.get(key);
+    if (model == null) {
+      model = createMethodModel(callChainEntry, parentVAddress);
+      myMethodModels.put(key, model);
+    }
+    return model;
+  }
+
+  private CaptureNodeModel createMethodModel(SimpleperfReport.Sample.CallChainEntry callChainEntry, long parentVAddress) {
     int symbolId = callChainEntry.getSymbolId();
     SimpleperfReport.File symbolFile = myFiles.get(callChainEntry.getFileId());
     if (symbolFile == null) {
@@ -474,4 +506,30 @@ public class SimpleperfTraceParser implements TraceParser {
     boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
     return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten, symbolFile.getPath(), parentVAddress);
   }
+
+  private static final class ModelKey {
+    private final int myFileId;
+    private final int mySymbolId;
+    private final long myVAddress;
+
+    private ModelKey(int fileId, int symbolId, long vAddress) {
+      myFileId = fileId;
+      mySymbolId = symbolId;
+      myVAddress = vAddress;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof ModelKey)) {
+        return false;
+      }
+      ModelKey other = (ModelKey)obj;
+      return myFileId == other.myFileId && mySymbolId == other.mySymbolId && myVAddress == other.myVAddress;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * (31 * myFileId + mySymbolId) + Long.hashCode(myVAddress);
+    }
+  }
 }
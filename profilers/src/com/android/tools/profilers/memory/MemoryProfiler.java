@@ -52,9 +52,9 @@ import com.intellij.openapi.diagnostic.Logger;
 import io.grpc.StatusRuntimeException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
@@ -78,8 +78,18 @@ public class MemoryProfiler extends StudioProfiler {
 
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
 
-    sessionsManager.registerImportHandler("hprof", this::importHprof);
-    sessionsManager.registerImportHandler("alloc", this::importLegacyAllocations);
+    sessionsManager.registerImportPreparer("hprof", file -> {
+      long startTimestampEpochMs = System.currentTimeMillis();
+      long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
+      ByteString bytes = readFile(file);
+      return () -> importHprof(file, bytes, startTimestampEpochMs, sessionStartTimeNs);
+    });
+    sessionsManager.registerImportPreparer("alloc", file -> {
+      long startTimestampEpochMs = System.currentTimeMillis();
+      long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
+      ByteString bytes = readFile(file);
+      return () -> importLegacyAllocations(file, bytes, startTimestampEpochMs, sessionStartTimeNs);
+    });
 
     myProfilers.registerSessionChangeListener(Common.SessionMetaData.SessionType.MEMORY_CAPTURE,
                                               () -> {
@@ -148,10 +158,8 @@ public class MemoryProfiler extends StudioProfiler {
     }
   }
 
-  private void importHprof(@NotNull File file) {
+  private void importHprof(@NotNull File file, @NotNull ByteString bytes, long startTimestampEpochMs, long sessionStartTimeNs) {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    long startTimestampEpochMs = System.currentTimeMillis();
-    long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
 
     // Select the session if the hprof has already been imported.
     if (sessionsManager.setSessionById(sessionStartTimeNs)) {
@@ -160,14 +168,6 @@ public class MemoryProfiler extends StudioProfiler {
 
     // We don't really care about the session having a duration - arbitrarily create a 1-ns session.
     long sessionEndTimeNs = sessionStartTimeNs + 1;
-    byte[] bytes;
-    try {
-      bytes = Files.readAllBytes(Paths.get(file.getPath()));
-    }
-    catch (IOException e) {
-      getLogger().error(String.format("Importing Session Failed: cannot read from %s.", file.getPath()));
-      return;
-    }
 
     // Bind the imported session with heap dump data through MemoryClient.
     HeapDumpInfo heapDumpInfo = HeapDumpInfo.newBuilder()
@@ -187,7 +187,7 @@ public class MemoryProfiler extends StudioProfiler {
                                             Common.SessionData.SessionStarted.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
                                             sessionEndTimeNs,
                                             startTimestampEpochMs,
-                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), ByteString.copyFrom(bytes)),
+                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), bytes),
                                             heapDumpEvent);
     }
     else {
@@ -198,7 +198,7 @@ public class MemoryProfiler extends StudioProfiler {
                                      startTimestampEpochMs);
       ImportHeapDumpRequest heapDumpRequest = ImportHeapDumpRequest.newBuilder()
         .setSession(session)
-        .setData(ByteString.copyFrom(bytes))
+        .setData(bytes)
         .setInfo(heapDumpInfo)
         .build();
       myProfilers.getClient().getMemoryClient().importHeapDump(heapDumpRequest);
@@ -212,24 +212,17 @@ public class MemoryProfiler extends StudioProfiler {
                                                                         SessionsManager.SessionCreationSource.MANUAL);
   }
 
-  private void importLegacyAllocations(@NotNull File file) {
+  private void importLegacyAllocations(@NotNull File file,
+                                       @NotNull ByteString bytes,
+                                       long startTimestampEpochMs,
+                                       long sessionStartTimeNs) {
     SessionsManager sessionsManager = myProfilers.getSessionsManager();
-    long startTimestampEpochMs = System.currentTimeMillis();
-    long sessionStartTimeNs = StudioProfilers.getFileCreationTimestampNs(file, startTimestampEpochMs);
     // Select the session if the hprof has already been imported.
     if (sessionsManager.setSessionById(sessionStartTimeNs)) {
       return;
     }
 
     long sessionEndTimeNs = sessionStartTimeNs + 1;
-    byte[] bytes;
-    try {
-      bytes = Files.readAllBytes(Paths.get(file.getPath()));
-    }
-    catch (IOException e) {
-      getLogger().error("Importing Session Failed: cannot read from file location...");
-      return;
-    }
 
     AllocationsInfo info = AllocationsInfo.newBuilder()
       .setStartTime(sessionStartTimeNs)
@@ -249,7 +242,7 @@ public class MemoryProfiler extends StudioProfiler {
                                             Common.SessionData.SessionStarted.SessionType.MEMORY_CAPTURE, sessionStartTimeNs,
                                             sessionEndTimeNs,
                                             startTimestampEpochMs,
-                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), ByteString.copyFrom(bytes)),
+                                            ImmutableMap.of(Long.toString(sessionStartTimeNs), bytes),
                                             heapDumpEvent);
     }
     else {
@@ -260,7 +253,7 @@ public class MemoryProfiler extends StudioProfiler {
       ImportLegacyAllocationsRequest request = ImportLegacyAllocationsRequest.newBuilder()
         .setSession(session)
         .setInfo(info)
-        .setData(ByteString.copyFrom(bytes))
+        .setData(bytes)
         .build();
       myProfilers.getClient().getMemoryClient().importLegacyAllocations(request);
 
@@ -272,6 +265,16 @@ public class MemoryProfiler extends StudioProfiler {
                                                                         SessionsManager.SessionCreationSource.MANUAL);
   }
 
+  /**
+   * Reads an imported file straight into a {@link ByteString}, without copying it through a byte array first.
+   */
+  @NotNull
+  private static ByteString readFile(@NotNull File file) throws IOException {
+    try (InputStream input = Files.newInputStream(file.toPath())) {
+      return ByteString.readFrom(input);
+    }
+  }
+
   /**
    * @return whether live allocation is active for the specified session. This is determined by whether there are valid
    * {@link AllocationSamplingRateDurationData}'s (which are sent via perfa when live tracking is enabled} within the session's time range.
@@ -15,6 +15,8 @@
  */
 package com.android.tools.profilers.memory;
 
+import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.DownsampledDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -55,7 +57,8 @@ public class MemoryUsage extends LineChartModel {
                                                             @NotNull Function<MemorySample, Long> getter) {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     MemoryDataSeries series = new MemoryDataSeries(client, profilers.getSession(), getter);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, downsample(profilers, series),
+                                      profilers.getTimeline().getDataRange());
   }
 
   protected RangedContinuousSeries createRangedSeries(@NotNull StudioProfilers profilers,
@@ -70,7 +73,20 @@ public class MemoryUsage extends LineChartModel {
                                                                        Common.Event.Kind.MEMORY_USAGE,
                                                                        groupId,
                                                                        dataExtractor);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series, profilers.getTimeline().getDataRange());
+    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, downsample(profilers, series),
+                                      profilers.getTimeline().getDataRange());
+  }
+
+  /**
+   * Memory series are stacked, which expects the x values of all series to line up, so buckets are averaged rather than represented by
+   * their min and max samples.
+   */
+  @NotNull
+  private static DataSeries<Long> downsample(@NotNull StudioProfilers profilers, @NotNull DataSeries<Long> series) {
+    if (!profilers.getIdeServices().getFeatureConfig().isTimelineDownsamplingEnabled()) {
+      return series;
+    }
+    return new DownsampledDataSeries(series, DownsampledDataSeries.Aggregation.AVERAGE, DownsampledDataSeries.DEFAULT_BUCKET_DURATIONS_US);
   }
 
   @NotNull
@@ -178,6 +178,14 @@ public interface CaptureObject extends MemoryObject {
 
   boolean isError();
 
+  /**
+   * @return whether the retained sizes and depths of the instances are still being computed after the capture was loaded, in which case
+   * they read as 0 until the heap sets are updated.
+   */
+  default boolean isComputingRetainedSizes() {
+    return false;
+  }
+
   void unload();
 
   @NotNull
@@ -78,7 +78,12 @@ public class ClassSet extends ClassifierSet {
     @Nullable
     @Override
     public ClassifierSet getClassifierSet(@NotNull InstanceObject instance, boolean createIfAbsent) {
-      ClassDb.ClassEntry classEntry = instance.getClassEntry();
+      return getClassifierSet(instance.getClassEntry(), createIfAbsent);
+    }
+
+    @Nullable
+    @Override
+    public ClassifierSet getClassifierSet(@NotNull ClassDb.ClassEntry classEntry, boolean createIfAbsent) {
       ClassSet classSet = myClassMap.get(classEntry);
       if (classSet == null && createIfAbsent) {
         classSet = new ClassSet(classEntry);
@@ -38,6 +38,10 @@ public abstract class ClassifierSet implements MemoryObject {
   // Note that instances here can also appear in the set of snapshot instances (e.g. when a instance is allocated before the selection
   // and deallocation within the selection).
   @NotNull protected final Set<InstanceObject> myDeltaInstances = new LinkedHashSet<>(0);
+  // Baseline snapshot instances that are only counted per class, without InstanceObjects (e.g. the objects alive at the left of a live
+  // allocation selection, see LiveAllocationCaptureObject). Like the instances, they stay here until this set is partitioned, or for
+  // good if the sub-classifier doesn't classify by class.
+  @NotNull protected final Map<ClassDb.ClassEntry, SnapshotAggregate> mySnapshotAggregates = new LinkedHashMap<>(0);
 
   // Lazily create the Classifier, as it is configurable and isn't necessary until nodes under this node needs to be classified.
   @Nullable protected Classifier myClassifier = null;
@@ -168,6 +172,34 @@ public abstract class ClassifierSet implements MemoryObject {
     myNeedsRefiltering = true;
   }
 
+  /**
+   * Adds {@code count} instances of the given class, of {@code shallowSize} bytes in total, to the baseline snapshot without instance
+   * objects. Negative values remove them. These instances count towards the totals, and {@code instances} only creates their instance
+   * objects when {@link #getInstancesStream()} needs them.
+   */
+  public void addSnapshotAggregate(@NotNull ClassDb.ClassEntry classEntry,
+                                   int count,
+                                   long shallowSize,
+                                   @NotNull Supplier<Stream<InstanceObject>> instances) {
+    ClassifierSet classifierSet =
+      myClassifier != null && !myClassifier.isTerminalClassifier() ? myClassifier.getClassifierSet(classEntry, true) : null;
+    if (classifierSet != null) {
+      classifierSet.addSnapshotAggregate(classEntry, count, shallowSize, instances);
+    }
+    else {
+      SnapshotAggregate aggregate = mySnapshotAggregates.computeIfAbsent(classEntry, entry -> new SnapshotAggregate(instances));
+      aggregate.myCount += count;
+      aggregate.myShallowSize += shallowSize;
+      if (aggregate.myCount == 0) {
+        mySnapshotAggregates.remove(classEntry);
+      }
+    }
+
+    mySnapshotObjectCount += count;
+    myTotalShallowSize += shallowSize;
+    myNeedsRefiltering = true;
+  }
+
   // Add delta alloc information into the ClassifierSet
   // Return true if the set did not contain the instance prior to invocation
   public boolean addDeltaInstanceObject(@NotNull InstanceObject instanceObject) {
@@ -273,6 +305,7 @@ public abstract class ClassifierSet implements MemoryObject {
   public void clearClassifierSets() {
     mySnapshotInstances.clear();
     myDeltaInstances.clear();
+    mySnapshotAggregates.clear();
     myClassifier = createSubClassifier();
     mySnapshotObjectCount = 0;
     myDeltaAllocations = 0;
@@ -286,8 +319,32 @@ public abstract class ClassifierSet implements MemoryObject {
     myFilterMatchCount = 0;
   }
 
+  /**
+   * Takes over the instances, partitions and totals of a set that was built elsewhere, e.g. off the UI thread.
+   */
+  protected void replaceContents(@NotNull ClassifierSet other) {
+    mySnapshotInstances.clear();
+    mySnapshotInstances.addAll(other.mySnapshotInstances);
+    myDeltaInstances.clear();
+    myDeltaInstances.addAll(other.myDeltaInstances);
+    mySnapshotAggregates.clear();
+    mySnapshotAggregates.putAll(other.mySnapshotAggregates);
+    myClassifier = other.myClassifier;
+    mySnapshotObjectCount = other.mySnapshotObjectCount;
+    myDeltaAllocations = other.myDeltaAllocations;
+    myDeltaDeallocations = other.myDeltaDeallocations;
+    myTotalShallowSize = other.myTotalShallowSize;
+    myTotalNativeSize = other.myTotalNativeSize;
+    myTotalRetainedSize = other.myTotalRetainedSize;
+    myInstancesWithStackInfoCount = other.myInstancesWithStackInfoCount;
+    myObjectSetCount = other.myObjectSetCount;
+    myFilteredObjectSetCount = other.myFilteredObjectSetCount;
+    myFilterMatchCount = other.myFilterMatchCount;
+    myNeedsRefiltering = true;
+  }
+
   public int getInstancesCount() {
-    if (myClassifier == null) {
+    if (myClassifier == null && mySnapshotAggregates.isEmpty()) {
       Set<InstanceObject> total = new HashSet<>(mySnapshotInstances);
       total.addAll(myDeltaInstances);
       return total.size();
@@ -302,7 +359,7 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @NotNull
   public Stream<InstanceObject> getInstancesStream() {
-    Stream<InstanceObject> total = Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).distinct();
+    Stream<InstanceObject> total = getImmediateInstancesStream().distinct();
     if (myClassifier == null) {
       return total;
     }
@@ -311,6 +368,19 @@ public abstract class ClassifierSet implements MemoryObject {
     }
   }
 
+  /**
+   * Return the stream of the instances of this set, not of its descendants, including the ones of the snapshot aggregates. Note that there
+   * can be duplicated entries, as instances can be in both the snapshot and the delta.
+   */
+  @NotNull
+  private Stream<InstanceObject> getImmediateInstancesStream() {
+    Stream<InstanceObject> instances = Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream());
+    if (mySnapshotAggregates.isEmpty()) {
+      return instances;
+    }
+    return Stream.concat(mySnapshotAggregates.values().stream().flatMap(aggregate -> aggregate.myInstances.get()), instances);
+  }
+
   /**
    * Return the stream of instance objects that contribute to the delta.
    * Note that there can be duplicated entries as {@link #getSnapshotInstanceStream()}.
@@ -342,6 +412,20 @@ public abstract class ClassifierSet implements MemoryObject {
     }
   }
 
+  /**
+   * Collects the snapshot aggregates of this set and all its descendants into {@code aggregates}.
+   */
+  protected void collectSnapshotAggregates(@NotNull Map<ClassDb.ClassEntry, SnapshotAggregate> aggregates) {
+    mySnapshotAggregates.forEach((entry, aggregate) -> {
+      SnapshotAggregate total = aggregates.computeIfAbsent(entry, key -> new SnapshotAggregate(aggregate.myInstances));
+      total.myCount += aggregate.myCount;
+      total.myShallowSize += aggregate.myShallowSize;
+    });
+    if (myClassifier != null) {
+      myClassifier.getAllClassifierSets().forEach(classifierSet -> classifierSet.collectSnapshotAggregates(aggregates));
+    }
+  }
+
   public boolean hasStackInfo() {
     return myInstancesWithStackInfoCount > 0;
   }
@@ -362,18 +446,14 @@ public abstract class ClassifierSet implements MemoryObject {
    */
   @Nullable
   public ClassifierSet findContainingClassifierSet(@NotNull InstanceObject target) {
-    boolean instancesContainsTarget =
-      Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
-        .isPresent();
+    boolean instancesContainsTarget = containsImmediateInstance(target);
     if (instancesContainsTarget && myClassifier != null) {
       return this;
     }
     else if (instancesContainsTarget || myClassifier != null) {
       List<ClassifierSet> childrenClassifierSets = getChildrenClassifierSets();
       // mySnapshotInstances/myDeltaInstances can be updated after getChildrenClassiferSets so rebuild the stream.
-      boolean stillContainsTarget =
-        Stream.concat(mySnapshotInstances.stream(), myDeltaInstances.stream()).filter(instance -> target.equals(instance)).findAny()
-          .isPresent();
+      boolean stillContainsTarget = containsImmediateInstance(target);
       if (instancesContainsTarget && stillContainsTarget) {
         return this; // If after the partition the target still falls within the instances within this set, then return this set.
       }
@@ -388,6 +468,18 @@ public abstract class ClassifierSet implements MemoryObject {
     return null;
   }
 
+  /**
+   * @return whether {@code target} is one of the instances of this set, not of its descendants. Only the snapshot aggregate of the class
+   * of {@code target} is resolved.
+   */
+  private boolean containsImmediateInstance(@NotNull InstanceObject target) {
+    if (mySnapshotInstances.contains(target) || myDeltaInstances.contains(target)) {
+      return true;
+    }
+    SnapshotAggregate aggregate = mySnapshotAggregates.get(target.getClassEntry());
+    return aggregate != null && aggregate.myInstances.get().anyMatch(target::equals);
+  }
+
   /**
    * Determines if {@code this} ClassifierSet's descendant children forms a superset (could be equivalent) of the given
    * {@code targetSet}'s immediate children.
@@ -409,6 +501,17 @@ public abstract class ClassifierSet implements MemoryObject {
     if (myClassifier == null) {
       myClassifier = createSubClassifier();
       myClassifier.partition(mySnapshotInstances, myDeltaInstances);
+      Iterator<Map.Entry<ClassDb.ClassEntry, SnapshotAggregate>> iterator = mySnapshotAggregates.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<ClassDb.ClassEntry, SnapshotAggregate> entry = iterator.next();
+        ClassifierSet classifierSet =
+          myClassifier.isTerminalClassifier() ? null : myClassifier.getClassifierSet(entry.getKey(), true);
+        if (classifierSet != null) {
+          SnapshotAggregate aggregate = entry.getValue();
+          classifierSet.addSnapshotAggregate(entry.getKey(), aggregate.myCount, aggregate.myShallowSize, aggregate.myInstances);
+          iterator.remove();
+        }
+      }
     }
   }
 
@@ -445,6 +548,11 @@ public abstract class ClassifierSet implements MemoryObject {
     myInstancesWithStackInfoCount = 0;
     myObjectSetCount = myClassifier.getAllClassifierSets().size();
     myFilteredObjectSetCount = 0;
+    // Aggregates that can't be classified further are not filtered.
+    for (SnapshotAggregate aggregate : mySnapshotAggregates.values()) {
+      mySnapshotObjectCount += aggregate.myCount;
+      myTotalShallowSize += aggregate.myShallowSize;
+    }
 
     myIsMatched = matches(filter);
     myFilterMatchCount = myIsMatched ? 1 : 0;
@@ -520,6 +628,15 @@ public abstract class ClassifierSet implements MemoryObject {
     @Nullable
     public abstract ClassifierSet getClassifierSet(@NotNull InstanceObject instance, boolean createIfAbsent);
 
+    /**
+     * Retrieve the next-level ClassifierSet that all the instances of the given class belong to, see
+     * {@link #getClassifierSet(InstanceObject, boolean)}. Returns null if instances of the same class can belong to different sets.
+     */
+    @Nullable
+    public ClassifierSet getClassifierSet(@NotNull ClassDb.ClassEntry classEntry, boolean createIfAbsent) {
+      return null;
+    }
+
     /**
      * Gets a {@link List} of the child ClassifierSets.
      */
@@ -558,4 +675,17 @@ public abstract class ClassifierSet implements MemoryObject {
       deltaInstances.clear();
     }
   }
+
+  /**
+   * Number and total shallow size of baseline snapshot instances of a class, see {@link #addSnapshotAggregate}.
+   */
+  protected static final class SnapshotAggregate {
+    @NotNull private final Supplier<Stream<InstanceObject>> myInstances;
+    private int myCount;
+    private long myShallowSize;
+
+    private SnapshotAggregate(@NotNull Supplier<Stream<InstanceObject>> instances) {
+      myInstances = instances;
+    }
+  }
 }
@@ -29,7 +29,9 @@ import com.android.tools.perflib.heap.Heap;
 import com.android.tools.perflib.heap.Instance;
 import com.android.tools.perflib.heap.Snapshot;
 import com.android.tools.perflib.heap.ext.NativeRegistryPostProcessor;
+import com.android.tools.perflib.heap.io.HprofBuffer;
 import com.android.tools.perflib.heap.io.InMemoryBuffer;
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer;
 import com.android.tools.profiler.proto.Common;
 import com.android.tools.profiler.proto.Memory.HeapDumpInfo;
 import com.android.tools.profiler.proto.Transport;
@@ -38,6 +40,7 @@ import com.android.tools.profilers.analytics.FeatureTracker;
 import com.android.tools.profilers.memory.MemoryProfiler;
 import com.android.tools.profilers.memory.MemoryProfilerAspect;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
+import com.android.tools.profilers.memory.adapters.dominators.SnapshotDominators;
 import com.android.tools.profilers.memory.adapters.instancefilters.ActivityFragmentLeakInstanceFilter;
 import com.android.tools.profilers.memory.adapters.instancefilters.CaptureObjectInstanceFilter;
 import com.android.tools.profilers.memory.adapters.instancefilters.ProjectClassesInstanceFilter;
@@ -45,7 +48,13 @@ import com.android.tools.proguard.ProguardMap;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import gnu.trove.TLongObjectHashMap;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
 import java.util.Collection;
@@ -55,9 +64,14 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -97,6 +111,19 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   private boolean myHasNativeAllocations;
 
+  /**
+   * Completes once the retained sizes and depths of the instances are available and the heap sets were updated with them, see
+   * {@link #load(Range, Executor)}. Consumers of the depths, like the instance filters, wait on it.
+   */
+  @NotNull
+  private final CompletableFuture<Void> myDominatorsFuture = new CompletableFuture<>();
+
+  /**
+   * File the heap dump is spilled to so it can be parsed from a memory-mapped buffer rather than from the heap.
+   */
+  @Nullable
+  private File myHeapDumpFile;
+
   @NotNull
   private final MemoryProfilerStage myStage;
 
@@ -107,6 +134,9 @@ public class HeapDumpCaptureObject implements CaptureObject {
   private final ExecutorService myExecutorService =
     Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-instancefilters").build());
 
+  private final ExecutorService myDominatorExecutorService =
+    Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("memory-heapdump-dominators").build());
+
   public HeapDumpCaptureObject(@NotNull ProfilerClient client,
                                @NotNull Common.Session session,
                                @NotNull HeapDumpInfo heapDumpInfo,
@@ -197,19 +227,24 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myClassDb;
   }
 
+  private static Logger getLogger() {
+    return Logger.getInstance(HeapDumpCaptureObject.class);
+  }
+
+  /**
+   * Parses the heap dump and populates the {@link HeapSet}s with all the instances, which is enough to show the class histogram.
+   * If a {@code queryJoiner} is given, the dominators (retained sizes and depths) are then computed in the background and the heap sets
+   * are updated through the joiner as they become available, see {@link #isDominatorsComputed()}. Otherwise they are computed before
+   * returning.
+   */
   @Override
   public boolean load(@Nullable Range queryRange, @Nullable Executor queryJoiner) {
-    Transport.BytesResponse response = myClient.getTransportClient().getBytes(Transport.BytesRequest.newBuilder()
-                                                                                .setStreamId(mySession.getStreamId())
-                                                                                .setId(Long.toString(myHeapDumpInfo.getStartTime()))
-                                                                                .build());
-
-    if (response.getContents() == ByteString.EMPTY) {
+    HprofBuffer buffer = fetchHeapDump();
+    if (buffer == null) {
       myIsLoadingError = true;
       return false;
     }
 
-    InMemoryBuffer buffer = new InMemoryBuffer(response.getContents().asReadOnlyByteBuffer());
     Snapshot snapshot;
     NativeRegistryPostProcessor nativeRegistryPostProcessor = new NativeRegistryPostProcessor();
     if (myProguardMap != null) {
@@ -218,7 +253,10 @@ public class HeapDumpCaptureObject implements CaptureObject {
     else {
       snapshot = Snapshot.createSnapshot(buffer, new ProguardMap(), Collections.singletonList(nativeRegistryPostProcessor));
     }
-    snapshot.computeDominators();
+    if (queryJoiner == null) {
+      computeDominators(snapshot);
+      myDominatorsFuture.complete(null);
+    }
     myHasNativeAllocations = nativeRegistryPostProcessor.getHasNativeAllocations();
     mySnapshot = snapshot;
 
@@ -277,9 +315,127 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
     myStage.refreshSelectedHeap();
 
+    if (queryJoiner != null) {
+      myDominatorExecutorService.execute(() -> {
+        if (myDominatorsFuture.isDone()) {
+          // Unloaded before the dominators were computed.
+          return;
+        }
+        try {
+          computeDominators(snapshot);
+        }
+        catch (RuntimeException e) {
+          myDominatorsFuture.completeExceptionally(e);
+          throw e;
+        }
+        // Totals of the classifier sets were computed without the retained sizes. Rebuild them here one heap at a time, and only swap
+        // the rebuilt sets in on the joiner.
+        List<Heap> heaps = snapshot.getHeaps().stream().filter(heap -> myHeapSets.containsKey(heap.getId())).collect(Collectors.toList());
+        if (heaps.isEmpty()) {
+          myDominatorsFuture.complete(null);
+        }
+        for (int i = 0; i < heaps.size(); i++) {
+          if (myDominatorsFuture.isDone()) {
+            return;
+          }
+          Heap heap = heaps.get(i);
+          HeapSet heapSet = myHeapSets.get(heap.getId());
+          HeapSet rebuilt = new HeapSet(this, heap.getName(), heap.getId());
+          rebuilt.setClassGrouping(heapSet.getClassGrouping());
+          rebuilt.clearClassifierSets();
+          heap.getClasses().forEach(classObj -> rebuilt.addDeltaInstanceObject(myInstanceIndex.get(classObj.getId())));
+          heap.forEachInstance(instance -> {
+            rebuilt.addDeltaInstanceObject(myInstanceIndex.get(instance.getId()));
+            return true;
+          });
+          boolean isLast = i == heaps.size() - 1;
+          queryJoiner.execute(() -> {
+            heapSet.replaceContents(rebuilt);
+            if (isLast) {
+              myDominatorsFuture.complete(null);
+            }
+            myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
+            myStage.refreshSelectedHeap();
+          });
+        }
+      });
+    }
+
     return true;
   }
 
+  private void computeDominators(@NotNull Snapshot snapshot) {
+    if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isParallelDominatorsEnabled()) {
+      SnapshotDominators.compute(snapshot, ForkJoinPool.commonPool());
+    }
+    else {
+      snapshot.computeDominators();
+    }
+  }
+
+  /**
+   * Fetches the heap dump into a temporary file as it is received, so it is parsed from a memory-mapped buffer and never held in the heap
+   * as a whole. Falls back to fetching and parsing it in memory if the file can't be written.
+   *
+   * @return null if there is no heap dump.
+   */
+  @Nullable
+  private HprofBuffer fetchHeapDump() {
+    Transport.BytesRequest request = Transport.BytesRequest.newBuilder()
+      .setStreamId(mySession.getStreamId())
+      .setId(Long.toString(myHeapDumpInfo.getStartTime()))
+      .build();
+    File file = null;
+    try {
+      file = FileUtil.createTempFile(String.format("heap_dump_%d", myHeapDumpInfo.getStartTime()), ".hprof", true);
+      long size;
+      try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+        size = StreamedBytesFetcher.fetch(myClient.getTransportClient(), request, out);
+      }
+      if (size == 0) {
+        FileUtil.delete(file);
+        return null;
+      }
+      HprofBuffer buffer = new MemoryMappedFileBuffer(file);
+      myHeapDumpFile = file;
+      return buffer;
+    }
+    catch (IOException e) {
+      getLogger().warn("Failed to spill heap dump to disk, parsing it in memory:\n" + e);
+      if (file != null) {
+        FileUtil.delete(file);
+      }
+    }
+
+    ByteString contents = myClient.getTransportClient().getBytes(request).getContents();
+    return contents == ByteString.EMPTY ? null : new InMemoryBuffer(contents.asReadOnlyByteBuffer());
+  }
+
+  /**
+   * @return a future that completes once the retained sizes and depths of the instances are available.
+   */
+  @NotNull
+  public CompletableFuture<Void> getDominatorsFuture() {
+    return myDominatorsFuture;
+  }
+
+  @Override
+  public boolean isComputingRetainedSizes() {
+    return mySnapshot != null && !myDominatorsFuture.isDone();
+  }
+
+  /**
+   * Blocks until the depths of the instances are available, so the instance filters that rely on them get correct results.
+   */
+  private void waitForDominators() {
+    try {
+      myDominatorsFuture.join();
+    }
+    catch (CancellationException | CompletionException e) {
+      getLogger().warn("Filtering instances without their depths:\n" + e);
+    }
+  }
+
   @Override
   public boolean isDoneLoading() {
     return mySnapshot != null || myIsLoadingError;
@@ -292,7 +448,40 @@ public class HeapDumpCaptureObject implements CaptureObject {
 
   @Override
   public void unload() {
+    myDominatorsFuture.cancel(false);
     myExecutorService.shutdownNow();
+    // The instance filters and the dominators read the mapped heap dump, so it is only released once they are done. The dominators can't
+    // be interrupted, so this runs after them on their executor rather than blocking the caller.
+    myDominatorExecutorService.execute(() -> {
+      try {
+        myExecutorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      releaseHeapDump();
+    });
+    myDominatorExecutorService.shutdown();
+  }
+
+  /**
+   * Unmaps the heap dump and deletes the file it was spilled to.
+   */
+  private void releaseHeapDump() {
+    Snapshot snapshot = mySnapshot;
+    if (snapshot != null) {
+      snapshot.dispose();
+    }
+    File file = myHeapDumpFile;
+    if (file != null && !FileUtil.delete(file)) {
+      getLogger().warn("Unable to delete " + file.getPath());
+    }
+  }
+
+  @VisibleForTesting
+  @Nullable
+  File getHeapDumpFile() {
+    return myHeapDumpFile;
   }
 
   @NotNull
@@ -357,6 +546,11 @@ public class HeapDumpCaptureObject implements CaptureObject {
     return myExecutorService;
   }
 
+  @VisibleForTesting
+  ExecutorService getDominatorExecutor() {
+    return myDominatorExecutorService;
+  }
+
   @Override
   public void addInstanceFilter(@NotNull CaptureObjectInstanceFilter filterToAdd, @NotNull Executor analyzeJoiner) {
     assert mySupportedInstanceFilters.contains(filterToAdd);
@@ -364,6 +558,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
     myCurrentInstanceFilters.add(filterToAdd);
     myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING);
     myExecutorService.submit(() -> {
+      waitForDominators();
       // Run the analyzers on the currently existing InstanceObjects in the HeapSets.
       Set<InstanceObject> currentMatchedInstances = new HashSet<>();
       for (HeapSet heap : myHeapSets.values()) {
@@ -393,6 +588,7 @@ public class HeapDumpCaptureObject implements CaptureObject {
     myCurrentInstanceFilters.remove(filterToRemove);
     myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING);
     myExecutorService.submit(() -> {
+      waitForDominators();
       // Run the remaining analyzers on the full instance set, since we don't know the the instances that have been removed from the
       // HeapSets using the filter that we are removing.
       Set<InstanceObject> allInstances = new HashSet<>(myInstanceIndex.size());
@@ -19,7 +19,9 @@ import com.android.tools.adtui.model.filter.Filter;
 import com.android.tools.profilers.memory.MemoryProfilerConfiguration.ClassGrouping;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
@@ -49,14 +51,33 @@ public class HeapSet extends ClassifierSet {
     // Subsequent calls to getChildrenClassifierSets will re-partition them to the correct child ClassifierSet.
     List<InstanceObject> snapshotStream = getSnapshotInstanceStream().collect(Collectors.toList());
     List<InstanceObject> deltaStream = getDeltaInstanceStream().collect(Collectors.toList());
+    Map<ClassDb.ClassEntry, SnapshotAggregate> snapshotAggregates = new LinkedHashMap<>();
+    collectSnapshotAggregates(snapshotAggregates);
     myDeltaInstances.clear();
     mySnapshotInstances.clear();
+    mySnapshotAggregates.clear();
     myClassifier = null;
     myDeltaInstances.addAll(deltaStream);
     mySnapshotInstances.addAll(snapshotStream);
+    mySnapshotAggregates.putAll(snapshotAggregates);
     myNeedsRefiltering = true;
   }
 
+  @NotNull
+  public ClassGrouping getClassGrouping() {
+    return myClassGrouping;
+  }
+
+  /**
+   * Swaps in the contents of a heap set that was rebuilt off the UI thread, keeping the current grouping of this one.
+   */
+  public void replaceContents(@NotNull HeapSet rebuilt) {
+    ClassGrouping classGrouping = myClassGrouping;
+    myClassGrouping = rebuilt.myClassGrouping;
+    super.replaceContents(rebuilt);
+    setClassGrouping(classGrouping);
+  }
+
   public int getId() {
     return myId;
   }
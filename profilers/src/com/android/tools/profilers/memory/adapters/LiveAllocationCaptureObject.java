@@ -45,6 +45,7 @@ import com.android.tools.profilers.ProfilerClient;
 import com.android.tools.profilers.memory.MemoryProfiler;
 import com.android.tools.profilers.memory.MemoryProfilerAspect;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
+import com.android.tools.profilers.memory.adapters.live.AllocationEventIndex;
 import com.android.tools.profilers.stacktrace.ThreadId;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
@@ -52,6 +53,8 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.diagnostic.Logger;
 import gnu.trove.TIntObjectHashMap;
 import gnu.trove.TLongObjectHashMap;
+import gnu.trove.TObjectIntHashMap;
+import gnu.trove.TObjectLongHashMap;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
@@ -107,6 +110,22 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   private final AspectObserver myAspectObserver;
   private final boolean myEnableJniRefsTracking;
 
+  // Guards the instance map, the allocation contexts and the allocation index, as the UI thread resolves the objects alive at the
+  // selection's start on demand. Loading only holds it while updating them, the events being fetched beforehand, so the UI thread never
+  // waits on the daemon.
+  private final Object myInstanceLock = new Object();
+  // When enabled, allocation events are fetched once into this index. Only the objects with an event inside the selection are then
+  // created, the objects alive at the selection's start being counted per class from the index. Selections starting before the objects
+  // the index dropped to make room query the events as without the index, see AllocationEventIndex#getCoveredFromNs. Set to null when
+  // full, the events then always being queried.
+  @Nullable private AllocationEventIndex myAllocationIndex;
+  private long myIndexedEndTimeNs = Long.MIN_VALUE;
+  // Whether the previous selection was loaded from the allocation index.
+  private boolean myPreviousQueryIndexed;
+  // Number and size of the objects alive at the selection's start, per class index, as added to the heap sets.
+  @NotNull private final TObjectIntHashMap<AllocationEventIndex.ClassIndex> mySnapshotCounts = new TObjectIntHashMap<>();
+  @NotNull private final TObjectLongHashMap<AllocationEventIndex.ClassIndex> mySnapshotSizes = new TObjectLongHashMap<>();
+
   private long myContextEndTimeNs = Long.MIN_VALUE;
   private long myPreviousQueryStartTimeNs = Long.MIN_VALUE;
   private long myPreviousQueryEndTimeNs = Long.MIN_VALUE;
@@ -154,6 +173,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     if (myEnableJniRefsTracking) {
       myHeapSets.add(new HeapSet(this, JNI_HEAP_NAME, JNI_HEAP_ID));
     }
+    myAllocationIndex =
+      stage.getStudioProfilers().getIdeServices().getFeatureConfig().isLiveAllocationIndexEnabled() ? new AllocationEventIndex() : null;
   }
 
   @Override
@@ -281,15 +302,37 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   @Override
   public void unload() {
     myQueryRange.removeDependencies(myAspectObserver);
-    myExecutorService.shutdownNow();
+    if (myCurrentTask != null) {
+      myCurrentTask.cancel(true);
+    }
+    try {
+      // Release the index after the current load, which may still be using it.
+      myExecutorService.execute(this::disposeAllocationIndex);
+    }
+    catch (RejectedExecutionException e) {
+      getLogger().debug(e);
+    }
+    myExecutorService.shutdown();
   }
 
-  // Update myContextEndTimeNs and Callstack information
-  private void updateAllocationContexts(long endTimeNs) {
-    if (myContextEndTimeNs >= endTimeNs) {
-      return;
+  private void disposeAllocationIndex() {
+    synchronized (myInstanceLock) {
+      if (myAllocationIndex != null) {
+        myAllocationIndex.dispose();
+        myAllocationIndex = null;
+      }
+      mySnapshotCounts.clear();
+      mySnapshotSizes.clear();
     }
-    List<Memory.BatchAllocationContexts> contextsList = getAllocationContexts(myContextEndTimeNs, endTimeNs);
+  }
+
+  @NotNull
+  private List<Memory.BatchAllocationContexts> fetchAllocationContexts(long endTimeNs) {
+    return myContextEndTimeNs >= endTimeNs ? Collections.emptyList() : getAllocationContexts(myContextEndTimeNs, endTimeNs);
+  }
+
+  // Update myContextEndTimeNs and Callstack information
+  private void updateAllocationContexts(@NotNull List<Memory.BatchAllocationContexts> contextsList) {
     for (Memory.BatchAllocationContexts contexts : contextsList) {
       for (AllocatedClass klass : contexts.getClassesList()) {
         // We don't have super class information at the moment so just assign invalid id as the super class id.
@@ -343,107 +386,145 @@ public class LiveAllocationCaptureObject implements CaptureObject {
           TimeUnit.NANOSECONDS.toMicros(newEndTimeNs));
 
         joiner.execute(() -> myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATING));
-        updateAllocationContexts(newEndTimeNs);
-
-        // Snapshots data
-        List<InstanceObject> snapshotList = new ArrayList<>();
-        List<InstanceObject> resetSnapshotList = new ArrayList<>();
-        // Delta data
-        List<InstanceObject> deltaAllocationList = new ArrayList<>();
-        List<InstanceObject> resetDeltaAllocationList = new ArrayList<>();
-        List<InstanceObject> deltaFreeList = new ArrayList<>();
-        List<InstanceObject> resetDeltaFreeList = new ArrayList<>();
-
-        // Clear and recreate the instance/heap sets if previous range does not intersect with the new one
-        boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs;
+        // Events are fetched before taking the instance lock, see resolveSnapshotInstances.
+        List<Memory.BatchAllocationContexts> contextsList = fetchAllocationContexts(newEndTimeNs);
+        List<Memory.BatchAllocationEvents> indexEventsList = myAllocationIndex != null && getIndexStartTimeNs() < newEndTimeNs
+                                                             ? getAllocationEvents(getIndexStartTimeNs(), newEndTimeNs)
+                                                             : Collections.emptyList();
+        synchronized (myInstanceLock) {
+          updateAllocationContexts(contextsList);
+          if (myAllocationIndex != null) {
+            updateAllocationIndex(indexEventsList, newEndTimeNs);
+          }
+        }
+
+        AllocationEventIndex index = myAllocationIndex;
+        boolean indexed = index != null && newStartTimeNs >= index.getCoveredFromNs();
+        // Clear and recreate the instance/heap sets if previous range does not intersect with the new one, or was loaded differently.
+        boolean clear = myPreviousQueryEndTimeNs <= newStartTimeNs || newEndTimeNs <= myPreviousQueryStartTimeNs ||
+                        indexed != myPreviousQueryIndexed || indexed && myPreviousQueryStartTimeNs < index.getCoveredFromNs();
+        QueriedEvents snapshotEvents = null;
+        QueriedEvents deltaEvents = null;
+        QueriedEvents leftEvents = null;
+        QueriedEvents rightEvents = null;
         if (clear) {
-          myInstanceMap.clear();
-          // If we are resetting, then first establish the object snapshot at the query range's start point.
-          queryJavaInstanceSnapshot(newStartTimeNs, snapshotList);
-          queryJniReferencesSnapshot(newStartTimeNs, snapshotList);
-
-          // Update the delta allocations and deallocations within the selection range on the snapshot.
-          queryJavaInstanceDelta(newStartTimeNs, newEndTimeNs, deltaAllocationList, deltaFreeList, false);
-          queryJniReferencesDelta(newStartTimeNs, newEndTimeNs, deltaAllocationList, deltaFreeList, false);
+          snapshotEvents = queryEvents(mySession.getStartTimestamp(), newStartTimeNs, indexed);
+          deltaEvents = queryEvents(newStartTimeNs, newEndTimeNs, indexed);
         }
         else {
-          // Compute selection left differences.
-          List<InstanceObject> leftAllocations = new ArrayList<>();
-          List<InstanceObject> leftDeallocations = new ArrayList<>();
-          if (newStartTimeNs < myPreviousQueryStartTimeNs) {
-            // Selection's min shifts left
-            queryJavaInstanceDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftAllocations, leftDeallocations, false);
-            queryJniReferencesDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftAllocations, leftDeallocations, false);
-            // add data within this range to the deltas
-            deltaAllocationList.addAll(leftAllocations);
-            deltaFreeList.addAll(leftDeallocations);
-            // Allocations happen after selection min: remove instance from snapshot
-            resetSnapshotList.addAll(leftAllocations);
-            // Deallocations happen after selection min: add instance to snapshot
-            snapshotList.addAll(leftDeallocations);
-          }
-          else if (newStartTimeNs > myPreviousQueryStartTimeNs) {
-            // Selection's min shifts right
-            queryJavaInstanceDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftAllocations, leftDeallocations, true);
-            queryJniReferencesDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftAllocations, leftDeallocations, true);
-            // Remove data within this range from the deltas
-            resetDeltaAllocationList.addAll(leftAllocations);
-            resetDeltaFreeList.addAll(leftDeallocations);
-            // Allocations happen before the selection's min: add instance to snapshot
-            snapshotList.addAll(leftAllocations);
-            // Deallocations before the selection's min: remove instance from snapshot
-            resetSnapshotList.addAll(leftDeallocations);
-          }
-
-          // Compute selection right differences.
-          List<InstanceObject> rightAllocations = new ArrayList<>();
-          List<InstanceObject> rightDeallocations = new ArrayList<>();
-          if (newEndTimeNs < myPreviousQueryEndTimeNs) {
-            // Selection's max shifts left: remove data within this range from the deltas
-            queryJavaInstanceDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightAllocations, rightDeallocations, true);
-            queryJniReferencesDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightAllocations, rightDeallocations, true);
-            resetDeltaAllocationList.addAll(rightAllocations);
-            resetDeltaFreeList.addAll(rightDeallocations);
-          }
-          else if (newEndTimeNs > myPreviousQueryEndTimeNs) {
-            // Selection's max shifts right: add data within this range to the deltas
-            queryJavaInstanceDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightAllocations, rightDeallocations, false);
-            queryJniReferencesDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightAllocations, rightDeallocations, false);
-            deltaAllocationList.addAll(rightAllocations);
-            deltaFreeList.addAll(rightDeallocations);
-          }
+          leftEvents = queryEvents(Math.min(newStartTimeNs, myPreviousQueryStartTimeNs),
+                                   Math.max(newStartTimeNs, myPreviousQueryStartTimeNs), indexed);
+          rightEvents = queryEvents(Math.min(newEndTimeNs, myPreviousQueryEndTimeNs),
+                                    Math.max(newEndTimeNs, myPreviousQueryEndTimeNs), indexed);
         }
 
-        myPreviousQueryStartTimeNs = newStartTimeNs;
-        // Samples that are within the query range may not have arrived from the daemon yet. If the query range is greater than the
-        // last sample we have seen. Set the last query timestamp to the last sample's timestmap, so that next time we will requery
-        // the range between (last-seen sample, newEndTimeNs).
-        myPreviousQueryEndTimeNs = Math.min(newEndTimeNs, myLastSeenTimestampNs);
-
-        joiner.execute(() -> {
-          myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
-          if (clear ||
-              deltaAllocationList.size() + deltaFreeList.size() + resetDeltaAllocationList.size() + resetDeltaFreeList.size() > 0) {
-            if (clear) {
-              myHeapSets.forEach(heap -> heap.clearClassifierSets());
-              if (myStage.getSelectedClassSet() != null) {
-                myStage.selectClassSet(ClassSet.EMPTY_SET);
-              }
+        synchronized (myInstanceLock) {
+          // Snapshots data
+          List<InstanceObject> snapshotList = new ArrayList<>();
+          List<InstanceObject> resetSnapshotList = new ArrayList<>();
+          // Delta data
+          List<InstanceObject> deltaAllocationList = new ArrayList<>();
+          List<InstanceObject> resetDeltaAllocationList = new ArrayList<>();
+          List<InstanceObject> deltaFreeList = new ArrayList<>();
+          List<InstanceObject> resetDeltaFreeList = new ArrayList<>();
+
+          if (clear) {
+            myInstanceMap.clear();
+            // If we are resetting, then first establish the object snapshot at the query range's start point.
+            if (!indexed) {
+              queryJavaInstanceSnapshot(newStartTimeNs, snapshotEvents, snapshotList);
+            }
+            queryJniReferencesSnapshot(newStartTimeNs, snapshotEvents, snapshotList);
+
+            // Update the delta allocations and deallocations within the selection range on the snapshot.
+            queryJavaInstanceDelta(newStartTimeNs, newEndTimeNs, deltaEvents, deltaAllocationList, deltaFreeList, false);
+            queryJniReferencesDelta(newStartTimeNs, newEndTimeNs, deltaEvents, deltaAllocationList, deltaFreeList, false);
+          }
+          else {
+            // Compute selection left differences.
+            List<InstanceObject> leftAllocations = new ArrayList<>();
+            List<InstanceObject> leftDeallocations = new ArrayList<>();
+            if (newStartTimeNs < myPreviousQueryStartTimeNs) {
+              // Selection's min shifts left
+              queryJavaInstanceDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftEvents, leftAllocations, leftDeallocations, false);
+              queryJniReferencesDelta(newStartTimeNs, myPreviousQueryStartTimeNs, leftEvents, leftAllocations, leftDeallocations, false);
+              // add data within this range to the deltas
+              deltaAllocationList.addAll(leftAllocations);
+              deltaFreeList.addAll(leftDeallocations);
+              // Allocations happen after selection min: remove instance from snapshot
+              addSnapshotInstances(resetSnapshotList, leftAllocations, indexed);
+              // Deallocations happen after selection min: add instance to snapshot
+              addSnapshotInstances(snapshotList, leftDeallocations, indexed);
             }
-            if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isMemorySnapshotEnabled()) {
-              snapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).addSnapshotInstanceObject(instance));
-              resetSnapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeSnapshotInstanceObject(instance));
+            else if (newStartTimeNs > myPreviousQueryStartTimeNs) {
+              // Selection's min shifts right
+              queryJavaInstanceDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftEvents, leftAllocations, leftDeallocations, true);
+              queryJniReferencesDelta(myPreviousQueryStartTimeNs, newStartTimeNs, leftEvents, leftAllocations, leftDeallocations, true);
+              // Remove data within this range from the deltas
+              resetDeltaAllocationList.addAll(leftAllocations);
+              resetDeltaFreeList.addAll(leftDeallocations);
+              // Allocations happen before the selection's min: add instance to snapshot
+              addSnapshotInstances(snapshotList, leftAllocations, indexed);
+              // Deallocations before the selection's min: remove instance from snapshot
+              addSnapshotInstances(resetSnapshotList, leftDeallocations, indexed);
             }
-            deltaAllocationList.forEach(instance -> myHeapSets.get(instance.getHeapId()).addDeltaInstanceObject(instance));
-            deltaFreeList.forEach(instance -> myHeapSets.get(instance.getHeapId()).freeDeltaInstanceObject(instance));
-            resetDeltaAllocationList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeAddedDeltaInstanceObject(instance));
-            resetDeltaFreeList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeFreedDeltaInstanceObject(instance));
 
-            myInfoMessage = hasNonFullTrackingRegion ? SAMPLING_INFO_MESSAGE : null;
-            myStage.refreshSelectedHeap();
+            // Compute selection right differences.
+            List<InstanceObject> rightAllocations = new ArrayList<>();
+            List<InstanceObject> rightDeallocations = new ArrayList<>();
+            if (newEndTimeNs < myPreviousQueryEndTimeNs) {
+              // Selection's max shifts left: remove data within this range from the deltas
+              queryJavaInstanceDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightEvents, rightAllocations, rightDeallocations, true);
+              queryJniReferencesDelta(newEndTimeNs, myPreviousQueryEndTimeNs, rightEvents, rightAllocations, rightDeallocations, true);
+              resetDeltaAllocationList.addAll(rightAllocations);
+              resetDeltaFreeList.addAll(rightDeallocations);
+            }
+            else if (newEndTimeNs > myPreviousQueryEndTimeNs) {
+              // Selection's max shifts right: add data within this range to the deltas
+              queryJavaInstanceDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightEvents, rightAllocations, rightDeallocations, false);
+              queryJniReferencesDelta(myPreviousQueryEndTimeNs, newEndTimeNs, rightEvents, rightAllocations, rightDeallocations, false);
+              deltaAllocationList.addAll(rightAllocations);
+              deltaFreeList.addAll(rightDeallocations);
+            }
           }
-        });
-        return null;
+
+          boolean snapshotEnabled = myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isMemorySnapshotEnabled();
+          List<SnapshotAggregateChange> snapshotAggregateChanges =
+            indexed && snapshotEnabled ? updateSnapshotAggregates(newStartTimeNs, clear) : Collections.emptyList();
+
+          myPreviousQueryIndexed = indexed;
+          myPreviousQueryStartTimeNs = newStartTimeNs;
+          // Samples that are within the query range may not have arrived from the daemon yet. If the query range is greater than the
+          // last sample we have seen. Set the last query timestamp to the last sample's timestmap, so that next time we will requery
+          // the range between (last-seen sample, newEndTimeNs).
+          myPreviousQueryEndTimeNs = Math.min(newEndTimeNs, myLastSeenTimestampNs);
+
+          joiner.execute(() -> {
+            myStage.getAspect().changed(MemoryProfilerAspect.CURRENT_HEAP_UPDATED);
+            if (clear || !snapshotAggregateChanges.isEmpty() ||
+                deltaAllocationList.size() + deltaFreeList.size() + resetDeltaAllocationList.size() + resetDeltaFreeList.size() > 0) {
+              if (clear) {
+                myHeapSets.forEach(heap -> heap.clearClassifierSets());
+                if (myStage.getSelectedClassSet() != null) {
+                  myStage.selectClassSet(ClassSet.EMPTY_SET);
+                }
+              }
+              if (snapshotEnabled) {
+                snapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).addSnapshotInstanceObject(instance));
+                resetSnapshotList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeSnapshotInstanceObject(instance));
+                snapshotAggregateChanges.forEach(this::addSnapshotAggregate);
+              }
+              deltaAllocationList.forEach(instance -> myHeapSets.get(instance.getHeapId()).addDeltaInstanceObject(instance));
+              deltaFreeList.forEach(instance -> myHeapSets.get(instance.getHeapId()).freeDeltaInstanceObject(instance));
+              resetDeltaAllocationList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeAddedDeltaInstanceObject(instance));
+              resetDeltaFreeList.forEach(instance -> myHeapSets.get(instance.getHeapId()).removeFreedDeltaInstanceObject(instance));
+
+              myInfoMessage = hasNonFullTrackingRegion ? SAMPLING_INFO_MESSAGE : null;
+              myStage.refreshSelectedHeap();
+            }
+          });
+          return null;
+        }
       });
     }
     catch (RejectedExecutionException e) {
@@ -451,6 +532,156 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
   }
 
+  /**
+   * With the allocation index, the baseline Java objects are counted per class instead, see {@link #updateSnapshotAggregates}.
+   */
+  private static void addSnapshotInstances(@NotNull List<InstanceObject> snapshotList,
+                                           @NotNull List<InstanceObject> instances,
+                                           boolean indexed) {
+    if (!indexed) {
+      snapshotList.addAll(instances);
+    }
+    else {
+      instances.stream().filter(instance -> !(instance instanceof LiveAllocationInstanceObject)).forEach(snapshotList::add);
+    }
+  }
+
+  private long getIndexStartTimeNs() {
+    return myIndexedEndTimeNs == Long.MIN_VALUE ? mySession.getStartTimestamp() : myIndexedEndTimeNs;
+  }
+
+  /**
+   * Adds the allocation events up to {@code endTimeNs} that haven't been indexed yet, so each event is only fetched once.
+   *
+   * @param eventsList the events from {@link #getIndexStartTimeNs()} to {@code endTimeNs}.
+   */
+  private void updateAllocationIndex(@NotNull List<Memory.BatchAllocationEvents> eventsList, long endTimeNs) {
+    AllocationEventIndex index = myAllocationIndex;
+    assert index != null;
+    long startTimeNs = getIndexStartTimeNs();
+    if (startTimeNs >= endTimeNs) {
+      return;
+    }
+
+    for (Memory.BatchAllocationEvents events : eventsList) {
+      Iterator<AllocationEvent> itr =
+        events.getEventsList().stream()
+          .filter(evt -> evt.getTimestamp() >= startTimeNs && evt.getTimestamp() < endTimeNs)
+          .sorted(Comparator.comparingLong(AllocationEvent::getTimestamp))
+          .iterator();
+      while (itr.hasNext()) {
+        AllocationEvent event = itr.next();
+        switch (event.getEventCase()) {
+          case ALLOC_DATA:
+            AllocationEvent.Allocation allocation = event.getAllocData();
+            index.addAllocation(event.getTimestamp(), allocation.getTag(), allocation.getClassTag(), allocation.getStackId(),
+                                allocation.getThreadId(), allocation.getSize(), allocation.getHeapId());
+            break;
+          case FREE_DATA:
+            index.addDeallocation(event.getTimestamp(), event.getFreeData().getTag());
+            break;
+          case CLASS_DATA:
+            // ignore CLASS_DATA as they are handled via context updates.
+            break;
+        }
+      }
+    }
+    // Same as myPreviousQueryEndTimeNs, the events after the last seen sample may not have arrived yet and are fetched next time.
+    myIndexedEndTimeNs = Math.max(startTimeNs, Math.min(endTimeNs, myLastSeenTimestampNs));
+
+    if (index.isFull()) {
+      // Most objects are still alive, so the index can't make room and no longer knows about every object. Go back to querying the events,
+      // the next load rebuilding the heap sets without the aggregates.
+      getLogger().warn("Live allocation index is full after " + index.getRecordCount() + " objects, querying allocations instead");
+      disposeAllocationIndex();
+    }
+  }
+
+  /**
+   * @return the changes in the number of objects of each class alive at {@code snapshotTimeNs}, since the previous call or from zero if
+   * the heap sets are being cleared.
+   */
+  @NotNull
+  private List<SnapshotAggregateChange> updateSnapshotAggregates(long snapshotTimeNs, boolean clear) {
+    AllocationEventIndex index = myAllocationIndex;
+    assert index != null;
+    if (clear) {
+      mySnapshotCounts.clear();
+      mySnapshotSizes.clear();
+    }
+
+    List<SnapshotAggregateChange> changes = new ArrayList<>();
+    for (AllocationEventIndex.ClassIndex classIndex : index.getClassIndices()) {
+      int count = classIndex.getAliveCount(snapshotTimeNs);
+      long size = classIndex.getAliveSize(snapshotTimeNs);
+      int countChange = count - mySnapshotCounts.get(classIndex);
+      long sizeChange = size - mySnapshotSizes.get(classIndex);
+      if (countChange != 0 || sizeChange != 0) {
+        ClassDb.ClassEntry classEntry = myClassDb.getEntry(classIndex.getClassTag());
+        changes.add(new SnapshotAggregateChange(classIndex.getHeapId(), classIndex.getClassTag(), classEntry, countChange, sizeChange));
+        mySnapshotCounts.put(classIndex, count);
+        mySnapshotSizes.put(classIndex, size);
+      }
+    }
+    return changes;
+  }
+
+  private void addSnapshotAggregate(@NotNull SnapshotAggregateChange change) {
+    myHeapSets.get(change.myHeapId).addSnapshotAggregate(change.myClassEntry, change.myCount, change.myShallowSize,
+                                                         () -> resolveSnapshotInstances(change.myHeapId, change.myClassTag));
+  }
+
+  /**
+   * Creates the instance objects of a class alive at the selection's start, which the heap sets only count, see
+   * {@link #updateSnapshotAggregates}. Called on demand, e.g. to list the instances of the selected class.
+   */
+  @NotNull
+  private Stream<InstanceObject> resolveSnapshotInstances(int heapId, int classTag) {
+    List<InstanceObject> instances = new ArrayList<>();
+    synchronized (myInstanceLock) {
+      AllocationEventIndex index = myAllocationIndex;
+      // The aggregates are stale until the heap sets are rebuilt if the index had to drop objects alive at the selection's start.
+      AllocationEventIndex.ClassIndex classIndex =
+        index == null || !myPreviousQueryIndexed || myPreviousQueryStartTimeNs < index.getCoveredFromNs()
+        ? null
+        : index.getClassIndex(heapId, classTag);
+      if (classIndex != null) {
+        index.forEachAliveRecord(classIndex, myPreviousQueryStartTimeNs, record -> instances.add(getOrCreateInstanceObject(record)));
+      }
+    }
+    return instances.stream();
+  }
+
+  /**
+   * Queries the allocation index, see {@link #queryJavaInstanceDelta}.
+   */
+  private void queryIndexedInstanceDelta(long startTimeNs,
+                                         long endTimeNs,
+                                         @NotNull List<InstanceObject> allocationList,
+                                         @NotNull List<InstanceObject> deallocationList,
+                                         boolean resetInstance) {
+    AllocationEventIndex index = myAllocationIndex;
+    assert index != null;
+    index.forEachAllocation(startTimeNs, endTimeNs, record -> {
+      LiveAllocationInstanceObject instance = getOrCreateInstanceObject(record);
+      instance.setAllocationTime(resetInstance ? Long.MIN_VALUE : index.getAllocationTime(record));
+      allocationList.add(instance);
+    });
+    index.forEachDeallocation(startTimeNs, endTimeNs, record -> {
+      LiveAllocationInstanceObject instance = getOrCreateInstanceObject(record);
+      instance.setDeallocTime(resetInstance ? Long.MAX_VALUE : index.getDeallocationTime(record));
+      deallocationList.add(instance);
+    });
+  }
+
+  @NotNull
+  private LiveAllocationInstanceObject getOrCreateInstanceObject(int record) {
+    AllocationEventIndex index = myAllocationIndex;
+    assert index != null;
+    return getOrCreateInstanceObject(index.getTag(record), index.getClassTag(record), index.getStackId(record), index.getThreadId(record),
+                                     index.getSize(record), index.getHeapId(record));
+  }
+
   @NotNull
   private LiveAllocationInstanceObject getOrCreateInstanceObject(int tag, int classTag, int stackId, int threadId, long size, int heapId) {
     LiveAllocationInstanceObject instance = myInstanceMap.get(tag);
@@ -476,6 +707,12 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   @Nullable
   private JniReferenceInstanceObject getOrCreateJniRefObject(int tag, long refValue) {
     LiveAllocationInstanceObject referencedObject = myInstanceMap.get(tag);
+    if (referencedObject == null && myAllocationIndex != null) {
+      int record = myAllocationIndex.findRecord(tag);
+      if (record >= 0) {
+        referencedObject = getOrCreateInstanceObject(record);
+      }
+    }
     if (referencedObject == null) {
       // If a Java object can't be found by a given tag, nothing is known about the JNI reference and we can't track it.
       return null;
@@ -491,10 +728,12 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   /**
    * Populates the input list with all instance objects that are alive at |snapshotTimeNs|.
    */
-  private void queryJavaInstanceSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
-    // Retrieve all the event samples from the start of the session until the snapshot time.
-    long sessionStartNs = mySession.getStartTimestamp();
-    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(sessionStartNs, snapshotTimeNs);
+  private void queryJavaInstanceSnapshot(long snapshotTimeNs,
+                                         @NotNull QueriedEvents queriedEvents,
+                                         @NotNull List<InstanceObject> snapshotList) {
+    // The event samples from the start of the session until the snapshot time.
+    List<Memory.BatchAllocationEvents> eventsList = queriedEvents.myAllocationEvents;
+    assert eventsList != null;
     Map<Integer, LiveAllocationInstanceObject> liveInstanceMap = new LinkedHashMap<>();
     for (Memory.BatchAllocationEvents events : eventsList) {
       // Only consider events up to but excluding the snapshot time.
@@ -529,13 +768,14 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     snapshotList.addAll(liveInstanceMap.values());
   }
 
-  private void queryJniReferencesSnapshot(long snapshotTimeNs, @NotNull List<InstanceObject> snapshotList) {
+  private void queryJniReferencesSnapshot(long snapshotTimeNs,
+                                          @NotNull QueriedEvents queriedEvents,
+                                          @NotNull List<InstanceObject> snapshotList) {
     if (!myEnableJniRefsTracking) {
       return;
     }
 
-    long sessionStartNs = mySession.getStartTimestamp();
-    List<Memory.BatchJNIGlobalRefEvent> eventsList = getJniRefEvents(sessionStartNs, snapshotTimeNs);
+    List<Memory.BatchJNIGlobalRefEvent> eventsList = queriedEvents.myJniRefEvents;
     Map<Long, JniReferenceInstanceObject> instanceMap = new LinkedHashMap<>();
     for (Memory.BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events up to but excluding the snapshot time.
@@ -584,6 +824,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
   /**
    * @param startTimeNs      start time to query data for.
    * @param endTimeNs        end time to query data for.
+   * @param queriedEvents    the events fetched for the range, see {@link #queryEvents}.
    * @param allocationList   Instances that were allocated within the query range will be added here.
    * @param deallocationList Instances that were deallocated within the query range will be added here.
    * @param resetInstance    Whether the InstanceObject's alloc/dealloc time information should reset if a corresponding allocation or
@@ -593,6 +834,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
    */
   private void queryJavaInstanceDelta(long startTimeNs,
                                       long endTimeNs,
+                                      @NotNull QueriedEvents queriedEvents,
                                       @NotNull List<InstanceObject> allocationList,
                                       @NotNull List<InstanceObject> deallocationList,
                                       boolean resetInstance) {
@@ -601,8 +843,12 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return;
     }
 
+    List<Memory.BatchAllocationEvents> eventsList = queriedEvents.myAllocationEvents;
+    if (eventsList == null) {
+      queryIndexedInstanceDelta(startTimeNs, endTimeNs, allocationList, deallocationList, resetInstance);
+      return;
+    }
 
-    List<Memory.BatchAllocationEvents> eventsList = getAllocationEvents(startTimeNs, endTimeNs);
     for (Memory.BatchAllocationEvents events : eventsList) {
       // Only consider events between the delta range [start time, end time)
       Iterator<AllocationEvent> itr =
@@ -640,6 +886,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
   private void queryJniReferencesDelta(long startTimeNs,
                                        long endTimeNs,
+                                       @NotNull QueriedEvents queriedEvents,
                                        @NotNull List<InstanceObject> allocationList,
                                        @NotNull List<InstanceObject> deallocatoinList,
                                        boolean resetInstance) {
@@ -647,7 +894,7 @@ public class LiveAllocationCaptureObject implements CaptureObject {
       return;
     }
 
-    List<Memory.BatchJNIGlobalRefEvent> eventsList = getJniRefEvents(startTimeNs, endTimeNs);
+    List<Memory.BatchJNIGlobalRefEvent> eventsList = queriedEvents.myJniRefEvents;
     for (BatchJNIGlobalRefEvent events : eventsList) {
       // Only consider events between the delta range [start time, end time)
       Iterator<JNIGlobalReferenceEvent> itr =
@@ -710,7 +957,8 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
 
 
-    NativeCallStack.Builder builder = NativeCallStack.newBuilder();
+    // Symbolize the frames that haven't been seen yet in one go, so the symbolizer can batch them.
+    List<NativeCallStack.NativeFrame> unsymbolizedFrames = new ArrayList<>();
     for (long address : backtrace.getAddressesList()) {
       if (!myNativeFrameMap.containsKey(address)) {
         String module = "";
@@ -724,11 +972,21 @@ public class LiveAllocationCaptureObject implements CaptureObject {
 
         NativeCallStack.NativeFrame unsymbolizedFrame = NativeCallStack.NativeFrame.newBuilder()
           .setAddress(address).setModuleName(module).setModuleOffset(offset).build();
-        NativeCallStack.NativeFrame symbolizedFrame = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
-          .symbolize(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrame);
-        myNativeFrameMap.put(address, symbolizedFrame);
+        // Reserve the address so frames repeated within the backtrace are only symbolized once.
+        myNativeFrameMap.put(address, unsymbolizedFrame);
+        unsymbolizedFrames.add(unsymbolizedFrame);
       }
+    }
+    if (!unsymbolizedFrames.isEmpty()) {
+      List<NativeCallStack.NativeFrame> symbolizedFrames = myStage.getStudioProfilers().getIdeServices().getNativeFrameSymbolizer()
+        .symbolize(myStage.getStudioProfilers().getSessionsManager().getSelectedSessionMetaData().getProcessAbi(), unsymbolizedFrames);
+      for (NativeCallStack.NativeFrame symbolizedFrame : symbolizedFrames) {
+        myNativeFrameMap.put(symbolizedFrame.getAddress(), symbolizedFrame);
+      }
+    }
 
+    NativeCallStack.Builder builder = NativeCallStack.newBuilder();
+    for (long address : backtrace.getAddressesList()) {
       builder.addFrames(myNativeFrameMap.get(address));
     }
     return builder.build();
@@ -747,6 +1005,21 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     return null;
   }
 
+  /**
+   * Fetches the events of [startTimeNs, endTimeNs) that the query methods go through, so the daemon isn't called while holding the
+   * instance lock.
+   *
+   * @param indexed whether the allocation index serves the allocation events of the range, which are then not fetched.
+   */
+  @NotNull
+  private QueriedEvents queryEvents(long startTimeNs, long endTimeNs, boolean indexed) {
+    if (startTimeNs >= endTimeNs) {
+      return new QueriedEvents(indexed ? null : Collections.emptyList(), Collections.emptyList());
+    }
+    return new QueriedEvents(indexed ? null : getAllocationEvents(startTimeNs, endTimeNs),
+                             myEnableJniRefsTracking ? getJniRefEvents(startTimeNs, endTimeNs) : Collections.emptyList());
+  }
+
   @NotNull
   private List<Memory.BatchAllocationContexts> getAllocationContexts(long startTimeNs, long endTimeNs) {
     if (myStage.getStudioProfilers().getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
@@ -838,4 +1111,32 @@ public class LiveAllocationCaptureObject implements CaptureObject {
     }
     return eventList;
   }
+
+  private static final class QueriedEvents {
+    // Null when the allocation index serves the allocation events.
+    @Nullable private final List<Memory.BatchAllocationEvents> myAllocationEvents;
+    @NotNull private final List<Memory.BatchJNIGlobalRefEvent> myJniRefEvents;
+
+    private QueriedEvents(@Nullable List<Memory.BatchAllocationEvents> allocationEvents,
+                          @NotNull List<Memory.BatchJNIGlobalRefEvent> jniRefEvents) {
+      myAllocationEvents = allocationEvents;
+      myJniRefEvents = jniRefEvents;
+    }
+  }
+
+  private static final class SnapshotAggregateChange {
+    private final int myHeapId;
+    private final int myClassTag;
+    @NotNull private final ClassDb.ClassEntry myClassEntry;
+    private final int myCount;
+    private final long myShallowSize;
+
+    private SnapshotAggregateChange(int heapId, int classTag, @NotNull ClassDb.ClassEntry classEntry, int count, long shallowSize) {
+      myHeapId = heapId;
+      myClassTag = classTag;
+      myClassEntry = classEntry;
+      myCount = count;
+      myShallowSize = shallowSize;
+    }
+  }
 }
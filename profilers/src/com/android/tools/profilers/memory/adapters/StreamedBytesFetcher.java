@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import com.android.tools.idea.protobuf.WireFormat;
+import com.android.tools.profiler.proto.Transport;
+import com.android.tools.profiler.proto.TransportServiceGrpc;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+import io.grpc.Drainable;
+import io.grpc.MethodDescriptor;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCalls;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Fetches the contents of a {@link Transport.BytesRequest} into an output stream as the response is read, instead of materializing them
+ * as a {@link com.android.tools.idea.protobuf.ByteString} first like
+ * {@link TransportServiceGrpc.TransportServiceBlockingStub#getBytes} does.
+ */
+final class StreamedBytesFetcher {
+  private StreamedBytesFetcher() {}
+
+  /**
+   * @return the number of bytes written to {@code out}, 0 if there are no such bytes.
+   */
+  static long fetch(@NotNull TransportServiceGrpc.TransportServiceBlockingStub client,
+                    @NotNull Transport.BytesRequest request,
+                    @NotNull OutputStream out) throws IOException {
+    MethodDescriptor<Transport.BytesRequest, Long> method = MethodDescriptor.<Transport.BytesRequest, Long>newBuilder()
+      .setType(MethodDescriptor.MethodType.UNARY)
+      .setFullMethodName(TransportServiceGrpc.METHOD_GET_BYTES.getFullMethodName())
+      .setRequestMarshaller(TransportServiceGrpc.METHOD_GET_BYTES.getRequestMarshaller())
+      .setResponseMarshaller(new ContentsMarshaller(out))
+      .build();
+    try {
+      return ClientCalls.blockingUnaryCall(client.getChannel(), method, client.getCallOptions(), request);
+    }
+    catch (StatusRuntimeException e) {
+      // Failures to write the contents fail the call with them as the cause.
+      if (e.getCause() instanceof UncheckedIOException) {
+        throw ((UncheckedIOException)e.getCause()).getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Parses a {@link Transport.BytesResponse} by writing its contents out, returning their size.
+   */
+  private static final class ContentsMarshaller implements MethodDescriptor.Marshaller<Long> {
+    @NotNull private final OutputStream myOut;
+
+    private ContentsMarshaller(@NotNull OutputStream out) {
+      myOut = out;
+    }
+
+    @Override
+    public InputStream stream(Long value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Long parse(InputStream stream) {
+      ContentsWriter writer = new ContentsWriter(myOut);
+      try {
+        // In-process responses drain straight from the message, without serializing it to an array first.
+        if (stream instanceof Drainable) {
+          ((Drainable)stream).drainTo(writer);
+        }
+        else {
+          ByteStreams.copy(stream, writer);
+        }
+        writer.checkComplete();
+      }
+      catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return writer.getContentsSize();
+    }
+  }
+
+  /**
+   * Takes the wire format of a {@link Transport.BytesResponse} and writes the bytes of its contents field to another stream, skipping the
+   * other fields.
+   */
+  @VisibleForTesting
+  static final class ContentsWriter extends OutputStream {
+    private static final int CONTENTS_TAG =
+      (Transport.BytesResponse.CONTENTS_FIELD_NUMBER << 3) | WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+    private static final int STATE_TAG = 0;
+    private static final int STATE_LENGTH = 1;
+    private static final int STATE_VARINT_VALUE = 2;
+    private static final int STATE_BYTES = 3;
+
+    @NotNull private final OutputStream myOut;
+    private int myState = STATE_TAG;
+    private long myVarint;
+    private int myVarintShift;
+    private int myTag;
+    private long myRemainingBytes;
+    private long myContentsSize;
+
+    ContentsWriter(@NotNull OutputStream out) {
+      myOut = out;
+    }
+
+    long getContentsSize() {
+      return myContentsSize;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte)b}, 0, 1);
+    }
+
+    @Override
+    public void write(@NotNull byte[] bytes, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (myState == STATE_BYTES) {
+          int count = (int)Math.min(length, myRemainingBytes);
+          if (myTag == CONTENTS_TAG) {
+            myOut.write(bytes, offset, count);
+            myContentsSize += count;
+          }
+          offset += count;
+          length -= count;
+          myRemainingBytes -= count;
+          if (myRemainingBytes == 0) {
+            myState = STATE_TAG;
+          }
+          continue;
+        }
+
+        byte b = bytes[offset++];
+        length--;
+        myVarint |= (long)(b & 0x7F) << myVarintShift;
+        myVarintShift += 7;
+        if ((b & 0x80) != 0) {
+          if (myVarintShift >= 64) {
+            throw new IOException("Malformed varint");
+          }
+          continue;
+        }
+        long value = myVarint;
+        myVarint = 0;
+        myVarintShift = 0;
+
+        switch (myState) {
+          case STATE_TAG:
+            myTag = (int)value;
+            switch (WireFormat.getTagWireType(myTag)) {
+              case WireFormat.WIRETYPE_VARINT:
+                myState = STATE_VARINT_VALUE;
+                break;
+              case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+                myState = STATE_LENGTH;
+                break;
+              case WireFormat.WIRETYPE_FIXED64:
+                myRemainingBytes = Long.BYTES;
+                myState = STATE_BYTES;
+                break;
+              case WireFormat.WIRETYPE_FIXED32:
+                myRemainingBytes = Integer.BYTES;
+                myState = STATE_BYTES;
+                break;
+              default:
+                throw new IOException("Unexpected wire type in tag " + myTag);
+            }
+            break;
+          case STATE_LENGTH:
+            myRemainingBytes = value;
+            myState = value == 0 ? STATE_TAG : STATE_BYTES;
+            break;
+          default:
+            // Skipped varint field
+            myState = STATE_TAG;
+            break;
+        }
+      }
+    }
+
+    /**
+     * @throws IOException if the response ended in the middle of a field.
+     */
+    void checkComplete() throws IOException {
+      if (myState != STATE_TAG || myVarintShift != 0) {
+        throw new IOException("Truncated response");
+      }
+    }
+  }
+}
@@ -0,0 +1,389 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.dominators;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Dominators, retained sizes and distances to the roots of an {@link ObjectGraph}.
+ * <p>
+ * Immediate dominators are computed with the iterative algorithm from Cooper, Harvey and Kennedy, "A Simple, Fast Dominance Algorithm",
+ * with a sentinel root referencing all the roots of the graph. The first pass runs in reverse post order on the calling thread, which
+ * settles almost all objects of a heap; the following passes that run until nothing changes are split across the pool. This is safe
+ * because the dominator of an object always comes before it in reverse post order, so walking up the partial tree terminates whatever
+ * the other threads write.
+ * <p>
+ * Retained sizes are summed bottom-up over the dominator tree, one tree level at a time, each level being split across the pool.
+ */
+public final class DominatorTree {
+  /**
+   * Dominator of the objects that are not reachable from any root.
+   */
+  public static final int UNREACHABLE = -1;
+
+  /**
+   * Dominator of the roots and of the objects reachable from several roots, none of which dominates them.
+   */
+  public static final int SENTINEL_ROOT = -2;
+
+  /**
+   * Number of objects below which work is not split any further.
+   */
+  private static final int SEQUENTIAL_THRESHOLD = 1 << 14;
+
+  @NotNull private final int[] myDominators;
+  @NotNull private final long[] myRetainedSizes;
+  @NotNull private final int[] myDistances;
+
+  private DominatorTree(@NotNull int[] dominators, @NotNull long[] retainedSizes, @NotNull int[] distances) {
+    myDominators = dominators;
+    myRetainedSizes = retainedSizes;
+    myDistances = distances;
+  }
+
+  /**
+   * @return the immediate dominator of the object, {@link #SENTINEL_ROOT} or {@link #UNREACHABLE}.
+   */
+  public int getImmediateDominator(int node) {
+    return myDominators[node];
+  }
+
+  /**
+   * @return the size of the object plus the sizes of all the objects it dominates, 0 if it is unreachable.
+   */
+  public long getRetainedSize(int node) {
+    return myRetainedSizes[node];
+  }
+
+  /**
+   * @return the number of references from the closest root to the object, {@link Integer#MAX_VALUE} if it is unreachable.
+   */
+  public int getDistanceToRoot(int node) {
+    return myDistances[node];
+  }
+
+  @NotNull
+  public static DominatorTree compute(@NotNull ObjectGraph graph, @NotNull ForkJoinPool pool) {
+    return new Computation(graph, pool).run();
+  }
+
+  /**
+   * State of a computation. The sentinel root is given index {@code graph.getNodeCount()}.
+   */
+  private static final class Computation {
+    @NotNull private final ObjectGraph myGraph;
+    @NotNull private final ForkJoinPool myPool;
+    private final int myRoot;
+
+    /**
+     * Reachable objects in reverse post order, starting with the sentinel root.
+     */
+    private int[] myOrder;
+    private int myReachableCount;
+    /**
+     * Position of each object in {@link #myOrder}, -1 if unreachable.
+     */
+    private int[] myOrderIndices;
+    private int[] myPredecessorStarts;
+    private int[] myPredecessors;
+    private int[] myDominators;
+
+    Computation(@NotNull ObjectGraph graph, @NotNull ForkJoinPool pool) {
+      myGraph = graph;
+      myPool = pool;
+      myRoot = graph.getNodeCount();
+    }
+
+    @NotNull
+    DominatorTree run() {
+      computeReversePostOrder();
+      computePredecessors();
+      computeDominators();
+      long[] retainedSizes = computeRetainedSizes();
+      int[] distances = computeDistances();
+
+      int[] dominators = new int[myRoot];
+      for (int i = 0; i < myRoot; i++) {
+        int dominator = myDominators[i];
+        dominators[i] = dominator == -1 ? UNREACHABLE : dominator == myRoot ? SENTINEL_ROOT : dominator;
+      }
+      return new DominatorTree(dominators, retainedSizes, distances);
+    }
+
+    private int getSuccessorStart(int node) {
+      return node == myRoot ? 0 : myGraph.getEdgeStarts()[node];
+    }
+
+    private int getSuccessorEnd(int node) {
+      return node == myRoot ? myGraph.getRoots().length : myGraph.getEdgeStarts()[node + 1];
+    }
+
+    private int getSuccessor(int node, int index) {
+      return node == myRoot ? myGraph.getRoots()[index] : myGraph.getEdges()[index];
+    }
+
+    private void computeReversePostOrder() {
+      int count = myRoot + 1;
+      boolean[] visited = new boolean[count];
+      int[] postOrder = new int[count];
+      int postOrderCount = 0;
+      // Iterative depth first search, the stack keeps the next successor to visit for each object on it.
+      int[] stack = new int[count];
+      int[] cursors = new int[count];
+      int depth = 0;
+      stack[depth] = myRoot;
+      cursors[depth] = getSuccessorStart(myRoot);
+      depth++;
+      visited[myRoot] = true;
+      while (depth > 0) {
+        int node = stack[depth - 1];
+        int cursor = cursors[depth - 1];
+        if (cursor < getSuccessorEnd(node)) {
+          cursors[depth - 1]++;
+          int successor = getSuccessor(node, cursor);
+          if (!visited[successor]) {
+            visited[successor] = true;
+            stack[depth] = successor;
+            cursors[depth] = getSuccessorStart(successor);
+            depth++;
+          }
+        }
+        else {
+          postOrder[postOrderCount++] = node;
+          depth--;
+        }
+      }
+
+      myReachableCount = postOrderCount;
+      myOrder = new int[postOrderCount];
+      myOrderIndices = new int[count];
+      Arrays.fill(myOrderIndices, -1);
+      for (int i = 0; i < postOrderCount; i++) {
+        int node = postOrder[postOrderCount - 1 - i];
+        myOrder[i] = node;
+        myOrderIndices[node] = i;
+      }
+    }
+
+    /**
+     * Builds the reverse edges between reachable objects, the references from unreachable objects don't affect dominators.
+     */
+    private void computePredecessors() {
+      int count = myRoot + 1;
+      myPredecessorStarts = new int[count + 1];
+      for (int i = 0; i < myReachableCount; i++) {
+        int node = myOrder[i];
+        for (int e = getSuccessorStart(node), end = getSuccessorEnd(node); e < end; e++) {
+          myPredecessorStarts[getSuccessor(node, e) + 1]++;
+        }
+      }
+      for (int i = 0; i < count; i++) {
+        myPredecessorStarts[i + 1] += myPredecessorStarts[i];
+      }
+      int[] cursors = Arrays.copyOf(myPredecessorStarts, count);
+      myPredecessors = new int[myPredecessorStarts[count]];
+      for (int i = 0; i < myReachableCount; i++) {
+        int node = myOrder[i];
+        for (int e = getSuccessorStart(node), end = getSuccessorEnd(node); e < end; e++) {
+          myPredecessors[cursors[getSuccessor(node, e)]++] = node;
+        }
+      }
+    }
+
+    private void computeDominators() {
+      myDominators = new int[myRoot + 1];
+      Arrays.fill(myDominators, -1);
+      myDominators[myRoot] = myRoot;
+      for (int i = 1; i < myReachableCount; i++) {
+        updateDominator(myOrder[i]);
+      }
+      while (myPool.invoke(new DominatorPass(1, myReachableCount))) {
+        // Repeat until no dominator changes.
+      }
+    }
+
+    /**
+     * @return whether the dominator of the object changed.
+     */
+    private boolean updateDominator(int node) {
+      int dominator = -1;
+      for (int e = myPredecessorStarts[node], end = myPredecessorStarts[node + 1]; e < end; e++) {
+        int predecessor = myPredecessors[e];
+        if (myDominators[predecessor] == -1) {
+          // Not processed yet.
+          continue;
+        }
+        dominator = dominator == -1 ? predecessor : intersect(predecessor, dominator);
+      }
+      if (dominator != -1 && dominator != myDominators[node]) {
+        myDominators[node] = dominator;
+        return true;
+      }
+      return false;
+    }
+
+    private int intersect(int finger1, int finger2) {
+      while (finger1 != finger2) {
+        while (myOrderIndices[finger1] > myOrderIndices[finger2]) {
+          finger1 = myDominators[finger1];
+        }
+        while (myOrderIndices[finger2] > myOrderIndices[finger1]) {
+          finger2 = myDominators[finger2];
+        }
+      }
+      return finger1;
+    }
+
+    @NotNull
+    private long[] computeRetainedSizes() {
+      // Sort the objects by depth in the dominator tree, and the objects by dominator.
+      int[] depths = new int[myRoot + 1];
+      int maxDepth = 0;
+      for (int i = 1; i < myReachableCount; i++) {
+        int node = myOrder[i];
+        depths[node] = depths[myDominators[node]] + 1;
+        maxDepth = Math.max(maxDepth, depths[node]);
+      }
+      int[] levelStarts = new int[maxDepth + 2];
+      int[] childStarts = new int[myRoot + 2];
+      for (int i = 1; i < myReachableCount; i++) {
+        int node = myOrder[i];
+        levelStarts[depths[node] + 1]++;
+        childStarts[myDominators[node] + 1]++;
+      }
+      for (int i = 0; i <= maxDepth; i++) {
+        levelStarts[i + 1] += levelStarts[i];
+      }
+      for (int i = 0; i <= myRoot; i++) {
+        childStarts[i + 1] += childStarts[i];
+      }
+      int[] levels = new int[levelStarts[maxDepth + 1]];
+      int[] children = new int[childStarts[myRoot + 1]];
+      int[] levelCursors = Arrays.copyOf(levelStarts, maxDepth + 1);
+      int[] childCursors = Arrays.copyOf(childStarts, myRoot + 1);
+      for (int i = 1; i < myReachableCount; i++) {
+        int node = myOrder[i];
+        levels[levelCursors[depths[node]]++] = node;
+        children[childCursors[myDominators[node]]++] = node;
+      }
+
+      long[] retainedSizes = new long[myRoot];
+      for (int depth = maxDepth; depth >= 1; depth--) {
+        myPool.invoke(new RetainedSizePass(levels, levelStarts[depth], levelStarts[depth + 1], children, childStarts, retainedSizes));
+      }
+      return retainedSizes;
+    }
+
+    @NotNull
+    private int[] computeDistances() {
+      int[] distances = new int[myRoot];
+      Arrays.fill(distances, Integer.MAX_VALUE);
+      int[] queue = new int[myRoot];
+      int head = 0;
+      int tail = 0;
+      for (int root : myGraph.getRoots()) {
+        if (distances[root] != 0) {
+          distances[root] = 0;
+          queue[tail++] = root;
+        }
+      }
+      while (head < tail) {
+        int node = queue[head++];
+        for (int e = getSuccessorStart(node), end = getSuccessorEnd(node); e < end; e++) {
+          int successor = getSuccessor(node, e);
+          if (distances[successor] == Integer.MAX_VALUE) {
+            distances[successor] = distances[node] + 1;
+            queue[tail++] = successor;
+          }
+        }
+      }
+      return distances;
+    }
+
+    /**
+     * Updates the dominators of the objects between two positions in reverse post order.
+     */
+    private final class DominatorPass extends RecursiveTask<Boolean> {
+      private final int myFrom;
+      private final int myTo;
+
+      DominatorPass(int from, int to) {
+        myFrom = from;
+        myTo = to;
+      }
+
+      @Override
+      protected Boolean compute() {
+        if (myTo - myFrom <= SEQUENTIAL_THRESHOLD) {
+          boolean changed = false;
+          for (int i = myFrom; i < myTo; i++) {
+            changed |= updateDominator(myOrder[i]);
+          }
+          return changed;
+        }
+        int middle = (myFrom + myTo) >>> 1;
+        DominatorPass left = new DominatorPass(myFrom, middle);
+        left.fork();
+        boolean changed = new DominatorPass(middle, myTo).compute();
+        return left.join() | changed;
+      }
+    }
+
+    /**
+     * Computes the retained sizes of the objects of one level of the dominator tree, from the retained sizes of the level below.
+     */
+    private final class RetainedSizePass extends RecursiveAction {
+      @NotNull private final int[] myLevels;
+      private final int myFrom;
+      private final int myTo;
+      @NotNull private final int[] myChildren;
+      @NotNull private final int[] myChildStarts;
+      @NotNull private final long[] myRetainedSizes;
+
+      RetainedSizePass(@NotNull int[] levels, int from, int to, @NotNull int[] children, @NotNull int[] childStarts,
+                       @NotNull long[] retainedSizes) {
+        myLevels = levels;
+        myFrom = from;
+        myTo = to;
+        myChildren = children;
+        myChildStarts = childStarts;
+        myRetainedSizes = retainedSizes;
+      }
+
+      @Override
+      protected void compute() {
+        if (myTo - myFrom <= SEQUENTIAL_THRESHOLD) {
+          for (int i = myFrom; i < myTo; i++) {
+            int node = myLevels[i];
+            long size = myGraph.getSize(node);
+            for (int c = myChildStarts[node], end = myChildStarts[node + 1]; c < end; c++) {
+              size += myRetainedSizes[myChildren[c]];
+            }
+            myRetainedSizes[node] = size;
+          }
+          return;
+        }
+        int middle = (myFrom + myTo) >>> 1;
+        invokeAll(new RetainedSizePass(myLevels, myFrom, middle, myChildren, myChildStarts, myRetainedSizes),
+                  new RetainedSizePass(myLevels, middle, myTo, myChildren, myChildStarts, myRetainedSizes));
+      }
+    }
+  }
+}
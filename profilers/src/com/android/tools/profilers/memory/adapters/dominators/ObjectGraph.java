@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.dominators;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A compact object graph: objects are numbered from 0 and their outgoing references are stored in compressed sparse row form, i.e. the
+ * references of object {@code i} are {@code getEdges()[getEdgeStarts()[i]]} to {@code getEdges()[getEdgeStarts()[i + 1] - 1]}.
+ * A heap of millions of objects takes a few int arrays instead of millions of objects and lists.
+ */
+public final class ObjectGraph {
+  @NotNull private final long[] mySizes;
+  @NotNull private final int[] myEdgeStarts;
+  @NotNull private final int[] myEdges;
+  @NotNull private final int[] myRoots;
+
+  private ObjectGraph(@NotNull long[] sizes, @NotNull int[] edgeStarts, @NotNull int[] edges, @NotNull int[] roots) {
+    mySizes = sizes;
+    myEdgeStarts = edgeStarts;
+    myEdges = edges;
+    myRoots = roots;
+  }
+
+  public int getNodeCount() {
+    return mySizes.length;
+  }
+
+  public long getSize(int node) {
+    return mySizes[node];
+  }
+
+  @NotNull
+  long[] getSizes() {
+    return mySizes;
+  }
+
+  @NotNull
+  int[] getEdgeStarts() {
+    return myEdgeStarts;
+  }
+
+  @NotNull
+  int[] getEdges() {
+    return myEdges;
+  }
+
+  @NotNull
+  int[] getRoots() {
+    return myRoots;
+  }
+
+  public static final class Builder {
+    @NotNull private long[] mySizes;
+    private int myNodeCount;
+    @NotNull private int[] myEdgeSources = new int[16];
+    @NotNull private int[] myEdgeTargets = new int[16];
+    private int myEdgeCount;
+    @NotNull private int[] myRoots = new int[16];
+    private int myRootCount;
+
+    public Builder(int expectedNodeCount) {
+      mySizes = new long[Math.max(expectedNodeCount, 1)];
+    }
+
+    /**
+     * @return the index of the new object.
+     */
+    public int addNode(long size) {
+      if (myNodeCount == mySizes.length) {
+        mySizes = Arrays.copyOf(mySizes, mySizes.length * 2);
+      }
+      mySizes[myNodeCount] = size;
+      return myNodeCount++;
+    }
+
+    @NotNull
+    public Builder addEdge(int from, int to) {
+      if (myEdgeCount == myEdgeSources.length) {
+        myEdgeSources = Arrays.copyOf(myEdgeSources, myEdgeCount * 2);
+        myEdgeTargets = Arrays.copyOf(myEdgeTargets, myEdgeCount * 2);
+      }
+      myEdgeSources[myEdgeCount] = from;
+      myEdgeTargets[myEdgeCount] = to;
+      myEdgeCount++;
+      return this;
+    }
+
+    @NotNull
+    public Builder addRoot(int node) {
+      if (myRootCount == myRoots.length) {
+        myRoots = Arrays.copyOf(myRoots, myRootCount * 2);
+      }
+      myRoots[myRootCount++] = node;
+      return this;
+    }
+
+    @NotNull
+    public ObjectGraph build() {
+      // Counting sort of the edges by source.
+      int[] edgeStarts = new int[myNodeCount + 1];
+      for (int i = 0; i < myEdgeCount; i++) {
+        edgeStarts[myEdgeSources[i] + 1]++;
+      }
+      for (int i = 0; i < myNodeCount; i++) {
+        edgeStarts[i + 1] += edgeStarts[i];
+      }
+      int[] cursors = Arrays.copyOf(edgeStarts, myNodeCount);
+      int[] edges = new int[myEdgeCount];
+      for (int i = 0; i < myEdgeCount; i++) {
+        edges[cursors[myEdgeSources[i]]++] = myEdgeTargets[i];
+      }
+      return new ObjectGraph(Arrays.copyOf(mySizes, myNodeCount), edgeStarts, edges, Arrays.copyOf(myRoots, myRootCount));
+    }
+  }
+}
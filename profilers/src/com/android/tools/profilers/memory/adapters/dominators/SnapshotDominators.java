@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.dominators;
+
+import com.android.tools.perflib.heap.Heap;
+import com.android.tools.perflib.heap.Instance;
+import com.android.tools.perflib.heap.RootObj;
+import com.android.tools.perflib.heap.Snapshot;
+import gnu.trove.TLongIntHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Replacement for {@link Snapshot#computeDominators()} that flattens the snapshot into an {@link ObjectGraph} and runs
+ * {@link DominatorTree} on it. Only the results read by the memory profiler are written back to the instances: the retained sizes, all
+ * accounted to the heap of the instance, and the distances to the GC roots.
+ */
+public final class SnapshotDominators {
+  private SnapshotDominators() {
+  }
+
+  public static void compute(@NotNull Snapshot snapshot, @NotNull ForkJoinPool pool) {
+    int count = 0;
+    for (Heap heap : snapshot.getHeaps()) {
+      count += heap.getInstancesCount() + heap.getClasses().size();
+    }
+
+    Instance[] instances = new Instance[count];
+    // Indices are stored plus one, as a missing key reads as 0.
+    TLongIntHashMap indices = new TLongIntHashMap(count);
+    ObjectGraph.Builder builder = new ObjectGraph.Builder(count);
+    for (Heap heap : snapshot.getHeaps()) {
+      heap.getClasses().forEach(classObj -> addNode(builder, instances, indices, classObj));
+      heap.forEachInstance(instance -> {
+        addNode(builder, instances, indices, instance);
+        return true;
+      });
+    }
+
+    for (int i = 0; i < instances.length && instances[i] != null; i++) {
+      for (Instance reference : instances[i].getHardReverseReferences()) {
+        int from = indices.get(reference.getId()) - 1;
+        if (from >= 0) {
+          builder.addEdge(from, i);
+        }
+      }
+    }
+    for (RootObj root : snapshot.getGCRoots()) {
+      Instance referred = root.getReferredInstance();
+      int index = referred == null ? -1 : indices.get(referred.getId()) - 1;
+      if (index >= 0) {
+        builder.addRoot(index);
+      }
+    }
+
+    DominatorTree tree = DominatorTree.compute(builder.build(), pool);
+    for (int i = 0; i < instances.length && instances[i] != null; i++) {
+      Instance instance = instances[i];
+      instance.resetRetainedSize();
+      if (tree.getImmediateDominator(i) != DominatorTree.UNREACHABLE) {
+        instance.addRetainedSize(snapshot.getHeapIndex(instance.getHeap()), tree.getRetainedSize(i));
+      }
+      instance.setDistanceToGcRoot(tree.getDistanceToRoot(i));
+    }
+  }
+
+  private static void addNode(@NotNull ObjectGraph.Builder builder,
+                              @NotNull Instance[] instances,
+                              @NotNull TLongIntHashMap indices,
+                              @NotNull Instance instance) {
+    if (indices.containsKey(instance.getId())) {
+      return;
+    }
+    int index = builder.addNode(instance.getSize());
+    instances[index] = instance;
+    indices.put(instance.getId(), index + 1);
+  }
+}
@@ -0,0 +1,487 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.live;
+
+import com.intellij.util.io.ByteBufferUtil;
+import gnu.trove.TLongObjectHashMap;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Log of the allocation and deallocation events of a live allocation capture, kept outside of the Java heap.
+ * <p>
+ * Each allocated object is a fixed size record, found by tag. On top of the records, every (heap, class) pair has an interval index: the
+ * allocation times and the deallocation times of its objects, both sorted and with running size totals. The number and size of the
+ * objects of a class allocated, deallocated or alive over any time range are then a few binary searches away, and the objects with an
+ * event in a range can be listed without going through all the others.
+ * <p>
+ * The index holds at most a fixed number of records. When they are all used, the objects deallocated before some point are dropped and
+ * their slots reused, the index then only describing the objects from that point on, see {@link #getCoveredFromNs()}. If too few objects
+ * have been deallocated, the index stays {@link #isFull()}. Its memory is freed by {@link #dispose()}.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class AllocationEventIndex {
+  /**
+   * Default maximum number of records, about 200MB of direct memory once the interval indices and the tag table are counted.
+   */
+  public static final int DEFAULT_MAX_RECORDS = 1 << 21;
+
+  private static final int RECORDS_PER_CHUNK = 1 << 16;
+
+  private static final int ALLOC_TIME_OFFSET = 0;
+  private static final int FREE_TIME_OFFSET = 8;
+  private static final int SIZE_OFFSET = 16;
+  private static final int TAG_OFFSET = 24;
+  private static final int CLASS_TAG_OFFSET = 28;
+  private static final int STACK_ID_OFFSET = 32;
+  private static final int THREAD_ID_OFFSET = 36;
+  private static final int HEAP_ID_OFFSET = 40;
+  private static final int RECORD_SIZE = 48;
+
+  private final int myMaxRecords;
+  @NotNull private final List<ByteBuffer> myChunks = new ArrayList<>();
+  private int myRecordCount;
+  private long myCoveredFromNs = Long.MIN_VALUE;
+  @NotNull private final OffHeapIntIntMap myRecordsByTag = new OffHeapIntIntMap(RECORDS_PER_CHUNK);
+  @NotNull private final TLongObjectHashMap<ClassIndex> myClassIndices = new TLongObjectHashMap<>();
+
+  public AllocationEventIndex() {
+    this(DEFAULT_MAX_RECORDS);
+  }
+
+  public AllocationEventIndex(int maxRecords) {
+    myMaxRecords = maxRecords;
+  }
+
+  /**
+   * Records an allocation. Allocations of objects that are still alive are ignored, as they have already been recorded, and so are all
+   * allocations once the index {@link #isFull()}. Records of deallocated objects may be dropped to make room, see {@link #compact()}.
+   *
+   * @return the new record, or -1 if it was ignored.
+   */
+  public int addAllocation(long timestamp, int tag, int classTag, int stackId, int threadId, long size, int heapId) {
+    int existing = myRecordsByTag.get(tag);
+    if (existing != OffHeapIntIntMap.NO_VALUE && getDeallocationTime(existing) == Long.MAX_VALUE || isFull() && !compact()) {
+      return -1;
+    }
+
+    if (myRecordCount == myChunks.size() * RECORDS_PER_CHUNK) {
+      myChunks.add(ByteBuffer.allocateDirect(RECORDS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder()));
+    }
+    int record = myRecordCount++;
+    ByteBuffer chunk = getChunk(record);
+    int offset = getOffset(record);
+    chunk.putLong(offset + ALLOC_TIME_OFFSET, timestamp);
+    chunk.putLong(offset + FREE_TIME_OFFSET, Long.MAX_VALUE);
+    chunk.putLong(offset + SIZE_OFFSET, size);
+    chunk.putInt(offset + TAG_OFFSET, tag);
+    chunk.putInt(offset + CLASS_TAG_OFFSET, classTag);
+    chunk.putInt(offset + STACK_ID_OFFSET, stackId);
+    chunk.putInt(offset + THREAD_ID_OFFSET, threadId);
+    chunk.putInt(offset + HEAP_ID_OFFSET, heapId);
+    myRecordsByTag.put(tag, record);
+
+    long key = getClassKey(heapId, classTag);
+    ClassIndex classIndex = myClassIndices.get(key);
+    if (classIndex == null) {
+      classIndex = new ClassIndex(heapId, classTag);
+      myClassIndices.put(key, classIndex);
+    }
+    classIndex.myAllocations.add(timestamp, record, size);
+    return record;
+  }
+
+  /**
+   * Records a deallocation. Deallocations of objects that aren't alive are ignored.
+   *
+   * @return the record of the object, or -1 if it was ignored.
+   */
+  public int addDeallocation(long timestamp, int tag) {
+    int record = myRecordsByTag.get(tag);
+    if (record == OffHeapIntIntMap.NO_VALUE || getDeallocationTime(record) != Long.MAX_VALUE) {
+      return -1;
+    }
+    getChunk(record).putLong(getOffset(record) + FREE_TIME_OFFSET, timestamp);
+    myClassIndices.get(getClassKey(getHeapId(record), getClassTag(record))).myDeallocations.add(timestamp, record, getSize(record));
+    return record;
+  }
+
+  public int getRecordCount() {
+    return myRecordCount;
+  }
+
+  /**
+   * @return whether the index holds as many records as it can, and too few of them are deallocated objects to make room. Further
+   * allocations are dropped, so the index no longer describes the objects alive after that point.
+   */
+  public boolean isFull() {
+    return myRecordCount >= myMaxRecords;
+  }
+
+  /**
+   * @return the time from which the index describes every object. The objects deallocated before it may have been dropped, so the counts
+   * and records of times before it are incomplete. Long.MIN_VALUE until the index first makes room.
+   */
+  public long getCoveredFromNs() {
+    return myCoveredFromNs;
+  }
+
+  /**
+   * Frees the direct buffers of the index. The index is empty, and can't be used, afterwards.
+   */
+  public void dispose() {
+    myChunks.forEach(ByteBufferUtil::cleanBuffer);
+    myChunks.clear();
+    myRecordCount = 0;
+    myRecordsByTag.dispose();
+    myClassIndices.forEachValue(classIndex -> {
+      classIndex.myAllocations.dispose();
+      classIndex.myDeallocations.dispose();
+      return true;
+    });
+    myClassIndices.clear();
+  }
+
+  /**
+   * @return the last record of the object with the given tag, alive or not, or -1 if there is none.
+   */
+  public int findRecord(int tag) {
+    int record = myRecordsByTag.get(tag);
+    return record == OffHeapIntIntMap.NO_VALUE ? -1 : record;
+  }
+
+  public long getAllocationTime(int record) {
+    return getChunk(record).getLong(getOffset(record) + ALLOC_TIME_OFFSET);
+  }
+
+  /**
+   * @return the deallocation time of the object, {@link Long#MAX_VALUE} if it is still alive.
+   */
+  public long getDeallocationTime(int record) {
+    return getChunk(record).getLong(getOffset(record) + FREE_TIME_OFFSET);
+  }
+
+  public long getSize(int record) {
+    return getChunk(record).getLong(getOffset(record) + SIZE_OFFSET);
+  }
+
+  public int getTag(int record) {
+    return getChunk(record).getInt(getOffset(record) + TAG_OFFSET);
+  }
+
+  public int getClassTag(int record) {
+    return getChunk(record).getInt(getOffset(record) + CLASS_TAG_OFFSET);
+  }
+
+  public int getStackId(int record) {
+    return getChunk(record).getInt(getOffset(record) + STACK_ID_OFFSET);
+  }
+
+  public int getThreadId(int record) {
+    return getChunk(record).getInt(getOffset(record) + THREAD_ID_OFFSET);
+  }
+
+  public int getHeapId(int record) {
+    return getChunk(record).getInt(getOffset(record) + HEAP_ID_OFFSET);
+  }
+
+  /**
+   * @return the indices of all the (heap, class) pairs that have had allocations.
+   */
+  @NotNull
+  public List<ClassIndex> getClassIndices() {
+    List<ClassIndex> indices = new ArrayList<>(myClassIndices.size());
+    myClassIndices.forEachValue(indices::add);
+    return indices;
+  }
+
+  /**
+   * @return the index of the objects of the given class in the given heap, or null if there has been no such allocation.
+   */
+  @Nullable
+  public ClassIndex getClassIndex(int heapId, int classTag) {
+    return myClassIndices.get(getClassKey(heapId, classTag));
+  }
+
+  /**
+   * Calls {@code consumer} with the records of the objects of {@code classIndex} allocated before {@code timeNs} and not deallocated
+   * before it, see {@link ClassIndex#getAliveCount(long)}.
+   */
+  public void forEachAliveRecord(@NotNull ClassIndex classIndex, long timeNs, @NotNull IntConsumer consumer) {
+    classIndex.myAllocations.forEachRecord(Long.MIN_VALUE, timeNs, record -> {
+      if (getDeallocationTime(record) >= timeNs) {
+        consumer.accept(record);
+      }
+    });
+  }
+
+  /**
+   * Calls {@code consumer} with the records of the objects allocated within [startTimeNs, endTimeNs).
+   */
+  public void forEachAllocation(long startTimeNs, long endTimeNs, @NotNull IntConsumer consumer) {
+    myClassIndices.forEachValue(classIndex -> {
+      classIndex.myAllocations.forEachRecord(startTimeNs, endTimeNs, consumer);
+      return true;
+    });
+  }
+
+  /**
+   * Calls {@code consumer} with the records of the objects deallocated within [startTimeNs, endTimeNs).
+   */
+  public void forEachDeallocation(long startTimeNs, long endTimeNs, @NotNull IntConsumer consumer) {
+    myClassIndices.forEachValue(classIndex -> {
+      classIndex.myDeallocations.forEachRecord(startTimeNs, endTimeNs, consumer);
+      return true;
+    });
+  }
+
+  /**
+   * Makes room for half of the records by dropping the objects deallocated before the earliest time that allows it, or all the deallocated
+   * objects if there aren't enough, which then becomes {@link #getCoveredFromNs()}. The alive counts and sizes from that time on don't
+   * change, as each dropped object is both allocated and deallocated before it. The remaining records keep their order and the slots
+   * after them are reused.
+   *
+   * @return whether records were dropped, false if less than a quarter of them are deallocated objects.
+   */
+  private boolean compact() {
+    int deallocationCount = 0;
+    long firstDeallocationTime = Long.MAX_VALUE;
+    long lastDeallocationTime = Long.MIN_VALUE;
+    for (ClassIndex classIndex : getClassIndices()) {
+      EventTimes deallocations = classIndex.myDeallocations;
+      if (deallocations.size() > 0) {
+        deallocationCount += deallocations.size();
+        firstDeallocationTime = Math.min(firstDeallocationTime, deallocations.getTime(0));
+        lastDeallocationTime = Math.max(lastDeallocationTime, deallocations.getTime(deallocations.size() - 1));
+      }
+    }
+    if (deallocationCount == 0 || deallocationCount < myMaxRecords / 4) {
+      return false;
+    }
+
+    // Binary search for the earliest horizon with enough deallocations before it.
+    int dropCount = Math.min(deallocationCount, myRecordCount - myMaxRecords / 2);
+    long low = firstDeallocationTime;
+    long high = lastDeallocationTime + 1;
+    while (low < high) {
+      long mid = low + (high - low) / 2;
+      if (countDeallocationsBefore(mid) >= dropCount) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    long horizon = low;
+
+    // Mark the records to keep, a record then moving to the number of kept records before it.
+    long[] keptRecords = new long[(myRecordCount + 63) / 64];
+    int[] keptBefore = new int[keptRecords.length];
+    for (int record = 0; record < myRecordCount; record++) {
+      if (getDeallocationTime(record) >= horizon) {
+        keptRecords[record / 64] |= 1L << record;
+      }
+    }
+    for (int i = 1; i < keptRecords.length; i++) {
+      keptBefore[i] = keptBefore[i - 1] + Long.bitCount(keptRecords[i - 1]);
+    }
+    IntUnaryOperator newRecord = record -> (keptRecords[record / 64] & (1L << record)) == 0
+                                           ? -1
+                                           : keptBefore[record / 64] + Long.bitCount(keptRecords[record / 64] & ((1L << record) - 1));
+    myClassIndices.forEachValue(classIndex -> {
+      classIndex.myAllocations.retainRecords(newRecord);
+      classIndex.myDeallocations.retainRecords(newRecord);
+      return true;
+    });
+
+    int keptCount = 0;
+    for (int record = 0; record < myRecordCount; record++) {
+      if (newRecord.applyAsInt(record) >= 0) {
+        if (keptCount != record) {
+          ByteBuffer from = getChunk(record);
+          ByteBuffer to = getChunk(keptCount);
+          for (int offset = 0; offset < RECORD_SIZE; offset += Long.BYTES) {
+            to.putLong(getOffset(keptCount) + offset, from.getLong(getOffset(record) + offset));
+          }
+        }
+        keptCount++;
+      }
+    }
+    myRecordCount = keptCount;
+    myRecordsByTag.clear();
+    for (int record = 0; record < myRecordCount; record++) {
+      myRecordsByTag.put(getTag(record), record);
+    }
+    myCoveredFromNs = Math.max(myCoveredFromNs, horizon);
+    return true;
+  }
+
+  private int countDeallocationsBefore(long timeNs) {
+    int count = 0;
+    for (ClassIndex classIndex : getClassIndices()) {
+      count += classIndex.myDeallocations.countBefore(timeNs);
+    }
+    return count;
+  }
+
+  @NotNull
+  private ByteBuffer getChunk(int record) {
+    assert record < myRecordCount;
+    return myChunks.get(record / RECORDS_PER_CHUNK);
+  }
+
+  private static int getOffset(int record) {
+    return (record % RECORDS_PER_CHUNK) * RECORD_SIZE;
+  }
+
+  private static long getClassKey(int heapId, int classTag) {
+    return ((long)heapId << 32) | (classTag & 0xFFFFFFFFL);
+  }
+
+  /**
+   * Allocations and deallocations of the objects of one class in one heap.
+   */
+  public static final class ClassIndex {
+    private final int myHeapId;
+    private final int myClassTag;
+    @NotNull private final EventTimes myAllocations = new EventTimes();
+    @NotNull private final EventTimes myDeallocations = new EventTimes();
+
+    private ClassIndex(int heapId, int classTag) {
+      myHeapId = heapId;
+      myClassTag = classTag;
+    }
+
+    public int getHeapId() {
+      return myHeapId;
+    }
+
+    public int getClassTag() {
+      return myClassTag;
+    }
+
+    /**
+     * @return the number of objects allocated before {@code timeNs} and not deallocated before it.
+     */
+    public int getAliveCount(long timeNs) {
+      return myAllocations.countBefore(timeNs) - myDeallocations.countBefore(timeNs);
+    }
+
+    /**
+     * @return the total size of the objects allocated before {@code timeNs} and not deallocated before it.
+     */
+    public long getAliveSize(long timeNs) {
+      return myAllocations.sizeBefore(timeNs) - myDeallocations.sizeBefore(timeNs);
+    }
+
+    public int getAllocationCount(long startTimeNs, long endTimeNs) {
+      return myAllocations.countBefore(endTimeNs) - myAllocations.countBefore(startTimeNs);
+    }
+
+    public int getDeallocationCount(long startTimeNs, long endTimeNs) {
+      return myDeallocations.countBefore(endTimeNs) - myDeallocations.countBefore(startTimeNs);
+    }
+  }
+
+  /**
+   * Event times sorted in increasing order, along with the records of the objects and the running total of their sizes.
+   */
+  private static final class EventTimes {
+    @NotNull private final OffHeapLongList myTimes = new OffHeapLongList(16);
+    @NotNull private final OffHeapLongList myRecords = new OffHeapLongList(16);
+    // Total size of the objects up to and including each event.
+    @NotNull private final OffHeapLongList mySizeTotals = new OffHeapLongList(16);
+
+    void add(long time, int record, long size) {
+      int index = myTimes.size();
+      myTimes.add(time);
+      myRecords.add(record);
+      mySizeTotals.add((index == 0 ? 0 : mySizeTotals.get(index - 1)) + size);
+      // Events mostly arrive in order, move the new one back in the rare case it didn't. The total after both swapped events stays the
+      // same, the total after the first one trades the size of the older event for the size of the new one.
+      while (index > 0 && myTimes.get(index - 1) > time) {
+        long previousSize = mySizeTotals.get(index - 1) - (index > 1 ? mySizeTotals.get(index - 2) : 0);
+        myTimes.set(index, myTimes.get(index - 1));
+        myRecords.set(index, myRecords.get(index - 1));
+        mySizeTotals.set(index - 1, mySizeTotals.get(index - 1) - previousSize + size);
+        index--;
+      }
+      myTimes.set(index, time);
+      myRecords.set(index, record);
+    }
+
+    /**
+     * Keeps the events of the records that {@code newRecord} maps to a new record, and moves them to it. The events of the other records
+     * are dropped, and the size totals recomputed.
+     */
+    void retainRecords(@NotNull IntUnaryOperator newRecord) {
+      int keptCount = 0;
+      long previousTotal = 0;
+      long keptTotal = 0;
+      for (int i = 0; i < myTimes.size(); i++) {
+        long total = mySizeTotals.get(i);
+        int record = newRecord.applyAsInt((int)myRecords.get(i));
+        if (record >= 0) {
+          keptTotal += total - previousTotal;
+          myTimes.set(keptCount, myTimes.get(i));
+          myRecords.set(keptCount, record);
+          mySizeTotals.set(keptCount, keptTotal);
+          keptCount++;
+        }
+        previousTotal = total;
+      }
+      myTimes.truncate(keptCount);
+      myRecords.truncate(keptCount);
+      mySizeTotals.truncate(keptCount);
+    }
+
+    void dispose() {
+      myTimes.dispose();
+      myRecords.dispose();
+      mySizeTotals.dispose();
+    }
+
+    int size() {
+      return myTimes.size();
+    }
+
+    long getTime(int index) {
+      return myTimes.get(index);
+    }
+
+    int countBefore(long timeNs) {
+      return myTimes.lowerBound(timeNs);
+    }
+
+    long sizeBefore(long timeNs) {
+      int count = myTimes.lowerBound(timeNs);
+      return count == 0 ? 0 : mySizeTotals.get(count - 1);
+    }
+
+    void forEachRecord(long startTimeNs, long endTimeNs, @NotNull IntConsumer consumer) {
+      for (int i = myTimes.lowerBound(startTimeNs), end = myTimes.lowerBound(endTimeNs); i < end; i++) {
+        consumer.accept((int)myRecords.get(i));
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.live;
+
+import com.intellij.util.io.ByteBufferUtil;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An open addressing hash map of int keys to non-negative int values, stored in a direct buffer outside of the Java heap. Entries can't be
+ * removed one by one, putting a key again replaces its value. Replaced buffers are freed right away instead of when they are garbage
+ * collected.
+ */
+final class OffHeapIntIntMap {
+  static final int NO_VALUE = -1;
+
+  @NotNull private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  @NotNull private ByteBuffer myBytes;
+  // Slots hold a key and its value plus one, 0 marking an empty slot.
+  @NotNull private IntBuffer mySlots;
+  private int myMask;
+  private int mySize;
+
+  OffHeapIntIntMap(int initialCapacity) {
+    int capacity = Integer.highestOneBit(Math.max(initialCapacity, 8) * 2 - 1);
+    myBytes = allocate(capacity);
+    mySlots = myBytes.asIntBuffer();
+    myMask = capacity - 1;
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  int get(int key) {
+    for (int slot = hash(key) & myMask; ; slot = (slot + 1) & myMask) {
+      int value = mySlots.get(slot * 2 + 1);
+      if (value == 0) {
+        return NO_VALUE;
+      }
+      if (mySlots.get(slot * 2) == key) {
+        return value - 1;
+      }
+    }
+  }
+
+  /**
+   * Removes all the entries. The buffer is kept, the next entries reuse it.
+   */
+  void clear() {
+    for (int i = 0; i < mySlots.capacity(); i++) {
+      mySlots.put(i, 0);
+    }
+    mySize = 0;
+  }
+
+  /**
+   * Frees the direct buffer. The map is empty, and can't be used, afterwards.
+   */
+  void dispose() {
+    if (myBytes != EMPTY) {
+      ByteBufferUtil.cleanBuffer(myBytes);
+    }
+    myBytes = EMPTY;
+    mySlots = EMPTY.asIntBuffer();
+    myMask = -1;
+    mySize = 0;
+  }
+
+  void put(int key, int value) {
+    assert value >= 0;
+    if ((mySize + 1) * 2 > myMask + 1) {
+      grow();
+    }
+    if (insert(mySlots, myMask, key, value + 1)) {
+      mySize++;
+    }
+  }
+
+  private void grow() {
+    int capacity = (myMask + 1) * 2;
+    ByteBuffer bytes = allocate(capacity);
+    IntBuffer slots = bytes.asIntBuffer();
+    for (int slot = 0; slot <= myMask; slot++) {
+      int value = mySlots.get(slot * 2 + 1);
+      if (value != 0) {
+        insert(slots, capacity - 1, mySlots.get(slot * 2), value);
+      }
+    }
+    ByteBufferUtil.cleanBuffer(myBytes);
+    myBytes = bytes;
+    mySlots = slots;
+    myMask = capacity - 1;
+  }
+
+  /**
+   * @return whether the key was not in the map.
+   */
+  private static boolean insert(@NotNull IntBuffer slots, int mask, int key, int storedValue) {
+    for (int slot = hash(key) & mask; ; slot = (slot + 1) & mask) {
+      int value = slots.get(slot * 2 + 1);
+      if (value == 0 || slots.get(slot * 2) == key) {
+        slots.put(slot * 2, key);
+        slots.put(slot * 2 + 1, storedValue);
+        return value == 0;
+      }
+    }
+  }
+
+  private static int hash(int key) {
+    int hash = key * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  @NotNull
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity * 2 * Integer.BYTES).order(ByteOrder.nativeOrder());
+  }
+}
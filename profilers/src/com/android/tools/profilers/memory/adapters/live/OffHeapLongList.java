@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.live;
+
+import com.intellij.util.io.ByteBufferUtil;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A growable list of longs stored in a direct buffer, outside of the Java heap. Replaced buffers are freed right away instead of when
+ * they are garbage collected.
+ */
+final class OffHeapLongList {
+  @NotNull private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+  @NotNull private ByteBuffer myBytes;
+  @NotNull private LongBuffer myBuffer;
+  private int mySize;
+
+  OffHeapLongList(int initialCapacity) {
+    myBytes = allocate(Math.max(initialCapacity, 1));
+    myBuffer = myBytes.asLongBuffer();
+  }
+
+  int size() {
+    return mySize;
+  }
+
+  long get(int index) {
+    assert index < mySize;
+    return myBuffer.get(index);
+  }
+
+  void set(int index, long value) {
+    assert index < mySize;
+    myBuffer.put(index, value);
+  }
+
+  void add(long value) {
+    if (mySize == myBuffer.capacity()) {
+      ByteBuffer bytes = allocate(mySize * 2);
+      LongBuffer buffer = bytes.asLongBuffer();
+      myBuffer.position(0).limit(mySize);
+      buffer.put(myBuffer);
+      ByteBufferUtil.cleanBuffer(myBytes);
+      myBytes = bytes;
+      myBuffer = buffer;
+    }
+    myBuffer.put(mySize++, value);
+  }
+
+  /**
+   * Drops the values from {@code size} on. The buffer is kept, the next values reuse it.
+   */
+  void truncate(int size) {
+    assert size <= mySize;
+    mySize = size;
+  }
+
+  /**
+   * Frees the direct buffer. The list is empty, and can't be added to, afterwards.
+   */
+  void dispose() {
+    if (myBytes != EMPTY) {
+      ByteBufferUtil.cleanBuffer(myBytes);
+    }
+    myBytes = EMPTY;
+    myBuffer = EMPTY.asLongBuffer();
+    mySize = 0;
+  }
+
+  /**
+   * @return the index of the first value greater than or equal to {@code value}, the values being sorted.
+   */
+  int lowerBound(long value) {
+    int low = 0;
+    int high = mySize;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (myBuffer.get(mid) < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  @NotNull
+  private static ByteBuffer allocate(int capacity) {
+    return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder());
+  }
+}
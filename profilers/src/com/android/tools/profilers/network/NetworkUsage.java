@@ -16,6 +16,7 @@
 package com.android.tools.profilers.network;
 
 import com.android.tools.adtui.model.DataSeries;
+import com.android.tools.adtui.model.DownsampledDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -55,6 +56,12 @@ public class NetworkUsage extends LineChartModel {
 
   @NotNull
   public DataSeries<Long> createSeries(@NotNull StudioProfilers profilers, @NotNull NetworkTrafficDataSeries.Type trafficType) {
+    DataSeries<Long> series = createRawSeries(profilers, trafficType);
+    return profilers.getIdeServices().getFeatureConfig().isTimelineDownsamplingEnabled() ? new DownsampledDataSeries(series) : series;
+  }
+
+  @NotNull
+  private static DataSeries<Long> createRawSeries(@NotNull StudioProfilers profilers, @NotNull NetworkTrafficDataSeries.Type trafficType) {
     if (profilers.getIdeServices().getFeatureConfig().isUnifiedPipelineEnabled()) {
       return new UnifiedEventDataSeries<>(profilers.getClient().getTransportClient(),
                                           profilers.getSession().getStreamId(),
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.sessions;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.text.StringUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Imports a batch of files as sessions. Folders are expanded to the files they contain and zip archives to their entries, which are only
+ * extracted to a temporary folder when they are about to be imported. Files are then read concurrently by at most
+ * {@link #MAX_CONCURRENT_IMPORTS} tasks of the pool executor, and only the registration of each session runs on the main executor, as
+ * soon as its file was read, so it can be selected while the rest of the batch is still imported. Extracted entries are deleted once
+ * they were read, unless their session reads them again later (see {@link SessionsManager.ImportPreparer#readsFileLater()}).
+ */
+public final class BatchSessionImport {
+  private static Logger getLogger() { return Logger.getInstance(BatchSessionImport.class); }
+
+  static final int MAX_CONCURRENT_IMPORTS = 4;
+
+  private static final String ARCHIVE_EXTENSION = "zip";
+
+  /**
+   * Notified on the main executor.
+   */
+  public interface Listener {
+    /**
+     * Called once the files of the batch are known, then each time one of them is imported or failed to import.
+     */
+    default void progressChanged(int completedCount, int totalCount) {}
+
+    /**
+     * Called once every file was imported, failed to import, or the import was cancelled.
+     *
+     * @param failedFiles the files that could not be imported, including the ones with an unknown type and the ones skipped by
+     *                    {@link #cancel()}.
+     */
+    void finished(@NotNull List<File> failedFiles);
+  }
+
+  @NotNull private final Collection<File> myFiles;
+  @NotNull private final Function<File, SessionsManager.ImportPreparer> myPreparers;
+  @NotNull private final Executor myPoolExecutor;
+  @NotNull private final Executor myMainExecutor;
+  @NotNull private final Listener myListener;
+
+  @NotNull private final Queue<PendingFile> myPendingFiles = new ConcurrentLinkedQueue<>();
+  @NotNull private final Queue<File> myFailedFiles = new ConcurrentLinkedQueue<>();
+  /**
+   * Archives stay open while their entries are imported.
+   */
+  @NotNull private final Queue<ZipFile> myArchives = new ConcurrentLinkedQueue<>();
+  /**
+   * The temporary folders entries are extracted to, deleted once the batch is finished unless entries in them are still used.
+   */
+  @NotNull private final Queue<Path> myTemporaryDirectories = new ConcurrentLinkedQueue<>();
+  @NotNull private final AtomicInteger myCompletedCount = new AtomicInteger();
+  private volatile int myTotalCount;
+  private volatile boolean myCancelled;
+
+  /**
+   * @param preparers returns the {@link SessionsManager.ImportPreparer} of a file, or null if its type is unknown.
+   */
+  BatchSessionImport(@NotNull Collection<File> files,
+                     @NotNull Function<File, SessionsManager.ImportPreparer> preparers,
+                     @NotNull Executor poolExecutor,
+                     @NotNull Executor mainExecutor,
+                     @NotNull Listener listener) {
+    myFiles = new ArrayList<>(files);
+    myPreparers = preparers;
+    myPoolExecutor = poolExecutor;
+    myMainExecutor = mainExecutor;
+    myListener = listener;
+  }
+
+  void start() {
+    myPoolExecutor.execute(() -> {
+      List<PendingFile> files = new ArrayList<>();
+      for (File file : myFiles) {
+        if (myCancelled) {
+          myFailedFiles.add(file);
+          continue;
+        }
+        collectFiles(file, files, true);
+      }
+      myPendingFiles.addAll(files);
+      myTotalCount = files.size();
+      myMainExecutor.execute(() -> myListener.progressChanged(0, myTotalCount));
+      if (files.isEmpty()) {
+        finish();
+        return;
+      }
+      AtomicInteger remainingTasks = new AtomicInteger(Math.min(MAX_CONCURRENT_IMPORTS, files.size()));
+      for (int i = remainingTasks.get(); i > 0; --i) {
+        myPoolExecutor.execute(() -> {
+          importPendingFiles();
+          if (remainingTasks.decrementAndGet() == 0) {
+            finish();
+          }
+        });
+      }
+    });
+  }
+
+  /**
+   * Stops importing the files whose session is not registered yet, they are reported as failed. Sessions that were already registered are
+   * kept.
+   */
+  public void cancel() {
+    myCancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return myCancelled;
+  }
+
+  private void importPendingFiles() {
+    PendingFile polledFile;
+    while (!myCancelled && (polledFile = myPendingFiles.poll()) != null) {
+      PendingFile pendingFile = polledFile;
+      File file = pendingFile.extract();
+      SessionsManager.ImportPreparer preparer = file == null ? null : myPreparers.apply(file);
+      Runnable register = preparer == null ? null : prepare(preparer, file);
+      boolean keepFile = register != null && preparer.readsFileLater();
+      if (keepFile) {
+        pendingFile.deleteExtractedFileOnExit();
+      }
+      else {
+        pendingFile.deleteExtractedFile();
+      }
+      myMainExecutor.execute(() -> {
+        if (register != null && !myCancelled) {
+          register.run();
+        }
+        else {
+          // Files read after the import was cancelled are not registered either.
+          myFailedFiles.add(pendingFile.myFile);
+          if (keepFile) {
+            pendingFile.deleteExtractedFile();
+          }
+        }
+        myListener.progressChanged(myCompletedCount.incrementAndGet(), myTotalCount);
+      });
+    }
+  }
+
+  @Nullable
+  private static Runnable prepare(@NotNull SessionsManager.ImportPreparer preparer, @NotNull File file) {
+    try {
+      return preparer.prepare(file);
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Importing Session Failed: cannot read from %s.", file.getPath()), e);
+      return null;
+    }
+  }
+
+  private void finish() {
+    ZipFile archive;
+    while ((archive = myArchives.poll()) != null) {
+      try {
+        archive.close();
+      }
+      catch (IOException e) {
+        getLogger().warn(e);
+      }
+    }
+    Path directory;
+    while ((directory = myTemporaryDirectories.poll()) != null) {
+      try {
+        Files.deleteIfExists(directory);
+      }
+      catch (DirectoryNotEmptyException ignored) {
+        // Some entries are still used by their session, the folder is deleted on exit.
+      }
+      catch (IOException e) {
+        getLogger().warn(e);
+      }
+    }
+    // Posted after every registration, since the main executor runs tasks in order.
+    myMainExecutor.execute(() -> {
+      List<File> failedFiles = new ArrayList<>(myFailedFiles);
+      if (myCancelled) {
+        myPendingFiles.forEach(pendingFile -> failedFiles.add(pendingFile.myFile));
+      }
+      myListener.finished(Collections.unmodifiableList(failedFiles));
+    });
+  }
+
+  /**
+   * @param selected whether the file was given to the batch, otherwise it was found in one of the given folders and is skipped if its
+   *                 type is unknown.
+   */
+  private void collectFiles(@NotNull File file, @NotNull List<PendingFile> files, boolean selected) {
+    if (file.isDirectory()) {
+      File[] children = file.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          collectFiles(child, files, false);
+        }
+      }
+    }
+    else if (ARCHIVE_EXTENSION.equals(getExtension(file))) {
+      collectEntries(file, files);
+    }
+    else if (selected || myPreparers.apply(file) != null) {
+      files.add(new PendingFile(file, null, null, null));
+    }
+  }
+
+  /**
+   * Lists the entries of a zip archive that can be imported, without extracting them.
+   */
+  private void collectEntries(@NotNull File archive, @NotNull List<PendingFile> files) {
+    ZipFile zipFile = null;
+    try {
+      zipFile = new ZipFile(archive);
+      Path directory = Files.createTempDirectory("profiler-import");
+      // Registered before the entries kept until exit, so it is deleted after them.
+      directory.toFile().deleteOnExit();
+      myTemporaryDirectories.add(directory);
+      List<PendingFile> archiveFiles = new ArrayList<>();
+      Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      int index = 0;
+      while (entries.hasMoreElements()) {
+        ZipEntry entry = entries.nextElement();
+        // Only keep the name of the entry, so nothing is written outside of the temporary directory.
+        String name = new File(entry.getName()).getName();
+        if (entry.isDirectory() || myPreparers.apply(new File(name)) == null) {
+          continue;
+        }
+        // Entries from different folders of the archive can have the same name, and the name of the file is the name of the session.
+        Path path = directory.resolve(Integer.toString(index++)).resolve(name);
+        archiveFiles.add(new PendingFile(new File(archive, entry.getName()), zipFile, entry, path));
+      }
+      files.addAll(archiveFiles);
+      myArchives.add(zipFile);
+    }
+    catch (IOException e) {
+      getLogger().warn(String.format("Importing Session Failed: cannot extract %s.", archive.getPath()), e);
+      myFailedFiles.add(archive);
+      if (zipFile != null) {
+        try {
+          zipFile.close();
+        }
+        catch (IOException closeException) {
+          getLogger().warn(closeException);
+        }
+      }
+    }
+  }
+
+  /**
+   * A file of the batch, or an entry of one of its archives.
+   */
+  private static final class PendingFile {
+    /**
+     * The file reported to the {@link Listener}. For an entry, this is the path of the entry under the archive.
+     */
+    @NotNull private final File myFile;
+    @Nullable private final ZipFile myArchive;
+    @Nullable private final ZipEntry myEntry;
+    @Nullable private final Path myExtractedPath;
+
+    private PendingFile(@NotNull File file, @Nullable ZipFile archive, @Nullable ZipEntry entry, @Nullable Path extractedPath) {
+      myFile = file;
+      myArchive = archive;
+      myEntry = entry;
+      myExtractedPath = extractedPath;
+    }
+
+    /**
+     * Extracts the entry to its temporary file. Entries keep their modification time, since imported sessions are identified by the
+     * creation time of their file.
+     *
+     * @return the file to import, or null if the entry could not be extracted.
+     */
+    @Nullable
+    File extract() {
+      if (myArchive == null || myEntry == null || myExtractedPath == null) {
+        return myFile;
+      }
+      try {
+        Files.createDirectory(myExtractedPath.getParent());
+        try (InputStream input = myArchive.getInputStream(myEntry)) {
+          Files.copy(input, myExtractedPath);
+        }
+        if (myEntry.getTime() != -1) {
+          FileTime time = FileTime.fromMillis(myEntry.getTime());
+          Files.getFileAttributeView(myExtractedPath, BasicFileAttributeView.class).setTimes(time, null, time);
+        }
+        return myExtractedPath.toFile();
+      }
+      catch (IOException e) {
+        getLogger().warn(String.format("Importing Session Failed: cannot extract %s.", myFile.getPath()), e);
+        return null;
+      }
+    }
+
+    /**
+     * Deletes the extracted entry and its folder, if any.
+     */
+    void deleteExtractedFile() {
+      if (myExtractedPath == null) {
+        return;
+      }
+      try {
+        Files.deleteIfExists(myExtractedPath);
+        Files.deleteIfExists(myExtractedPath.getParent());
+      }
+      catch (IOException e) {
+        getLogger().warn(e);
+      }
+    }
+
+    /**
+     * Keeps the extracted entry, if any, until the IDE exits.
+     */
+    void deleteExtractedFileOnExit() {
+      if (myExtractedPath == null) {
+        return;
+      }
+      // Files registered later are deleted first, so the folders are empty by the time they are deleted.
+      myExtractedPath.getParent().toFile().deleteOnExit();
+      myExtractedPath.toFile().deleteOnExit();
+    }
+  }
+
+  @NotNull
+  static String getExtension(@NotNull File file) {
+    int indexOfDot = file.getName().lastIndexOf('.');
+    return indexOfDot == -1 ? "" : StringUtil.toLowerCase(file.getName().substring(indexOfDot + 1));
+  }
+}
@@ -48,10 +48,10 @@ import com.android.tools.profilers.cpu.CpuCaptureSessionArtifact;
 import com.android.tools.profilers.memory.HprofSessionArtifact;
 import com.android.tools.profilers.memory.LegacyAllocationsSessionArtifact;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.util.text.StringUtil;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -88,6 +88,44 @@ public class SessionsManager extends AspectModel<SessionAspect> {
                                 @NotNull Common.SessionMetaData sessionMetaData);
   }
 
+  /**
+   * Gives access to sessions that were archived by a previous run. Archived sessions are listed from their headers only, their data is
+   * loaded the first time they are selected.
+   */
+  public interface ArchivedSessionHandler {
+    /**
+     * Loads the data of the session if it was restored from an archive and has not been loaded yet, does nothing otherwise.
+     */
+    void load(long sessionId);
+
+    /**
+     * Deletes the archive of the session, if it has one.
+     */
+    void delete(long sessionId);
+  }
+
+  /**
+   * Imports a file in two steps, so batches of files can be imported concurrently (see {@link BatchSessionImport}).
+   */
+  public interface ImportPreparer {
+    /**
+     * Reads what the session needs from the file. This runs on a thread from the pool when importing a batch of files, so it should not
+     * touch the state of the profilers.
+     *
+     * @return a runnable that registers the session, and which is run on the main thread.
+     */
+    @NotNull
+    Runnable prepare(@NotNull File file) throws IOException;
+
+    /**
+     * @return whether the session reads the file again after it was registered, e.g. to parse it once it is selected. Otherwise, files
+     * extracted from archives are deleted as soon as their session is registered.
+     */
+    default boolean readsFileLater() {
+      return false;
+    }
+  }
+
   private static final SessionArtifactComparator ARTIFACT_COMPARATOR = new SessionArtifactComparator();
 
   @NotNull private final StudioProfilers myProfilers;
@@ -126,10 +164,12 @@ public class SessionsManager extends AspectModel<SessionAspect> {
   /**
    * A list of handlers that import sessions based on their file types.
    */
-  private final Map<String, Consumer<File>> myImportHandlers = new HashMap<>();
+  private final Map<String, ImportPreparer> myImportHandlers = new HashMap<>();
 
   private int importedSessionCount = 0;
 
+  @Nullable private ArchivedSessionHandler myArchivedSessionHandler;
+
   /**
    * A list of functions that should be called for each {@link Common.Session} for retrieving its data artifacts.
    */
@@ -315,6 +355,10 @@ public class SessionsManager extends AspectModel<SessionAspect> {
     return sessionItem;
   }
 
+  public void setArchivedSessionHandler(@Nullable ArchivedSessionHandler handler) {
+    myArchivedSessionHandler = handler;
+  }
+
   /**
    * Select the session with the matching id if one exists.
    *
@@ -353,6 +397,9 @@ public class SessionsManager extends AspectModel<SessionAspect> {
     }
 
     mySelectedSession = session;
+    if (myArchivedSessionHandler != null && !Common.Session.getDefaultInstance().equals(session)) {
+      myArchivedSessionHandler.load(session.getSessionId());
+    }
     changed(SessionAspect.SELECTED_SESSION);
   }
 
@@ -497,6 +544,9 @@ public class SessionsManager extends AspectModel<SessionAspect> {
         .setToTimestamp(session.getEndTimestamp())
         .build();
       myProfilers.getClient().getTransportClient().deleteEvents(deleteRequest);
+      if (myArchivedSessionHandler != null) {
+        myArchivedSessionHandler.delete(session.getSessionId());
+      }
     }
     else {
       DeleteSessionRequest request = DeleteSessionRequest.newBuilder().setSessionId(session.getSessionId()).build();
@@ -612,7 +662,29 @@ public class SessionsManager extends AspectModel<SessionAspect> {
    * @param handler   handles the file imported
    */
   public void registerImportHandler(@NotNull String extension, @NotNull Consumer<File> handler) {
-    myImportHandlers.put(extension, handler);
+    myImportHandlers.put(extension, new ImportPreparer() {
+      @NotNull
+      @Override
+      public Runnable prepare(@NotNull File file) {
+        return () -> handler.accept(file);
+      }
+
+      @Override
+      public boolean readsFileLater() {
+        // The handler may keep the file and read it at any time.
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Register the import handler for a specific extension, whose reading part can run in the background when importing a batch of files.
+   *
+   * @param extension extension of the file
+   * @param preparer  reads the file imported and returns how to register its session
+   */
+  public void registerImportPreparer(@NotNull String extension, @NotNull ImportPreparer preparer) {
+    myImportHandlers.put(extension, preparer);
   }
 
   /**
@@ -622,18 +694,40 @@ public class SessionsManager extends AspectModel<SessionAspect> {
    * @return true if import was successful, or false otherwise.
    */
   public boolean importSessionFromFile(@NotNull File file) {
-    int indexOfDot = file.getName().lastIndexOf('.');
-    if (indexOfDot == -1) {
+    ImportPreparer preparer = myImportHandlers.get(BatchSessionImport.getExtension(file));
+    if (preparer == null) {
       return false;
     }
-    String extension = StringUtil.toLowerCase(file.getName().substring(indexOfDot + 1));
-    if (myImportHandlers.get(extension) == null) {
+    try {
+      preparer.prepare(file).run();
+    }
+    catch (IOException e) {
+      getLogger().error(String.format("Importing Session Failed: cannot read from %s.", file.getPath()));
       return false;
     }
-    myImportHandlers.get(extension).accept(file);
     return true;
   }
 
+  /**
+   * Imports sessions from many files at once. Folders are imported with the files they contain and zip archives with their entries.
+   * Files are read on the pool executor and only the registration of each session runs on the main executor, as soon as its file was
+   * read.
+   *
+   * @param files    the files, folders or archives to import.
+   * @param listener notified of the progress of the import, on the main executor.
+   * @return the import, which can be cancelled.
+   */
+  @NotNull
+  public BatchSessionImport importSessionsFromFiles(@NotNull Collection<File> files, @NotNull BatchSessionImport.Listener listener) {
+    BatchSessionImport batch = new BatchSessionImport(files,
+                                                      file -> myImportHandlers.get(BatchSessionImport.getExtension(file)),
+                                                      myProfilers.getIdeServices().getPoolExecutor(),
+                                                      myProfilers.getIdeServices().getMainExecutor(),
+                                                      listener);
+    batch.start();
+    return batch;
+  }
+
   /**
    * Return a unique Session ID
    */
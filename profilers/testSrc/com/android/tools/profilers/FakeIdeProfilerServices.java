@@ -143,6 +143,51 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
    */
   private boolean myIsCpuApiTracingEnabled = false;
 
+  /**
+   * Toggle for faking {@link FeatureConfig#isTimelineDownsamplingEnabled()} in tests.
+   */
+  private boolean myTimelineDownsamplingEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isIncrementalLineChartsEnabled()} in tests.
+   */
+  private boolean myIncrementalLineChartsEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isParallelDominatorsEnabled()} in tests.
+   */
+  private boolean myParallelDominatorsEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isLiveAllocationIndexEnabled()} in tests.
+   */
+  private boolean myLiveAllocationIndexEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isParallelTraceParsingEnabled()} in tests.
+   */
+  private boolean myParallelTraceParsingEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isPerfettoNativeImportEnabled()} in tests.
+   */
+  private boolean myPerfettoNativeImportEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isPersistentSessionsEnabled()} in tests.
+   */
+  private boolean myPersistentSessionsEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isAsyncCallTreeUpdateEnabled()} in tests.
+   */
+  private boolean myAsyncCallTreeUpdateEnabled = false;
+
+  /**
+   * Toggle for faking {@link FeatureConfig#isBatchSessionImportEnabled()} in tests.
+   */
+  private boolean myBatchSessionImportEnabled = false;
+
   /**
    * Whether the new pipeline is used or the old one for devices / processes / sessions.
    */
@@ -268,11 +313,21 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
   @Override
   public FeatureConfig getFeatureConfig() {
     return new FeatureConfig() {
+      @Override
+      public boolean isAsyncCallTreeUpdateEnabled() {
+        return myAsyncCallTreeUpdateEnabled;
+      }
+
       @Override
       public boolean isAtraceEnabled() {
         return myAtraceEnabled;
       }
 
+      @Override
+      public boolean isBatchSessionImportEnabled() {
+        return myBatchSessionImportEnabled;
+      }
+
       @Override
       public boolean isCpuApiTracingEnabled() {
         return myIsCpuApiTracingEnabled;
@@ -306,9 +361,19 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return myImportCpuTraceEnabled;
       }
 
+      @Override
+      public boolean isIncrementalLineChartsEnabled() {
+        return myIncrementalLineChartsEnabled;
+      }
+
       @Override
       public boolean isJniReferenceTrackingEnabled() { return myIsJniReferenceTrackingEnabled; }
 
+      @Override
+      public boolean isLiveAllocationIndexEnabled() {
+        return myLiveAllocationIndexEnabled;
+      }
+
       @Override
       public boolean isLiveAllocationsEnabled() {
         return myLiveTrackingEnabled;
@@ -329,6 +394,21 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return myMemorySnapshotEnabled;
       }
 
+      @Override
+      public boolean isParallelDominatorsEnabled() {
+        return myParallelDominatorsEnabled;
+      }
+
+      @Override
+      public boolean isParallelTraceParsingEnabled() {
+        return myParallelTraceParsingEnabled;
+      }
+
+      @Override
+      public boolean isPerfettoNativeImportEnabled() {
+        return myPerfettoNativeImportEnabled;
+      }
+
       @Override
       public boolean isPerfettoEnabled() { return myPerfettoEnabled; }
 
@@ -337,6 +417,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return false;
       }
 
+      @Override
+      public boolean isPersistentSessionsEnabled() {
+        return myPersistentSessionsEnabled;
+      }
+
       @Override
       public boolean isAuditsEnabled() { return isAuditsEnabled; }
 
@@ -360,6 +445,11 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
         return myStartupCpuProfilingEnabled;
       }
 
+      @Override
+      public boolean isTimelineDownsamplingEnabled() {
+        return myTimelineDownsamplingEnabled;
+      }
+
       @Override
       public boolean isUnifiedPipelineEnabled() {
         return myEventsPipelineEnabled;
@@ -514,4 +604,22 @@ public final class FakeIdeProfilerServices implements IdeProfilerServices {
   public void enableCpuCaptureStage(boolean enabled) { myIsCaptureStageEnabled = enabled; }
 
   public void enableCustomEventVisualization(boolean enabled) { myCustomEventVisualizationEnabled = enabled; }
+
+  public void enableTimelineDownsampling(boolean enabled) { myTimelineDownsamplingEnabled = enabled; }
+
+  public void enableIncrementalLineCharts(boolean enabled) { myIncrementalLineChartsEnabled = enabled; }
+
+  public void enableParallelDominators(boolean enabled) { myParallelDominatorsEnabled = enabled; }
+
+  public void enableLiveAllocationIndex(boolean enabled) { myLiveAllocationIndexEnabled = enabled; }
+
+  public void enableParallelTraceParsing(boolean enabled) { myParallelTraceParsingEnabled = enabled; }
+
+  public void enablePerfettoNativeImport(boolean enabled) { myPerfettoNativeImportEnabled = enabled; }
+
+  public void enablePersistentSessions(boolean enabled) { myPersistentSessionsEnabled = enabled; }
+
+  public void enableAsyncCallTreeUpdate(boolean enabled) { myAsyncCallTreeUpdateEnabled = enabled; }
+
+  public void enableBatchSessionImport(boolean enabled) { myBatchSessionImportEnabled = enabled; }
 }
@@ -19,8 +19,11 @@ import com.android.tools.perflib.vmtrace.ClockType;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class CaptureNodeTest {
 
@@ -62,4 +65,51 @@ public class CaptureNodeTest {
     assertEquals(10, node.getEnd());
     assertEquals(10, node.getDuration());
   }
-}
\ No newline at end of file
+
+  @Test
+  public void filterTypeAndClockTypeAreIndependent() {
+    CaptureNode node = new CaptureNode(new StubCaptureNodeModel());
+    assertEquals(CaptureNode.FilterType.MATCH, node.getFilterType());
+
+    node.setClockType(ClockType.THREAD);
+    node.setFilterType(CaptureNode.FilterType.UNMATCH);
+    assertEquals(ClockType.THREAD, node.getClockType());
+    assertEquals(CaptureNode.FilterType.UNMATCH, node.getFilterType());
+
+    node.setClockType(ClockType.GLOBAL);
+    node.setFilterType(CaptureNode.FilterType.EXACT_MATCH);
+    assertEquals(ClockType.GLOBAL, node.getClockType());
+    assertEquals(CaptureNode.FilterType.EXACT_MATCH, node.getFilterType());
+  }
+
+  @Test
+  public void childrenKeepInsertionOrder() {
+    CaptureNode node = new CaptureNode(new StubCaptureNodeModel());
+    assertEquals(0, node.getChildren().size());
+
+    CaptureNode[] children = new CaptureNode[5];
+    for (int i = 0; i < children.length; i++) {
+      children[i] = new CaptureNode(new StubCaptureNodeModel());
+      node.addChild(children[i]);
+    }
+    assertEquals(children.length, node.getChildCount());
+    assertEquals(Arrays.asList(children), node.getChildren());
+    for (int i = 0; i < children.length; i++) {
+      assertSame(children[i], node.getChildAt(i));
+      assertSame(node, children[i].getParent());
+    }
+  }
+
+  @Test
+  public void childrenViewIsReusedAndFollowsNewChildren() {
+    CaptureNode node = new CaptureNode(new StubCaptureNodeModel());
+    CaptureNode first = new CaptureNode(new StubCaptureNodeModel());
+    node.addChild(first);
+    List<CaptureNode> children = node.getChildren();
+    assertSame(children, node.getChildren());
+
+    CaptureNode second = new CaptureNode(new StubCaptureNodeModel());
+    node.addChild(second);
+    assertEquals(Arrays.asList(first, second), children);
+  }
+}
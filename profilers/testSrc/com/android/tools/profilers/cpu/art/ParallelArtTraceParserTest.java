@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.art;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CpuCapture;
+import com.android.tools.profilers.cpu.CpuProfilerTestUtils;
+import com.android.tools.profilers.cpu.CpuThreadInfo;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+
+public class ParallelArtTraceParserTest {
+  @Test
+  public void sameTreesAsArtTraceParser() throws IOException {
+    for (String traceName : new String[]{"basic.trace", "valid_trace.trace"}) {
+      File trace = CpuProfilerTestUtils.getTraceFile(traceName);
+      ArtTraceParser expectedParser = new ArtTraceParser();
+      CpuCapture expected = expectedParser.parse(trace, 1);
+      ParallelArtTraceParser parser = new ParallelArtTraceParser(new ForkJoinPool(4));
+      CpuCapture capture = parser.parse(trace, 1);
+
+      assertThat(capture.getMainThreadId()).isEqualTo(expected.getMainThreadId());
+      assertThat(parser.getRange().getMin()).isEqualTo(expectedParser.getRange().getMin());
+      assertThat(parser.getRange().getMax()).isEqualTo(expectedParser.getRange().getMax());
+
+      Map<CpuThreadInfo, CaptureNode> expectedTrees = expectedParser.getCaptureTrees();
+      assertThat(parser.getCaptureTrees()).hasSize(expectedTrees.size());
+      for (Map.Entry<CpuThreadInfo, CaptureNode> entry : expectedTrees.entrySet()) {
+        CaptureNode node = capture.getCaptureNode(entry.getKey().getId());
+        assertThat(node).isNotNull();
+        assertSameTree(node, entry.getValue());
+      }
+    }
+  }
+
+  @Test(expected = NumberFormatException.class)
+  public void corruptedTraceFails() throws IOException {
+    // One of the thread ids of the header isn't a number.
+    new ParallelArtTraceParser(ForkJoinPool.commonPool()).parse(CpuProfilerTestUtils.getTraceFile("corrupted_trace.trace"), 1);
+  }
+
+  @Test
+  public void headerDetection() {
+    assertThat(ParallelArtTraceParser.verifyFileHasArtTextHeader(CpuProfilerTestUtils.getTraceFile("valid_trace.trace"))).isTrue();
+    assertThat(ParallelArtTraceParser.verifyFileHasArtTraceHeader(CpuProfilerTestUtils.getTraceFile("valid_trace.trace"))).isTrue();
+    assertThat(ParallelArtTraceParser.verifyFileHasArtTraceHeader(CpuProfilerTestUtils.getTraceFile("simpleperf_callchain.trace")))
+      .isFalse();
+    assertThat(ParallelArtTraceParser.verifyFileHasArtTraceHeader(CpuProfilerTestUtils.getTraceFile("empty_trace.trace"))).isFalse();
+  }
+
+  private static void assertSameTree(CaptureNode node, CaptureNode expected) {
+    assertThat(node.getData().getId()).isEqualTo(expected.getData().getId());
+    assertThat(node.getStartGlobal()).isEqualTo(expected.getStartGlobal());
+    assertThat(node.getEndGlobal()).isEqualTo(expected.getEndGlobal());
+    assertThat(node.getStartThread()).isEqualTo(expected.getStartThread());
+    assertThat(node.getEndThread()).isEqualTo(expected.getEndThread());
+    assertThat(node.getDepth()).isEqualTo(expected.getDepth());
+    assertThat(node.getChildCount()).isEqualTo(expected.getChildCount());
+    for (int i = 0; i < node.getChildCount(); i++) {
+      assertSameTree(node.getChildren().get(i), expected.getChildren().get(i));
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.android.tools.profilers.cpu.atrace
 
 import com.android.tools.adtui.model.Range
+import com.android.tools.profilers.cpu.CaptureNode
 import com.android.tools.profilers.cpu.CpuCapture
 import com.android.tools.profilers.cpu.CpuProfilerStage
 import com.android.tools.profilers.cpu.CpuProfilerTestUtils
@@ -227,6 +228,44 @@ class AtraceParserTest {
     assertThat(parser.getProcessList("")).isNotEmpty()
   }
 
+  @Test
+  fun perfettoNativeImportMatchesTextImport() {
+    val textParser = AtraceParser(CpuProfilerTestUtils.getTraceFile("perfetto.trace"))
+    val nativeParser = AtraceParser(CpuProfilerTestUtils.getTraceFile("perfetto.trace"), true)
+    assertThat(nativeParser.getProcessList("").map { it.processId })
+      .containsExactlyElementsIn(textParser.getProcessList("").map { it.processId })
+    val textProcess = textParser.getProcessList("")[0]
+    textParser.setSelectProcess(textProcess)
+    nativeParser.setSelectProcess(nativeParser.getProcessList("").first { it.processId == textProcess.processId })
+    val textCapture = textParser.parse(CpuProfilerTestUtils.getTraceFile("perfetto.trace"), 0)
+    val nativeCapture = nativeParser.parse(CpuProfilerTestUtils.getTraceFile("perfetto.trace"), 0)
+    assertThat(nativeCapture.range.min).isWithin(DELTA).of(textCapture.range.min)
+    assertThat(nativeCapture.range.max).isWithin(DELTA).of(textCapture.range.max)
+    assertThat(nativeParser.cpuThreadSliceInfoStates.keys).containsExactlyElementsIn(textParser.cpuThreadSliceInfoStates.keys)
+    for ((cpu, textStates) in textParser.cpuThreadSliceInfoStates) {
+      assertThat(nativeParser.cpuThreadSliceInfoStates[cpu]!!.map { it.x to it.value.id })
+        .containsExactlyElementsIn(textStates.map { it.x to it.value.id }).inOrder()
+    }
+
+    assertThat(nativeParser.threadStateDataSeries.keys).containsExactlyElementsIn(textParser.threadStateDataSeries.keys)
+    for ((threadId, textStates) in textParser.threadStateDataSeries) {
+      assertThat(nativeParser.threadStateDataSeries[threadId]!!.map { it.x to it.value })
+        .containsExactlyElementsIn(textStates.map { it.x to it.value }).inOrder()
+    }
+
+    val nativeTrees = nativeParser.captureTrees.mapKeys { it.key.id }
+    assertThat(nativeTrees.keys).containsExactlyElementsIn(textParser.captureTrees.keys.map { it.id })
+    for ((thread, textTree) in textParser.captureTrees) {
+      assertThat(flattenSlices(nativeTrees[thread.id]!!)).containsExactlyElementsIn(flattenSlices(textTree)).inOrder()
+    }
+  }
+
+  /**
+   * Lists the slices of a capture tree in depth-first order, as their name, start, end and depth.
+   */
+  private fun flattenSlices(node: CaptureNode): List<String> =
+    listOf("${node.data.name} ${node.start} ${node.end} ${node.depth}") + node.children.flatMap { flattenSlices(it) }
+
   companion object {
     private val DELTA = .00000001
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Random;
+import org.junit.Test;
+
+public class IntervalCoverageTest {
+  @Test
+  public void overlappingIntervalsAreCountedSeparately() {
+    // [0, 10], [5, 15] and [20, 30]
+    IntervalCoverage coverage = IntervalCoverage.of(new long[]{0, 5, 20}, new long[]{10, 15, 30});
+    assertThat(coverage.getLength(-100, 100)).isWithin(0).of(30);
+    assertThat(coverage.getLength(5, 10)).isWithin(0).of(10);
+    assertThat(coverage.getLength(12, 25)).isWithin(0).of(8);
+    assertThat(coverage.getLength(15, 20)).isWithin(0).of(0);
+    assertThat(coverage.getLength(10, 5)).isWithin(0).of(0);
+    assertThat(coverage.getLength(-Double.MAX_VALUE, Double.MAX_VALUE)).isWithin(0).of(30);
+  }
+
+  @Test
+  public void unionCountsOverlapsOnce() {
+    IntervalCoverage coverage = IntervalCoverage.union(new long[]{5, 0, 20, 21}, new long[]{15, 10, 30, 22});
+    assertThat(coverage.getLength(-100, 100)).isWithin(0).of(25);
+    assertThat(coverage.getLength(5, 10)).isWithin(0).of(5);
+    assertThat(coverage.getLength(20, 25)).isWithin(0).of(5);
+  }
+
+  @Test
+  public void intersectsConsidersEmptyIntervals() {
+    IntervalCoverage coverage = IntervalCoverage.of(new long[]{0, 20}, new long[]{10, 20});
+    assertThat(coverage.getLength(15, 25)).isWithin(0).of(0);
+    assertThat(coverage.intersects(15, 25)).isTrue();
+    assertThat(coverage.intersects(11, 19)).isFalse();
+    assertThat(coverage.intersects(10, 19)).isFalse();
+    assertThat(coverage.intersects(9, 19)).isTrue();
+    assertThat(IntervalCoverage.EMPTY.intersects(-100, 100)).isFalse();
+  }
+
+  @Test
+  public void matchesSumOfIntersections() {
+    Random random = new Random(42);
+    int count = 1000;
+    long[] starts = new long[count];
+    long[] ends = new long[count];
+    for (int i = 0; i < count; i++) {
+      starts[i] = random.nextInt(10_000);
+      ends[i] = starts[i] + random.nextInt(500) - 50;
+    }
+    IntervalCoverage coverage = IntervalCoverage.of(starts, ends);
+    for (int query = 0; query < 100; query++) {
+      double min = random.nextInt(11_000) - 500;
+      double max = min + random.nextInt(3_000);
+      double expected = 0;
+      boolean expectedIntersects = false;
+      for (int i = 0; i < count; i++) {
+        if (ends[i] > starts[i]) {
+          expected += Math.max(0, Math.min(max, ends[i]) - Math.max(min, starts[i]));
+        }
+        expectedIntersects |= starts[i] < max && min < ends[i];
+      }
+      assertThat(coverage.getLength(min, max)).isWithin(1e-6).of(expected);
+      assertThat(coverage.intersects(min, max)).isEqualTo(expectedIntersects);
+    }
+  }
+}
@@ -24,7 +24,9 @@ import org.junit.Test;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.TreeNode;
+import java.util.ArrayDeque;
 import java.util.HashSet;
+import java.util.Queue;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
@@ -121,6 +123,36 @@ public class TopDownTreeModelTest {
     Truth.assertThat(treeModelChangeCount[0]).isEqualTo(1);
   }
 
+  @Test
+  public void testAsyncUpdateDropsStaleRanges() {
+    CaptureNode tree = TopDownNodeTest.createTree();
+    TopDownNode topDown = new TopDownNode(tree);
+
+    Range range = new Range(-Double.MAX_VALUE, Double.MAX_VALUE);
+    CpuTreeModel model = new TopDownTreeModel(range, topDown);
+    Queue<Runnable> poolTasks = new ArrayDeque<>();
+    Queue<Runnable> mainTasks = new ArrayDeque<>();
+    model.setUpdateExecutors(poolTasks::add, mainTasks::add);
+
+    range.set(0, 10);
+    range.set(8, 25);
+    // Nothing changes until the totals have been computed and applied.
+    TreeNode root = (TreeNode)model.getRoot();
+    assertEquals(30, getTotal(root, "A"), 0);
+    assertEquals(ImmutableSet.of("D", "E", "G"), getChildrenIds(getChild(root, "B")));
+
+    while (!poolTasks.isEmpty() || !mainTasks.isEmpty()) {
+      Queue<Runnable> tasks = poolTasks.isEmpty() ? mainTasks : poolTasks;
+      tasks.poll().run();
+    }
+
+    // Only the last range is applied.
+    assertEquals(    17, getTotal(root, "A"), 0);
+    assertEquals(ImmutableSet.of("E"), getChildrenIds(getChild(root, "B")));
+    assertEquals( 1 + 3, getTotal(root, "A", "B", "E"), 0);
+    assertEquals(     2, getChildrenTotal(root, "A", "C"), 0);
+  }
+
   private static double getTotal(TreeNode node, String id, String... ids) {
     node = getNode(node, id, ids);
     return getTotal(node);
@@ -43,6 +43,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -50,6 +51,8 @@ import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -141,6 +144,71 @@ public class HeapDumpCaptureObjectTest {
     assertEquals(reference1.getReferenceInstance(), instance0);
   }
 
+  @Test
+  public void testDominatorsAreComputedInBackground() throws Exception {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(3), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    List<Runnable> joinedTasks = new ArrayList<>();
+    capture.load(null, joinedTasks::add);
+    // The histogram is available right away.
+    assertTrue(capture.isDoneLoading());
+    HeapSet testHeap = capture.getHeapSets().stream().filter(heap -> "testHeap".equals(heap.getName())).findFirst().orElse(null);
+    assertNotNull(testHeap);
+    assertEquals(6, testHeap.getInstancesCount());
+
+    assertTrue(capture.isComputingRetainedSizes());
+
+    // Wait for the dominators to be computed on the background executor. They are only reported as available once applied.
+    capture.getDominatorExecutor().submit(() -> {}).get();
+    assertFalse(capture.getDominatorsFuture().isDone());
+    Truth.assertThat(joinedTasks).hasSize(capture.getHeapSets().size());
+    joinedTasks.forEach(Runnable::run);
+    assertTrue(capture.getDominatorsFuture().isDone());
+    assertFalse(capture.isComputingRetainedSizes());
+    assertEquals(6, testHeap.getInstancesCount());
+    Truth.assertThat(testHeap.getTotalRetainedSize()).isGreaterThan(0L);
+
+    // Unloading unmaps and deletes the spilled heap dump once the background tasks are done.
+    File heapDumpFile = capture.getHeapDumpFile();
+    assertNotNull(heapDumpFile);
+    capture.unload();
+    assertTrue(capture.getDominatorExecutor().awaitTermination(10, TimeUnit.SECONDS));
+    assertFalse(heapDumpFile.exists());
+  }
+
+  @Test
+  public void testInstanceFiltersWaitForDominators() throws Exception {
+    HeapDumpInfo dumpInfo = HeapDumpInfo.newBuilder().setStartTime(3).setEndTime(8).build();
+    HeapDumpCaptureObject capture =
+      new HeapDumpCaptureObject(new ProfilerClient(myGrpcChannel.getName()), ProfilersTestData.SESSION_DATA,
+                                dumpInfo, null, myIdeProfilerServices.getFeatureTracker(), myStage);
+    SnapshotBuilder snapshotBuilder = new SnapshotBuilder(2, 0, 0)
+      .addReferences(1, 2)
+      .addRoot(1);
+    myTransportService.addFile(Long.toString(3), ByteString.copyFrom(snapshotBuilder.getByteBuffer()));
+    List<Runnable> joinedTasks = new ArrayList<>();
+    capture.load(null, joinedTasks::add);
+    capture.getDominatorExecutor().submit(() -> {}).get();
+
+    CaptureObjectInstanceFilter filter = capture.getSupportedInstanceFilters().iterator().next();
+    List<Runnable> analyzedTasks = new ArrayList<>();
+    capture.addInstanceFilter(filter, analyzedTasks::add);
+    // The filter runs once the heap sets have their depths.
+    Future<?> filtered = capture.getInstanceFilterExecutor().submit(() -> {});
+    assertFalse(filtered.isDone());
+    joinedTasks.forEach(Runnable::run);
+    filtered.get(10, TimeUnit.SECONDS);
+    Truth.assertThat(analyzedTasks).hasSize(1);
+    capture.unload();
+  }
+
   @Test
   public void testDefaultHeapShowsUpWhenItIsNonEmpty() throws Exception {
     long startTimeNs = 3;
@@ -42,9 +42,12 @@ import com.android.tools.profilers.memory.MemoryProfilerConfiguration;
 import com.android.tools.profilers.memory.MemoryProfilerStage;
 import com.android.tools.profilers.stacktrace.NativeFrameSymbolizer;
 import com.google.common.util.concurrent.MoreExecutors;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
@@ -213,6 +216,61 @@ public class LiveAllocationCaptureObjectTest {
       verifyClassifierResult(heapSet, expected_0_to_4, 0);
     }
 
+    @Test
+    public void testAllocationIndexCountsMatch() throws Exception {
+      long startUs = CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(2);
+      long endUs = CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(6);
+      Range loadRange = new Range(startUs, endUs);
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+      capture.load(loadRange, LOAD_JOINER);
+
+      myIdeProfilerServices.enableLiveAllocationIndex(true);
+      Range indexedLoadRange = new Range(startUs, endUs);
+      LiveAllocationCaptureObject indexedCapture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                                   ProfilersTestData.SESSION_DATA,
+                                                                                   CAPTURE_START_TIME,
+                                                                                   LOAD_SERVICE,
+                                                                                   myStage);
+      indexedCapture.load(indexedLoadRange, LOAD_JOINER);
+      assertThat(getClassCounts(indexedCapture.getHeapSet(myHeapId))).isEqualTo(getClassCounts(capture.getHeapSet(myHeapId)));
+      assertThat(indexedCapture.getHeapSet(myHeapId).getTotalObjectCount()).isEqualTo(capture.getHeapSet(myHeapId).getTotalObjectCount());
+
+      // Shifting the selection updates the objects alive at its start from the index.
+      long shift = TimeUnit.SECONDS.toMicros(1);
+      loadRange.set(startUs + shift, endUs + shift);
+      indexedLoadRange.set(startUs + shift, endUs + shift);
+      assertThat(getClassCounts(indexedCapture.getHeapSet(myHeapId))).isEqualTo(getClassCounts(capture.getHeapSet(myHeapId)));
+      assertThat(indexedCapture.getHeapSet(myHeapId).getTotalObjectCount()).isEqualTo(capture.getHeapSet(myHeapId).getTotalObjectCount());
+    }
+
+    @Test
+    public void testAllocationIndexResolvesBaselineInstances() throws Exception {
+      long startUs = CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(2);
+      long endUs = CAPTURE_START_TIME + TimeUnit.SECONDS.toMicros(6);
+      LiveAllocationCaptureObject capture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                            ProfilersTestData.SESSION_DATA,
+                                                                            CAPTURE_START_TIME,
+                                                                            LOAD_SERVICE,
+                                                                            myStage);
+      capture.load(new Range(startUs, endUs), LOAD_JOINER);
+
+      myIdeProfilerServices.enableLiveAllocationIndex(true);
+      LiveAllocationCaptureObject indexedCapture = new LiveAllocationCaptureObject(myProfilerClient,
+                                                                                   ProfilersTestData.SESSION_DATA,
+                                                                                   CAPTURE_START_TIME,
+                                                                                   LOAD_SERVICE,
+                                                                                   myStage);
+      indexedCapture.load(new Range(startUs, endUs), LOAD_JOINER);
+
+      // The objects alive at the selection's start are only counted until their instances are asked for.
+      assertThat(getInstanceCounts(indexedCapture.getHeapSet(myHeapId))).isEqualTo(getInstanceCounts(capture.getHeapSet(myHeapId)));
+      assertThat(indexedCapture.getInstances().count()).isEqualTo(capture.getInstances().count());
+    }
+
     // This test checks that optimization by canceling outstanding queries works properly.
     @Test
     public void testUnstartedSelectionEventsCancelled() throws Exception {
@@ -894,6 +952,32 @@ public class LiveAllocationCaptureObjectTest {
     latch.await();
   }
 
+  /**
+   * @return the allocation, deallocation and total counts of each class of the heap.
+   */
+  @NotNull
+  private static Map<String, List<Integer>> getClassCounts(@NotNull HeapSet heapSet) {
+    Map<String, List<Integer>> counts = new HashMap<>();
+    for (ClassifierSet classifierSet : heapSet.getChildrenClassifierSets()) {
+      counts.put(((ClassSet)classifierSet).getClassEntry().getClassName(),
+                 Arrays.asList(classifierSet.getDeltaAllocationCount(), classifierSet.getDeltaDeallocationCount(),
+                               classifierSet.getTotalObjectCount()));
+    }
+    return counts;
+  }
+
+  /**
+   * @return the number of instances of each class of the heap.
+   */
+  @NotNull
+  private static Map<String, Long> getInstanceCounts(@NotNull HeapSet heapSet) {
+    Map<String, Long> counts = new HashMap<>();
+    for (ClassifierSet classifierSet : heapSet.getChildrenClassifierSets()) {
+      counts.put(((ClassSet)classifierSet).getClassEntry().getClassName(), classifierSet.getInstancesStream().count());
+    }
+    return counts;
+  }
+
   // Auxiliary class to verify ClassifierSet's internal data.
   private static class ClassifierSetTestData {
     int depth;
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profiler.proto.Transport;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.junit.Test;
+
+public class StreamedBytesFetcherTest {
+  @Test
+  public void contentsAreWrittenAcrossChunks() throws IOException {
+    byte[] contents = new byte[1000];
+    for (int i = 0; i < contents.length; i++) {
+      contents[i] = (byte)i;
+    }
+    byte[] response = Transport.BytesResponse.newBuilder().setContents(ByteString.copyFrom(contents)).build().toByteArray();
+
+    for (int chunkSize : new int[]{1, 2, 7, 64, response.length}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      StreamedBytesFetcher.ContentsWriter writer = new StreamedBytesFetcher.ContentsWriter(out);
+      for (int offset = 0; offset < response.length; offset += chunkSize) {
+        writer.write(response, offset, Math.min(chunkSize, response.length - offset));
+      }
+      writer.checkComplete();
+      assertThat(writer.getContentsSize()).isEqualTo(contents.length);
+      assertThat(out.toByteArray()).isEqualTo(contents);
+    }
+  }
+
+  @Test
+  public void emptyResponseHasNoContents() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    StreamedBytesFetcher.ContentsWriter writer = new StreamedBytesFetcher.ContentsWriter(out);
+    writer.write(Transport.BytesResponse.getDefaultInstance().toByteArray());
+    writer.checkComplete();
+    assertThat(writer.getContentsSize()).isEqualTo(0);
+    assertThat(out.size()).isEqualTo(0);
+  }
+
+  @Test(expected = IOException.class)
+  public void truncatedResponseFails() throws IOException {
+    byte[] response = Transport.BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("contents")).build().toByteArray();
+    StreamedBytesFetcher.ContentsWriter writer = new StreamedBytesFetcher.ContentsWriter(new ByteArrayOutputStream());
+    writer.write(Arrays.copyOf(response, response.length - 1));
+    writer.checkComplete();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.dominators;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.After;
+import org.junit.Test;
+
+public class DominatorTreeTest {
+  private final ForkJoinPool myPool = new ForkJoinPool(4);
+
+  @After
+  public void tearDown() {
+    myPool.shutdownNow();
+  }
+
+  @Test
+  public void diamondIsDominatedByItsTop() {
+    // 0 -> 1 -> 3, 0 -> 2 -> 3, 3 -> 4
+    ObjectGraph.Builder builder = new ObjectGraph.Builder(5);
+    for (int i = 0; i < 5; i++) {
+      builder.addNode(10);
+    }
+    builder.addEdge(0, 1).addEdge(0, 2).addEdge(1, 3).addEdge(2, 3).addEdge(3, 4).addRoot(0);
+    DominatorTree tree = DominatorTree.compute(builder.build(), myPool);
+
+    assertThat(tree.getImmediateDominator(0)).isEqualTo(DominatorTree.SENTINEL_ROOT);
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(4)).isEqualTo(3);
+
+    assertThat(tree.getRetainedSize(0)).isEqualTo(50);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(10);
+    assertThat(tree.getRetainedSize(3)).isEqualTo(20);
+
+    assertThat(tree.getDistanceToRoot(0)).isEqualTo(0);
+    assertThat(tree.getDistanceToRoot(3)).isEqualTo(2);
+    assertThat(tree.getDistanceToRoot(4)).isEqualTo(3);
+  }
+
+  @Test
+  public void cycleIsDominatedByItsEntry() {
+    // 0 -> 1 -> 2 -> 3 -> 1
+    ObjectGraph.Builder builder = new ObjectGraph.Builder(4);
+    builder.addNode(1);
+    builder.addNode(2);
+    builder.addNode(4);
+    builder.addNode(8);
+    builder.addEdge(0, 1).addEdge(1, 2).addEdge(2, 3).addEdge(3, 1).addRoot(0);
+    DominatorTree tree = DominatorTree.compute(builder.build(), myPool);
+
+    assertThat(tree.getImmediateDominator(1)).isEqualTo(0);
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(2);
+    assertThat(tree.getRetainedSize(0)).isEqualTo(15);
+    assertThat(tree.getRetainedSize(1)).isEqualTo(14);
+  }
+
+  @Test
+  public void objectsSharedByRootsAreDominatedBySentinel() {
+    // Roots 0 and 1 both reference 2, nothing references 3.
+    ObjectGraph.Builder builder = new ObjectGraph.Builder(4);
+    for (int i = 0; i < 4; i++) {
+      builder.addNode(1);
+    }
+    builder.addEdge(0, 2).addEdge(1, 2).addEdge(3, 2).addRoot(0).addRoot(1);
+    DominatorTree tree = DominatorTree.compute(builder.build(), myPool);
+
+    assertThat(tree.getImmediateDominator(2)).isEqualTo(DominatorTree.SENTINEL_ROOT);
+    assertThat(tree.getRetainedSize(0)).isEqualTo(1);
+    assertThat(tree.getImmediateDominator(3)).isEqualTo(DominatorTree.UNREACHABLE);
+    assertThat(tree.getRetainedSize(3)).isEqualTo(0);
+    assertThat(tree.getDistanceToRoot(3)).isEqualTo(Integer.MAX_VALUE);
+  }
+
+  @Test
+  public void largeGraphMatchesSequentialResult() {
+    // A long chain whose every object also references the next one through a side object, and a back edge to the head. Large enough
+    // for the work to be split.
+    int length = 100_000;
+    ObjectGraph.Builder builder = new ObjectGraph.Builder(length * 2);
+    for (int i = 0; i < length * 2; i++) {
+      builder.addNode(1);
+    }
+    for (int i = 0; i < length - 1; i++) {
+      builder.addEdge(i, i + 1).addEdge(i, length + i).addEdge(length + i, i + 1).addEdge(i + 1, 0);
+    }
+    builder.addRoot(0);
+    DominatorTree tree = DominatorTree.compute(builder.build(), myPool);
+
+    for (int i = 1; i < length; i++) {
+      assertThat(tree.getImmediateDominator(i)).isEqualTo(i - 1);
+      assertThat(tree.getImmediateDominator(length + i - 1)).isEqualTo(i - 1);
+    }
+    assertThat(tree.getRetainedSize(0)).isEqualTo(length * 2 - 1);
+    assertThat(tree.getDistanceToRoot(length - 1)).isEqualTo(length - 1);
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.memory.adapters.live;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class AllocationEventIndexTest {
+  private static final int HEAP_ID = 3;
+  private static final int CLASS_TAG = 7;
+
+  @Test
+  public void recordsAreFoundByTag() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    int record = index.addAllocation(10, 42, CLASS_TAG, 1, 2, 16, HEAP_ID);
+    assertThat(index.findRecord(42)).isEqualTo(record);
+    assertThat(index.findRecord(43)).isEqualTo(-1);
+    assertThat(index.getAllocationTime(record)).isEqualTo(10);
+    assertThat(index.getDeallocationTime(record)).isEqualTo(Long.MAX_VALUE);
+    assertThat(index.getClassTag(record)).isEqualTo(CLASS_TAG);
+    assertThat(index.getStackId(record)).isEqualTo(1);
+    assertThat(index.getThreadId(record)).isEqualTo(2);
+    assertThat(index.getSize(record)).isEqualTo(16);
+    assertThat(index.getHeapId(record)).isEqualTo(HEAP_ID);
+
+    // A duplicate allocation of a live object is ignored, as is the deallocation of an unknown one.
+    assertThat(index.addAllocation(11, 42, CLASS_TAG, 1, 2, 16, HEAP_ID)).isEqualTo(-1);
+    assertThat(index.addDeallocation(12, 43)).isEqualTo(-1);
+
+    assertThat(index.addDeallocation(20, 42)).isEqualTo(record);
+    assertThat(index.getDeallocationTime(record)).isEqualTo(20);
+    assertThat(index.addDeallocation(21, 42)).isEqualTo(-1);
+  }
+
+  @Test
+  public void classIndexCountsObjectsOverTime() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    // Objects of size 10 * tag allocated at 10 * tag, the even ones freed 5 later.
+    for (int tag = 1; tag <= 10; tag++) {
+      index.addAllocation(tag * 10, tag, CLASS_TAG, 0, 0, tag * 10, HEAP_ID);
+      if (tag % 2 == 0) {
+        index.addDeallocation(tag * 10 + 5, tag);
+      }
+    }
+    assertThat(index.getClassIndices()).hasSize(1);
+    AllocationEventIndex.ClassIndex classIndex = index.getClassIndices().get(0);
+    assertThat(classIndex.getHeapId()).isEqualTo(HEAP_ID);
+    assertThat(classIndex.getClassTag()).isEqualTo(CLASS_TAG);
+
+    // Alive just before 50: 1, 3, 4 allocated, 2 and 4 freed at 25 and 45.
+    assertThat(classIndex.getAliveCount(50)).isEqualTo(2);
+    assertThat(classIndex.getAliveSize(50)).isEqualTo(10 + 30);
+    assertThat(classIndex.getAllocationCount(20, 60)).isEqualTo(4);
+    assertThat(classIndex.getDeallocationCount(20, 60)).isEqualTo(2);
+    assertThat(classIndex.getAliveCount(Long.MAX_VALUE)).isEqualTo(5);
+  }
+
+  @Test
+  public void outOfOrderEventsAreSorted() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addAllocation(30, 3, CLASS_TAG, 0, 0, 300, HEAP_ID);
+    index.addAllocation(10, 1, CLASS_TAG, 0, 0, 100, HEAP_ID);
+    index.addAllocation(20, 2, CLASS_TAG, 0, 0, 200, HEAP_ID);
+    AllocationEventIndex.ClassIndex classIndex = index.getClassIndices().get(0);
+
+    assertThat(classIndex.getAliveSize(15)).isEqualTo(100);
+    assertThat(classIndex.getAliveSize(25)).isEqualTo(300);
+    assertThat(classIndex.getAliveSize(35)).isEqualTo(600);
+
+    List<Integer> tags = new ArrayList<>();
+    index.forEachAllocation(15, 35, record -> tags.add(index.getTag(record)));
+    assertThat(tags).containsExactly(2, 3).inOrder();
+  }
+
+  @Test
+  public void manyObjectsSpanSeveralChunks() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    int count = 200_000;
+    for (int tag = 1; tag <= count; tag++) {
+      index.addAllocation(tag, tag, tag % 3, 0, 0, 8, HEAP_ID);
+    }
+    for (int tag = 1; tag <= count; tag += 2) {
+      index.addDeallocation(count + tag, tag);
+    }
+    assertThat(index.getRecordCount()).isEqualTo(count);
+    assertThat(index.getAllocationTime(index.findRecord(count))).isEqualTo(count);
+    assertThat(index.getClassIndices()).hasSize(3);
+
+    int[] deallocations = new int[1];
+    index.forEachDeallocation(0, Long.MAX_VALUE, record -> deallocations[0]++);
+    assertThat(deallocations[0]).isEqualTo(count / 2);
+    int alive = index.getClassIndices().stream().mapToInt(classIndex -> classIndex.getAliveCount(Long.MAX_VALUE)).sum();
+    assertThat(alive).isEqualTo(count / 2);
+  }
+
+  @Test
+  public void aliveRecordsAreListedPerClass() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addAllocation(10, 1, CLASS_TAG, 0, 0, 8, HEAP_ID);
+    index.addAllocation(20, 2, CLASS_TAG, 0, 0, 8, HEAP_ID);
+    index.addAllocation(30, 3, CLASS_TAG, 0, 0, 8, HEAP_ID);
+    index.addAllocation(15, 4, CLASS_TAG + 1, 0, 0, 8, HEAP_ID);
+    index.addDeallocation(25, 1);
+    AllocationEventIndex.ClassIndex classIndex = index.getClassIndex(HEAP_ID, CLASS_TAG);
+    assertThat(classIndex).isNotNull();
+    assertThat(index.getClassIndex(HEAP_ID + 1, CLASS_TAG)).isNull();
+
+    List<Integer> tags = new ArrayList<>();
+    index.forEachAliveRecord(classIndex, 28, record -> tags.add(index.getTag(record)));
+    assertThat(tags).containsExactly(2);
+    tags.clear();
+    index.forEachAliveRecord(classIndex, 22, record -> tags.add(index.getTag(record)));
+    assertThat(tags).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void allocationsAreDroppedOnceFull() {
+    AllocationEventIndex index = new AllocationEventIndex(2);
+    assertThat(index.addAllocation(10, 1, CLASS_TAG, 0, 0, 8, HEAP_ID)).isAtLeast(0);
+    assertThat(index.isFull()).isFalse();
+    assertThat(index.addAllocation(20, 2, CLASS_TAG, 0, 0, 8, HEAP_ID)).isAtLeast(0);
+    assertThat(index.isFull()).isTrue();
+    assertThat(index.addAllocation(30, 3, CLASS_TAG, 0, 0, 8, HEAP_ID)).isEqualTo(-1);
+    assertThat(index.getRecordCount()).isEqualTo(2);
+    // Deallocations of indexed objects are still recorded.
+    assertThat(index.addDeallocation(40, 1)).isAtLeast(0);
+  }
+
+  @Test
+  public void deallocatedObjectsAreDroppedToMakeRoom() {
+    AllocationEventIndex index = new AllocationEventIndex(8);
+    // Objects of size tag allocated at 10 * tag, the odd ones freed 5 later.
+    for (int tag = 1; tag <= 8; tag++) {
+      index.addAllocation(tag * 10, tag, CLASS_TAG, 0, 0, tag, HEAP_ID);
+      if (tag % 2 == 1) {
+        index.addDeallocation(tag * 10 + 5, tag);
+      }
+    }
+    assertThat(index.isFull()).isTrue();
+    AllocationEventIndex.ClassIndex classIndex = index.getClassIndex(HEAP_ID, CLASS_TAG);
+    int aliveCount = classIndex.getAliveCount(80);
+    long aliveSize = classIndex.getAliveSize(80);
+
+    // Half of the records are freed by dropping the objects deallocated before 76.
+    int record = index.addAllocation(90, 9, CLASS_TAG, 0, 0, 9, HEAP_ID);
+    assertThat(record).isAtLeast(0);
+    assertThat(index.isFull()).isFalse();
+    assertThat(index.getCoveredFromNs()).isEqualTo(76);
+    assertThat(index.getRecordCount()).isEqualTo(5);
+    assertThat(index.findRecord(1)).isEqualTo(-1);
+    assertThat(index.getTag(index.findRecord(8))).isEqualTo(8);
+    assertThat(index.getAllocationTime(index.findRecord(8))).isEqualTo(80);
+    assertThat(index.findRecord(9)).isEqualTo(record);
+
+    assertThat(classIndex.getAliveCount(80)).isEqualTo(aliveCount);
+    assertThat(classIndex.getAliveSize(80)).isEqualTo(aliveSize);
+    assertThat(classIndex.getAliveSize(100)).isEqualTo(2 + 4 + 6 + 8 + 9);
+    List<Integer> tags = new ArrayList<>();
+    index.forEachAliveRecord(classIndex, 80, alive -> tags.add(index.getTag(alive)));
+    assertThat(tags).containsExactly(2, 4, 6).inOrder();
+
+    assertThat(index.addDeallocation(95, 8)).isEqualTo(index.findRecord(8));
+    assertThat(classIndex.getDeallocationCount(76, 100)).isEqualTo(1);
+    assertThat(classIndex.getAllocationCount(76, 100)).isEqualTo(2);
+  }
+
+  @Test
+  public void disposeReleasesRecords() {
+    AllocationEventIndex index = new AllocationEventIndex();
+    index.addAllocation(10, 1, CLASS_TAG, 0, 0, 8, HEAP_ID);
+    index.dispose();
+    assertThat(index.getRecordCount()).isEqualTo(0);
+    assertThat(index.getClassIndices()).isEmpty();
+  }
+}
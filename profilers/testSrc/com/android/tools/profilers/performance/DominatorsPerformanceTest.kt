@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.perflib.heap.Snapshot
+import com.android.tools.perflib.heap.io.MemoryMappedFileBuffer
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profilers.memory.adapters.dominators.DominatorTree
+import com.android.tools.profilers.memory.adapters.dominators.ObjectGraph
+import com.android.tools.profilers.memory.adapters.dominators.SnapshotDominators
+import com.android.tools.proguard.ProguardMap
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.BufferedOutputStream
+import java.io.DataOutputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.util.Random
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.TimeUnit
+
+/**
+ * Measures [DominatorTree] on synthetic heaps of 1 to 20 million objects, and compares it against perflib's
+ * [Snapshot.computeDominators] on the sizes perflib can hold in memory. Each object references a random older object, which makes the
+ * dominator tree deep, plus a random other object, which makes most objects shared.
+ */
+class DominatorsPerformanceTest {
+  companion object {
+    private const val SEED = 42L
+  }
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val benchmark = Benchmark.Builder("Heap Dump Dominators Timings (Millis)").setProject("Android Studio Profilers").build()
+
+  @Test
+  fun computeDominatorsOnObjectGraph() {
+    for (objectCount in listOf(1_000_000, 5_000_000, 20_000_000)) {
+      val graph = buildGraph(objectCount)
+      val start = System.nanoTime()
+      val tree = DominatorTree.compute(graph, ForkJoinPool.commonPool())
+      benchmark.log("ObjectGraph-${objectCount / 1_000_000}M", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+      assertThat(tree.getImmediateDominator(0)).isEqualTo(DominatorTree.SENTINEL_ROOT)
+    }
+  }
+
+  @Test
+  fun compareWithPerflib() {
+    for (objectCount in listOf(1_000_000, 5_000_000)) {
+      val file = temporaryFolder.newFile("heap_$objectCount.hprof")
+      writeHeapDump(file, objectCount)
+      val snapshot = Snapshot.createSnapshot(MemoryMappedFileBuffer(file), ProguardMap(), emptyList())
+      val name = "${objectCount / 1_000_000}M"
+
+      var start = System.nanoTime()
+      snapshot.computeDominators()
+      benchmark.log("Perflib-$name", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+
+      start = System.nanoTime()
+      SnapshotDominators.compute(snapshot, ForkJoinPool.commonPool())
+      benchmark.log("Parallel-$name", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+
+      file.delete()
+    }
+  }
+
+  private fun buildGraph(objectCount: Int): ObjectGraph {
+    val random = Random(SEED)
+    val builder = ObjectGraph.Builder(objectCount)
+    for (i in 0 until objectCount) {
+      builder.addNode(16L + random.nextInt(64))
+      if (i > 0) {
+        builder.addEdge(random.nextInt(i), i)
+        builder.addEdge(i, random.nextInt(objectCount))
+      }
+    }
+    builder.addRoot(0)
+    return builder.build()
+  }
+
+  /**
+   * Writes a heap of the same shape as [buildGraph] as an hprof file, object 0 being a GC root. Objects have a fixed number of fields, so
+   * the random tree is stored as first child and next sibling references, plus the random other reference.
+   */
+  private fun writeHeapDump(file: File, objectCount: Int) {
+    val random = Random(SEED)
+    val others = IntArray(objectCount) { -1 }
+    val nextSiblings = IntArray(objectCount) { -1 }
+    val firstChildren = IntArray(objectCount) { -1 }
+    for (i in 0 until objectCount) {
+      random.nextInt(64)
+      if (i > 0) {
+        val parent = random.nextInt(i)
+        nextSiblings[i] = firstChildren[parent]
+        firstChildren[parent] = i
+        others[i] = random.nextInt(objectCount)
+      }
+    }
+
+    DataOutputStream(BufferedOutputStream(FileOutputStream(file), 1 shl 16)).use { out ->
+      out.write("JAVA PROFILE 1.0.3".toByteArray())
+      out.writeByte(0)
+      out.writeInt(ID_SIZE)
+      out.writeLong(0)
+
+      writeString(out, CLASS_NAME_ID, "Node")
+      writeString(out, CHILD_FIELD_ID, "child")
+      writeString(out, SIBLING_FIELD_ID, "sibling")
+      writeString(out, OTHER_FIELD_ID, "other")
+      writeRecord(out, TAG_LOAD_CLASS, 4 + ID_SIZE + 4 + ID_SIZE) {
+        it.writeInt(1)
+        it.writeInt(CLASS_ID)
+        it.writeInt(0)
+        it.writeInt(CLASS_NAME_ID)
+      }
+      writeRecord(out, TAG_STACK_TRACE, 12) {
+        it.writeInt(0)
+        it.writeInt(0)
+        it.writeInt(0)
+      }
+
+      val classDumpLength = 1 + ID_SIZE + 4 + 6 * ID_SIZE + 4 + 2 + 2 + 2 + FIELD_COUNT * (ID_SIZE + 1)
+      val instanceDumpLength = 1 + ID_SIZE + 4 + ID_SIZE + 4 + FIELD_COUNT * ID_SIZE
+      val rootLength = 1 + ID_SIZE
+      writeRecord(out, TAG_HEAP_DUMP_SEGMENT, classDumpLength + rootLength + objectCount * instanceDumpLength) {
+        it.writeByte(TAG_ROOT_UNKNOWN)
+        it.writeInt(objectId(0))
+
+        it.writeByte(TAG_CLASS_DUMP)
+        it.writeInt(CLASS_ID)
+        it.writeInt(0)
+        repeat(6) { _ -> it.writeInt(0) }
+        it.writeInt(FIELD_COUNT * ID_SIZE)
+        it.writeShort(0)
+        it.writeShort(0)
+        it.writeShort(FIELD_COUNT)
+        for (fieldId in listOf(CHILD_FIELD_ID, SIBLING_FIELD_ID, OTHER_FIELD_ID)) {
+          it.writeInt(fieldId)
+          it.writeByte(TYPE_OBJECT)
+        }
+
+        for (i in 0 until objectCount) {
+          it.writeByte(TAG_INSTANCE_DUMP)
+          it.writeInt(objectId(i))
+          it.writeInt(0)
+          it.writeInt(CLASS_ID)
+          it.writeInt(FIELD_COUNT * ID_SIZE)
+          it.writeInt(if (firstChildren[i] >= 0) objectId(firstChildren[i]) else 0)
+          it.writeInt(if (nextSiblings[i] >= 0) objectId(nextSiblings[i]) else 0)
+          it.writeInt(if (others[i] >= 0) objectId(others[i]) else 0)
+        }
+      }
+      writeRecord(out, TAG_HEAP_DUMP_END, 0) {}
+    }
+  }
+
+  private fun objectId(index: Int) = FIRST_OBJECT_ID + index * 8
+
+  private fun writeString(out: DataOutputStream, id: Int, value: String) {
+    val bytes = value.toByteArray()
+    writeRecord(out, TAG_STRING, ID_SIZE + bytes.size) {
+      it.writeInt(id)
+      it.write(bytes)
+    }
+  }
+
+  private fun writeRecord(out: DataOutputStream, tag: Int, length: Int, body: (DataOutputStream) -> Unit) {
+    out.writeByte(tag)
+    out.writeInt(0)
+    out.writeInt(length)
+    body(out)
+  }
+}
+
+private const val ID_SIZE = 4
+private const val FIELD_COUNT = 3
+private const val TYPE_OBJECT = 2
+private const val TAG_STRING = 0x01
+private const val TAG_LOAD_CLASS = 0x02
+private const val TAG_STACK_TRACE = 0x05
+private const val TAG_HEAP_DUMP_SEGMENT = 0x1C
+private const val TAG_HEAP_DUMP_END = 0x2C
+private const val TAG_ROOT_UNKNOWN = 0xFF
+private const val TAG_CLASS_DUMP = 0x20
+private const val TAG_INSTANCE_DUMP = 0x21
+private const val CLASS_NAME_ID = 1
+private const val CHILD_FIELD_ID = 2
+private const val SIBLING_FIELD_ID = 3
+private const val OTHER_FIELD_ID = 4
+private const val CLASS_ID = 0x100
+private const val FIRST_OBJECT_ID = 0x1000
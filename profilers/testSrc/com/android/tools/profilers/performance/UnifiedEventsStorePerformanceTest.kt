@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.performance
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.ColumnarUnifiedEventsTable
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.perflogger.Benchmark
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Memory
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.util.concurrent.TimeUnit
+
+/**
+ * Compares insertion and range query timings of the SQLite backed [UnifiedEventsTable] against the [ColumnarUnifiedEventsTable], using a
+ * 30 minute session of memory samples and allocation tracking events. Also checks that the group queries of the columnar table don't slow
+ * down as a session grows to 10 million events.
+ */
+class UnifiedEventsStorePerformanceTest {
+  companion object {
+    private val SESSION_LENGTH = TimeUnit.MINUTES.toNanos(30)
+    private val SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(10)
+    private val QUERY_WINDOW = TimeUnit.SECONDS.toNanos(60)
+    private const val STREAM_ID = 1L
+    private const val PID = 1
+    private val AGING_CHECKPOINTS = listOf(1_000_000, 2_500_000, 5_000_000, 10_000_000)
+    private const val AGING_GROUP_COUNT = 100
+    private const val AGING_QUERY_COUNT = 1000
+  }
+
+  private val benchmark = Benchmark.Builder("Unified Events Store Timings (Millis)").setProject("Android Studio Profilers").build()
+  private lateinit var database: DataStoreDatabase
+
+  @Before
+  fun setUp() {
+    database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun compareSqliteAndColumnarStores() {
+    runBenchmark("Sqlite", UnifiedEventsTable())
+    runBenchmark("Columnar", ColumnarUnifiedEventsTable())
+  }
+
+  @Test
+  fun groupQueriesAsSessionAges() {
+    val table = ColumnarUnifiedEventsTable()
+    table.initialize(database.connection)
+
+    // Events of a few long-lived groups (e.g. network connections) interleaved with samples, one every 10 microseconds.
+    var eventCount = 0
+    for (checkpoint in AGING_CHECKPOINTS) {
+      while (eventCount < checkpoint) {
+        val timestamp = eventCount * TimeUnit.MICROSECONDS.toNanos(10)
+        table.insertUnifiedEvent(STREAM_ID, Common.Event.newBuilder()
+          .setKind(if (eventCount % 10 == 0) Common.Event.Kind.NETWORK_HTTP_CONNECTION else Common.Event.Kind.MEMORY_ALLOC_STATS)
+          .setPid(PID)
+          .setGroupId(if (eventCount % 10 == 0) (eventCount / 10 % AGING_GROUP_COUNT).toLong() + 1 else 0)
+          .setTimestamp(timestamp)
+          .build())
+        eventCount++
+      }
+
+      // The queries the transport poller and the timeline issue: everything since the last poll, and the state at the start of a window.
+      val now = eventCount * TimeUnit.MICROSECONDS.toNanos(10)
+      val start = System.nanoTime()
+      var resultCount = 0
+      for (i in 0 until AGING_QUERY_COUNT) {
+        resultCount += table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder()
+                                                       .setKind(Common.Event.Kind.NETWORK_HTTP_CONNECTION)
+                                                       .setStreamId(STREAM_ID)
+                                                       .setPid(PID)
+                                                       .setFromTimestamp(now - TimeUnit.MILLISECONDS.toNanos(1))
+                                                       .setToTimestamp(Long.MAX_VALUE)
+                                                       .build()).size
+        resultCount += table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder()
+                                                       .setKind(Common.Event.Kind.MEMORY_ALLOC_STATS)
+                                                       .setStreamId(STREAM_ID)
+                                                       .setPid(PID)
+                                                       .setFromTimestamp(now - TimeUnit.MILLISECONDS.toNanos(10))
+                                                       .setToTimestamp(now - TimeUnit.MILLISECONDS.toNanos(5))
+                                                       .build()).size
+      }
+      benchmark.log("Columnar-GroupQueries-${checkpoint / 100_000 / 10.0}M", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+      assert(resultCount > 0)
+    }
+  }
+
+  private fun runBenchmark(name: String, table: UnifiedEventsTable) {
+    table.initialize(database.connection)
+
+    var start = System.nanoTime()
+    for (timestamp in 0 until SESSION_LENGTH step SAMPLE_INTERVAL) {
+      table.insertUnifiedEvent(STREAM_ID, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.MEMORY_ALLOC_STATS)
+        .setPid(PID)
+        .setTimestamp(timestamp)
+        .setMemoryAllocStats(Memory.MemoryAllocStatsData.newBuilder()
+                               .setJavaAllocationCount((timestamp / SAMPLE_INTERVAL).toInt())
+                               .setJavaFreeCount((timestamp / SAMPLE_INTERVAL / 2).toInt()))
+        .build())
+    }
+    benchmark.log("$name-Insert", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+
+    // Scrub across the whole session, the way the timeline does when the user drags the view range.
+    start = System.nanoTime()
+    var eventCount = 0
+    for (from in 0 until SESSION_LENGTH step QUERY_WINDOW / 2) {
+      val groups = table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder()
+                                                   .setKind(Common.Event.Kind.MEMORY_ALLOC_STATS)
+                                                   .setStreamId(STREAM_ID)
+                                                   .setPid(PID)
+                                                   .setFromTimestamp(from)
+                                                   .setToTimestamp(from + QUERY_WINDOW)
+                                                   .build())
+      eventCount += groups.sumBy { it.eventsCount }
+    }
+    benchmark.log("$name-Query", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+    assert(eventCount > 0)
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.sessions
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.util.concurrent.Executor
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+class BatchSessionImportTest {
+  companion object {
+    // Zip entries store times with a precision of two seconds.
+    private const val ENTRY_TIME_MS = 1_500_000_000_000L
+  }
+
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private val directExecutor = Executor { it.run() }
+  private val registered = mutableListOf<String>()
+  private val progress = mutableListOf<Pair<Int, Int>>()
+  private var failedFiles: List<File>? = null
+
+  private val listener = object : BatchSessionImport.Listener {
+    override fun progressChanged(completedCount: Int, totalCount: Int) {
+      progress.add(completedCount to totalCount)
+    }
+
+    override fun finished(failedFiles: List<File>) {
+      this@BatchSessionImportTest.failedFiles = failedFiles
+    }
+  }
+
+  @Test
+  fun foldersAreExpandedToTheFilesThatCanBeImported() {
+    val folder = temporaryFolder.newFolder("captures")
+    File(folder, "a.trace").writeText("a")
+    File(folder, "notes.txt").writeText("notes")
+    File(folder, "nested").mkdir()
+    File(folder, "nested/b.HPROF").writeText("b")
+    val unknown = temporaryFolder.newFile("c.unknown")
+
+    newImport(listOf(folder, unknown)).start()
+
+    assertThat(registered).containsExactly("a.trace", "b.HPROF")
+    assertThat(failedFiles).containsExactly(unknown)
+    assertThat(progress.first()).isEqualTo(0 to 3)
+    assertThat(progress.last()).isEqualTo(3 to 3)
+  }
+
+  @Test
+  fun archivesAreExtracted() {
+    val archive = temporaryFolder.newFile("captures.zip")
+    ZipOutputStream(FileOutputStream(archive)).use { zip ->
+      for (name in listOf("run1/a.trace", "run2/a.trace", "readme.txt", "../escape.hprof")) {
+        zip.putNextEntry(ZipEntry(name).apply { time = ENTRY_TIME_MS })
+        zip.write(name.toByteArray())
+        zip.closeEntry()
+      }
+    }
+    val contents = mutableListOf<String>()
+    val times = mutableListOf<Long>()
+
+    newImport(listOf(archive)) { file ->
+      contents.add(file.readText())
+      times.add(file.lastModified())
+      Runnable { registered.add(file.name) }
+    }.start()
+
+    assertThat(registered).containsExactly("a.trace", "a.trace", "escape.hprof")
+    assertThat(contents).containsExactly("run1/a.trace", "run2/a.trace", "../escape.hprof")
+    assertThat(times.distinct()).containsExactly(ENTRY_TIME_MS)
+    assertThat(failedFiles).isEmpty()
+  }
+
+  @Test
+  fun extractedEntriesAreDeletedOnceRead() {
+    val archive = temporaryFolder.newFile("captures.zip")
+    ZipOutputStream(FileOutputStream(archive)).use { zip ->
+      for (name in listOf("a.trace", "b.hprof")) {
+        zip.putNextEntry(ZipEntry(name))
+        zip.write(name.toByteArray())
+        zip.closeEntry()
+      }
+    }
+    val extracted = mutableListOf<File>()
+
+    // Only the trace is read again once its session is registered.
+    newImport(listOf(archive), { file -> BatchSessionImport.getExtension(file) == "trace" }) { file ->
+      extracted.add(file)
+      Runnable { registered.add(file.name) }
+    }.start()
+
+    assertThat(registered).containsExactly("a.trace", "b.hprof")
+    assertThat(extracted.filter { it.exists() }.map { it.name }).containsExactly("a.trace")
+    assertThat(extracted.single { it.name == "b.hprof" }.parentFile.exists()).isFalse()
+  }
+
+  @Test
+  fun filesThatCannotBeReadFail() {
+    val file = temporaryFolder.newFile("a.trace")
+    newImport(listOf(file)) { throw IOException() }.start()
+
+    assertThat(registered).isEmpty()
+    assertThat(failedFiles).containsExactly(file)
+    assertThat(progress.last()).isEqualTo(1 to 1)
+  }
+
+  @Test
+  fun cancelSkipsTheRemainingFiles() {
+    val files = (0 until 10).map { temporaryFolder.newFile("$it.trace") }
+    lateinit var batch: BatchSessionImport
+    batch = newImport(files) { file ->
+      Runnable {
+        registered.add(file.name)
+        batch.cancel()
+      }
+    }
+    batch.start()
+
+    assertThat(batch.isCancelled).isTrue()
+    assertThat(registered).containsExactly("0.trace")
+    assertThat(failedFiles).containsExactlyElementsIn(files.drop(1))
+  }
+
+  @Test
+  fun filesReadAfterCancelAreNotRegistered() {
+    val files = (0 until 3).map { temporaryFolder.newFile("$it.trace") }
+    lateinit var batch: BatchSessionImport
+    batch = newImport(files) { file ->
+      batch.cancel()
+      Runnable { registered.add(file.name) }
+    }
+    batch.start()
+
+    assertThat(registered).isEmpty()
+    assertThat(failedFiles).containsExactlyElementsIn(files)
+    assertThat(progress.last()).isEqualTo(1 to 3)
+  }
+
+  @Test
+  fun cancelSkipsTheRemainingArchiveEntries() {
+    val archive = temporaryFolder.newFile("captures.zip")
+    ZipOutputStream(FileOutputStream(archive)).use { zip ->
+      for (name in listOf("a.trace", "b.trace", "c.trace")) {
+        zip.putNextEntry(ZipEntry(name))
+        zip.write(name.toByteArray())
+        zip.closeEntry()
+      }
+    }
+    val extracted = mutableListOf<File>()
+    lateinit var batch: BatchSessionImport
+    batch = newImport(listOf(archive)) { file ->
+      extracted.add(file)
+      Runnable {
+        registered.add(file.name)
+        batch.cancel()
+      }
+    }
+    batch.start()
+
+    // Entries are only extracted when they are imported, so the cancelled ones are never written to disk.
+    assertThat(registered).containsExactly("a.trace")
+    assertThat(extracted).hasSize(1)
+    assertThat(failedFiles).containsExactly(File(archive, "b.trace"), File(archive, "c.trace"))
+  }
+
+  private fun newImport(files: List<File>,
+                        keepFile: (File) -> Boolean = { false },
+                        prepareFile: (File) -> Runnable = { file -> Runnable { registered.add(file.name) } }): BatchSessionImport {
+    return BatchSessionImport(files,
+                              { file ->
+                                if (BatchSessionImport.getExtension(file) in setOf("trace", "hprof")) {
+                                  object : SessionsManager.ImportPreparer {
+                                    override fun prepare(file: File) = prepareFile(file)
+                                    override fun readsFileLater() = keepFile(file)
+                                  }
+                                }
+                                else null
+                              },
+                              directExecutor,
+                              directExecutor,
+                              listener)
+  }
+}
@@ -15,15 +15,33 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.GroupCommitWriter;
+import com.android.tools.idea.flags.StudioFlags;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
+  /**
+   * Version of the table layout, stamped into the file's user_version. Bump this when a table changes in a way that older files can no
+   * longer be read as is. Only files of the current version are read back (see {@link #isCurrentSchema(Connection)}), there is no
+   * migration between versions.
+   */
+  public static final int SCHEMA_VERSION = 1;
+
+  /**
+   * Suffix of the file that a {@link Characteristic#DURABLE} database is moved to on startup, so the sessions it contains can be archived
+   * before the tables are recreated.
+   */
+  public static final String PREVIOUS_SUFFIX = ".previous";
+
   public enum Characteristic {
     // TODO handle potential db file name clashes
     DURABLE,
@@ -39,6 +57,12 @@ public class DataStoreDatabase {
 
   private final Connection myConnection;
 
+  /**
+   * Commits the connection's transaction periodically and executes the deferred writes of the tables. Null if
+   * {@link StudioFlags#PROFILER_DATASTORE_GROUP_COMMIT} is disabled or the connection could not be opened.
+   */
+  @Nullable private final GroupCommitWriter myWriter;
+
   /**
    * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
    */
@@ -52,6 +76,14 @@ public class DataStoreDatabase {
                            @NotNull Characteristic characteristic,
                            @NotNull LogService logService,
                            @NotNull Consumer<Throwable> noPiiExceptionHandler) {
+    this(dbPath, characteristic, logService, noPiiExceptionHandler, GroupCommitWriter.Policy.DEFAULT);
+  }
+
+  public DataStoreDatabase(@NotNull String dbPath,
+                           @NotNull Characteristic characteristic,
+                           @NotNull LogService logService,
+                           @NotNull Consumer<Throwable> noPiiExceptionHandler,
+                           @NotNull GroupCommitWriter.Policy writerPolicy) {
     myLogService = logService;
     Connection connection = null;
     try {
@@ -65,11 +97,14 @@ public class DataStoreDatabase {
           break;
         case DURABLE:
           File dbFile = new File(dbPath);
-          // Due to an incompatible update in SQLite we do not support loading SQL files from previous versions of studio.
-          // As a intermediate measure we delete the file until we support loading existing databases.
-          // TODO: Investigate removing this when we add a feature to restore sessions from prior Studio runs.
+          // Tables are recreated on startup. When sessions are persisted the previous file is kept aside so its sessions can be archived,
+          // see SessionArchiver. Otherwise we delete it.
           if (dbFile.exists()) {
-            dbFile.delete();
+            File previousFile = new File(dbPath + PREVIOUS_SUFFIX);
+            if (!StudioFlags.PROFILER_PERSISTENT_SESSIONS.get() || (previousFile.exists() && !previousFile.delete()) ||
+                !dbFile.renameTo(previousFile)) {
+              dbFile.delete();
+            }
           }
 
           File parent = dbFile.getParentFile();
@@ -79,13 +114,15 @@ public class DataStoreDatabase {
             }
           }
           connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
+          try (Statement statement = connection.createStatement()) {
+            statement.execute(String.format("PRAGMA user_version = %d", SCHEMA_VERSION));
+          }
           break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. Writes are committed in groups by myWriter, or on disconnect.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -98,9 +135,19 @@ public class DataStoreDatabase {
       noPiiExceptionHandler.accept(e);
     }
     myConnection = connection;
+    if (connection != null && StudioFlags.PROFILER_DATASTORE_GROUP_COMMIT.get()) {
+      myWriter = new GroupCommitWriter(connection, writerPolicy);
+      myWriter.start();
+    }
+    else {
+      myWriter = null;
+    }
   }
 
   public void disconnect() {
+    if (myWriter != null) {
+      myWriter.stop();
+    }
     try {
       myConnection.commit();
     }
@@ -122,4 +169,26 @@ public class DataStoreDatabase {
   public Connection getConnection() {
     return myConnection;
   }
+
+  @Nullable
+  public GroupCommitWriter getWriter() {
+    return myWriter;
+  }
+
+  /**
+   * @return the schema version stamped into the database, 0 if the database predates {@link #SCHEMA_VERSION}.
+   */
+  public static int getSchemaVersion(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement(); ResultSet result = statement.executeQuery("PRAGMA user_version")) {
+      return result.next() ? result.getInt(1) : 0;
+    }
+  }
+
+  /**
+   * @return whether a database written by a previous run has the table layout of {@link #SCHEMA_VERSION}. Databases that predate the
+   * versioning or were written by another version of the datastore cannot be read.
+   */
+  public static boolean isCurrentSchema(@NotNull Connection connection) throws SQLException {
+    return getSchemaVersion(connection) == SCHEMA_VERSION;
+  }
 }
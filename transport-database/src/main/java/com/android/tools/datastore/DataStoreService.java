@@ -16,10 +16,17 @@
 package com.android.tools.datastore;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_COLUMNAR_EVENT_STORE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_PAYLOAD_STORE;
+import static com.android.tools.idea.flags.StudioFlags.PROFILER_PERSISTENT_SESSIONS;
 import static com.android.tools.idea.flags.StudioFlags.PROFILER_UNIFIED_PIPELINE;
 
 import com.android.tools.analytics.UsageTracker;
+import com.android.tools.datastore.archive.SessionArchiver;
+import com.android.tools.datastore.database.ColumnarUnifiedEventsTable;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.GroupCommitWriter;
+import com.android.tools.datastore.database.PayloadStore;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.service.CpuService;
 import com.android.tools.datastore.service.EnergyService;
@@ -56,6 +63,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -124,6 +132,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   @NotNull
   private Consumer<Throwable> myNoPiiExceptionHandler;
   private TransportService myTransportService;
+  private UnifiedEventsTable myUnifiedTable;
+  @Nullable private PayloadStore myPayloadStore;
+  @NotNull private final SessionArchiver mySessionArchiver;
   private final ServerInterceptor myInterceptor;
   /**
    * Mapping a stream id to its DataStoreClient.
@@ -154,11 +165,15 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     myFetchExecutor = fetchExecutor;
     myInterceptor = interceptor;
     myDatastoreDirectory = datastoreDirectory;
+    mySessionArchiver = new SessionArchiver(new File(datastoreDirectory, SessionArchiver.ARCHIVE_DIRECTORY_NAME), logService);
     myServerBuilder = InProcessServerBuilder.forName(serviceName).directExecutor();
     // Calling set with null resets the exception handler to the default exception handler.
     // getLogger().error(exception);
     setNoPiiExceptionHandler(null);
     createPollers();
+    if (PROFILER_PERSISTENT_SESSIONS.get()) {
+      archivePreviousDatabases();
+    }
     myServer = myServerBuilder.build();
     try {
       myServer.start();
@@ -196,17 +211,69 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   public void createPollers() {
     // TODO b/73538507 shared between all services to support inserting file content into generic byte cache (e.g. importing hprof)
     // We should be able to keep this inside TransportService after legacy pipeline removal.
-    UnifiedEventsTable unifiedTable = new UnifiedEventsTable();
-    myTransportService = new TransportService(this, unifiedTable, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
+    myUnifiedTable = PROFILER_COLUMNAR_EVENT_STORE.get() ? new ColumnarUnifiedEventsTable() : new UnifiedEventsTable();
+    myPayloadStore = PROFILER_PAYLOAD_STORE.get()
+                     ? new PayloadStore(new File(myDatastoreDirectory, PayloadStore.DIRECTORY_NAME), myLogService)
+                     : null;
+    myTransportService =
+      new TransportService(this, myUnifiedTable, myPayloadStore, myFetchExecutor, !PROFILER_UNIFIED_PIPELINE.get());
     registerService(myTransportService);
     registerService(new ProfilerService(this, myLogService));
     registerService(new EventService(this, myFetchExecutor));
     registerService(new CpuService(this, myFetchExecutor, myLogService));
-    registerService(new MemoryService(this, unifiedTable, myFetchExecutor, myLogService));
+    registerService(new MemoryService(this, myUnifiedTable, myFetchExecutor, myLogService));
     registerService(new NetworkService(this, myFetchExecutor));
     registerService(new EnergyService(this, myFetchExecutor, myLogService));
   }
 
+  /**
+   * @return the directory that completed sessions are archived to when {@link StudioFlags#PROFILER_PERSISTENT_SESSIONS} is enabled.
+   */
+  @NotNull
+  public File getSessionArchiveDirectory() {
+    return mySessionArchiver.getDirectory();
+  }
+
+  /**
+   * Archives a session in the background once it ended, when {@link StudioFlags#PROFILER_PERSISTENT_SESSIONS} is enabled. Nothing is
+   * archived on shutdown: sessions still ongoing at that point are archived from the durable database on the next start.
+   */
+  public void onSessionEnded(long sessionId) {
+    if (!PROFILER_PERSISTENT_SESSIONS.get()) {
+      return;
+    }
+    myFetchExecutor.accept(() -> {
+      DataStoreDatabase db = myDatabases.get(BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+      if (db != null && db.getWriter() != null) {
+        // The session ended event may still be waiting for its group commit.
+        db.getWriter().flush();
+      }
+      mySessionArchiver.archiveSession(myUnifiedTable, myPayloadStore, sessionId);
+    });
+  }
+
+  /**
+   * Inserts the begin and end events of a session restored from an archive, so it is listed before the stream its data is loaded into is
+   * connected. Unlike the events received from a stream, they do not trigger {@link #onSessionEnded(long)}, the session already has an
+   * archive.
+   */
+  public void insertArchivedSession(long streamId, @NotNull Common.Event sessionStarted, @NotNull Common.Event sessionEnded) {
+    myUnifiedTable.insertUnifiedEvent(streamId, sessionStarted);
+    myUnifiedTable.insertUnifiedEvent(streamId, sessionEnded);
+  }
+
+  /**
+   * Durable databases from the previous run were moved aside when they were opened, archive their sessions in the background.
+   */
+  private void archivePreviousDatabases() {
+    myDatabases.forEach((namespace, db) -> {
+      File previousFile = new File(myDatastoreDirectory + namespace.myNamespace + DataStoreDatabase.PREVIOUS_SUFFIX);
+      if (namespace.myCharacteristic == DURABLE && previousFile.exists()) {
+        myFetchExecutor.accept(() -> mySessionArchiver.archivePreviousDatabase(previousFile));
+      }
+    });
+  }
+
   @VisibleForTesting
   @NotNull
   public DataStoreDatabase createDatabase(@NotNull String dbPath,
@@ -227,7 +294,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       assert !namespace.myNamespace.isEmpty();
       DataStoreDatabase db = myDatabases.computeIfAbsent(namespace, backingNamespace -> createDatabase(
         myDatastoreDirectory + backingNamespace.myNamespace, backingNamespace.myCharacteristic, myNoPiiExceptionHandler));
-      service.setBackingStore(namespace, db.getConnection());
+      service.setBackingStore(namespace, db);
     });
 
     // Build server and start listening for RPC calls for the registered service
@@ -274,6 +341,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     }
     myConnectedClients.clear();
     myDatabases.forEach((name, db) -> db.disconnect());
+    if (myPayloadStore != null) {
+      myPayloadStore.clear();
+    }
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
 
@@ -411,6 +481,12 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
         dbStats.setTotalDiskMb((int)(dbFile.length() / 1024 / 1024)); // Bytes -> MB
 
         for (DataStoreDatabase db : myDatabases.values()) {
+          GroupCommitWriter writer = db.getWriter();
+          if (writer != null) {
+            GroupCommitWriter.Metrics metrics = writer.getMetrics();
+            getLogger().debug(String.format(Locale.US, "Writer queue depth: %d, last batch size: %d, average commit latency: %dns",
+                                            metrics.getQueueDepth(), metrics.getLastBatchSize(), metrics.getAverageCommitLatencyNs()));
+          }
           try (
             Statement tableStatement = db.getConnection().createStatement();
             ResultSet tableResults = tableStatement.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
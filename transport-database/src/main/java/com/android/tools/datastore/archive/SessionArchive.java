@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.archive;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Common.SessionData;
+import java.io.File;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A completed profiling session stored in a single, self-describing file so it can be listed and reopened after Studio restarts.
+ * <p>
+ * Layout, all integers big-endian:
+ * <pre>
+ *   int     magic ("APSA")
+ *   int     format version
+ *   Event   session started event (length delimited)
+ *   Event   session ended event (length delimited)
+ *   int     number of events
+ *   int     number of bytes entries
+ *   Event[] events (length delimited), ordered by timestamp
+ *   bytes[] bytes entries, each a UTF id followed by a length delimited BytesResponse
+ * </pre>
+ * The header (everything up to the counts) is enough to list the session, the body is only read when the session is opened.
+ */
+public final class SessionArchive {
+  public static final String EXTENSION = "session";
+
+  static final int MAGIC = 0x41505341;
+
+  /**
+   * Version of the layout above. Readers upgrade older versions as they are read, see {@link SessionArchiveReader}.
+   */
+  public static final int FORMAT_VERSION = 1;
+
+  @NotNull private final File myFile;
+  private final int myFormatVersion;
+  @NotNull private final Event mySessionStarted;
+  @NotNull private final Event mySessionEnded;
+  private final int myEventCount;
+  private final int myBytesCount;
+
+  SessionArchive(@NotNull File file,
+                 int formatVersion,
+                 @NotNull Event sessionStarted,
+                 @NotNull Event sessionEnded,
+                 int eventCount,
+                 int bytesCount) {
+    myFile = file;
+    myFormatVersion = formatVersion;
+    mySessionStarted = sessionStarted;
+    mySessionEnded = sessionEnded;
+    myEventCount = eventCount;
+    myBytesCount = bytesCount;
+  }
+
+  @NotNull
+  public static String getFileName(long sessionId) {
+    return sessionId + "." + EXTENSION;
+  }
+
+  @NotNull
+  public File getFile() {
+    return myFile;
+  }
+
+  public int getFormatVersion() {
+    return myFormatVersion;
+  }
+
+  public long getSessionId() {
+    return mySessionStarted.getGroupId();
+  }
+
+  @NotNull
+  public SessionData.SessionStarted getSessionStarted() {
+    return mySessionStarted.getSession().getSessionStarted();
+  }
+
+  /**
+   * @return the SESSION event that began the session, as it was recorded.
+   */
+  @NotNull
+  public Event getSessionStartedEvent() {
+    return mySessionStarted;
+  }
+
+  /**
+   * @return the SESSION event that ended the session.
+   */
+  @NotNull
+  public Event getSessionEndedEvent() {
+    return mySessionEnded;
+  }
+
+  public long getStartTimestamp() {
+    return mySessionStarted.getTimestamp();
+  }
+
+  public long getEndTimestamp() {
+    return mySessionEnded.getTimestamp();
+  }
+
+  public int getEventCount() {
+    return myEventCount;
+  }
+
+  public int getBytesCount() {
+    return myBytesCount;
+  }
+}
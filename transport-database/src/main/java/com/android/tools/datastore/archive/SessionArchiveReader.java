@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.archive;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.BytesResponse;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads {@link SessionArchive} files. Listing only reads the header of each file, events and bytes are streamed to the caller when a
+ * session is opened so they never all have to be held in memory.
+ */
+public final class SessionArchiveReader {
+  private SessionArchiveReader() {
+  }
+
+  /**
+   * @return the archives found in the directory, files that are not valid archives are skipped.
+   */
+  @NotNull
+  public static List<SessionArchive> list(@NotNull File directory) {
+    List<SessionArchive> archives = new ArrayList<>();
+    File[] files = directory.listFiles((dir, name) -> name.endsWith("." + SessionArchive.EXTENSION));
+    if (files == null) {
+      return archives;
+    }
+    for (File file : files) {
+      try {
+        archives.add(readHeader(file));
+      }
+      catch (IOException ignored) {
+        // Not an archive, or written by a newer version of Studio.
+      }
+    }
+    return archives;
+  }
+
+  @NotNull
+  public static SessionArchive readHeader(@NotNull File file) throws IOException {
+    try (DataInputStream input = open(file)) {
+      return readHeader(file, input);
+    }
+  }
+
+  /**
+   * Streams the events, in timestamp order, then the bytes of the archive.
+   */
+  public static void readBody(@NotNull SessionArchive archive,
+                              @NotNull Consumer<Event> eventConsumer,
+                              @NotNull BiConsumer<String, BytesResponse> bytesConsumer) throws IOException {
+    try (DataInputStream input = open(archive.getFile())) {
+      SessionArchive header = readHeader(archive.getFile(), input);
+      for (int i = 0; i < header.getEventCount(); i++) {
+        eventConsumer.accept(upgrade(header.getFormatVersion(), readEvent(input)));
+      }
+      for (int i = 0; i < header.getBytesCount(); i++) {
+        String id = input.readUTF();
+        BytesResponse bytes = BytesResponse.parseDelimitedFrom(input);
+        if (bytes == null) {
+          throw new EOFException();
+        }
+        bytesConsumer.accept(id, bytes);
+      }
+    }
+  }
+
+  @NotNull
+  private static DataInputStream open(@NotNull File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+  }
+
+  @NotNull
+  private static SessionArchive readHeader(@NotNull File file, @NotNull DataInputStream input) throws IOException {
+    if (input.readInt() != SessionArchive.MAGIC) {
+      throw new IOException("Not a session archive: " + file);
+    }
+    int version = input.readInt();
+    if (version < 1 || version > SessionArchive.FORMAT_VERSION) {
+      throw new IOException(String.format("Unsupported session archive version %d: %s", version, file));
+    }
+    Event sessionStarted = upgrade(version, readEvent(input));
+    Event sessionEnded = upgrade(version, readEvent(input));
+    int eventCount = input.readInt();
+    int bytesCount = input.readInt();
+    return new SessionArchive(file, version, sessionStarted, sessionEnded, eventCount, bytesCount);
+  }
+
+  @NotNull
+  private static Event readEvent(@NotNull DataInputStream input) throws IOException {
+    Event event = Event.parseDelimitedFrom(input);
+    if (event == null) {
+      throw new EOFException();
+    }
+    return event;
+  }
+
+  /**
+   * Migrates an event read from an archive of the given version to what the current version would have written. Events are protos so
+   * added fields are handled for free, only semantic changes need a step here.
+   */
+  @NotNull
+  private static Event upgrade(int version, @NotNull Event event) {
+    // Version 1 is the current version, add a step for each version bump, migrating version N to N + 1.
+    return event;
+  }
+}
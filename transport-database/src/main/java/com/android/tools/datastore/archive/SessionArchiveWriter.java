@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.archive;
+
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.BytesResponse;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes a {@link SessionArchive} file in the current {@link SessionArchive#FORMAT_VERSION}.
+ * <p>
+ * Events and bytes are streamed to a temporary file as they are added, so a session never has to be held in memory. Once the session
+ * ended event is known, {@link #finish} writes the header followed by the streamed body to another temporary file and moves it in place,
+ * so a partially written archive is never listed.
+ */
+public final class SessionArchiveWriter implements Closeable {
+  @NotNull private final File myFile;
+  @NotNull private final File myBodyFile;
+  @NotNull private final DataOutputStream myBody;
+  private int myEventCount;
+  private int myBytesCount;
+
+  public SessionArchiveWriter(@NotNull File file) throws IOException {
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.mkdirs() && !parent.exists()) {
+      throw new IOException("Unable to create directory " + parent);
+    }
+    myFile = file;
+    myBodyFile = new File(file.getPath() + ".body.tmp");
+    myBody = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myBodyFile)));
+  }
+
+  /**
+   * Adds an event of the session, excluding its SESSION events. Events have to be added in timestamp order, before any bytes.
+   */
+  public void addEvent(@NotNull Event event) throws IOException {
+    if (myBytesCount > 0) {
+      throw new IllegalStateException("Events have to be added before bytes");
+    }
+    event.writeDelimitedTo(myBody);
+    myEventCount++;
+  }
+
+  /**
+   * Adds bytes that can be queried for the session.
+   */
+  public void addBytes(@NotNull String id, @NotNull BytesResponse bytes) throws IOException {
+    myBody.writeUTF(id);
+    bytes.writeDelimitedTo(myBody);
+    myBytesCount++;
+  }
+
+  /**
+   * Writes the archive with what was added so far.
+   *
+   * @param sessionStarted the SESSION event that began the session.
+   * @param sessionEnded   the SESSION event that ended the session.
+   */
+  public void finish(@NotNull Event sessionStarted, @NotNull Event sessionEnded) throws IOException {
+    myBody.close();
+    File tempFile = new File(myFile.getPath() + ".tmp");
+    try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      output.writeInt(SessionArchive.MAGIC);
+      output.writeInt(SessionArchive.FORMAT_VERSION);
+      sessionStarted.writeDelimitedTo(output);
+      sessionEnded.writeDelimitedTo(output);
+      output.writeInt(myEventCount);
+      output.writeInt(myBytesCount);
+      Files.copy(myBodyFile.toPath(), output);
+    }
+    catch (IOException e) {
+      tempFile.delete();
+      throw e;
+    }
+    Files.move(tempFile.toPath(), myFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Deletes the temporary body, the archive is only written if {@link #finish} was called.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      myBody.close();
+    }
+    finally {
+      myBodyFile.delete();
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.archive;
+
+import com.android.tools.datastore.DataStoreDatabase;
+import com.android.tools.datastore.LogService;
+import com.android.tools.datastore.database.PayloadStore;
+import com.android.tools.datastore.database.UnifiedEventsTable;
+import com.android.tools.idea.protobuf.ByteString;
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Common.SessionData;
+import com.android.tools.profiler.proto.Network.NetworkHttpConnectionData;
+import com.android.tools.profiler.proto.Transport.BytesRequest;
+import com.android.tools.profiler.proto.Transport.BytesResponse;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Copies the FULL sessions recorded in a {@link UnifiedEventsTable} into {@link SessionArchive} files, one file per session, so they
+ * outlive the database. Sessions that already have an archive are skipped, which also covers sessions that were restored from an
+ * archive in the first place.
+ */
+public final class SessionArchiver {
+  /**
+   * Name of the directory, relative to the datastore directory, that archives are written to.
+   */
+  public static final String ARCHIVE_DIRECTORY_NAME = "sessions";
+
+  @NotNull private final File myDirectory;
+  @NotNull private final LogService myLogService;
+
+  public SessionArchiver(@NotNull File directory, @NotNull LogService logService) {
+    myDirectory = directory;
+    myLogService = logService;
+  }
+
+  @NotNull
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(SessionArchiver.class);
+  }
+
+  @NotNull
+  public File getDirectory() {
+    return myDirectory;
+  }
+
+  /**
+   * Archives the sessions of a database left behind by a previous run (see {@link DataStoreDatabase#PREVIOUS_SUFFIX}) and deletes it.
+   * Databases with another schema version are deleted without being archived.
+   *
+   * @return the number of sessions archived.
+   */
+  public int archivePreviousDatabase(@NotNull File dbFile) {
+    int archived = 0;
+    try {
+      Class.forName("org.sqlite.JDBC");
+      try (Connection connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()))) {
+        if (DataStoreDatabase.isCurrentSchema(connection)) {
+          UnifiedEventsTable table = new UnifiedEventsTable(false);
+          table.initialize(connection);
+          archived = archiveSessions(table);
+        }
+        else {
+          getLogger().info("Skipping incompatible datastore database " + dbFile.getName());
+        }
+      }
+    }
+    catch (ClassNotFoundException | SQLException e) {
+      getLogger().error(e);
+    }
+    if (!dbFile.delete()) {
+      getLogger().warn("Unable to delete " + dbFile.getPath());
+    }
+    return archived;
+  }
+
+  /**
+   * @return the number of sessions archived.
+   */
+  public int archiveSessions(@NotNull UnifiedEventsTable table) {
+    return archiveSessions(table, null);
+  }
+
+  /**
+   * @param payloadStore where the bytes fetched from the device are kept instead of the table, if any.
+   * @return the number of sessions archived.
+   */
+  public int archiveSessions(@NotNull UnifiedEventsTable table, @Nullable PayloadStore payloadStore) {
+    int archived = 0;
+    for (EventGroup group : table.queryUnifiedEventGroups(GetEventGroupsRequest.newBuilder().setKind(Event.Kind.SESSION).build())) {
+      if (archiveSession(table, payloadStore, group)) {
+        archived++;
+      }
+    }
+    return archived;
+  }
+
+  /**
+   * Archives a single session, e.g. once it ended.
+   *
+   * @param payloadStore where the bytes fetched from the device are kept instead of the table, if any.
+   * @return whether the session was archived.
+   */
+  public boolean archiveSession(@NotNull UnifiedEventsTable table, @Nullable PayloadStore payloadStore, long sessionId) {
+    List<EventGroup> groups = table.queryUnifiedEventGroups(
+      GetEventGroupsRequest.newBuilder().setKind(Event.Kind.SESSION).setGroupId(sessionId).build());
+    return !groups.isEmpty() && archiveSession(table, payloadStore, groups.get(0));
+  }
+
+  private boolean archiveSession(@NotNull UnifiedEventsTable table, @Nullable PayloadStore payloadStore, @NotNull EventGroup group) {
+    Event sessionStarted = group.getEvents(0);
+    SessionData.SessionStarted data = sessionStarted.getSession().getSessionStarted();
+    // Imported sessions (e.g. a heap dump) can be imported again from their original file.
+    if (!sessionStarted.getSession().hasSessionStarted() || data.getType() != SessionData.SessionStarted.SessionType.FULL) {
+      return false;
+    }
+    File file = new File(myDirectory, SessionArchive.getFileName(sessionStarted.getGroupId()));
+    if (file.exists()) {
+      return false;
+    }
+
+    Event lastEvent = group.getEvents(group.getEventsCount() - 1);
+    Event sessionEnded = group.getEventsCount() > 1 && lastEvent.getIsEnded() ? lastEvent : null;
+    long endTimestamp = sessionEnded != null ? sessionEnded.getTimestamp() : Long.MAX_VALUE;
+    Set<String> bytesIds = new HashSet<>();
+    long[] lastTimestamp = {sessionStarted.getTimestamp()};
+    try (SessionArchiveWriter writer = new SessionArchiveWriter(file)) {
+      table.forEachStreamEvent(data.getStreamId(), data.getPid(), sessionStarted.getTimestamp(), endTimestamp, event -> {
+        if (event.getKind() == Event.Kind.SESSION) {
+          return;
+        }
+        try {
+          writer.addEvent(event);
+        }
+        catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+        addBytesIds(event, bytesIds);
+        lastTimestamp[0] = event.getTimestamp();
+      });
+      for (String id : bytesIds) {
+        BytesResponse bytes = getBytes(table, payloadStore, data.getStreamId(), id);
+        if (bytes != null) {
+          writer.addBytes(id, bytes);
+        }
+      }
+      if (sessionEnded == null) {
+        // The session was still ongoing when Studio exited, end it with its last piece of data.
+        sessionEnded = Event.newBuilder()
+          .setKind(Event.Kind.SESSION)
+          .setGroupId(sessionStarted.getGroupId())
+          .setPid(sessionStarted.getPid())
+          .setTimestamp(lastTimestamp[0])
+          .setIsEnded(true)
+          .build();
+      }
+      writer.finish(sessionStarted, sessionEnded);
+      return true;
+    }
+    catch (IOException | UncheckedIOException e) {
+      getLogger().error(e);
+      return false;
+    }
+  }
+
+  /**
+   * Bytes are stored per stream, so only the ones the events of the session refer to are archived: captures (e.g. CPU traces and heap
+   * dumps) are stored under the id of their group, HTTP bodies under the payload ids of their connection.
+   */
+  private static void addBytesIds(@NotNull Event event, @NotNull Set<String> ids) {
+    ids.add(Long.toString(event.getGroupId()));
+    NetworkHttpConnectionData connection = event.getNetworkHttpConnection();
+    addIfNotEmpty(connection.getHttpRequestCompleted().getPayloadId(), ids);
+    addIfNotEmpty(connection.getHttpResponseCompleted().getPayloadId(), ids);
+  }
+
+  private static void addIfNotEmpty(@NotNull String id, @NotNull Set<String> ids) {
+    if (!id.isEmpty()) {
+      ids.add(id);
+    }
+  }
+
+  @Nullable
+  private static BytesResponse getBytes(@NotNull UnifiedEventsTable table,
+                                        @Nullable PayloadStore payloadStore,
+                                        long streamId,
+                                        @NotNull String id) {
+    BytesResponse bytes = table.getBytes(BytesRequest.newBuilder().setStreamId(streamId).setId(id).build());
+    if (bytes == null && payloadStore != null) {
+      ByteString contents = payloadStore.get(streamId, id);
+      if (contents != null) {
+        bytes = BytesResponse.newBuilder().setContents(contents).build();
+      }
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,667 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An append-only, in-memory event store that partitions events into fixed-width time buckets ("segments"). Each segment keeps the
+ * indexed fields of its events as parallel primitive arrays and the serialized payloads in a separate byte log, so range queries can
+ * filter on the primitive columns and only touch the payloads of the rows that are actually returned.
+ * <p>
+ * Segments are kept sorted by their start time and located via binary search. Inside a segment rows are stored in insertion order; as
+ * long as rows arrive with non-decreasing timestamps (the common case for a single stream) the segment is binary searched as well,
+ * otherwise it falls back to a scan over the timestamp column.
+ * <p>
+ * Rows are never moved once written. Deletions are recorded as tombstones.
+ * <p>
+ * On top of the segments, an {@link EventIntervalIndex} keeps the rows of each group sorted by time, which answers the per group queries
+ * of {@link #scanGroups}, {@link #visitLatestBefore} and {@link #visitEarliestAfter} without going through the rest of the session.
+ */
+public final class ColumnarEventStore {
+  public static final long DEFAULT_SEGMENT_DURATION_NS = TimeUnit.SECONDS.toNanos(10);
+
+  private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+  /**
+   * Filter applied to the indexed columns. A value of 0 for any of the optional fields means "match everything", which mirrors the
+   * semantics of {@link com.android.tools.profiler.proto.Transport.GetEventGroupsRequest}.
+   */
+  public static final class Filter {
+    final int myKind;
+    final long myStreamId;
+    final int myPid;
+    final long myGroupId;
+    final long myCommandId;
+    final boolean myExact;
+
+    public Filter(int kind, long streamId, int pid, long groupId, long commandId) {
+      this(kind, streamId, pid, groupId, commandId, false);
+    }
+
+    private Filter(int kind, long streamId, int pid, long groupId, long commandId, boolean exact) {
+      myKind = kind;
+      myStreamId = streamId;
+      myPid = pid;
+      myGroupId = groupId;
+      myCommandId = commandId;
+      myExact = exact;
+    }
+
+    /**
+     * @return a filter that matches stream, pid and group exactly (a 0 value only matches 0) and ignores the command id.
+     */
+    @NotNull
+    public static Filter exact(int kind, long streamId, int pid, long groupId) {
+      return new Filter(kind, streamId, pid, groupId, 0, true);
+    }
+
+    /**
+     * @return whether rows of the given stream and pid can match the filter. The kind and group are matched by the index lookup.
+     */
+    boolean matchesTimeline(long streamId, int pid) {
+      if (myExact) {
+        return myStreamId == streamId && myPid == pid;
+      }
+      return (myStreamId == 0 || myStreamId == streamId) && (myPid == 0 || myPid == pid);
+    }
+
+    boolean matches(@NotNull Segment segment, int row) {
+      if (myExact) {
+        return segment.myKinds[row] == myKind &&
+               segment.myStreamIds[row] == myStreamId &&
+               segment.myPids[row] == myPid &&
+               segment.myGroupIds[row] == myGroupId;
+      }
+      return segment.myKinds[row] == myKind &&
+             (myStreamId == 0 || segment.myStreamIds[row] == myStreamId) &&
+             (myPid == 0 || segment.myPids[row] == myPid) &&
+             (myGroupId == 0 || segment.myGroupIds[row] == myGroupId) &&
+             (myCommandId == 0 || segment.myCommandIds[row] == myCommandId);
+    }
+  }
+
+  /**
+   * Read-only view of a single row, handed to {@link RowVisitor}s. The view is reused between rows and is only valid for the duration
+   * of the {@link RowVisitor#visit(Row)} call.
+   */
+  public static final class Row {
+    private Segment mySegment;
+    private int myRow;
+
+    public long getTimestamp() {
+      return mySegment.myTimestamps[myRow];
+    }
+
+    public long getStreamId() {
+      return mySegment.myStreamIds[myRow];
+    }
+
+    public int getPid() {
+      return mySegment.myPids[myRow];
+    }
+
+    public int getKind() {
+      return mySegment.myKinds[myRow];
+    }
+
+    public long getGroupId() {
+      return mySegment.myGroupIds[myRow];
+    }
+
+    public boolean isEnded() {
+      return mySegment.myEnded.get(myRow);
+    }
+
+    /**
+     * @return a monotonically increasing insertion order, used to break ties between rows with identical timestamps.
+     */
+    public long getSequence() {
+      return mySegment.mySequences[myRow];
+    }
+
+    @NotNull
+    public byte[] getPayload() {
+      return mySegment.readPayload(myRow);
+    }
+  }
+
+  public interface RowVisitor {
+    void visit(@NotNull Row row);
+  }
+
+  private final long mySegmentDurationNs;
+  private final ReadWriteLock myLock = new ReentrantReadWriteLock();
+  /**
+   * All segments, sorted by {@link Segment#myStartTime}. Segments are created on demand and never removed.
+   */
+  private final List<Segment> mySegments = new ArrayList<>();
+  private final EventIntervalIndex myIndex = new EventIntervalIndex();
+  private long myNextSequence;
+  private long myRowCount;
+
+  public ColumnarEventStore() {
+    this(DEFAULT_SEGMENT_DURATION_NS);
+  }
+
+  public ColumnarEventStore(long segmentDurationNs) {
+    assert segmentDurationNs > 0;
+    mySegmentDurationNs = segmentDurationNs;
+  }
+
+  /**
+   * Appends a row to the store. Rows that match an existing row on all of (kind, stream, pid, group, timestamp, ended) are dropped, which
+   * matches the "INSERT OR IGNORE" semantics of the SQL backed tables.
+   *
+   * @return true if the row was added, false if it was a duplicate.
+   */
+  public boolean append(long streamId, int pid, int kind, long groupId, long commandId, long timestamp, boolean isEnded,
+                        @NotNull byte[] payload) {
+    myLock.writeLock().lock();
+    try {
+      Segment segment = getOrCreateSegment(timestamp);
+      if (segment.contains(streamId, pid, kind, groupId, timestamp, isEnded)) {
+        return false;
+      }
+      segment.append(streamId, pid, kind, groupId, commandId, timestamp, isEnded, myNextSequence++, payload);
+      myIndex.add(segment, segment.mySize - 1);
+      myRowCount++;
+      return true;
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Marks all rows matching the filter with a timestamp in [fromTimestamp, toTimestamp] as deleted.
+   */
+  public void delete(@NotNull Filter filter, long fromTimestamp, long toTimestamp) {
+    myLock.writeLock().lock();
+    try {
+      for (int i = findFirstSegment(fromTimestamp); i < mySegments.size(); i++) {
+        Segment segment = mySegments.get(i);
+        if (segment.myStartTime > toTimestamp) {
+          break;
+        }
+        int end = segment.upperBound(toTimestamp);
+        for (int row = segment.lowerBound(fromTimestamp); row < end; row++) {
+          if (segment.isLive(row) && segment.inRange(row, fromTimestamp, toTimestamp) && filter.matches(segment, row)) {
+            segment.myDeleted.set(row);
+            myRowCount--;
+          }
+        }
+      }
+    }
+    finally {
+      myLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Visits, in segment order, every live row matching the filter with a timestamp in [fromTimestamp, toTimestamp].
+   */
+  public void scan(@NotNull Filter filter, long fromTimestamp, long toTimestamp, @NotNull RowVisitor visitor) {
+    myLock.readLock().lock();
+    try {
+      Row view = new Row();
+      for (int i = findFirstSegment(fromTimestamp); i < mySegments.size(); i++) {
+        Segment segment = mySegments.get(i);
+        if (segment.myStartTime > toTimestamp) {
+          break;
+        }
+        int end = segment.upperBound(toTimestamp);
+        for (int row = segment.lowerBound(fromTimestamp); row < end; row++) {
+          if (segment.isLive(row) && segment.inRange(row, fromTimestamp, toTimestamp) && filter.matches(segment, row)) {
+            view.mySegment = segment;
+            view.myRow = row;
+            visitor.visit(view);
+          }
+        }
+      }
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Visits every live row matching the filter with a timestamp in [fromTimestamp, toTimestamp], one group after the other and in time
+   * order within a group. Unlike {@link #scan}, only the rows of the matching groups are looked at.
+   */
+  public void scanGroups(@NotNull Filter filter, long fromTimestamp, long toTimestamp, @NotNull RowVisitor visitor) {
+    myLock.readLock().lock();
+    try {
+      Row view = new Row();
+      myIndex.forEachTimeline(filter, timeline -> {
+        for (int i = timeline.lowerBound(fromTimestamp), end = timeline.upperBound(toTimestamp); i < end; i++) {
+          visitIfMatching(filter, timeline, i, view, visitor);
+        }
+      });
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Visits, for each group matching the filter, its latest live row with a timestamp strictly before the given one. A group id that is
+   * used by several streams or processes is visited once for each of them.
+   */
+  public void visitLatestBefore(@NotNull Filter filter, long timestamp, @NotNull RowVisitor visitor) {
+    myLock.readLock().lock();
+    try {
+      Row view = new Row();
+      myIndex.forEachTimeline(filter, timeline -> {
+        for (int i = timeline.lowerBound(timestamp) - 1; i >= 0; i--) {
+          if (visitIfMatching(filter, timeline, i, view, visitor)) {
+            break;
+          }
+        }
+      });
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Visits, for each group matching the filter, its earliest live row with a timestamp strictly after the given one. A group id that is
+   * used by several streams or processes is visited once for each of them.
+   */
+  public void visitEarliestAfter(@NotNull Filter filter, long timestamp, @NotNull RowVisitor visitor) {
+    myLock.readLock().lock();
+    try {
+      Row view = new Row();
+      myIndex.forEachTimeline(filter, timeline -> {
+        for (int i = timeline.upperBound(timestamp); i < timeline.size(); i++) {
+          if (visitIfMatching(filter, timeline, i, view, visitor)) {
+            break;
+          }
+        }
+      });
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Passes the payloads of the live rows accepted by {@code filter} with a timestamp in [fromTimestamp, toTimestamp] to {@code consumer},
+   * in time order and in insertion order for identical timestamps. The rows are collected one segment at a time and the lock is released
+   * before they are consumed, so a slow consumer (e.g. one writing to disk) does not block appends and at most one segment of payloads is
+   * held in memory.
+   */
+  public void forEachPayloadInTimeOrder(long fromTimestamp,
+                                        long toTimestamp,
+                                        @NotNull Predicate<Row> filter,
+                                        @NotNull Consumer<byte[]> consumer) {
+    long segmentFromTimestamp = fromTimestamp;
+    boolean done = fromTimestamp > toTimestamp;
+    while (!done) {
+      List<byte[]> payloads = new ArrayList<>();
+      myLock.readLock().lock();
+      try {
+        int index = findFirstSegment(segmentFromTimestamp);
+        if (index == mySegments.size() || mySegments.get(index).myStartTime > toTimestamp) {
+          return;
+        }
+        Segment segment = mySegments.get(index);
+        Row view = new Row();
+        view.mySegment = segment;
+        List<Integer> rows = new ArrayList<>();
+        int end = segment.upperBound(toTimestamp);
+        for (int row = segment.lowerBound(segmentFromTimestamp); row < end; row++) {
+          view.myRow = row;
+          if (segment.isLive(row) && segment.inRange(row, segmentFromTimestamp, toTimestamp) && filter.test(view)) {
+            rows.add(row);
+          }
+        }
+        if (!segment.mySortedByTime) {
+          rows.sort(Comparator.comparingLong((Integer row) -> segment.myTimestamps[row])
+                      .thenComparingLong(row -> segment.mySequences[row]));
+        }
+        rows.forEach(row -> payloads.add(segment.readPayload(row)));
+        long segmentEnd = segment.myStartTime + mySegmentDurationNs;
+        // The next segment starts where this one ends, unless that is past the range or overflows.
+        done = segmentEnd <= segment.myStartTime || segmentEnd > toTimestamp;
+        segmentFromTimestamp = segmentEnd;
+      }
+      finally {
+        myLock.readLock().unlock();
+      }
+      payloads.forEach(consumer);
+    }
+  }
+
+  /**
+   * Visits every live row in the store, regardless of its content.
+   */
+  public void scanAll(@NotNull RowVisitor visitor) {
+    myLock.readLock().lock();
+    try {
+      Row view = new Row();
+      for (Segment segment : mySegments) {
+        for (int row = 0; row < segment.mySize; row++) {
+          if (segment.isLive(row)) {
+            view.mySegment = segment;
+            view.myRow = row;
+            visitor.visit(view);
+          }
+        }
+      }
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the number of live (non-deleted) rows in the store.
+   */
+  public long getRowCount() {
+    myLock.readLock().lock();
+    try {
+      return myRowCount;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  @VisibleForTesting
+  int getSegmentCount() {
+    myLock.readLock().lock();
+    try {
+      return mySegments.size();
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return the approximate number of bytes retained by the columns and payload logs of all segments.
+   */
+  public long getRetainedBytes() {
+    myLock.readLock().lock();
+    try {
+      long total = 0;
+      for (Segment segment : mySegments) {
+        total += segment.getRetainedBytes();
+      }
+      return total;
+    }
+    finally {
+      myLock.readLock().unlock();
+    }
+  }
+
+  private static boolean visitIfMatching(@NotNull Filter filter,
+                                         @NotNull EventIntervalIndex.GroupTimeline timeline,
+                                         int index,
+                                         @NotNull Row view,
+                                         @NotNull RowVisitor visitor) {
+    Segment segment = timeline.getSegment(index);
+    int row = timeline.getRow(index);
+    // Deleted rows stay in the index, and the command id is the only column the index doesn't cover.
+    if (!segment.isLive(row) || !filter.matches(segment, row)) {
+      return false;
+    }
+    view.mySegment = segment;
+    view.myRow = row;
+    visitor.visit(view);
+    return true;
+  }
+
+  private long getSegmentStart(long timestamp) {
+    return Math.floorDiv(timestamp, mySegmentDurationNs) * mySegmentDurationNs;
+  }
+
+  /**
+   * @return the index of the first segment that may contain rows at or after the given timestamp.
+   */
+  private int findFirstSegment(long timestamp) {
+    // Compare against the segment end rather than rounding the timestamp down, which could overflow for Long.MIN_VALUE.
+    int low = 0;
+    int high = mySegments.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (mySegments.get(mid).myStartTime + mySegmentDurationNs <= timestamp) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  private int binarySearchSegment(long segmentStart) {
+    int low = 0;
+    int high = mySegments.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midStart = mySegments.get(mid).myStartTime;
+      if (midStart < segmentStart) {
+        low = mid + 1;
+      }
+      else if (midStart > segmentStart) {
+        high = mid - 1;
+      }
+      else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @NotNull
+  private Segment getOrCreateSegment(long timestamp) {
+    long start = getSegmentStart(timestamp);
+    // Fast path: data usually arrives at the leading edge.
+    int size = mySegments.size();
+    if (size > 0 && mySegments.get(size - 1).myStartTime == start) {
+      return mySegments.get(size - 1);
+    }
+    int index = binarySearchSegment(start);
+    if (index >= 0) {
+      return mySegments.get(index);
+    }
+    int insertionPoint = -(index + 1);
+    if (insertionPoint > 0) {
+      // Segments behind the leading edge rarely receive more data, release their spare capacity.
+      mySegments.get(insertionPoint - 1).trimToSize();
+    }
+    Segment segment = new Segment(start);
+    mySegments.add(insertionPoint, segment);
+    return segment;
+  }
+
+  /**
+   * A single time bucket. Columns grow geometrically and are trimmed once the segment stops being the leading edge.
+   */
+  static final class Segment {
+    final long myStartTime;
+    int mySize;
+    long[] myTimestamps = new long[INITIAL_SEGMENT_CAPACITY];
+    long[] myStreamIds = new long[INITIAL_SEGMENT_CAPACITY];
+    int[] myPids = new int[INITIAL_SEGMENT_CAPACITY];
+    int[] myKinds = new int[INITIAL_SEGMENT_CAPACITY];
+    long[] myGroupIds = new long[INITIAL_SEGMENT_CAPACITY];
+    long[] myCommandIds = new long[INITIAL_SEGMENT_CAPACITY];
+    long[] mySequences = new long[INITIAL_SEGMENT_CAPACITY];
+    final BitSet myEnded = new BitSet();
+    final BitSet myDeleted = new BitSet();
+    /**
+     * Payload of row i lives in myPayloadLog[myPayloadOffsets[i], myPayloadOffsets[i + 1]).
+     */
+    int[] myPayloadOffsets = new int[INITIAL_SEGMENT_CAPACITY + 1];
+    byte[] myPayloadLog = new byte[INITIAL_SEGMENT_CAPACITY * 32];
+    /**
+     * True as long as rows were appended with non-decreasing timestamps, which allows binary searching the timestamp column.
+     */
+    boolean mySortedByTime = true;
+
+    Segment(long startTime) {
+      myStartTime = startTime;
+    }
+
+    void append(long streamId, int pid, int kind, long groupId, long commandId, long timestamp, boolean isEnded, long sequence,
+                @NotNull byte[] payload) {
+      ensureCapacity(mySize + 1);
+      if (mySize > 0 && myTimestamps[mySize - 1] > timestamp) {
+        mySortedByTime = false;
+      }
+      myTimestamps[mySize] = timestamp;
+      myStreamIds[mySize] = streamId;
+      myPids[mySize] = pid;
+      myKinds[mySize] = kind;
+      myGroupIds[mySize] = groupId;
+      myCommandIds[mySize] = commandId;
+      mySequences[mySize] = sequence;
+      myEnded.set(mySize, isEnded);
+
+      int payloadStart = myPayloadOffsets[mySize];
+      int payloadEnd = payloadStart + payload.length;
+      if (payloadEnd > myPayloadLog.length) {
+        myPayloadLog = Arrays.copyOf(myPayloadLog, Math.max(payloadEnd, myPayloadLog.length * 2));
+      }
+      System.arraycopy(payload, 0, myPayloadLog, payloadStart, payload.length);
+      myPayloadOffsets[mySize + 1] = payloadEnd;
+      mySize++;
+    }
+
+    boolean contains(long streamId, int pid, int kind, long groupId, long timestamp, boolean isEnded) {
+      if (mySize == 0 || (mySortedByTime && myTimestamps[mySize - 1] < timestamp)) {
+        return false;
+      }
+      int end = upperBound(timestamp);
+      for (int row = lowerBound(timestamp); row < end; row++) {
+        if (myTimestamps[row] == timestamp &&
+            myKinds[row] == kind &&
+            myStreamIds[row] == streamId &&
+            myPids[row] == pid &&
+            myGroupIds[row] == groupId &&
+            myEnded.get(row) == isEnded &&
+            isLive(row)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    boolean isLive(int row) {
+      return !myDeleted.get(row);
+    }
+
+    boolean inRange(int row, long fromTimestamp, long toTimestamp) {
+      long timestamp = myTimestamps[row];
+      return timestamp >= fromTimestamp && timestamp <= toTimestamp;
+    }
+
+    /**
+     * @return the first row that may have a timestamp >= the given one.
+     */
+    int lowerBound(long timestamp) {
+      if (!mySortedByTime) {
+        return 0;
+      }
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return one past the last row that may have a timestamp <= the given one.
+     */
+    int upperBound(long timestamp) {
+      if (!mySortedByTime) {
+        return mySize;
+      }
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    @NotNull
+    byte[] readPayload(int row) {
+      return Arrays.copyOfRange(myPayloadLog, myPayloadOffsets[row], myPayloadOffsets[row + 1]);
+    }
+
+    long getRetainedBytes() {
+      // 6 long columns, 2 int columns and the offsets array, plus the payload log.
+      return (long)myTimestamps.length * (6 * Long.BYTES + 2 * Integer.BYTES) + (long)myPayloadOffsets.length * Integer.BYTES +
+             myPayloadLog.length;
+    }
+
+    void trimToSize() {
+      if (myTimestamps.length != mySize) {
+        resize(mySize);
+      }
+      int payloadSize = myPayloadOffsets[mySize];
+      if (myPayloadLog.length != payloadSize) {
+        myPayloadLog = Arrays.copyOf(myPayloadLog, payloadSize);
+      }
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (capacity > myTimestamps.length) {
+        resize(Math.max(capacity, myTimestamps.length * 2));
+      }
+    }
+
+    private void resize(int capacity) {
+      myTimestamps = Arrays.copyOf(myTimestamps, capacity);
+      myStreamIds = Arrays.copyOf(myStreamIds, capacity);
+      myPids = Arrays.copyOf(myPids, capacity);
+      myKinds = Arrays.copyOf(myKinds, capacity);
+      myGroupIds = Arrays.copyOf(myGroupIds, capacity);
+      myCommandIds = Arrays.copyOf(myCommandIds, capacity);
+      mySequences = Arrays.copyOf(mySequences, capacity);
+      myPayloadOffsets = Arrays.copyOf(myPayloadOffsets, capacity + 1);
+    }
+  }
+}
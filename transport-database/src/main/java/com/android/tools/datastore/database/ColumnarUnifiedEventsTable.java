@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.idea.protobuf.InvalidProtocolBufferException;
+import com.android.tools.profiler.proto.Common.Event;
+import com.android.tools.profiler.proto.Transport.EventGroup;
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link UnifiedEventsTable} that keeps events in a {@link ColumnarEventStore} instead of the [UnifiedEventsTable] SQL table. Range
+ * queries are answered from the primitive columns and only the protos that are returned get parsed. Bytes are still stored in SQLite
+ * since they are fetched by id and are not subject to range queries.
+ */
+public class ColumnarUnifiedEventsTable extends UnifiedEventsTable {
+  @NotNull private final ColumnarEventStore myStore;
+
+  public ColumnarUnifiedEventsTable() {
+    this(new ColumnarEventStore());
+  }
+
+  public ColumnarUnifiedEventsTable(@NotNull ColumnarEventStore store) {
+    myStore = store;
+  }
+
+  @Override
+  public void insertUnifiedEvent(long streamId, @NotNull Event event) {
+    myStore.append(streamId,
+                   event.getPid(),
+                   event.getKind().getNumber(),
+                   event.getGroupId(),
+                   event.getCommandId(),
+                   event.getTimestamp(),
+                   event.getIsEnded(),
+                   event.toByteArray());
+  }
+
+  @Override
+  public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
+    // Unlike queries, deletion treats the ids as exact matches, so a 0 id must not act as a wildcard.
+    myStore.delete(ColumnarEventStore.Filter.exact(kind.getNumber(), streamId, pid, groupId), fromTimestamp, toTimestamp);
+  }
+
+  @Override
+  public List<Event> queryUnifiedEvents() {
+    List<Event> records = new ArrayList<>();
+    myStore.scanAll(row -> {
+      Event event = parseEvent(row.getPayload());
+      if (event != null) {
+        records.add(event);
+      }
+    });
+    return records;
+  }
+
+  /**
+   * See {@link UnifiedEventsTable#queryUnifiedEventGroups(GetEventGroupsRequest)} for the semantics of the +1/-1 events returned
+   * around the requested range. All three parts of the query go through the group index of the store, so their cost doesn't grow with
+   * the events outside of the range.
+   */
+  @Override
+  public List<EventGroup> queryUnifiedEventGroups(@NotNull GetEventGroupsRequest request) {
+    ColumnarEventStore.Filter filter = new ColumnarEventStore.Filter(request.getKind().getNumber(),
+                                                                     request.getStreamId(),
+                                                                     request.getPid(),
+                                                                     request.getGroupId(),
+                                                                     request.getCommandId());
+    boolean hasFrom = request.getFromTimestamp() > 0;
+    boolean hasTo = request.getToTimestamp() > 0 && request.getToTimestamp() != Long.MAX_VALUE;
+    long from = hasFrom ? request.getFromTimestamp() : Long.MIN_VALUE;
+    long to = hasTo ? request.getToTimestamp() : Long.MAX_VALUE;
+
+    Map<Long, EventGroup.Builder> builderGroups = new LinkedHashMap<>();
+
+    // Latest event strictly before the range, per group, unless that event ended the group.
+    if (hasFrom) {
+      Map<Long, byte[]> latestPayloads = new HashMap<>();
+      Map<Long, long[]> latestKeys = new HashMap<>();
+      myStore.visitLatestBefore(filter, from, row -> {
+        long[] key = latestKeys.get(row.getGroupId());
+        if (key == null || row.getTimestamp() > key[0] || (row.getTimestamp() == key[0] && row.getSequence() > key[1])) {
+          latestKeys.put(row.getGroupId(), new long[]{row.getTimestamp(), row.getSequence(), row.isEnded() ? 1 : 0});
+          latestPayloads.put(row.getGroupId(), row.getPayload());
+        }
+      });
+      latestKeys.entrySet().stream()
+        .filter(entry -> entry.getValue()[2] == 0)
+        .sorted((a, b) -> Long.compare(a.getValue()[0], b.getValue()[0]))
+        .forEach(entry -> addEvent(builderGroups, entry.getKey(), latestPayloads.get(entry.getKey())));
+    }
+
+    myStore.scanGroups(filter, from, to, row -> addEvent(builderGroups, row.getGroupId(), row.getPayload()));
+
+    // Earliest event strictly after the range, only for groups that already have data.
+    if (hasTo) {
+      Map<Long, byte[]> earliestPayloads = new HashMap<>();
+      Map<Long, long[]> earliestKeys = new HashMap<>();
+      myStore.visitEarliestAfter(filter, to, row -> {
+        if (!builderGroups.containsKey(row.getGroupId())) {
+          return;
+        }
+        long[] key = earliestKeys.get(row.getGroupId());
+        if (key == null || row.getTimestamp() < key[0] || (row.getTimestamp() == key[0] && row.getSequence() < key[1])) {
+          earliestKeys.put(row.getGroupId(), new long[]{row.getTimestamp(), row.getSequence()});
+          earliestPayloads.put(row.getGroupId(), row.getPayload());
+        }
+      });
+      earliestPayloads.forEach((groupId, payload) -> addEvent(builderGroups, groupId, payload));
+    }
+
+    List<EventGroup> groups = new ArrayList<>(builderGroups.size());
+    builderGroups.values().forEach(builder -> groups.add(builder.build()));
+    return groups;
+  }
+
+  @Override
+  public void forEachStreamEvent(long streamId, int pid, long fromTimestamp, long toTimestamp, @NotNull Consumer<Event> consumer) {
+    myStore.forEachPayloadInTimeOrder(
+      fromTimestamp, toTimestamp,
+      row -> row.getStreamId() == streamId && (row.getPid() == pid || row.getPid() == 0),
+      payload -> {
+        Event event = parseEvent(payload);
+        if (event != null) {
+          consumer.accept(event);
+        }
+      });
+  }
+
+  private static void addEvent(@NotNull Map<Long, EventGroup.Builder> builderGroups, long groupId, @NotNull byte[] payload) {
+    Event event = parseEvent(payload);
+    if (event != null) {
+      builderGroups.computeIfAbsent(groupId, EventGroup.newBuilder()::setGroupId).addEvents(event);
+    }
+  }
+
+  private static Event parseEvent(@NotNull byte[] payload) {
+    try {
+      return Event.parser().parseFrom(payload);
+    }
+    catch (InvalidProtocolBufferException ex) {
+      onError(ex);
+      return null;
+    }
+  }
+}
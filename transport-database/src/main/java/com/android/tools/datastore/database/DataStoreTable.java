@@ -15,7 +15,9 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -30,6 +32,7 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
   private Connection myConnection;
+  @Nullable private GroupCommitWriter myWriter;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   // Cache custom queries we have a limited number and we call the same query multiple times.
@@ -48,6 +51,15 @@ public abstract class DataStoreTable<T extends Enum> {
     myConnection = connection;
   }
 
+  /**
+   * Initializes the table with the connection of the database, deferring writes to the database's {@link GroupCommitWriter} if it has
+   * one.
+   */
+  public final void initialize(@NotNull DataStoreDatabase database) {
+    myWriter = database.getWriter();
+    initialize(database.getConnection());
+  }
+
   /**
    * Helper function called after initialize to create {@link PreparedStatement} the implementor should cache
    * the statements for later use.
@@ -181,10 +193,33 @@ public abstract class DataStoreTable<T extends Enum> {
     }
   }
 
+  /**
+   * Executes a write that does not need to be committed immediately. When the table was initialized with a database that has a
+   * {@link GroupCommitWriter}, the write is queued and executed in a batch on the writer thread. Otherwise this behaves like
+   * {@link #execute(Enum, Object...)}.
+   */
+  protected void executeDeferred(@NotNull T statement, Object... params) {
+    if (isClosed()) {
+      return;
+    }
+    if (myWriter == null || !myWriter.enqueue(this, statement, params)) {
+      execute(statement, params);
+    }
+  }
+
+  /**
+   * Called on the {@link GroupCommitWriter} thread with a run of writes that were queued through {@link #executeDeferred}.
+   */
+  @SuppressWarnings("unchecked")
+  void executeDeferredBatch(@NotNull Enum statement, @NotNull List<Object[]> batchParams) {
+    executeBatch((T)statement, batchParams, params -> params);
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    awaitDeferredWrites();
     PreparedStatement stmt = getStatementMap().get(statement);
     applyParams(stmt, params);
     return stmt.executeQuery();
@@ -194,6 +229,7 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return new EmptyResultSet();
     }
+    awaitDeferredWrites();
     if (myCustomQueryCache.get() == null) {
       myCustomQueryCache.set(new HashMap<>());
     }
@@ -208,6 +244,15 @@ public abstract class DataStoreTable<T extends Enum> {
     return statement.executeQuery();
   }
 
+  /**
+   * Makes the writes queued through {@link #executeDeferred} visible to the query about to run.
+   */
+  private void awaitDeferredWrites() {
+    if (myWriter != null) {
+      myWriter.awaitWritten();
+    }
+  }
+
   protected void applyParams(@NotNull PreparedStatement statement, Object... params) throws SQLException {
     for (int i = 0; params != null && i < params.length; i++) {
       if (params[i] == null) {
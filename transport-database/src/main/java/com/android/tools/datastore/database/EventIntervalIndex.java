@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Index of the rows of a {@link ColumnarEventStore} by (kind, stream, pid, group). Each combination keeps references to its rows sorted
+ * by timestamp, so the rows of a group within a range, or the closest ones before or after a timestamp, are found with a binary search
+ * instead of a scan over every segment older than the range. The cost of a query depends on the number of groups it matches, not on how
+ * many events the session holds.
+ * <p>
+ * Rows are referenced by segment and position, which never change once written. This class is not thread-safe, the store guards it with
+ * its own lock.
+ */
+final class EventIntervalIndex {
+  private static final int INITIAL_TIMELINE_CAPACITY = 4;
+
+  @NotNull private final Map<Integer, KindTimelines> myKinds = new HashMap<>();
+
+  void add(@NotNull ColumnarEventStore.Segment segment, int row) {
+    KindTimelines kindTimelines = myKinds.computeIfAbsent(segment.myKinds[row], kind -> new KindTimelines());
+    long streamId = segment.myStreamIds[row];
+    int pid = segment.myPids[row];
+    long groupId = segment.myGroupIds[row];
+
+    List<GroupTimeline> groupTimelines = kindTimelines.myTimelinesByGroupId.computeIfAbsent(groupId, id -> new ArrayList<>(1));
+    GroupTimeline timeline = null;
+    for (GroupTimeline candidate : groupTimelines) {
+      if (candidate.myStreamId == streamId && candidate.myPid == pid) {
+        timeline = candidate;
+        break;
+      }
+    }
+    if (timeline == null) {
+      timeline = new GroupTimeline(streamId, pid);
+      groupTimelines.add(timeline);
+      kindTimelines.myTimelines.add(timeline);
+    }
+    timeline.add(segment, row);
+  }
+
+  /**
+   * Calls {@code consumer} with the timelines whose kind, stream, pid and group match the filter.
+   */
+  void forEachTimeline(@NotNull ColumnarEventStore.Filter filter, @NotNull Consumer<GroupTimeline> consumer) {
+    KindTimelines kindTimelines = myKinds.get(filter.myKind);
+    if (kindTimelines == null) {
+      return;
+    }
+    List<GroupTimeline> candidates = filter.myExact || filter.myGroupId != 0
+                                     ? kindTimelines.myTimelinesByGroupId.getOrDefault(filter.myGroupId, Collections.emptyList())
+                                     : kindTimelines.myTimelines;
+    for (GroupTimeline timeline : candidates) {
+      if (filter.matchesTimeline(timeline.myStreamId, timeline.myPid)) {
+        consumer.accept(timeline);
+      }
+    }
+  }
+
+  private static final class KindTimelines {
+    @NotNull private final List<GroupTimeline> myTimelines = new ArrayList<>();
+    @NotNull private final Map<Long, List<GroupTimeline>> myTimelinesByGroupId = new HashMap<>();
+  }
+
+  /**
+   * The rows of one (kind, stream, pid, group), sorted by timestamp. Rows with the same timestamp are kept in insertion order.
+   */
+  static final class GroupTimeline {
+    final long myStreamId;
+    final int myPid;
+    private ColumnarEventStore.Segment[] mySegments = new ColumnarEventStore.Segment[INITIAL_TIMELINE_CAPACITY];
+    private int[] myRows = new int[INITIAL_TIMELINE_CAPACITY];
+    private long[] myTimestamps = new long[INITIAL_TIMELINE_CAPACITY];
+    private int mySize;
+
+    private GroupTimeline(long streamId, int pid) {
+      myStreamId = streamId;
+      myPid = pid;
+    }
+
+    int size() {
+      return mySize;
+    }
+
+    @NotNull
+    ColumnarEventStore.Segment getSegment(int index) {
+      return mySegments[index];
+    }
+
+    int getRow(int index) {
+      return myRows[index];
+    }
+
+    /**
+     * @return the index of the first row with a timestamp >= the given one.
+     */
+    int lowerBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] < timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return the index of the first row with a timestamp > the given one.
+     */
+    int upperBound(long timestamp) {
+      int low = 0;
+      int high = mySize;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (myTimestamps[mid] <= timestamp) {
+          low = mid + 1;
+        }
+        else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    private void add(@NotNull ColumnarEventStore.Segment segment, int row) {
+      if (mySize == myTimestamps.length) {
+        int capacity = mySize * 2;
+        mySegments = Arrays.copyOf(mySegments, capacity);
+        myRows = Arrays.copyOf(myRows, capacity);
+        myTimestamps = Arrays.copyOf(myTimestamps, capacity);
+      }
+      long timestamp = segment.myTimestamps[row];
+      int index = mySize;
+      // Rows of a group almost always arrive in time order, only shift the tail for the ones that don't.
+      if (index > 0 && myTimestamps[index - 1] > timestamp) {
+        index = upperBound(timestamp);
+        System.arraycopy(mySegments, index, mySegments, index + 1, mySize - index);
+        System.arraycopy(myRows, index, myRows, index + 1, mySize - index);
+        System.arraycopy(myTimestamps, index, myTimestamps, index + 1, mySize - index);
+      }
+      mySegments[index] = segment;
+      myRows[index] = row;
+      myTimestamps[index] = timestamp;
+      mySize++;
+    }
+  }
+}
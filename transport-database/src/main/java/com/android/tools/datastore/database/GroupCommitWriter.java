@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single background thread that owns the write side of a database {@link Connection}. Producers (pollers, the transport service) hand
+ * their inserts to {@link #enqueue(DataStoreTable, Enum, Object[])}, which only appends to a bounded lock-free queue. The writer thread
+ * drains the queue, groups consecutive writes to the same statement into a single {@link java.sql.PreparedStatement#executeBatch()} and
+ * commits the transaction once enough rows were written or the commit interval elapsed, whichever comes first.
+ * <p>
+ * The writer is owned by its {@link com.android.tools.datastore.DataStoreDatabase} and handed to the tables initialized with it. Tables
+ * wait for the queued writes to be executed before running a query, so deferred writes are never hidden from readers. The writer also
+ * commits periodically when nothing was enqueued, so writes that go through {@link DataStoreTable#execute} directly are made durable as
+ * well.
+ */
+public final class GroupCommitWriter {
+  private static final long PRODUCER_BACKOFF_NS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  public static final class Policy {
+    public static final Policy DEFAULT = new Policy(16 * 1024, 1024, TimeUnit.SECONDS.toNanos(1));
+
+    private final int myQueueCapacity;
+    private final int myMaxBatchSize;
+    private final long myCommitIntervalNs;
+
+    /**
+     * @param queueCapacity    maximum number of pending writes before producers are throttled.
+     * @param maxBatchSize     maximum number of rows written per transaction, a commit is issued as soon as this many rows are written.
+     * @param commitIntervalNs maximum time between two commits.
+     */
+    public Policy(int queueCapacity, int maxBatchSize, long commitIntervalNs) {
+      assert queueCapacity > 0 && maxBatchSize > 0 && commitIntervalNs > 0;
+      myQueueCapacity = queueCapacity;
+      myMaxBatchSize = maxBatchSize;
+      myCommitIntervalNs = commitIntervalNs;
+    }
+  }
+
+  /**
+   * A point-in-time snapshot of the writer's counters.
+   */
+  public static final class Metrics {
+    private final int myQueueDepth;
+    private final int myLastBatchSize;
+    private final long myCommitCount;
+    private final long myLastCommitLatencyNs;
+    private final long myTotalCommitLatencyNs;
+
+    Metrics(int queueDepth, int lastBatchSize, long commitCount, long lastCommitLatencyNs, long totalCommitLatencyNs) {
+      myQueueDepth = queueDepth;
+      myLastBatchSize = lastBatchSize;
+      myCommitCount = commitCount;
+      myLastCommitLatencyNs = lastCommitLatencyNs;
+      myTotalCommitLatencyNs = totalCommitLatencyNs;
+    }
+
+    public int getQueueDepth() {
+      return myQueueDepth;
+    }
+
+    public int getLastBatchSize() {
+      return myLastBatchSize;
+    }
+
+    public long getCommitCount() {
+      return myCommitCount;
+    }
+
+    public long getLastCommitLatencyNs() {
+      return myLastCommitLatencyNs;
+    }
+
+    public long getAverageCommitLatencyNs() {
+      return myCommitCount == 0 ? 0 : myTotalCommitLatencyNs / myCommitCount;
+    }
+  }
+
+  private static final class PendingWrite {
+    @NotNull final DataStoreTable<?> myTable;
+    @NotNull final Enum myStatement;
+    @NotNull final Object[] myParams;
+
+    PendingWrite(@NotNull DataStoreTable<?> table, @NotNull Enum statement, @NotNull Object[] params) {
+      myTable = table;
+      myStatement = statement;
+      myParams = params;
+    }
+  }
+
+  @NotNull private final Connection myConnection;
+  @NotNull private final Policy myPolicy;
+  @NotNull private final Thread myThread;
+  private final Queue<PendingWrite> myQueue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger myQueueDepth = new AtomicInteger();
+  private final AtomicLong myEnqueuedCount = new AtomicLong();
+  private final Object myFlushLock = new Object();
+  private volatile long myWrittenCount;
+  private volatile long myCommittedCount;
+  private volatile boolean myRunning = true;
+  private volatile boolean myFlushRequested;
+
+  private volatile int myLastBatchSize;
+  private volatile long myCommitCount;
+  private volatile long myLastCommitLatencyNs;
+  private volatile long myTotalCommitLatencyNs;
+
+  public GroupCommitWriter(@NotNull Connection connection, @NotNull Policy policy) {
+    myConnection = connection;
+    myPolicy = policy;
+    myThread = new Thread(this::run, "DataStoreGroupCommitWriter");
+    myThread.setDaemon(true);
+  }
+
+  public void start() {
+    myThread.start();
+  }
+
+  /**
+   * Writes and commits everything that is still queued, then stops the writer thread. Writes enqueued after this call are executed
+   * synchronously by the caller.
+   */
+  public void stop() {
+    myRunning = false;
+    LockSupport.unpark(myThread);
+    try {
+      myThread.join();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    // A producer may have raced with the shutdown, write whatever it managed to enqueue.
+    List<PendingWrite> batch = new ArrayList<>();
+    drain(batch);
+    if (!batch.isEmpty()) {
+      writeBatch(batch);
+      onWritten(batch.size());
+      commit(batch.size());
+    }
+  }
+
+  /**
+   * Queues a write to be executed on the writer thread. If the queue is full the caller is throttled until the writer catches up.
+   *
+   * @return false if the writer is no longer running, in which case the caller should execute the write itself.
+   */
+  boolean enqueue(@NotNull DataStoreTable<?> table, @NotNull Enum statement, @NotNull Object[] params) {
+    while (true) {
+      if (!myRunning) {
+        return false;
+      }
+      int depth = myQueueDepth.get();
+      if (depth >= myPolicy.myQueueCapacity) {
+        LockSupport.unpark(myThread);
+        LockSupport.parkNanos(PRODUCER_BACKOFF_NS);
+        continue;
+      }
+      if (myQueueDepth.compareAndSet(depth, depth + 1)) {
+        myQueue.offer(new PendingWrite(table, statement, params));
+        myEnqueuedCount.incrementAndGet();
+        if (depth + 1 >= myPolicy.myMaxBatchSize) {
+          LockSupport.unpark(myThread);
+        }
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Blocks until every write enqueued before this call has been committed.
+   */
+  public void flush() {
+    long target = myEnqueuedCount.get();
+    myFlushRequested = true;
+    LockSupport.unpark(myThread);
+    synchronized (myFlushLock) {
+      while (myCommittedCount < target && myThread.isAlive()) {
+        try {
+          myFlushLock.wait(TimeUnit.NANOSECONDS.toMillis(myPolicy.myCommitIntervalNs));
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        LockSupport.unpark(myThread);
+      }
+    }
+  }
+
+  /**
+   * Blocks until every write enqueued before this call has been executed on the connection. The writes may not be committed yet, but
+   * they are visible to queries made through the same connection.
+   */
+  void awaitWritten() {
+    long target = myEnqueuedCount.get();
+    if (myWrittenCount >= target) {
+      return;
+    }
+    LockSupport.unpark(myThread);
+    synchronized (myFlushLock) {
+      while (myWrittenCount < target && myThread.isAlive()) {
+        try {
+          myFlushLock.wait(TimeUnit.NANOSECONDS.toMillis(myPolicy.myCommitIntervalNs));
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+  }
+
+  @NotNull
+  public Metrics getMetrics() {
+    return new Metrics(myQueueDepth.get(), myLastBatchSize, myCommitCount, myLastCommitLatencyNs, myTotalCommitLatencyNs);
+  }
+
+  @VisibleForTesting
+  boolean isRunning() {
+    return myThread.isAlive();
+  }
+
+  private void run() {
+    List<PendingWrite> batch = new ArrayList<>(myPolicy.myMaxBatchSize);
+    long lastCommitNs = System.nanoTime();
+    int uncommittedRows = 0;
+    while (true) {
+      boolean running = myRunning;
+      drain(batch);
+      if (!batch.isEmpty()) {
+        writeBatch(batch);
+        onWritten(batch.size());
+        uncommittedRows += batch.size();
+        myLastBatchSize = batch.size();
+        batch.clear();
+      }
+
+      long now = System.nanoTime();
+      boolean flushRequested = myFlushRequested && myQueueDepth.get() == 0;
+      if (uncommittedRows >= myPolicy.myMaxBatchSize || now - lastCommitNs >= myPolicy.myCommitIntervalNs || !running || flushRequested) {
+        myFlushRequested = false;
+        commit(uncommittedRows);
+        uncommittedRows = 0;
+        lastCommitNs = System.nanoTime();
+      }
+
+      if (!running && myQueueDepth.get() == 0) {
+        break;
+      }
+      if (myQueueDepth.get() == 0) {
+        long waitNs = myPolicy.myCommitIntervalNs - (System.nanoTime() - lastCommitNs);
+        if (waitNs > 0) {
+          LockSupport.parkNanos(this, waitNs);
+        }
+      }
+    }
+  }
+
+  private void drain(@NotNull List<PendingWrite> batch) {
+    PendingWrite write;
+    while (batch.size() < myPolicy.myMaxBatchSize && (write = myQueue.poll()) != null) {
+      myQueueDepth.decrementAndGet();
+      batch.add(write);
+    }
+  }
+
+  /**
+   * Groups consecutive writes that share a table and statement so each run is sent to the database as one batch. Only consecutive
+   * writes are grouped so the relative order of writes is preserved.
+   */
+  private static void writeBatch(@NotNull List<PendingWrite> batch) {
+    int runStart = 0;
+    for (int i = 1; i <= batch.size(); i++) {
+      PendingWrite first = batch.get(runStart);
+      if (i < batch.size() && batch.get(i).myTable == first.myTable && batch.get(i).myStatement == first.myStatement) {
+        continue;
+      }
+      List<Object[]> params = new ArrayList<>(i - runStart);
+      for (int j = runStart; j < i; j++) {
+        params.add(batch.get(j).myParams);
+      }
+      first.myTable.executeDeferredBatch(first.myStatement, params);
+      runStart = i;
+    }
+  }
+
+  private void onWritten(int rows) {
+    synchronized (myFlushLock) {
+      myWrittenCount += rows;
+      myFlushLock.notifyAll();
+    }
+  }
+
+  private void commit(int rows) {
+    long start = System.nanoTime();
+    try {
+      if (!myConnection.isClosed()) {
+        myConnection.commit();
+      }
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+    }
+    long latency = System.nanoTime() - start;
+    myLastCommitLatencyNs = latency;
+    myTotalCommitLatencyNs += latency;
+    myCommitCount++;
+    synchronized (myFlushLock) {
+      myCommittedCount += rows;
+      myFlushLock.notifyAll();
+    }
+  }
+}
@@ -138,8 +138,8 @@ public class NetworkTable extends DataStoreTable<NetworkTable.NetworkStatements>
   }
 
   public void insert(@NotNull Common.Session session, NetworkProfiler.NetworkProfilerData data) {
-    execute(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
-            data.getEndTimestamp(), data.toByteArray());
+    executeDeferred(NetworkStatements.INSERT_NETWORK_DATA, session.getSessionId(), DATACASE_REQUEST_TYPE_MAP.get(data.getDataCase()),
+                    data.getEndTimestamp(), data.toByteArray());
   }
 
   public NetworkProfiler.HttpDetailsResponse getHttpDetailsResponseById(long connId,
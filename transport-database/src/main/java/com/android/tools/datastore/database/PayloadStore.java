@@ -0,0 +1,380 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.LogService;
+import com.android.tools.idea.protobuf.ByteString;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Content-addressed store for the bytes fetched from a device (e.g. network request and response bodies), keyed by stream and id like
+ * the [BytesTable] of {@link UnifiedEventsTable}.
+ * <p>
+ * Contents are identified by their SHA-256 digest, so identical payloads are only stored once, and are released once no id refers to
+ * them anymore. Payloads up to the memory threshold are kept on the heap, and larger ones are spilled to files in the store's directory.
+ * Both tiers are bounded. Payloads are never evicted, since the device may no longer have them once their session ended: when a payload
+ * fits in neither tier, {@link #put} refuses it and the caller keeps it in the {@link UnifiedEventsTable} instead.
+ */
+public final class PayloadStore {
+  public static final String DIRECTORY_NAME = "payloads";
+
+  public static final int DEFAULT_MEMORY_THRESHOLD = 64 * 1024;
+  public static final long DEFAULT_MEMORY_CAPACITY = 64L * 1024 * 1024;
+  public static final long DEFAULT_DISK_CAPACITY = 512L * 1024 * 1024;
+
+  @NotNull private final File myDirectory;
+  @NotNull private final LogService myLogService;
+  private final int myMemoryThreshold;
+  private final long myMemoryCapacity;
+  private final long myDiskCapacity;
+
+  /**
+   * Digest of the contents stored for each (stream, id).
+   */
+  private final Map<Key, String> myDigests = new HashMap<>();
+
+  /**
+   * Number of (stream, id) referring to each digest.
+   */
+  private final Map<String, Integer> myReferenceCounts = new HashMap<>();
+
+  /**
+   * Contents of the payloads kept on the heap, by digest.
+   */
+  private final Map<String, ByteString> myInMemory = new HashMap<>();
+
+  /**
+   * Size of the payloads spilled to disk, by digest.
+   */
+  private final Map<String, Long> mySpilled = new HashMap<>();
+
+  private long myMemorySize;
+  private long myDiskSize;
+
+  /**
+   * Number of payloads refused because the store was full.
+   */
+  private int myRefusedCount;
+
+  public PayloadStore(@NotNull File directory, @NotNull LogService logService) {
+    this(directory, logService, DEFAULT_MEMORY_THRESHOLD, DEFAULT_MEMORY_CAPACITY, DEFAULT_DISK_CAPACITY);
+  }
+
+  /**
+   * @param directory       where payloads larger than {@code memoryThreshold} are written. Files left there by a previous run are deleted.
+   * @param memoryThreshold largest size, in bytes, of the payloads kept on the heap.
+   * @param memoryCapacity  total size, in bytes, of the payloads kept on the heap.
+   * @param diskCapacity    total size, in bytes, of the payloads kept on disk.
+   */
+  public PayloadStore(@NotNull File directory,
+                      @NotNull LogService logService,
+                      int memoryThreshold,
+                      long memoryCapacity,
+                      long diskCapacity) {
+    assert memoryThreshold >= 0 && memoryCapacity >= 0 && diskCapacity >= 0;
+    myDirectory = directory;
+    myLogService = logService;
+    myMemoryThreshold = memoryThreshold;
+    myMemoryCapacity = memoryCapacity;
+    myDiskCapacity = diskCapacity;
+    deleteFiles();
+  }
+
+  private LogService.Logger getLogger() {
+    return myLogService.getLogger(PayloadStore.class);
+  }
+
+  /**
+   * Stores {@code contents} under the given stream and id, replacing what was stored there before.
+   *
+   * @return the digest identifying the contents, or null if the store is full, in which case nothing is stored under the id.
+   */
+  @Nullable
+  public synchronized String put(long streamId, @NotNull String id, @NotNull ByteString contents) {
+    Key key = new Key(streamId, id);
+    String digest = digest(contents);
+    String previousDigest = myDigests.get(key);
+    if (digest.equals(previousDigest)) {
+      return digest;
+    }
+    // Releases the replaced contents first, so their room can be used for the new ones.
+    if (previousDigest != null) {
+      myDigests.remove(key);
+      release(previousDigest);
+    }
+
+    if (!myReferenceCounts.containsKey(digest)) {
+      if (contents.size() <= myMemoryThreshold && myMemorySize + contents.size() <= myMemoryCapacity) {
+        myInMemory.put(digest, contents);
+        myMemorySize += contents.size();
+      }
+      else if (!spill(digest, contents)) {
+        if (myRefusedCount++ == 0) {
+          getLogger().warn(String.format("Payload store is full (%d bytes in memory, %d bytes on disk), keeping payloads in the database",
+                                         myMemorySize, myDiskSize));
+        }
+        getLogger().debug(String.format("Refused a payload of %d bytes, %d refused so far", contents.size(), myRefusedCount));
+        return null;
+      }
+    }
+    myDigests.put(key, digest);
+    myReferenceCounts.merge(digest, 1, Integer::sum);
+    return digest;
+  }
+
+  /**
+   * @return the contents stored under the given stream and id, or null if there is none. Payloads kept on the heap are returned without
+   * being copied.
+   */
+  @Nullable
+  public synchronized ByteString get(long streamId, @NotNull String id) {
+    String digest = myDigests.get(new Key(streamId, id));
+    if (digest == null) {
+      return null;
+    }
+    ByteString inMemory = myInMemory.get(digest);
+    if (inMemory != null) {
+      return inMemory;
+    }
+    try (InputStream input = new FileInputStream(getFile(digest))) {
+      return ByteString.readFrom(input);
+    }
+    catch (IOException e) {
+      getLogger().error(e);
+      return null;
+    }
+  }
+
+  /**
+   * Reads up to {@code length} bytes of the contents stored under the given stream and id, starting at {@code offset}, so viewers can
+   * page through large payloads without loading them whole.
+   *
+   * @return the bytes read, which are fewer than {@code length} at the end of the contents, or null if there is no contents.
+   */
+  @Nullable
+  public synchronized byte[] read(long streamId, @NotNull String id, long offset, int length) {
+    assert offset >= 0 && length >= 0;
+    String digest = myDigests.get(new Key(streamId, id));
+    if (digest == null) {
+      return null;
+    }
+
+    ByteString inMemory = myInMemory.get(digest);
+    if (inMemory != null) {
+      int from = (int)Math.min(offset, inMemory.size());
+      return inMemory.substring(from, (int)Math.min(inMemory.size(), from + (long)length)).toByteArray();
+    }
+
+    long size = mySpilled.get(digest);
+    try (RandomAccessFile file = new RandomAccessFile(getFile(digest), "r")) {
+      byte[] bytes = new byte[(int)Math.max(0, Math.min(length, size - offset))];
+      file.seek(Math.min(offset, size));
+      file.readFully(bytes);
+      return bytes;
+    }
+    catch (IOException e) {
+      getLogger().error(e);
+      return null;
+    }
+  }
+
+  /**
+   * @return the size of the contents stored under the given stream and id, or -1 if there is none.
+   */
+  public synchronized long getSize(long streamId, @NotNull String id) {
+    String digest = myDigests.get(new Key(streamId, id));
+    if (digest == null) {
+      return -1;
+    }
+    ByteString inMemory = myInMemory.get(digest);
+    return inMemory != null ? inMemory.size() : mySpilled.get(digest);
+  }
+
+  /**
+   * @return the ids of the payloads stored for the given stream.
+   */
+  @NotNull
+  public synchronized Set<String> getIds(long streamId) {
+    return myDigests.keySet().stream().filter(key -> key.myStreamId == streamId).map(key -> key.myId).collect(Collectors.toSet());
+  }
+
+  /**
+   * Drops every payload and deletes the spilled files.
+   */
+  public synchronized void clear() {
+    myDigests.clear();
+    myReferenceCounts.clear();
+    myInMemory.clear();
+    mySpilled.clear();
+    myMemorySize = 0;
+    myDiskSize = 0;
+    deleteFiles();
+  }
+
+  @VisibleForTesting
+  synchronized long getMemorySize() {
+    return myMemorySize;
+  }
+
+  @VisibleForTesting
+  synchronized long getDiskSize() {
+    return myDiskSize;
+  }
+
+  @VisibleForTesting
+  synchronized int getMemoryPayloadCount() {
+    return myInMemory.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getSpilledPayloadCount() {
+    return mySpilled.size();
+  }
+
+  @VisibleForTesting
+  synchronized int getRefusedCount() {
+    return myRefusedCount;
+  }
+
+  @NotNull
+  private static String digest(@NotNull ByteString contents) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    try {
+      contents.writeTo(Funnels.asOutputStream(hasher));
+    }
+    catch (IOException e) {
+      // The funnel's output stream never throws.
+      throw new AssertionError(e);
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Writes the contents to disk if they fit in the remaining disk capacity.
+   *
+   * @return whether the contents were written.
+   */
+  private boolean spill(@NotNull String digest, @NotNull ByteString contents) {
+    if (myDiskSize + contents.size() > myDiskCapacity) {
+      return false;
+    }
+    if (!myDirectory.isDirectory() && !myDirectory.mkdirs()) {
+      getLogger().warn("Unable to create " + myDirectory.getPath());
+      return false;
+    }
+
+    File file = getFile(digest);
+    File temp = new File(myDirectory, digest + ".tmp");
+    try (FileOutputStream output = new FileOutputStream(temp)) {
+      contents.writeTo(output);
+    }
+    catch (IOException e) {
+      getLogger().error(e);
+      temp.delete();
+      return false;
+    }
+    if (!temp.renameTo(file)) {
+      getLogger().warn("Unable to write " + file.getPath());
+      temp.delete();
+      return false;
+    }
+
+    mySpilled.put(digest, (long)contents.size());
+    myDiskSize += contents.size();
+    return true;
+  }
+
+  /**
+   * Drops one reference to the contents with the given digest, and the contents themselves once nothing refers to them.
+   */
+  private void release(@NotNull String digest) {
+    int count = myReferenceCounts.merge(digest, -1, Integer::sum);
+    if (count > 0) {
+      return;
+    }
+    myReferenceCounts.remove(digest);
+    ByteString inMemory = myInMemory.remove(digest);
+    if (inMemory != null) {
+      myMemorySize -= inMemory.size();
+      return;
+    }
+    Long size = mySpilled.remove(digest);
+    if (size != null) {
+      myDiskSize -= size;
+      deleteFile(getFile(digest));
+    }
+  }
+
+  @NotNull
+  private File getFile(@NotNull String digest) {
+    return new File(myDirectory, digest);
+  }
+
+  private void deleteFiles() {
+    File[] files = myDirectory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        deleteFile(file);
+      }
+    }
+  }
+
+  private void deleteFile(@NotNull File file) {
+    if (file.exists() && !file.delete()) {
+      getLogger().warn("Unable to delete " + file.getPath());
+    }
+  }
+
+  private static final class Key {
+    private final long myStreamId;
+    @NotNull private final String myId;
+
+    private Key(long streamId, @NotNull String id) {
+      myStreamId = streamId;
+      myId = id;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key)obj;
+      return myStreamId == other.myStreamId && myId.equals(other.myId);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myStreamId, myId);
+    }
+  }
+}
@@ -29,6 +29,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import org.jetbrains.annotations.NotNull;
@@ -46,7 +47,10 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     // Only used for test.
     QUERY_EVENTS("SELECT Data FROM [UnifiedEventsTable]"),
     INSERT_BYTES("INSERT OR IGNORE INTO [BytesTable] (StreamId, Id, Data) VALUES (?, ?, ?)"),
-    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?");
+    GET_BYTES("SELECT Data FROM [BytesTable] WHERE StreamId = ? AND Id = ?"),
+    // Used to archive sessions, events not tied to a process (e.g. device data) are included as well.
+    QUERY_STREAM_EVENTS("SELECT Data FROM [UnifiedEventsTable] " +
+                        "WHERE StreamId = ? AND (ProcessId = ? OR ProcessId = 0) AND Timestamp >= ? AND Timestamp <= ? ORDER BY Timestamp");
 
     @NotNull private final String mySqlStatement;
 
@@ -60,6 +64,20 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     }
   }
 
+  private final boolean myCreateTables;
+
+  public UnifiedEventsTable() {
+    this(true);
+  }
+
+  /**
+   * @param createTables false to use the tables already present in the database, e.g. to read a database from a previous run. Otherwise
+   *                     the tables are dropped and recreated when initialized.
+   */
+  public UnifiedEventsTable(boolean createTables) {
+    myCreateTables = createTables;
+  }
+
   @Override
   public void prepareStatements() {
     try {
@@ -75,6 +93,9 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    if (!myCreateTables) {
+      return;
+    }
     try {
       createTable("UnifiedEventsTable",
                   "StreamId INTEGER NOT NULL", // Optional filter, required for all data.
@@ -95,19 +116,20 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
   }
 
   public void insertUnifiedEvent(long streamId, @NotNull Event event) {
-    execute(Statements.INSERT_EVENT,
-            streamId,
-            event.getPid(),
-            event.getGroupId(),
-            event.getKind().getNumber(),
-            event.getCommandId(),
-            event.getTimestamp(),
-            event.getIsEnded() ? 1 : 0,
-            event.toByteArray());
+    executeDeferred(Statements.INSERT_EVENT,
+                    streamId,
+                    event.getPid(),
+                    event.getGroupId(),
+                    event.getKind().getNumber(),
+                    event.getCommandId(),
+                    event.getTimestamp(),
+                    event.getIsEnded() ? 1 : 0,
+                    event.toByteArray());
   }
 
   public void deleteEvents(long streamId, int pid, long groupId, Event.Kind kind, long fromTimestamp, long toTimestamp) {
-    execute(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
+    // Deferred as well so the delete is ordered after any insert that is still queued.
+    executeDeferred(Statements.DELETE_EVENTS, streamId, pid, groupId, kind.getNumber(), fromTimestamp, toTimestamp);
   }
 
   @VisibleForTesting
@@ -259,6 +281,22 @@ public class UnifiedEventsTable extends DataStoreTable<UnifiedEventsTable.Statem
     return null;
   }
 
+  /**
+   * Passes the events of a stream between the two timestamps (inclusive) that belong to the process or to no process to
+   * {@code consumer}, ordered by time. The events are read as they are consumed, so they never all have to be held in memory.
+   */
+  public void forEachStreamEvent(long streamId, int pid, long fromTimestamp, long toTimestamp, @NotNull Consumer<Event> consumer) {
+    try {
+      ResultSet results = executeQuery(Statements.QUERY_STREAM_EVENTS, streamId, pid, fromTimestamp, toTimestamp);
+      while (results.next()) {
+        consumer.accept(Event.parser().parseFrom(results.getBytes(1)));
+      }
+    }
+    catch (SQLException | InvalidProtocolBufferException ex) {
+      onError(ex);
+    }
+  }
+
   /**
    * Executes the sql statement and passes each event through the filter. If the filter returns true, the event is added
    * to the hashmap. Otherwise it is ignored.
@@ -76,6 +76,9 @@ public class UnifiedEventsDataPoller implements Runnable, DataStoreTable.DataSto
         Event event = events.next();
         if (event != null) {
           myTable.insertUnifiedEvent(myStreamId, event);
+          if (event.getKind() == Event.Kind.SESSION && event.getIsEnded()) {
+            myDataStoreService.onSessionEnded(event.getGroupId());
+          }
         }
       }
     }
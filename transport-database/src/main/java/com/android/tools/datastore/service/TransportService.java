@@ -15,14 +15,17 @@
  */
 package com.android.tools.datastore.service;
 
+import com.android.tools.datastore.DataStoreDatabase;
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.ServicePassThrough;
 import com.android.tools.datastore.database.DataStoreTable;
 import com.android.tools.datastore.database.DeviceProcessTable;
+import com.android.tools.datastore.database.PayloadStore;
 import com.android.tools.datastore.database.UnifiedEventsTable;
 import com.android.tools.datastore.poller.DeviceProcessPoller;
 import com.android.tools.datastore.poller.UnifiedEventsDataPoller;
 import com.android.tools.idea.flags.StudioFlags;
+import com.android.tools.idea.protobuf.ByteString;
 import com.android.tools.profiler.proto.Commands;
 import com.android.tools.profiler.proto.Common.AgentData;
 import com.android.tools.profiler.proto.Common.Event;
@@ -50,7 +53,6 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Maps;
 import io.grpc.Channel;
 import io.grpc.stub.StreamObserver;
-import java.sql.Connection;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -58,6 +60,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * Datastore layer of the unified event rpc pipeline, responsible for forwarding commands to the device and handling generic event
@@ -70,6 +73,10 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   @NotNull private final UnifiedEventsTable myTable;
   @NotNull private final DeviceProcessTable myLegacyTable;
   @NotNull private final DataStoreService myService;
+  /**
+   * When set, bytes fetched from the device are kept here instead of {@link #myTable}.
+   */
+  @Nullable private final PayloadStore myPayloadStore;
   private final boolean myLegacyPipelineForProfilers;
   /**
    * A mapping of active channels to pollers. This mapping allows us to keep track of active pollers for a channel, and clean up pollers
@@ -86,9 +93,18 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
                           @NotNull UnifiedEventsTable unifiedTable,
                           Consumer<Runnable> fetchExecutor,
                           boolean legacyPipelineForProfilers) {
+    this(service, unifiedTable, null, fetchExecutor, legacyPipelineForProfilers);
+  }
+
+  public TransportService(@NotNull DataStoreService service,
+                          @NotNull UnifiedEventsTable unifiedTable,
+                          @Nullable PayloadStore payloadStore,
+                          Consumer<Runnable> fetchExecutor,
+                          boolean legacyPipelineForProfilers) {
     myService = service;
     myFetchExecutor = fetchExecutor;
     myTable = unifiedTable;
+    myPayloadStore = payloadStore;
     myLegacyTable = new DeviceProcessTable();
     myLegacyPipelineForProfilers = legacyPipelineForProfilers;
   }
@@ -100,12 +116,12 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   }
 
   @Override
-  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection) {
+  public void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull DataStoreDatabase database) {
     assert namespace == DataStoreService.BackingNamespace.DEFAULT_SHARED_NAMESPACE;
-    myTable.initialize(connection);
+    myTable.initialize(database);
 
     if (myLegacyPipelineForProfilers) {
-      myLegacyTable.initialize(connection);
+      myLegacyTable.initialize(database);
     }
   }
 
@@ -212,14 +228,17 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
   @Override
   public void getBytes(BytesRequest request, StreamObserver<BytesResponse> responseObserver) {
     // TODO: Currently the cache is on demand, we want to look into caching all available files.
-    BytesResponse response = myTable.getBytes(request);
+    BytesResponse response = getStoredBytes(request);
     long streamId = request.getStreamId();
     TransportServiceGrpc.TransportServiceBlockingStub client = myService.getTransportClient(streamId);
 
     if (response == null && client != null) {
       response = client.getBytes(request);
       if (!response.getContents().isEmpty()) {
-        myTable.insertBytes(streamId, request.getId(), response);
+        // Payloads the store has no room for are kept in the table, since they may not be available from the device later.
+        if (myPayloadStore == null || myPayloadStore.put(streamId, request.getId(), response.getContents()) == null) {
+          myTable.insertBytes(streamId, request.getId(), response);
+        }
       }
     }
     else if (response == null) {
@@ -230,6 +249,22 @@ public class TransportService extends TransportServiceGrpc.TransportServiceImplB
     responseObserver.onCompleted();
   }
 
+  /**
+   * Bytes inserted directly into the table (e.g. imported files, or payloads the {@link PayloadStore} had no room for) take precedence
+   * over the ones kept in the store.
+   */
+  @Nullable
+  private BytesResponse getStoredBytes(@NotNull BytesRequest request) {
+    BytesResponse response = myTable.getBytes(request);
+    if (response == null && myPayloadStore != null) {
+      ByteString contents = myPayloadStore.get(request.getStreamId(), request.getId());
+      if (contents != null) {
+        response = BytesResponse.newBuilder().setContents(contents).build();
+      }
+    }
+    return response;
+  }
+
   @Override
   public void execute(ExecuteRequest request, StreamObserver<ExecuteResponse> responseObserver) {
     // TODO (b/114751407): Send stream id 0 to all streams.
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.archive
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.datastore.database.PayloadStore
+import com.android.tools.datastore.database.UnifiedEventsTable
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.idea.protobuf.ByteString
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Network
+import com.android.tools.profiler.proto.Transport.BytesResponse
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class SessionArchiverTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private lateinit var dbFile: File
+  private lateinit var archiveDir: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: UnifiedEventsTable
+
+  @Before
+  fun setUp() {
+    dbFile = File(temporaryFolder.root, "default.sql")
+    archiveDir = File(temporaryFolder.root, SessionArchiver.ARCHIVE_DIRECTORY_NAME)
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    table = UnifiedEventsTable()
+    table.initialize(database.connection)
+  }
+
+  @After
+  fun tearDown() {
+    if (!database.connection.isClosed) {
+      database.disconnect()
+    }
+    StudioFlags.PROFILER_PERSISTENT_SESSIONS.clearOverride()
+  }
+
+  @Test
+  fun archiveRoundTrip() {
+    insertSession(1, 10, 100, 200, true)
+    table.insertUnifiedEvent(1, processEvent(10, 150))
+    table.insertUnifiedEvent(1, processEvent(0, 160))
+    // Other process and outside of the session, should not be archived.
+    table.insertUnifiedEvent(1, processEvent(11, 150))
+    table.insertUnifiedEvent(1, processEvent(10, 250))
+    table.insertUnifiedEvent(1, traceEvent(10, 170, 42))
+    table.insertBytes(1, "42", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("content")).build())
+    // Bytes of the stream that no event of the session refers to, e.g. a trace of another session.
+    table.insertBytes(1, "43", BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("other")).build())
+
+    val archiver = SessionArchiver(archiveDir, FakeLogService())
+    assertThat(archiver.archiveSessions(table)).isEqualTo(1)
+    // Sessions that already have an archive are skipped.
+    assertThat(archiver.archiveSessions(table)).isEqualTo(0)
+
+    val archives = SessionArchiveReader.list(archiveDir)
+    assertThat(archives).hasSize(1)
+    val archive = archives[0]
+    assertThat(archive.formatVersion).isEqualTo(SessionArchive.FORMAT_VERSION)
+    assertThat(archive.sessionId).isEqualTo(100)
+    assertThat(archive.sessionStarted.pid).isEqualTo(10)
+    assertThat(archive.startTimestamp).isEqualTo(100)
+    assertThat(archive.endTimestamp).isEqualTo(200)
+    assertThat(archive.eventCount).isEqualTo(3)
+
+    val events = mutableListOf<Common.Event>()
+    val bytes = mutableMapOf<String, BytesResponse>()
+    SessionArchiveReader.readBody(archive, { events.add(it) }, { id, response -> bytes[id] = response })
+    assertThat(events).containsExactly(processEvent(10, 150), processEvent(0, 160), traceEvent(10, 170, 42)).inOrder()
+    assertThat(bytes.keys).containsExactly("42")
+    assertThat(bytes["42"]!!.contents.toStringUtf8()).isEqualTo("content")
+  }
+
+  @Test
+  fun payloadStoreBytesAreArchived() {
+    insertSession(1, 10, 100, 200, true)
+    table.insertUnifiedEvent(1, Common.Event.newBuilder()
+      .setKind(Common.Event.Kind.NETWORK_HTTP_CONNECTION)
+      .setGroupId(5)
+      .setPid(10)
+      .setTimestamp(150)
+      .setNetworkHttpConnection(Network.NetworkHttpConnectionData.newBuilder()
+                                  .setHttpResponseCompleted(Network.NetworkHttpConnectionData.HttpResponseCompleted.newBuilder()
+                                                              .setPayloadId("small")))
+      .build())
+    table.insertUnifiedEvent(1, traceEvent(10, 160, 42))
+    val payloadStore = PayloadStore(temporaryFolder.newFolder(), FakeLogService(), 4, 10, 20)
+    payloadStore.put(1, "small", ByteString.copyFromUtf8("abc"))
+    payloadStore.put(1, "42", ByteString.copyFromUtf8("spilled body"))
+    payloadStore.put(1, "other", ByteString.copyFromUtf8("other"))
+
+    SessionArchiver(archiveDir, FakeLogService()).archiveSessions(table, payloadStore)
+    val bytes = mutableMapOf<String, BytesResponse>()
+    SessionArchiveReader.readBody(SessionArchiveReader.list(archiveDir)[0], { }, { id, response -> bytes[id] = response })
+    assertThat(bytes.mapValues { it.value.contents.toStringUtf8() }).containsExactly("small", "abc", "42", "spilled body")
+  }
+
+  @Test
+  fun ongoingSessionEndsWithItsLastEvent() {
+    insertSession(1, 10, 100, 0, false)
+    table.insertUnifiedEvent(1, processEvent(10, 150))
+    table.insertUnifiedEvent(1, processEvent(10, 180))
+
+    SessionArchiver(archiveDir, FakeLogService()).archiveSessions(table)
+    val archive = SessionArchiveReader.readHeader(File(archiveDir, SessionArchive.getFileName(100)))
+    assertThat(archive.endTimestamp).isEqualTo(180)
+    assertThat(archive.sessionEndedEvent.isEnded).isTrue()
+  }
+
+  @Test
+  fun sessionIsArchivedById() {
+    insertSession(1, 10, 100, 200, true)
+    insertSession(1, 11, 300, 400, true)
+
+    val archiver = SessionArchiver(archiveDir, FakeLogService())
+    assertThat(archiver.archiveSession(table, null, 300)).isTrue()
+    assertThat(SessionArchiveReader.list(archiveDir).map { it.sessionId }).containsExactly(300L)
+    assertThat(archiver.archiveSession(table, null, 300)).isFalse()
+    assertThat(archiver.archiveSession(table, null, 500)).isFalse()
+  }
+
+  @Test
+  fun invalidFilesAreNotListed() {
+    archiveDir.mkdirs()
+    File(archiveDir, SessionArchive.getFileName(1)).writeBytes(ByteArray(16))
+    assertThat(SessionArchiveReader.list(archiveDir)).isEmpty()
+  }
+
+  @Test
+  fun previousDatabaseIsArchived() {
+    StudioFlags.PROFILER_PERSISTENT_SESSIONS.override(true)
+    insertSession(1, 10, 100, 200, true)
+    table.insertUnifiedEvent(1, processEvent(10, 150))
+    database.disconnect()
+
+    // Reopening the database keeps the previous file aside instead of deleting it.
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    val previousFile = File(dbFile.absolutePath + DataStoreDatabase.PREVIOUS_SUFFIX)
+    assertThat(previousFile.exists()).isTrue()
+    assertThat(DataStoreDatabase.getSchemaVersion(database.connection)).isEqualTo(DataStoreDatabase.SCHEMA_VERSION)
+
+    assertThat(SessionArchiver(archiveDir, FakeLogService()).archivePreviousDatabase(previousFile)).isEqualTo(1)
+    assertThat(previousFile.exists()).isFalse()
+    assertThat(SessionArchiveReader.list(archiveDir).map { it.sessionId }).containsExactly(100L)
+  }
+
+  private fun insertSession(streamId: Long, pid: Int, start: Long, end: Long, ended: Boolean) {
+    table.insertUnifiedEvent(streamId, Common.Event.newBuilder()
+      .setKind(Common.Event.Kind.SESSION)
+      .setGroupId(start)
+      .setPid(pid)
+      .setTimestamp(start)
+      .setSession(Common.SessionData.newBuilder().setSessionStarted(
+        Common.SessionData.SessionStarted.newBuilder()
+          .setSessionId(start)
+          .setStreamId(streamId)
+          .setPid(pid)
+          .setType(Common.SessionData.SessionStarted.SessionType.FULL)))
+      .build())
+    if (ended) {
+      table.insertUnifiedEvent(streamId, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.SESSION)
+        .setGroupId(start)
+        .setPid(pid)
+        .setTimestamp(end)
+        .setIsEnded(true)
+        .build())
+    }
+  }
+
+  private fun traceEvent(pid: Int, timestamp: Long, traceId: Long): Common.Event {
+    return Common.Event.newBuilder().setKind(Common.Event.Kind.CPU_TRACE).setGroupId(traceId).setPid(pid).setTimestamp(timestamp).build()
+  }
+
+  private fun processEvent(pid: Int, timestamp: Long): Common.Event {
+    return Common.Event.newBuilder().setKind(Common.Event.Kind.PROCESS).setGroupId(pid.toLong()).setPid(pid).setTimestamp(timestamp).build()
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.google.common.truth.Truth.assertThat
+import org.junit.Test
+
+class ColumnarEventStoreTest {
+  private val store = ColumnarEventStore(10)
+
+  @Test
+  fun appendCreatesTimeBucketedSegments() {
+    for (timestamp in 0L until 35L) {
+      store.append(1, 1, 1, 1, 0, timestamp, false, byteArrayOf(timestamp.toByte()))
+    }
+    assertThat(store.segmentCount).isEqualTo(4)
+    assertThat(store.rowCount).isEqualTo(35)
+  }
+
+  @Test
+  fun duplicateRowsAreIgnored() {
+    assertThat(store.append(1, 1, 1, 1, 0, 5, false, byteArrayOf(1))).isTrue()
+    assertThat(store.append(1, 1, 1, 1, 0, 5, false, byteArrayOf(2))).isFalse()
+    // Differs on the ended flag, so it is a different row.
+    assertThat(store.append(1, 1, 1, 1, 0, 5, true, byteArrayOf(3))).isTrue()
+    assertThat(scanPayloads(ColumnarEventStore.Filter(1, 0, 0, 0, 0), Long.MIN_VALUE, Long.MAX_VALUE)).containsExactly(1, 3).inOrder()
+  }
+
+  @Test
+  fun scanReturnsOnlyRowsInRange() {
+    for (timestamp in 0L until 100L) {
+      store.append(1, 1, 1, timestamp % 2, 0, timestamp, false, byteArrayOf(timestamp.toByte()))
+    }
+    assertThat(scanPayloads(ColumnarEventStore.Filter(1, 0, 0, 0, 0), 18, 22)).containsExactly(18, 19, 20, 21, 22).inOrder()
+    assertThat(scanPayloads(ColumnarEventStore.Filter(1, 0, 0, 1, 0), 18, 22)).containsExactly(19, 21).inOrder()
+    assertThat(scanPayloads(ColumnarEventStore.Filter(2, 0, 0, 0, 0), 18, 22)).isEmpty()
+  }
+
+  @Test
+  fun scanHandlesOutOfOrderAppends() {
+    val timestamps = listOf(5L, 3L, 9L, 1L, 25L, 12L, 7L)
+    for (timestamp in timestamps) {
+      store.append(1, 1, 1, 1, 0, timestamp, false, byteArrayOf(timestamp.toByte()))
+    }
+    assertThat(scanPayloads(ColumnarEventStore.Filter(1, 0, 0, 0, 0), 3, 12)).containsExactly(5, 3, 9, 7, 12)
+    // Duplicate detection works on unsorted segments as well.
+    assertThat(store.append(1, 1, 1, 1, 0, 3, false, byteArrayOf(0))).isFalse()
+  }
+
+  @Test
+  fun deleteTombstonesMatchingRows() {
+    for (timestamp in 0L until 20L) {
+      store.append(1, 1, 1, timestamp % 2, 0, timestamp, false, byteArrayOf(timestamp.toByte()))
+    }
+    store.delete(ColumnarEventStore.Filter.exact(1, 1, 1, 0), 0, 9)
+    assertThat(store.rowCount).isEqualTo(15)
+    assertThat(scanPayloads(ColumnarEventStore.Filter(1, 0, 0, 0, 0), 0, 9)).containsExactly(1, 3, 5, 7, 9).inOrder()
+    // A deleted row can be inserted again.
+    assertThat(store.append(1, 1, 1, 0, 0, 4, false, byteArrayOf(4))).isTrue()
+  }
+
+  @Test
+  fun groupQueriesFollowTimeOrder() {
+    val timestamps = listOf(5L, 3L, 9L, 1L, 25L, 12L, 7L)
+    for (timestamp in timestamps) {
+      store.append(1, 1, 1, 1, 0, timestamp, false, byteArrayOf(timestamp.toByte()))
+      store.append(1, 2, 1, 2, 0, timestamp + 1, false, byteArrayOf((timestamp + 1).toByte()))
+    }
+    val filter = ColumnarEventStore.Filter(1, 0, 0, 1, 0)
+    val groupPayloads = mutableListOf<Int>()
+    store.scanGroups(filter, 3, 12) { groupPayloads.add(it.payload[0].toInt()) }
+    assertThat(groupPayloads).containsExactly(3, 5, 7, 9, 12).inOrder()
+
+    assertThat(visitPayloads { store.visitLatestBefore(filter, 9, it) }).containsExactly(7)
+    assertThat(visitPayloads { store.visitEarliestAfter(filter, 9, it) }).containsExactly(12)
+    // Both groups are visited when the group id isn't set.
+    assertThat(visitPayloads { store.visitLatestBefore(ColumnarEventStore.Filter(1, 0, 0, 0, 0), 9, it) }).containsExactly(7, 8)
+
+    // Deleted rows are skipped in favor of the next closest ones.
+    store.delete(ColumnarEventStore.Filter.exact(1, 1, 1, 1), 7, 12)
+    assertThat(visitPayloads { store.visitLatestBefore(filter, 9, it) }).containsExactly(5)
+    assertThat(visitPayloads { store.visitEarliestAfter(filter, 9, it) }).containsExactly(25)
+  }
+
+  @Test
+  fun payloadsAreListedInTimeOrder() {
+    val timestamps = listOf(5L, 3L, 9L, 1L, 25L, 12L, 7L, 3L)
+    for ((pid, timestamp) in timestamps.withIndex()) {
+      store.append(1, pid, 1, 1, 0, timestamp, false, byteArrayOf(timestamp.toByte(), pid.toByte()))
+    }
+    val payloads = mutableListOf<List<Int>>()
+    store.forEachPayloadInTimeOrder(3, Long.MAX_VALUE, { it.pid != 2 }) { payloads.add(listOf(it[0].toInt(), it[1].toInt())) }
+    // Identical timestamps are listed in insertion order.
+    assertThat(payloads).containsExactly(listOf(3, 1), listOf(3, 7), listOf(5, 0), listOf(7, 6), listOf(12, 5), listOf(25, 4)).inOrder()
+  }
+
+  private fun visitPayloads(query: (ColumnarEventStore.RowVisitor) -> Unit): List<Int> {
+    val payloads = mutableListOf<Int>()
+    query(ColumnarEventStore.RowVisitor { payloads.add(it.payload[0].toInt()) })
+    return payloads
+  }
+
+  private fun scanPayloads(filter: ColumnarEventStore.Filter, from: Long, to: Long): List<Int> {
+    val payloads = mutableListOf<Int>()
+    store.scan(filter, from, to) { payloads.add(it.payload[0].toInt()) }
+    return payloads
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.profiler.proto.Common
+import com.android.tools.profiler.proto.Transport.EventGroup
+import com.android.tools.profiler.proto.Transport.GetEventGroupsRequest
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+
+/**
+ * Validates that [ColumnarUnifiedEventsTable] answers queries exactly like the SQL backed [UnifiedEventsTable].
+ */
+class ColumnarUnifiedEventsTableTest {
+  private lateinit var database: DataStoreDatabase
+  private lateinit var sqlTable: UnifiedEventsTable
+  private lateinit var columnarTable: ColumnarUnifiedEventsTable
+
+  @Before
+  fun setUp() {
+    database = DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, FakeLogService())
+    sqlTable = UnifiedEventsTable()
+    sqlTable.initialize(database.connection)
+    columnarTable = ColumnarUnifiedEventsTable(ColumnarEventStore(4))
+    columnarTable.initialize(database.connection)
+
+    // A mix of groups that start, end and overlap each other, spread across many segments.
+    val events = mutableListOf<Common.Event>()
+    for (group in 1L..6L) {
+      for (i in 0 until 8) {
+        val timestamp = group * 3 + i * 2
+        events.add(Common.Event.newBuilder()
+                     .setKind(if (group % 3 == 0L) Common.Event.Kind.PROCESS else Common.Event.Kind.SESSION)
+                     .setPid((group % 2 + 1).toInt())
+                     .setGroupId(group)
+                     .setCommandId(i % 2)
+                     .setTimestamp(timestamp)
+                     .setIsEnded(group % 2 == 0L && i == 7)
+                     .build())
+      }
+    }
+    events.sortBy { it.timestamp }
+    events.forEach {
+      sqlTable.insertUnifiedEvent(1, it)
+      columnarTable.insertUnifiedEvent(1, it)
+    }
+  }
+
+  @After
+  fun tearDown() {
+    database.disconnect()
+  }
+
+  @Test
+  fun queryEventsMatchesSql() {
+    assertThat(columnarTable.queryUnifiedEvents()).containsExactlyElementsIn(sqlTable.queryUnifiedEvents())
+  }
+
+  @Test
+  fun queryEventGroupsMatchesSql() {
+    for (kind in listOf(Common.Event.Kind.SESSION, Common.Event.Kind.PROCESS)) {
+      for (pid in 0..2) {
+        for (from in listOf(0L, 1L, 7L, 12L, 20L, 40L)) {
+          for (to in listOf(0L, 5L, 12L, 13L, 25L, Long.MAX_VALUE)) {
+            val request = GetEventGroupsRequest.newBuilder()
+              .setKind(kind)
+              .setStreamId(1)
+              .setPid(pid)
+              .setFromTimestamp(from)
+              .setToTimestamp(to)
+              .build()
+            assertThat(flatten(columnarTable.queryUnifiedEventGroups(request)))
+              .containsExactlyEntriesIn(flatten(sqlTable.queryUnifiedEventGroups(request)))
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  fun deleteEventsMatchesSql() {
+    sqlTable.deleteEvents(1, 1, 2, Common.Event.Kind.SESSION, 8, 14)
+    columnarTable.deleteEvents(1, 1, 2, Common.Event.Kind.SESSION, 8, 14)
+    assertThat(columnarTable.queryUnifiedEvents()).containsExactlyElementsIn(sqlTable.queryUnifiedEvents())
+  }
+
+  private fun flatten(groups: List<EventGroup>): Map<Long, Set<Common.Event>> {
+    return groups.associate { it.groupId to it.eventsList.toSet() }
+  }
+}
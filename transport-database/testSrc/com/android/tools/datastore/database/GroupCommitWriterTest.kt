@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.DataStoreDatabase
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.idea.flags.StudioFlags
+import com.android.tools.profiler.proto.Common
+import com.google.common.truth.Truth.assertThat
+import org.junit.After
+import org.junit.Before
+import org.junit.Test
+import java.io.File
+import java.sql.DriverManager
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class GroupCommitWriterTest {
+  private lateinit var dbFile: File
+  private lateinit var database: DataStoreDatabase
+  private lateinit var table: UnifiedEventsTable
+
+  @Before
+  fun setUp() {
+    StudioFlags.PROFILER_DATASTORE_GROUP_COMMIT.override(true)
+    dbFile = File.createTempFile("GroupCommitWriterTest", "sql")
+    dbFile.deleteOnExit()
+    // Large interval so commits in the tests below are only triggered by batch size, flush or shutdown.
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService(), {},
+                                 GroupCommitWriter.Policy(64, 16, TimeUnit.HOURS.toNanos(1)))
+    table = UnifiedEventsTable()
+    table.initialize(database)
+  }
+
+  @After
+  fun tearDown() {
+    if (!database.connection.isClosed) {
+      database.disconnect()
+    }
+    StudioFlags.PROFILER_DATASTORE_GROUP_COMMIT.clearOverride()
+  }
+
+  @Test
+  fun flushCommitsQueuedWrites() {
+    insertEvents(0, 10)
+    database.writer!!.flush()
+    assertThat(table.queryUnifiedEvents()).hasSize(10)
+    // Committed data is visible to a separate connection, which is what survives a crash.
+    assertThat(countCommittedEvents()).isEqualTo(10)
+  }
+
+  @Test
+  fun queuedWritesAreVisibleToQueries() {
+    insertEvents(0, 10)
+    // Nothing forces a commit here, the query waits for the queued writes to be executed.
+    assertThat(table.queryUnifiedEvents()).hasSize(10)
+  }
+
+  @Test
+  fun batchSizeTriggersCommit() {
+    insertEvents(0, 16)
+    database.writer!!.flush()
+    val metrics = database.writer!!.metrics
+    assertThat(metrics.commitCount).isAtLeast(1)
+    assertThat(metrics.queueDepth).isEqualTo(0)
+    assertThat(metrics.lastBatchSize).isGreaterThan(0)
+  }
+
+  @Test
+  fun concurrentProducersAreAllWritten() {
+    val producers = 4
+    val eventsPerProducer = 500
+    val done = CountDownLatch(producers)
+    for (i in 0 until producers) {
+      Thread {
+        insertEvents(i * eventsPerProducer.toLong(), eventsPerProducer)
+        done.countDown()
+      }.start()
+    }
+    assertThat(done.await(30, TimeUnit.SECONDS)).isTrue()
+    database.writer!!.flush()
+    assertThat(table.queryUnifiedEvents()).hasSize(producers * eventsPerProducer)
+  }
+
+  @Test
+  fun stopWritesRemainingData() {
+    insertEvents(0, 10)
+    database.disconnect()
+    assertThat(database.writer!!.isRunning).isFalse()
+    assertThat(countCommittedEvents()).isEqualTo(10)
+  }
+
+  @Test
+  fun noWriterWhenFlagIsOff() {
+    StudioFlags.PROFILER_DATASTORE_GROUP_COMMIT.override(false)
+    database.disconnect()
+    database = DataStoreDatabase(dbFile.absolutePath, DataStoreDatabase.Characteristic.DURABLE, FakeLogService())
+    assertThat(database.writer).isNull()
+    table = UnifiedEventsTable()
+    table.initialize(database)
+    insertEvents(0, 5)
+    assertThat(table.queryUnifiedEvents()).hasSize(5)
+  }
+
+  private fun insertEvents(firstTimestamp: Long, count: Int) {
+    for (i in 0 until count) {
+      table.insertUnifiedEvent(1, Common.Event.newBuilder()
+        .setKind(Common.Event.Kind.SESSION)
+        .setPid(1)
+        .setGroupId(1)
+        .setTimestamp(firstTimestamp + i)
+        .build())
+    }
+  }
+
+  private fun countCommittedEvents(): Int {
+    DriverManager.getConnection("jdbc:sqlite:${dbFile.absolutePath}").use { connection ->
+      connection.createStatement().use { statement ->
+        val results = statement.executeQuery("SELECT COUNT(*) FROM [UnifiedEventsTable]")
+        return results.getInt(1)
+      }
+    }
+  }
+}
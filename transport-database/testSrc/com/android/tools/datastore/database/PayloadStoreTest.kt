@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database
+
+import com.android.tools.datastore.FakeLogService
+import com.android.tools.idea.protobuf.ByteString
+import com.google.common.truth.Truth.assertThat
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import java.io.File
+
+class PayloadStoreTest {
+  @get:Rule
+  val temporaryFolder = TemporaryFolder()
+
+  private lateinit var directory: File
+  private lateinit var store: PayloadStore
+
+  @Before
+  fun setUp() {
+    directory = temporaryFolder.newFolder()
+    // Payloads larger than 4 bytes are spilled, at most 10 bytes are kept on the heap and 20 bytes on disk.
+    store = PayloadStore(directory, FakeLogService(), 4, 10, 20)
+  }
+
+  @Test
+  fun smallPayloadsStayInMemory() {
+    val contents = bytes(1, 2, 3)
+    store.put(1, "a", contents)
+    // Payloads on the heap are returned as is.
+    assertThat(store.get(1, "a")).isSameAs(contents)
+    assertThat(store.getSize(1, "a")).isEqualTo(3)
+    assertThat(store.memoryPayloadCount).isEqualTo(1)
+    assertThat(store.memorySize).isEqualTo(3)
+    assertThat(store.spilledPayloadCount).isEqualTo(0)
+    assertThat(directory.listFiles()).isEmpty()
+  }
+
+  @Test
+  fun largePayloadsAreSpilled() {
+    val contents = sequence(10)
+    val digest = store.put(1, "a", contents)!!
+    assertThat(store.get(1, "a")).isEqualTo(contents)
+    assertThat(store.memoryPayloadCount).isEqualTo(0)
+    assertThat(store.diskSize).isEqualTo(10)
+    assertThat(File(directory, digest).length()).isEqualTo(10)
+  }
+
+  @Test
+  fun identicalPayloadsAreStoredOnce() {
+    val first = store.put(1, "a", sequence(10))
+    val second = store.put(2, "b", sequence(10))
+    assertThat(second).isEqualTo(first)
+    assertThat(store.spilledPayloadCount).isEqualTo(1)
+    assertThat(store.diskSize).isEqualTo(10)
+    assertThat(store.get(2, "b")).isEqualTo(sequence(10))
+  }
+
+  @Test
+  fun rangedReads() {
+    store.put(1, "small", bytes(1, 2, 3, 4))
+    store.put(1, "large", sequence(10))
+    assertThat(store.read(1, "small", 1, 2)).isEqualTo(byteArrayOf(2, 3))
+    assertThat(store.read(1, "small", 3, 10)).isEqualTo(byteArrayOf(4))
+    assertThat(store.read(1, "small", 10, 10)).isEmpty()
+    assertThat(store.read(1, "large", 4, 3)).isEqualTo(byteArrayOf(4, 5, 6))
+    assertThat(store.read(1, "large", 8, 10)).isEqualTo(byteArrayOf(8, 9))
+    assertThat(store.read(1, "large", 12, 10)).isEmpty()
+    assertThat(store.read(1, "missing", 0, 10)).isNull()
+  }
+
+  @Test
+  fun payloadsAreNeverEvictedWhenTheDiskIsFull() {
+    assertThat(store.put(1, "a", filled(8, 1))).isNotNull()
+    assertThat(store.put(1, "b", filled(8, 2))).isNotNull()
+    // "c" does not fit, so it is refused rather than evicting "a" or "b".
+    assertThat(store.put(1, "c", filled(8, 3))).isNull()
+
+    assertThat(store.diskSize).isEqualTo(16)
+    assertThat(store.get(1, "a")).isEqualTo(filled(8, 1))
+    assertThat(store.get(1, "b")).isEqualTo(filled(8, 2))
+    assertThat(store.get(1, "c")).isNull()
+    assertThat(store.getSize(1, "c")).isEqualTo(-1)
+    assertThat(directory.listFiles()).hasLength(2)
+  }
+
+  @Test
+  fun replacedPayloadsAreReleased() {
+    store.put(1, "a", bytes(1, 2, 3))
+    store.put(1, "a", bytes(4, 5))
+    assertThat(store.get(1, "a")).isEqualTo(bytes(4, 5))
+    assertThat(store.memoryPayloadCount).isEqualTo(1)
+    assertThat(store.memorySize).isEqualTo(2)
+
+    store.put(1, "b", filled(8, 1))
+    store.put(1, "b", filled(8, 2))
+    assertThat(store.spilledPayloadCount).isEqualTo(1)
+    assertThat(store.diskSize).isEqualTo(8)
+    assertThat(directory.listFiles()).hasLength(1)
+  }
+
+  @Test
+  fun sharedPayloadsAreKeptUntilTheLastIdIsReplaced() {
+    store.put(1, "a", filled(8, 1))
+    store.put(2, "b", filled(8, 1))
+    store.put(1, "a", filled(8, 2))
+    assertThat(store.get(2, "b")).isEqualTo(filled(8, 1))
+    assertThat(store.diskSize).isEqualTo(16)
+
+    store.put(2, "b", filled(8, 2))
+    assertThat(store.spilledPayloadCount).isEqualTo(1)
+    assertThat(store.diskSize).isEqualTo(8)
+  }
+
+  @Test
+  fun refusedPayloadsAreCounted() {
+    store.put(1, "a", filled(8, 1))
+    store.put(1, "b", filled(8, 2))
+    assertThat(store.refusedCount).isEqualTo(0)
+    store.put(1, "c", filled(8, 3))
+    assertThat(store.refusedCount).isEqualTo(1)
+    // Replacing a payload frees its room for the new contents.
+    assertThat(store.put(1, "a", filled(8, 4))).isNotNull()
+    assertThat(store.refusedCount).isEqualTo(1)
+  }
+
+  @Test
+  fun smallPayloadsSpillOnceTheMemoryIsFull() {
+    store.put(1, "a", filled(4, 1))
+    store.put(1, "b", filled(4, 2))
+    store.put(1, "c", filled(4, 3))
+
+    assertThat(store.memorySize).isEqualTo(8)
+    assertThat(store.diskSize).isEqualTo(4)
+    assertThat(store.get(1, "c")).isEqualTo(filled(4, 3))
+  }
+
+  @Test
+  fun payloadsLargerThanTheDiskCapacityAreRefused() {
+    assertThat(store.put(1, "a", sequence(30))).isNull()
+    assertThat(store.get(1, "a")).isNull()
+    assertThat(store.diskSize).isEqualTo(0)
+    assertThat(store.memorySize).isEqualTo(0)
+  }
+
+  @Test
+  fun idsOfAStream() {
+    store.put(1, "a", bytes(1))
+    store.put(1, "b", sequence(10))
+    store.put(2, "c", bytes(2))
+    assertThat(store.getIds(1)).containsExactly("a", "b")
+    assertThat(store.getIds(3)).isEmpty()
+  }
+
+  @Test
+  fun filesFromPreviousRunsAndClearAreDeleted() {
+    File(directory, "stale").writeBytes(ByteArray(4))
+    store = PayloadStore(directory, FakeLogService(), 4, 10, 20)
+    assertThat(directory.listFiles()).isEmpty()
+
+    store.put(1, "a", sequence(10))
+    store.clear()
+    assertThat(store.get(1, "a")).isNull()
+    assertThat(store.diskSize).isEqualTo(0)
+    assertThat(directory.listFiles()).isEmpty()
+  }
+
+  private fun bytes(vararg values: Byte) = ByteString.copyFrom(values)
+
+  private fun sequence(size: Int) = ByteString.copyFrom(ByteArray(size) { it.toByte() })
+
+  private fun filled(size: Int, value: Byte) = ByteString.copyFrom(ByteArray(size) { value })
+}
@@ -69,7 +69,8 @@ class UnifiedEventsTableTest : DatabaseTest<UnifiedEventsTable>() {
       }),
       (Consumer { it.queryUnifiedEvents() }),
       (Consumer { assertThat(it.getBytes(BytesRequest.getDefaultInstance())).isEqualTo(null) }),
-      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }))
+      (Consumer { it.insertBytes(0, "id", BytesResponse.getDefaultInstance()) }),
+      (Consumer { it.forEachStreamEvent(1, 1, 0, 10) { } }))
   }
 
   private fun insertData(count: Int, incrementGroupId: Boolean): List<Common.Event> {